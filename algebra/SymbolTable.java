@@ -0,0 +1,151 @@
+package algebra;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A utility class that interns variable names, so that every name has a single canonical
+ * Variable with a dense integer id. Ids are assigned in increasing order starting from zero, and
+ * never change.</p>
+ *
+ * <p>Looking up a name that has already been interned is a single read of a
+ * {@code ConcurrentHashMap}, and looking up an id is a single read of an array, so neither takes a
+ * lock. New names are added while holding a lock.</p>
+ *
+ * <p>Variables are ordered by name, but ids are assigned in the order that names are first seen, so
+ * each Variable also gets an order key, which is a {@code long} that never decreases in the order of
+ * the names. A new name's key is halfway between the keys of the names before and after it, so
+ * Variables can almost always be compared by their keys alone, and only names whose keys tie are
+ * compared as Strings.</p>
+ *
+ * @author Ricky Qin
+ */
+public class SymbolTable {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The gap between the order key of a new name and the key of its neighbour, when the name comes
+     * before or after every interned name.
+     */
+    final private static long ORDER_KEY_GAP = 1L << 32;
+
+    /**
+     * The canonical Variable of every interned name.
+     */
+    final private static ConcurrentHashMap<String, Variable> variables = new ConcurrentHashMap<>();
+
+    /**
+     * The order key of every interned name, sorted by name. Only accessed while holding the lock.
+     */
+    final private static TreeMap<String, Long> orderKeys = new TreeMap<>();
+
+    /**
+     * The lock that is held while adding a name.
+     */
+    final private static Object lock = new Object();
+
+    /**
+     * The interned Variables, where each Variable is at the index of its id. The array is replaced
+     * with a larger copy when it is full, and is always written before the Variable is published.
+     */
+    private static volatile Variable[] variablesById = new Variable[16];
+
+    /**
+     * The number of interned names.
+     */
+    private static volatile int size = 0;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the canonical Variable with a name, interning the name if it hasn't been seen yet.
+     *
+     * @param name  The name of the Variable.
+     * @return      The Variable, which is the same object every time.
+     * @throws      IllegalArgumentException If {@code name} is empty.
+     */
+    public static Variable intern(String name) {
+        Variable variable = variables.get(name);
+        if(variable != null) return variable;
+        if(name.isEmpty()) throw new IllegalArgumentException("SymbolTable: Variable name must not be empty");
+        synchronized(lock) {
+            variable = variables.get(name);
+            if(variable != null) return variable;
+            int id = size;
+            variable = new Variable(name, id, newOrderKey(name));
+            Variable[] array = variablesById;
+            if(id == array.length) {
+                Variable[] newArray = new Variable[array.length*2];
+                System.arraycopy(array, 0, newArray, 0, array.length);
+                array = newArray;
+            }
+            array[id] = variable;
+            variablesById = array;
+            size = id+1;
+            variables.put(name, variable);
+            return variable;
+        }
+    }
+
+    /**
+     * Computes the order key of a new name from the keys of its neighbours, and records it. Must be
+     * called while holding the lock.
+     *
+     * @param name  The new name.
+     * @return      The order key, which is at least the key of every smaller name and at most the
+     * key of every larger name.
+     */
+    private static long newOrderKey(String name) {
+        Map.Entry<String, Long> lower = orderKeys.lowerEntry(name);
+        Map.Entry<String, Long> higher = orderKeys.higherEntry(name);
+        long key;
+        if(lower == null && higher == null) key = 0;
+        else if(lower == null) key = (higher.getValue() >= Long.MIN_VALUE + ORDER_KEY_GAP) ? higher.getValue() - ORDER_KEY_GAP : higher.getValue();
+        else if(higher == null) key = (lower.getValue() <= Long.MAX_VALUE - ORDER_KEY_GAP) ? lower.getValue() + ORDER_KEY_GAP : lower.getValue();
+        else key = lower.getValue() + (higher.getValue() - lower.getValue())/2;// ties with the lower key once the gap is used up
+        orderKeys.put(name, key);
+        return key;
+    }
+
+    /**
+     * Returns the canonical Variable with an id.
+     *
+     * @param id  The id.
+     * @return    The Variable.
+     * @throws    IllegalArgumentException If no name has this id.
+     */
+    public static Variable get(int id) {
+        // read the size first, so that the array contains every id below it
+        int currentSize = size;
+        if(id < 0 || id >= currentSize) throw new IllegalArgumentException("SymbolTable: Unknown variable id");
+        return variablesById[id];
+    }
+
+    /**
+     * Returns the canonical Variable with a name, without interning it.
+     *
+     * @param name  The name.
+     * @return      The Variable, or null if the name hasn't been interned.
+     */
+    public static Variable lookup(String name) {
+        return variables.get(name);
+    }
+
+    /**
+     * Returns the number of interned names, which is one more than the largest id.
+     *
+     * @return  The number of names.
+     */
+    public static int size() {
+        return size;
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * This class only contains static methods and should not be instantiated.
+     */
+    private SymbolTable() {}
+}
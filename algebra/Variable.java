@@ -1,32 +1,99 @@
 package algebra;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
+import arithmetic.BigRational;
 import arithmetic.Expression;
+import arithmetic.ExpressionWriter;
 
 /**
  * <p>An immutable class representing a variable.</p>
  *
+ * <p>Every name has a single canonical Variable, which is interned in the {@code SymbolTable}, so
+ * Variables are compared by their ids and order keys and hashed by a stored hash code, without
+ * reading their names.</p>
+ *
  * @author Ricky Qin
  */
 public class Variable extends Expression implements Comparable<Variable> {
 
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the canonical Variable with the provided name.
+     *
+     * @param name  The name of the Variable.
+     * @return      The Variable, which is shared by every occurrence of the name.
+     * @throws      IllegalArgumentException If {@code name} is empty.
+     * @see         SymbolTable#intern(String)
+     */
+    public static Variable of(String name) {
+        return SymbolTable.intern(name);
+    }
+
+    /**
+     * Returns the id of a variable name, assigning it the next unused id if it doesn't have one yet.
+     * Ids are assigned in increasing order starting from zero, and never change.
+     *
+     * @param name  The variable name.
+     * @return      The id of {@code name}.
+     */
+    public static int getId(String name) {
+        return SymbolTable.intern(name).id;
+    }
+
+    /**
+     * Returns the variable name with the provided id.
+     *
+     * @param id  The id.
+     * @return    The variable name.
+     * @throws    IllegalArgumentException If no variable name has this id.
+     */
+    public static String getName(int id) {
+        return SymbolTable.get(id).name;
+    }
+
 // <------------------------------ Instance Variables ------------------------------>
 
     /**
      * The name of this Variable.
      */
-    private String name;
+    final private String name;
+
+    /**
+     * The interned id of the name of this Variable.
+     */
+    final private int id;
+
+    /**
+     * The order key of the name of this Variable, which never decreases in the order of the names.
+     */
+    final private long orderKey;
+
+    /**
+     * The hash code of the name of this Variable. It doesn't depend on the id, so the order of terms
+     * that are sorted by hash code doesn't depend on the order that names were interned in.
+     */
+    final private int hash;
 
 // <--------------------------------- Constructors --------------------------------->
 
     /**
-     * Constructs a Variable object with the provided name.
+     * Constructs the canonical Variable with the provided name, which is only done by the
+     * {@code SymbolTable}.
      *
-     * @param name  The name of this Variable.
+     * @param name      The name of this Variable.
+     * @param id        The interned id of the name.
+     * @param orderKey  The order key of the name.
      */
-    public Variable(String name) {
+    Variable(String name, int id, long orderKey) {
         this.name = name;
+        this.id = id;
+        this.orderKey = orderKey;
+        hash = name.hashCode();
+        computeMetadata();
     }
 
 // <-------------------- Methods Overriden from java.lang.Object -------------------->
@@ -41,7 +108,7 @@ public class Variable extends Expression implements Comparable<Variable> {
     public boolean equals(Object o) {
         if(o == this) return true;
         if(!(o instanceof Variable)) return false;
-        return name.equals(((Variable)o).name);
+        return id == ((Variable)o).id;
     }
 
     /**
@@ -51,7 +118,7 @@ public class Variable extends Expression implements Comparable<Variable> {
      */
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return hash;
     }
 
     /**
@@ -67,58 +134,94 @@ public class Variable extends Expression implements Comparable<Variable> {
 // <---------------------- Methods Implemented for Interfaces ---------------------->
 
     /**
-     * Compares two Variables based on the natural ordering of their names.
+     * Compares two Variables based on the natural ordering of their names, using their ids and
+     * order keys unless the keys are tied.
      *
      * @param  o Another Variable.
      */
     @Override
     public int compareTo(Variable o) {
+        if(id == o.id) return 0;
+        if(orderKey != o.orderKey) return Long.compare(orderKey, o.orderKey);
         return name.compareTo(o.name);
     }
 
 // <---------------------- Methods Overriden from Superclasses ---------------------->
 
     /**
-     * Returns the LaTeX String representation of this Variable.
+     * Writes this Variable in the provided format, which is its name, with quotation marks
+     * {@code ""} surrounding it in function form. In the normal format, it is separated from the
+     * names and numbers next to it with {@code *} so that it can be parsed again.
      *
-     * @return  The name of this Variable.
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this Variable in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
      */
     @Override
-    public String toLatexString() {
-        return name;
-    }
-
-    /**
-     * Returns the String representation of this Variable in function form.
-     *
-     * @return  The name of this Variable with quotation marks {@code ""} surrounding it.
-     */
-    @Override
-    public String toFunctionString() {
-        return "\"" + name + "\"";
+    protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+        if(format == Format.FUNCTION) out.append('"').append(name).append('"');
+        else if(format == Format.NORMAL) out.appendName(name);
+        else out.append(name);
     }
 
     /**
      * Attempts to compute a numerical exact value for this Variable, given the values to substitute.
      *
      * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
      * @return                The variable value, if it exists.
      * @throws                ArithmeticException If the value of this variable is missing.
      */
     @Override
-    protected Expression internalEvaluate(HashMap<String, Expression> variableValues) {
+    protected Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
         Expression variableValue = variableValues.get(name);
         if(variableValue == null) throw new ArithmeticException("Variable: Undefined variable value");
         return variableValue;
     }
 
+    /**
+     * Computes the derivative of this Variable with respect to the provided Variable.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             One if the Variables are equal, and zero otherwise.
+     */
+    @Override
+    protected Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        return equals(variable) ? BigRational.ONE : BigRational.ZERO;
+    }
+
+    /**
+     * Evaluates this Variable modulo a prime, assigning it a random residue if it doesn't have one yet.
+     *
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                The residue of this Variable.
+     */
+    @Override
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        return variableValues.computeIfAbsent(name, key -> ThreadLocalRandom.current().nextLong(modulus));
+    }
+
+    /**
+     * Computes an upper bound on the degree of this Variable.
+     *
+     * @return  One.
+     */
+    @Override
+    protected long computeDegreeHint() {
+        return 1;
+    }
+
     /**
      * Attempts to reduce the complexity of this Variable by manipulating it algebraically.
      *
-     * @return  Itself, since it's already simplified!
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            Itself, since it's already simplified!
      */
     @Override
-    public Expression simplify() {
+    protected Expression internalSimplify(HashMap<Expression, Expression> simplified) {
         return this;
     }
 
@@ -131,4 +234,14 @@ public class Variable extends Expression implements Comparable<Variable> {
     public String getName() {
         return name;
     }
+
+    /**
+     * Gets the interned id of the name of this Variable, which is shared by every Variable with
+     * the same name.
+     *
+     * @return  The id.
+     */
+    public int getId() {
+        return id;
+    }
 }
@@ -0,0 +1,419 @@
+package arithmetic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import algebra.Variable;
+
+/**
+ * <p>A utility class that evaluates Expressions in {@code double} arithmetic when that is accurate
+ * enough, and exactly otherwise.</p>
+ *
+ * <p>Every subexpression is evaluated to a {@code double} together with a running bound on its
+ * absolute error, which accounts for the rounding error of every operation and the error of its
+ * operands. If the bound of the result is within the requested relative tolerance, the
+ * {@code double} is returned. Otherwise, such as when terms cancel, a divisor can't be told apart
+ * from zero, or a value overflows, the Expression is evaluated exactly instead.</p>
+ *
+ * <p>The number of evaluations that took each path is counted, so the rate of falling back to exact
+ * evaluation can be monitored.</p>
+ *
+ * <p>Note: the error bounds are computed in {@code double} arithmetic themselves, so they are
+ * estimates that are only off by a few units in their last place.</p>
+ *
+ * @author Ricky Qin
+ */
+public class AdaptiveEvaluator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The paths that an evaluation can take.
+     */
+    public static enum Path {
+        /**
+         * The Expression was evaluated in {@code double} arithmetic.
+         */
+        DOUBLE,
+
+        /**
+         * The Expression was evaluated exactly.
+         */
+        EXACT
+    }
+
+    /**
+     * The default relative tolerance.
+     */
+    final public static double DEFAULT_TOLERANCE = 1e-12;
+
+    /**
+     * The unit roundoff of {@code double} arithmetic, which bounds the relative error of rounding
+     * the result of every basic operation.
+     */
+    final private static double UNIT_ROUNDOFF = 0x1p-53;
+
+    /**
+     * The number of significant digits needed to round a decimal to the nearest {@code double}.
+     */
+    final private static int DOUBLE_DIGITS = 17;
+
+    /**
+     * The maximum number of decimal places used to convert an exact value to a {@code double},
+     * beyond which the value is too small to be represented.
+     */
+    final private static int MAX_DOUBLE_DIGITS = 1100;
+
+    /**
+     * The estimate of a subexpression that can't be evaluated in {@code double} arithmetic.
+     */
+    final private static Estimate FAILED = new Estimate(Double.NaN, Double.POSITIVE_INFINITY);
+
+    /**
+     * The number of evaluations that took the {@code double} path.
+     */
+    final private static LongAdder doubleCount = new LongAdder();
+
+    /**
+     * The number of evaluations that fell back to the exact path.
+     */
+    final private static LongAdder exactCount = new LongAdder();
+
+// <--------------------------------- Constructors --------------------------------->
+
+    private AdaptiveEvaluator() {}
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Evaluates an Expression, given the values of its variables, in {@code double} arithmetic if
+     * the result is within a relative tolerance of the exact value, and exactly otherwise.
+     *
+     * @param expression      The Expression to evaluate.
+     * @param variableValues  The values to substitute into the variables.
+     * @param tolerance       The maximum relative error of a {@code double} result.
+     * @return                The result, which records the path that was taken.
+     * @throws                IllegalArgumentException If {@code tolerance} is not positive.
+     * @throws                ArithmeticException If the value of a variable is missing, or if
+     * {@code expression} divides by zero.
+     */
+    public static Result evaluate(Expression expression, HashMap<String, Expression> variableValues, double tolerance) {
+        if(!(tolerance > 0)) throw new IllegalArgumentException("AdaptiveEvaluator: Tolerance must be positive");
+        Estimate estimate = estimate(expression, variableValues, new HashMap<>());
+        if(estimate.error <= tolerance*Math.abs(estimate.value)) {
+            doubleCount.increment();
+            return new Result(Path.DOUBLE, estimate.value, estimate.error, null);
+        }
+        Expression exact = expression.evaluate(variableValues, new HashMap<>());
+        exactCount.increment();
+        return new Result(Path.EXACT, Double.NaN, 0, exact);
+    }
+
+    /**
+     * Returns the number of evaluations that took the {@code double} path.
+     *
+     * @return  The number of evaluations.
+     */
+    public static long getDoubleCount() {
+        return doubleCount.sum();
+    }
+
+    /**
+     * Returns the number of evaluations that fell back to the exact path.
+     *
+     * @return  The number of evaluations.
+     */
+    public static long getExactCount() {
+        return exactCount.sum();
+    }
+
+    /**
+     * Returns the fraction of evaluations that fell back to the exact path.
+     *
+     * @return  The fraction, or zero if nothing has been evaluated.
+     */
+    public static double getFallbackRate() {
+        long exact = exactCount.sum();
+        long total = exact + doubleCount.sum();
+        return (total == 0) ? 0 : (double)exact/total;
+    }
+
+    /**
+     * Resets the number of evaluations that took each path to zero.
+     */
+    public static void resetCounts() {
+        doubleCount.reset();
+        exactCount.reset();
+    }
+
+    /**
+     * Evaluates an Expression in {@code double} arithmetic with a running error bound.
+     *
+     * @param expression      The Expression to evaluate.
+     * @param variableValues  The values to substitute into the variables.
+     * @param variables       The estimates of the variables that have already been computed.
+     * @return                The estimate, which is {@code FAILED} if a subexpression couldn't be
+     * evaluated.
+     */
+    private static Estimate estimate(Expression expression, HashMap<String, Expression> variableValues, HashMap<String, Estimate> variables) {
+        return expression.fold((node, childResults) -> {
+            if(node instanceof BigRational) return estimate((BigRational)node);
+            if(node == BigNumber.PI) return new Estimate(Math.PI, Math.PI*UNIT_ROUNDOFF);
+            if(node == BigNumber.E) return new Estimate(Math.E, Math.E*UNIT_ROUNDOFF);
+            if(node instanceof Variable) {
+                String name = ((Variable)node).getName();
+                Estimate variable = variables.get(name);
+                if(variable == null) {
+                    Expression value = variableValues.get(name);
+                    // the exact path reports the missing value
+                    if(value == null) return FAILED;
+                    variable = estimate(value, new HashMap<>(), new HashMap<>());
+                    variables.put(name, variable);
+                }
+                return variable;
+            }
+            if(node instanceof Sum) {
+                double value = 0, error = 0;
+                for(int i = 0; i < childResults.size(); i += 2) {
+                    Estimate term = multiply(childResults.get(i), childResults.get(i+1));
+                    value += term.value;
+                    error += term.error + Math.abs(value)*UNIT_ROUNDOFF;
+                }
+                return new Estimate(value, error);
+            }
+            if(node instanceof Product) {
+                ArrayList<Expression> children = node.getChildren();
+                Estimate product = new Estimate(1, 0);
+                for(int i = 0; i < childResults.size(); i += 2) {
+                    product = multiply(product, pow(childResults.get(i), childResults.get(i+1), children.get(i+1)));
+                }
+                return product;
+            }
+            if(node instanceof Power) return pow(childResults.get(0), childResults.get(1), ((Power)node).getExponent());
+            return FAILED;
+        }, new HashMap<>());
+    }
+
+    /**
+     * Converts a BigRational to a {@code double}.
+     *
+     * @param rational  The BigRational.
+     * @return          The estimate, which is {@code FAILED} if the BigRational is too large.
+     */
+    private static Estimate estimate(BigRational rational) {
+        BigInteger numerator = rational.getNumeratorValue();
+        BigInteger denominator = rational.getDenominatorValue();
+        if(numerator.bitLength() <= 53 && denominator.bitLength() <= 53) {
+            // both are exact, so the quotient is rounded once
+            double value = numerator.doubleValue()/denominator.doubleValue();
+            return new Estimate(value, rational.isInteger() ? 0 : Math.abs(value)*UNIT_ROUNDOFF);
+        }
+        double value = toDouble(rational);
+        if(Double.isInfinite(value)) return FAILED;
+        // rounding to decimal and then to double, which may also underflow
+        return new Estimate(value, 2*Math.abs(value)*UNIT_ROUNDOFF + Double.MIN_VALUE);
+    }
+
+    /**
+     * Multiplies two estimates.
+     *
+     * @param a  The first estimate.
+     * @param b  The second estimate.
+     * @return   The estimate of the product.
+     */
+    private static Estimate multiply(Estimate a, Estimate b) {
+        double value = a.value*b.value;
+        double error = Math.abs(a.value)*b.error + Math.abs(b.value)*a.error + a.error*b.error + Math.abs(value)*UNIT_ROUNDOFF;
+        return new Estimate(value, error);
+    }
+
+    /**
+     * Raises an estimate to the power of another estimate.
+     *
+     * @param base      The estimate of the base.
+     * @param exponent  The estimate of the exponent.
+     * @param exact     The exponent, which determines whether or not a negative base is allowed.
+     * @return          The estimate of the power, which is {@code FAILED} if it isn't a real number
+     * or if the base can't be told apart from zero when it needs to be.
+     */
+    private static Estimate pow(Estimate base, Estimate exponent, Expression exact) {
+        if(exponent.value == 1 && exponent.error == 0) return base;
+        double absBase = Math.abs(base.value);
+        double sign = 1;
+        if(base.value < 0) {
+            // a negative base is only a real number for an exponent with an odd denominator
+            if(!(exact instanceof BigRational)) return FAILED;
+            BigRational rational = (BigRational)exact;
+            if(!rational.getDenominatorValue().testBit(0)) return FAILED;
+            if(rational.getNumeratorValue().testBit(0)) sign = -1;
+        }
+        double value = sign*Math.pow(absBase, exponent.value);
+        if(Double.isInfinite(value) || Double.isNaN(value)) return FAILED;
+
+        double relativeError;
+        if(exponent.error == 0 && exponent.value > 0 && exponent.value == Math.rint(exponent.value)) {
+            // |(b+d)^n - b^n| <= (|b|+|d|)^n - |b|^n, even if the base isn't bounded away from zero
+            if(absBase == 0) return new Estimate(0, Math.pow(base.error, exponent.value));
+            relativeError = Math.expm1(exponent.value*Math.log1p(base.error/absBase));
+        } else {
+            if(!(absBase > base.error)) return FAILED;
+            double ratio = base.error/absBase;
+            relativeError = Math.max(Math.abs(Math.expm1(exponent.value*Math.log1p(ratio))),
+                Math.abs(Math.expm1(exponent.value*Math.log1p(-ratio))));
+            // b^(x+d) = b^x * e^(d*ln(b))
+            if(exponent.error > 0) {
+                double logBase = Math.abs(Math.log(absBase)) - Math.log1p(-ratio);
+                relativeError = (1+relativeError)*Math.exp(exponent.error*logBase) - 1;
+            }
+        }
+        // Math.pow is accurate to within one unit in the last place
+        double error = Math.abs(value)*(relativeError + 2*UNIT_ROUNDOFF);
+        if(!(error < Double.POSITIVE_INFINITY)) return FAILED;
+        return new Estimate(value, error);
+    }
+
+    /**
+     * Converts an exact value to the nearest {@code double}.
+     *
+     * @param exact  The exact value, which contains no Variables.
+     * @return       The {@code double}.
+     * @throws       ArithmeticException If the value is not a real number.
+     */
+    private static double toDouble(Expression exact) {
+        if(exact instanceof BigRational) {
+            BigRational rational = (BigRational)exact;
+            return new BigDecimal(rational.getNumeratorValue()).divide(new BigDecimal(rational.getDenominatorValue()),
+                new MathContext(DOUBLE_DIGITS+2)).doubleValue();
+        }
+        // the magnitude isn't known, so add decimal places until there are enough significant digits
+        for(int digits = DOUBLE_DIGITS;; digits *= 2) {
+            BigDecimal approximation = exact.approximate(digits);
+            if(approximation.precision() >= DOUBLE_DIGITS || digits > MAX_DOUBLE_DIGITS) return approximation.doubleValue();
+        }
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>The result of an adaptive evaluation.</p>
+     */
+    public static class Result {
+
+        /**
+         * The path that was taken.
+         */
+        final private Path path;
+
+        /**
+         * The {@code double} value, which is computed lazily on the exact path.
+         */
+        private double doubleValue;
+
+        /**
+         * The estimated bound on the absolute error of the {@code double} value, if it was computed
+         * on the {@code double} path.
+         */
+        final private double errorBound;
+
+        /**
+         * The exact value, or null on the {@code double} path.
+         */
+        final private Expression exactValue;
+
+        /**
+         * Constructs a Result.
+         *
+         * @param path         The path that was taken.
+         * @param doubleValue  The {@code double} value, or {@code NaN} if it hasn't been computed.
+         * @param errorBound   The bound on the absolute error of the {@code double} value.
+         * @param exactValue   The exact value, or null.
+         */
+        private Result(Path path, double doubleValue, double errorBound, Expression exactValue) {
+            this.path = path;
+            this.doubleValue = doubleValue;
+            this.errorBound = errorBound;
+            this.exactValue = exactValue;
+        }
+
+        /**
+         * Returns a string representation of this Result.
+         *
+         * @return  A String containing the path and the value.
+         */
+        @Override
+        public String toString() {
+            if(path == Path.DOUBLE) return "Result[DOUBLE " + doubleValue + " +/- " + errorBound + "]";
+            return "Result[EXACT " + exactValue + "]";
+        }
+
+        /**
+         * Returns the path that was taken.
+         *
+         * @return  The path.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Returns the value as a {@code double}. On the exact path, this is the exact value rounded to
+         * the nearest {@code double}.
+         *
+         * @return  The value.
+         * @throws  ArithmeticException If the exact value is not a real number.
+         */
+        public double getDoubleValue() {
+            if(path == Path.EXACT && Double.isNaN(doubleValue)) doubleValue = toDouble(exactValue);
+            return doubleValue;
+        }
+
+        /**
+         * Returns the estimated bound on the absolute error of the {@code double} value.
+         *
+         * @return  The bound, or zero on the exact path.
+         */
+        public double getErrorBound() {
+            return errorBound;
+        }
+
+        /**
+         * Returns the exact value.
+         *
+         * @return  The exact value, or null if the {@code double} path was taken.
+         */
+        public Expression getExactValue() {
+            return exactValue;
+        }
+    }
+
+    /**
+     * <p>A {@code double} value together with a bound on its absolute error.</p>
+     */
+    private static class Estimate {
+
+        /**
+         * The value.
+         */
+        final private double value;
+
+        /**
+         * The bound on the absolute error.
+         */
+        final private double error;
+
+        /**
+         * Constructs an Estimate.
+         *
+         * @param value  The value.
+         * @param error  The bound on the absolute error.
+         */
+        private Estimate(double value, double error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,879 @@
+package arithmetic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <p>A utility class that approximates constant Expressions to a guaranteed number of decimal
+ * places using {@code BigDecimal} arithmetic.</p>
+ *
+ * <p>Every subexpression is approximated by a ball, which is a {@code BigDecimal} value together
+ * with an upper bound on its distance from the exact value. Each node is asked for a ball whose
+ * error is at most some target, and splits its own target between its operands based on their
+ * magnitudes, so every subexpression is computed to exactly the precision it needs. The magnitudes
+ * are found by first approximating every subexpression at a low working precision, which is cheap. The error bounds are
+ * computed rigorously, so if a target is missed because a magnitude estimate was off, the targets
+ * of the operands are tightened and only the operands that are still too imprecise are recomputed.</p>
+ *
+ * <p>The traversal uses an explicit stack, so the depth of an Expression is only limited by memory.</p>
+ *
+ * @author Ricky Qin
+ */
+public class Approximator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The maximum number of decimal places beyond the requested digits that a subexpression is
+     * approximated to before giving up, which happens when a divisor can't be told apart from zero.
+     */
+    final private static int MAX_EXTRA_DIGITS = 1 << 14;
+
+    /**
+     * The maximum number of times the targets of the operands of a node are tightened.
+     */
+    final private static int MAX_ATTEMPTS = 16;
+
+    /**
+     * The number of extra decimal places given to the targets of the operands of a node every time
+     * its own target is missed.
+     */
+    final private static int DIGITS_PER_ATTEMPT = 2;
+
+    /**
+     * The error bound used to round the values of subexpressions that are approximated at a low
+     * working precision to find their magnitudes.
+     */
+    final private static BigDecimal COARSE_TARGET = BigDecimal.valueOf(1, 16);
+
+    /**
+     * The exponent of a square root.
+     */
+    final private static BigRational HALF = new BigRational(BigInteger.ONE, BigInteger.TWO);
+
+    /**
+     * The context used to round error bounds upwards.
+     */
+    final private static MathContext UP = new MathContext(16, RoundingMode.UP);
+
+    /**
+     * The context used to round lower bounds downwards.
+     */
+    final private static MathContext DOWN = new MathContext(16, RoundingMode.DOWN);
+
+    /**
+     * The base 10 logarithm of 2.
+     */
+    final private static double LOG10_2 = Math.log10(2);
+
+    /**
+     * The phase of a node in which its operands are approximated coarsely to find their magnitudes.
+     */
+    final private static int BOUNDS = 0;
+
+    /**
+     * The phase of a node in which its operands are approximated to the precision it needs.
+     */
+    final private static int REFINE = 1;
+
+    /**
+     * The phase of a node in which its ball is computed from the balls of its operands.
+     */
+    final private static int COMBINE = 2;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Approximates a constant Expression to a number of decimal places.
+     *
+     * @param expression  The Expression to approximate.
+     * @param digits      The number of decimal places.
+     * @return            A BigDecimal with {@code digits} decimal places that differs from the exact
+     * value of {@code expression} by at most {@code 10^-digits}.
+     * @throws            IllegalArgumentException If {@code digits} is negative.
+     * @throws            ArithmeticException If {@code expression} contains Variables, is not a real
+     * number, or divides by a value that can't be told apart from zero.
+     */
+    public static BigDecimal approximate(Expression expression, int digits) {
+        if(digits < 0) throw new IllegalArgumentException("Approximator: Number of digits must be non-negative");
+        if(!expression.isConstant())
+            throw new ArithmeticException("Approximator: Cannot approximate an Expression containing Variables");
+        // half of the error is left for rounding the result to the requested digits
+        Ball ball = new Approximator(digits + MAX_EXTRA_DIGITS).refine(expression, BigDecimal.valueOf(5, digits+1));
+        return ball.value.setScale(digits, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes the natural logarithm of a positive number.
+     *
+     * @param x      The number.
+     * @param scale  The number of decimal places.
+     * @return       {@code ln(x)}, with an error less than {@code 10^-scale}.
+     */
+    static BigDecimal ln(BigDecimal x, int scale) {
+        // x = w * 2^k with w close to 1
+        int k = (int)Math.round(log10(x)/LOG10_2);
+        int workingScale = scale + 10 + digits(k) + digits(scale);
+        BigDecimal result = lnNearOne(x.multiply(powerOfTwo(-k)), workingScale);
+        if(k != 0) result = result.add(Constants.ln2(workingScale + digits(k)).multiply(BigDecimal.valueOf(k)));
+        return result.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes the exponential function of a number.
+     *
+     * @param x      The number.
+     * @param scale  The number of decimal places.
+     * @return       {@code e^x}, with an error less than {@code 10^-scale}.
+     * @throws       ArithmeticException If the result is too large to compute.
+     */
+    static BigDecimal exp(BigDecimal x, int scale) {
+        double magnitude = x.doubleValue()*Math.log10(Math.E);
+        if(magnitude < -(scale+2)) return BigDecimal.ZERO.setScale(scale);
+        if(!(magnitude < 1e9)) throw new ArithmeticException("Approximator: Value is too large to approximate");
+        // e^x = (e^(x/2^j))^(2^j), and the series converges much faster for x/2^j
+        int squarings = reductions(scale) + Math.max(0, Math.getExponent(x.doubleValue())+1);
+        int workingScale = scale + 10 + digits(scale) + Math.max(0, (int)Math.ceil(magnitude))
+            + (int)Math.ceil(squarings*LOG10_2);
+        BigDecimal r = x.multiply(powerOfTwo(-squarings)).setScale(workingScale, RoundingMode.HALF_EVEN);
+
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal sum = BigDecimal.ONE;
+        for(int i = 1;; i++) {
+            term = term.multiply(r).divide(BigDecimal.valueOf(i), workingScale, RoundingMode.HALF_EVEN);
+            if(term.signum() == 0) break;
+            sum = sum.add(term);
+        }
+        for(int i = 0; i < squarings; i++) sum = sum.multiply(sum).setScale(workingScale, RoundingMode.HALF_EVEN);
+        return sum.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes the square root of a positive number with Newton's method {@code y = (y + x/y)/2},
+     * which doubles the number of correct digits every step. Since the working precision is doubled
+     * along with it, this is much faster than {@code BigDecimal.sqrt} at high precision.
+     *
+     * @param x          The number.
+     * @param precision  The number of significant digits.
+     * @return           {@code sqrt(x)}, with an error less than one unit in its last place.
+     */
+    static BigDecimal sqrt(BigDecimal x, int precision) {
+        // x = m * 10^(2j) where m fits in a double
+        int j = (x.precision() - x.scale())/2;
+        BigDecimal y = new BigDecimal(Math.sqrt(x.scaleByPowerOfTen(-2*j).doubleValue())).scaleByPowerOfTen(j);
+        BigDecimal two = BigDecimal.valueOf(2);
+        int workingPrecision = 14;
+        do {
+            workingPrecision = Math.min(2*workingPrecision, precision);
+            MathContext context = new MathContext(workingPrecision + 5, RoundingMode.HALF_EVEN);
+            y = y.add(x.divide(y, context)).divide(two, context);
+        } while(workingPrecision < precision);
+        return y.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+    }
+
+    /**
+     * Chooses how many times the argument of {@code exp} is halved before summing its series, which
+     * balances the number of terms against the number of squarings.
+     *
+     * @param scale  The number of decimal places.
+     * @return       The number of halvings.
+     */
+    private static int reductions(int scale) {
+        return (int)Math.sqrt(3.0*scale);
+    }
+
+    /**
+     * Computes the natural logarithm of a number between {@code 1/2} and {@code 2} using Newton's
+     * method {@code y = y + w*e^(-y) - 1}, which squares the error of {@code y} every step. Starting
+     * from a {@code double}, the precision is doubled every step, so the total cost is about twice
+     * the cost of {@code exp} at the final precision.
+     *
+     * @param w      The number.
+     * @param scale  The number of decimal places, which includes enough guard digits.
+     * @return       {@code ln(w)}, rounded to {@code scale} decimal places.
+     */
+    private static BigDecimal lnNearOne(BigDecimal w, int scale) {
+        BigDecimal y = new BigDecimal(Math.log(w.doubleValue()));
+        for(int precision = 14; precision < scale;) {
+            precision = Math.min(2*precision, scale);
+            BigDecimal correction = w.multiply(exp(y.negate(), precision+5)).subtract(BigDecimal.ONE);
+            y = y.add(correction).setScale(precision+5, RoundingMode.HALF_EVEN);
+        }
+        return y.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Returns an exact power of two.
+     *
+     * @param k  The exponent.
+     * @return   {@code 2^k}, which is exact in decimal even if {@code k} is negative.
+     */
+    private static BigDecimal powerOfTwo(int k) {
+        if(k >= 0) return new BigDecimal(BigInteger.ONE.shiftLeft(k));
+        return new BigDecimal(BigInteger.valueOf(5).pow(-k), -k);
+    }
+
+    /**
+     * Raises a number to a positive integer power, rounding every multiplication.
+     *
+     * @param x        The number.
+     * @param n        The exponent, which is positive.
+     * @param context  The context that every multiplication is rounded with.
+     * @return         {@code x^n}. If the context rounds to nearest, the relative error is at most
+     * {@code 4*bitLength(n)} units in the last place.
+     */
+    private static BigDecimal pow(BigDecimal x, long n, MathContext context) {
+        BigDecimal result = null;
+        for(BigDecimal square = x;; square = square.multiply(square, context)) {
+            if((n & 1) == 1) result = (result == null) ? square : result.multiply(square, context);
+            n >>>= 1;
+            if(n == 0) return result;
+        }
+    }
+
+    /**
+     * Estimates the base 10 logarithm of the absolute value of a number.
+     *
+     * @param x  The number.
+     * @return   {@code log10(|x|)}, or negative infinity if {@code x} is zero.
+     */
+    private static double log10(BigDecimal x) {
+        if(x.signum() == 0) return Double.NEGATIVE_INFINITY;
+        BigInteger unscaled = x.unscaledValue().abs();
+        int shift = Math.max(0, unscaled.bitLength()-62);
+        return Math.log10(unscaled.shiftRight(shift).doubleValue()) + shift*LOG10_2 - x.scale();
+    }
+
+    /**
+     * Finds a number of decimal places that is precise enough for an error bound.
+     *
+     * @param error  The error bound, which is positive.
+     * @return       A scale {@code s} such that {@code 10^-s <= error}.
+     */
+    private static int scaleFor(BigDecimal error) {
+        return error.scale() - error.precision() + 1;
+    }
+
+    /**
+     * Divides an error bound by a power of ten, rounding the power upwards.
+     *
+     * @param error  The error bound.
+     * @param log10  The base 10 logarithm of the divisor.
+     * @return       {@code error / 10^ceil(log10)}, or {@code error} if {@code log10} isn't positive.
+     */
+    private static BigDecimal shrink(BigDecimal error, double log10) {
+        if(!(log10 > 0)) return error;
+        if(log10 > Integer.MAX_VALUE/2) throw new ArithmeticException("Approximator: Value is too large to approximate");
+        return error.scaleByPowerOfTen(-(int)Math.ceil(log10));
+    }
+
+    /**
+     * Returns half of a unit in the last place.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code 0.5 * 10^-scale}, the largest error made by rounding to {@code scale} places.
+     */
+    private static BigDecimal halfUlp(int scale) {
+        return BigDecimal.valueOf(5, scale+1);
+    }
+
+    /**
+     * Counts the decimal digits of an integer.
+     *
+     * @param n  The integer.
+     * @return   The number of digits in {@code |n|}.
+     */
+    private static int digits(long n) {
+        return Long.toString(Math.abs(n)).length();
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The most precise ball found so far for each subexpression.
+     */
+    final private HashMap<Expression, Ball> balls = new HashMap<>();
+
+    /**
+     * The maximum number of decimal places that a subexpression is approximated to.
+     */
+    final private int maxScale;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs an Approximator for a single call to {@code approximate}.
+     *
+     * @param maxScale  The maximum number of decimal places that a subexpression is approximated to.
+     */
+    private Approximator(int maxScale) {
+        this.maxScale = maxScale;
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Approximates an Expression to within an error bound, reusing the balls of subexpressions
+     * that are already precise enough.
+     *
+     * @param expression  The Expression.
+     * @param target      The error bound, which is positive.
+     * @return            A ball of {@code expression} whose error is at most {@code target}.
+     */
+    private Ball refine(Expression expression, BigDecimal target) {
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression, target, false));
+        while(true) {
+            Frame frame = stack.peek();
+            Ball ball = balls.get(frame.expression);
+            if(ball != null && (frame.isCoarse || ball.error.compareTo(frame.target) <= 0)) {
+                stack.pop();
+                if(stack.isEmpty()) return ball;
+                continue;
+            }
+            if(scaleFor(frame.target) > maxScale)
+                throw new ArithmeticException("Approximator: Required precision is too high");
+
+            if(frame.operands == null) setOperands(frame);
+            if(frame.phase == BOUNDS) {
+                if(pushBounds(frame, stack)) continue;
+                frame.phase = REFINE;
+            }
+            if(frame.phase == REFINE) {
+                frame.phase = COMBINE;
+                if(!frame.isCoarse && pushOperands(frame, targets(frame), stack)) continue;
+            }
+
+            ball = combine(frame);
+            if(ball != null && (!balls.containsKey(frame.expression) || ball.error.compareTo(balls.get(frame.expression).error) < 0))
+                balls.put(frame.expression, ball);
+            if(ball == null || (!frame.isCoarse && ball.error.compareTo(frame.target) > 0)) {// an estimate was off, so try again
+                if(++frame.attempt > MAX_ATTEMPTS)
+                    throw new ArithmeticException("Approximator: Cannot reach the requested precision");
+                frame.isCoarse = false;
+                frame.phase = REFINE;
+            }
+        }
+    }
+
+    /**
+     * Pushes the operands of a node that are not yet precise enough onto the stack.
+     *
+     * @param frame    The node.
+     * @param targets  The error bound of each operand, or null for operands that are not needed.
+     * @param stack    The stack.
+     * @return         True if an operand was pushed.
+     */
+    private boolean pushOperands(Frame frame, BigDecimal[] targets, ArrayDeque<Frame> stack) {
+        boolean pushed = false;
+        for(int i = 0; i < targets.length; i++) {
+            if(targets[i] == null) continue;
+            Ball ball = balls.get(frame.operands[i]);
+            if(ball != null && ball.error.compareTo(targets[i]) <= 0) continue;
+            // a shared constant may be asked for more precision many times, so raise it geometrically
+            BigDecimal target = targets[i];
+            if(ball != null && isTranscendental(frame.operands[i]) && scaleFor(ball.error) > 0) {
+                int scale = scaleFor(ball.error);
+                target = min(target, BigDecimal.valueOf(1, scale + scale/2));
+            }
+            stack.push(new Frame(frame.operands[i], target, false));
+            pushed = true;
+        }
+        return pushed;
+    }
+
+    /**
+     * Finds the operands of a node. A Sum has its terms, a Product has its factors raised to their
+     * exponents, and a Power has its base and exponent.
+     *
+     * @param frame  The node.
+     */
+    private void setOperands(Frame frame) {
+        Expression expression = frame.expression;
+        if(expression instanceof Sum) {
+            Sum sum = (Sum)expression;
+            int n = 0;
+            for(Iterator<Map.Entry<Expression, BigRational>> it = sum.iterator(); it.hasNext(); it.next()) n++;
+            frame.operands = new Expression[n];
+            frame.coefficients = new BigRational[n];
+            int i = 0;
+            for(Map.Entry<Expression, BigRational> term: sum) {
+                frame.operands[i] = term.getKey();
+                frame.coefficients[i++] = term.getValue();
+            }
+        } else if(expression instanceof Product) {
+            Product product = (Product)expression;
+            int n = 0;
+            for(Iterator<Map.Entry<Expression, Expression>> it = product.iterator(); it.hasNext(); it.next()) n++;
+            frame.operands = new Expression[n];
+            int i = 0;
+            for(Map.Entry<Expression, Expression> factor: product) {
+                boolean isOne = factor.getValue().equals(BigRational.ONE);
+                frame.operands[i++] = isOne ? factor.getKey() : new Power(factor.getKey(), factor.getValue());
+            }
+        } else if(expression instanceof Power) {
+            frame.operands = new Expression[] {((Power)expression).getBase(), ((Power)expression).getExponent()};
+        } else {
+            frame.operands = new Expression[0];
+        }
+    }
+
+    /**
+     * Pushes the operands of a node that don't have a ball yet onto the stack, to be approximated at
+     * a low working precision so that their magnitudes are known. The base of a Power that isn't a
+     * positive integer power must also be bounded away from zero.
+     *
+     * @param frame  The node.
+     * @param stack  The stack.
+     * @return       True if an operand was pushed.
+     */
+    private boolean pushBounds(Frame frame, ArrayDeque<Frame> stack) {
+        boolean pushed = false;
+        for(int i = 0; i < frame.operands.length; i++) {
+            Ball ball = balls.get(frame.operands[i]);
+            if(ball == null) {
+                stack.push(new Frame(frame.operands[i], COARSE_TARGET, true));
+                pushed = true;
+            } else if(i == 0 && frame.expression instanceof Power && !isPositiveInteger(frame.operands[1]) && !ball.isBoundedAwayFromZero()) {
+                if(ball.error.signum() == 0) throw new ArithmeticException("Approximator: Cannot raise zero to this power");
+                stack.push(new Frame(frame.operands[i], ball.error.divide(BigDecimal.valueOf(16)), false));
+                pushed = true;
+            }
+        }
+        return pushed;
+    }
+
+    /**
+     * Splits the error bound of a node between its operands, using the magnitudes of the operands.
+     * Each failed attempt at meeting the bound makes the operands more precise.
+     *
+     * @param frame  The node.
+     * @return       The error bound of each operand.
+     */
+    private BigDecimal[] targets(Frame frame) {
+        Expression[] operands = frame.operands;
+        BigDecimal[] targets = new BigDecimal[operands.length];
+        double penalty = frame.attempt*DIGITS_PER_ATTEMPT;
+        if(frame.expression instanceof Sum) {
+            for(int i = 0; i < operands.length; i++) {
+                double coefficient = log10(abs(frame.coefficients[i]));
+                targets[i] = shrink(frame.target, Math.log10(2*operands.length) + coefficient + penalty);
+            }
+        } else if(frame.expression instanceof Product) {
+            // the error of a product is at most the error of each factor times the other magnitudes
+            double[] magnitudes = new double[operands.length];
+            double total = 0;
+            for(int i = 0; i < operands.length; i++) {
+                magnitudes[i] = log10(balls.get(operands[i]).magnitude().add(BigDecimal.ONE));
+                total += magnitudes[i];
+            }
+            for(int i = 0; i < operands.length; i++)
+                targets[i] = min(BigDecimal.ONE, shrink(frame.target, Math.log10(2*operands.length) + total - magnitudes[i] + penalty));
+        } else if(frame.expression instanceof Power) {
+            Ball base = balls.get(operands[0]);
+            Ball exponent = balls.get(operands[1]);
+            targets[1] = BigDecimal.ONE;
+            if(isInteger(operands[1])) {
+                long n = ((BigRational)operands[1]).getNumeratorValue().longValueExact();
+                if(n > 0) {
+                    double derivative = Math.log10(2.0*n) + (n-1)*log10(base.magnitude().add(BigDecimal.ONE));
+                    targets[0] = min(BigDecimal.ONE, shrink(frame.target, derivative + penalty));
+                } else {
+                    BigDecimal lower = base.lowerBound();
+                    double derivative = Math.log10(-2.0*n) + (1-n)*Math.max(0, -log10(lower.divide(BigDecimal.valueOf(2))));
+                    targets[0] = min(lower.divide(BigDecimal.valueOf(4)), shrink(frame.target, derivative + penalty));
+                }
+            } else {
+                // the error of e^(x*ln(b)) is about its magnitude times the error of x*ln(b)
+                BigDecimal lower = base.lowerBound();
+                double exponentMagnitude = log10(exponent.magnitude().add(BigDecimal.ONE));
+                double lnBase = Math.max(Math.abs(log10(lower)), Math.abs(log10(base.magnitude())))*Math.log(10);
+                double magnitude = powerMagnitude(base, exponent);
+                targets[0] = min(lower.divide(BigDecimal.valueOf(4)), shrink(frame.target,
+                    Math.log10(16) + magnitude + exponentMagnitude - log10(lower.divide(BigDecimal.valueOf(2))) + penalty));
+                targets[1] = min(BigDecimal.ONE, shrink(frame.target, Math.log10(16) + magnitude + Math.log10(lnBase+1) + penalty));
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Computes the ball of a node from the balls of its operands, which are all precise enough.
+     *
+     * @param frame  The node.
+     * @return       The ball, or null if the operands were too imprecise to compute one.
+     */
+    private Ball combine(Frame frame) {
+        Expression expression = frame.expression;
+        BigDecimal target = frame.target;
+        if(expression instanceof BigRational) {
+            BigRational rational = (BigRational)expression;
+            BigDecimal numerator = new BigDecimal(rational.getNumeratorValue());
+            if(rational.isInteger()) return new Ball(numerator, BigDecimal.ZERO);
+            int scale = scaleFor(target)+1;
+            return new Ball(numerator.divide(new BigDecimal(rational.getDenominatorValue()), scale, RoundingMode.HALF_EVEN), halfUlp(scale));
+        }
+        if(expression == BigNumber.E) return new Ball(Constants.e(scaleFor(target)), BigDecimal.valueOf(1, scaleFor(target)));
+        if(expression == BigNumber.PI) return new Ball(Constants.pi(scaleFor(target)), BigDecimal.valueOf(1, scaleFor(target)));
+        if(expression instanceof Sum) return combineSum(frame);
+        if(expression instanceof Product) return combineProduct(frame);
+        if(expression instanceof Power) {
+            if(isInteger(frame.operands[1])) return combineIntegerPower(frame);
+            return combinePower(frame);
+        }
+        throw new UnsupportedOperationException("Approximator: Cannot approximate " + expression.getClass().getSimpleName());
+    }
+
+    /**
+     * Computes the ball of a Sum, rounding each term that has a non-integer coefficient.
+     *
+     * @param frame  The Sum.
+     * @return       The ball.
+     */
+    private Ball combineSum(Frame frame) {
+        int scale = scaleFor(shrink(frame.target, Math.log10(4*frame.operands.length)));
+        BigDecimal value = BigDecimal.ZERO;
+        BigDecimal error = BigDecimal.ZERO;
+        for(int i = 0; i < frame.operands.length; i++) {
+            Ball term = balls.get(frame.operands[i]);
+            BigRational coefficient = frame.coefficients[i];
+            BigDecimal termValue = term.value.multiply(new BigDecimal(coefficient.getNumeratorValue()));
+            if(!coefficient.isInteger()) {
+                termValue = termValue.divide(new BigDecimal(coefficient.getDenominatorValue()), scale, RoundingMode.HALF_EVEN);
+                error = error.add(halfUlp(scale), UP);
+            }
+            value = value.add(termValue);
+            error = error.add(term.error.multiply(abs(coefficient), UP), UP);
+        }
+        return new Ball(value, error);
+    }
+
+    /**
+     * Computes the ball of a Product, using {@code |a*b - x*y| <= |a - x|*|b| + |x|*|b - y|}.
+     *
+     * @param frame  The Product.
+     * @return       The ball.
+     */
+    private Ball combineProduct(Frame frame) {
+        int n = frame.operands.length;
+        Ball[] factors = new Ball[n];
+        for(int i = 0; i < n; i++) factors[i] = balls.get(frame.operands[i]);
+        // suffix[i] is an upper bound on the product of the magnitudes of factors i to n-1
+        BigDecimal[] suffix = new BigDecimal[n+1];
+        suffix[n] = BigDecimal.ONE;
+        for(int i = n-1; i >= 0; i--) suffix[i] = suffix[i+1].multiply(factors[i].magnitude(), UP);
+
+        BigDecimal value = BigDecimal.ONE;
+        BigDecimal error = BigDecimal.ZERO;
+        BigDecimal prefix = BigDecimal.ONE;
+        for(int i = 0; i < n; i++) {
+            value = value.multiply(factors[i].value);
+            error = error.add(factors[i].error.multiply(prefix, UP).multiply(suffix[i+1], UP), UP);
+            prefix = prefix.multiply(factors[i].magnitude(), UP);
+        }
+        int scale = scaleFor(shrink(frame.target, Math.log10(4)));
+        if(value.scale() > scale) {
+            value = value.setScale(scale, RoundingMode.HALF_EVEN);
+            error = error.add(halfUlp(scale), UP);
+        }
+        return new Ball(value, error);
+    }
+
+    /**
+     * Computes the ball of a Power with an integer exponent, using the mean value theorem to bound
+     * the error that comes from the base.
+     *
+     * @param frame  The Power.
+     * @return       The ball.
+     */
+    private Ball combineIntegerPower(Frame frame) {
+        Ball base = balls.get(frame.operands[0]);
+        long n = ((BigRational)frame.operands[1]).getNumeratorValue().longValueExact();
+        long absN = Math.abs(n);
+        if(base.value.signum() == 0) return new Ball(BigDecimal.ZERO, pow(base.error, absN, UP).multiply(BigDecimal.valueOf(absN), UP));
+
+        // each multiplication adds a relative error of at most half a unit in the last place
+        int multiplications = 2*(64-Long.numberOfLeadingZeros(absN));
+        int scale = scaleFor(shrink(frame.target, Math.log10(4)));
+        double magnitude = (n > 0 ? absN*log10(base.magnitude()) : -absN*log10(base.lowerBound()));
+        int precision = Math.max(1, (int)Math.ceil(magnitude) + scale + digits(multiplications) + 3);
+        BigDecimal power = pow(base.value, absN, new MathContext(precision, RoundingMode.HALF_EVEN));
+        BigDecimal relativeError = BigDecimal.valueOf(4L*multiplications).scaleByPowerOfTen(1-precision);
+
+        BigDecimal value, error;
+        if(n > 0) {
+            // |b^n - m^n| <= n * |b - m| * max(|b|, |m|)^(n-1)
+            value = power;
+            error = power.abs().multiply(relativeError, UP);
+            error = error.add(base.error.multiply(BigDecimal.valueOf(n), UP).multiply(pow(base.magnitude(), n-1, UP), UP), UP);
+        } else {
+            // |b^-n - m^-n| <= n * |b - m| / min(|b|, |m|)^(n+1)
+            BigDecimal lower = base.lowerBound();
+            value = BigDecimal.ONE.divide(power, scale, RoundingMode.HALF_EVEN);
+            error = halfUlp(scale).add(relativeError.divide(pow(lower, absN, DOWN), UP), UP);
+            error = error.add(base.error.multiply(BigDecimal.valueOf(absN), UP).divide(pow(lower, absN+1, DOWN), UP), UP);
+        }
+        if(value.scale() > scale) {
+            value = value.setScale(scale, RoundingMode.HALF_EVEN);
+            error = error.add(halfUlp(scale), UP);
+        }
+        return new Ball(value, error);
+    }
+
+    /**
+     * Computes the ball of a Power with a non-integer exponent using {@code b^x = e^(x*ln(b))}. A
+     * negative base is only allowed if the exponent is a rational number with an odd denominator.
+     *
+     * @param frame  The Power.
+     * @return       The ball, or null if the operands were too imprecise.
+     * @throws       ArithmeticException If the Power is not a real number.
+     */
+    private Ball combinePower(Frame frame) {
+        Ball base = balls.get(frame.operands[0]);
+        Ball exponent = balls.get(frame.operands[1]);
+        boolean negate = false;
+        if(base.value.signum() < 0) {
+            if(!(frame.operands[1] instanceof BigRational) || !((BigRational)frame.operands[1]).getDenominatorValue().testBit(0))
+                throw new ArithmeticException("Approximator: Power is not a real number");
+            negate = ((BigRational)frame.operands[1]).getNumeratorValue().testBit(0);
+        }
+        if(frame.operands[1].equals(HALF)) return combineSquareRoot(base, frame.target);
+        BigDecimal absBase = base.value.abs();
+        BigDecimal lower = base.lowerBound();
+        BigDecimal exponentMagnitude = exponent.magnitude();
+
+        // compute y = x*ln(b) precisely enough that its error doesn't dominate
+        int lnScale = scaleFor(frame.target) + 3 + frame.attempt*DIGITS_PER_ATTEMPT
+            + (int)Math.max(0, Math.ceil(powerMagnitude(base, exponent)))
+            + (int)Math.max(0, Math.ceil(log10(exponentMagnitude.add(BigDecimal.ONE))));
+        BigDecimal lnBase = ln(absBase, lnScale);
+        BigDecimal y = exponent.value.multiply(lnBase).setScale(lnScale, RoundingMode.HALF_EVEN);
+        // |x*ln(b) - y| <= |x| * (|b - m|/min(|b|, |m|) + lnError) + (|ln(m)| + lnError) * |x - m| + roundingError
+        BigDecimal lnError = BigDecimal.valueOf(1, lnScale);
+        BigDecimal yError = base.error.divide(lower, UP).add(lnError, UP).multiply(exponentMagnitude, UP);
+        yError = yError.add(lnBase.abs().add(lnError, UP).multiply(exponent.error, UP), UP).add(halfUlp(lnScale), UP);
+        if(yError.compareTo(BigDecimal.ONE) > 0) return null;
+
+        // |e^y - e^z| <= e^y * (e^|y-z| - 1) <= 2 * e^y * |y - z| when |y - z| <= 1
+        int expScale = scaleFor(frame.target) + 1;
+        BigDecimal value = exp(y, expScale);
+        BigDecimal expError = BigDecimal.valueOf(1, expScale);
+        BigDecimal error = value.add(expError, UP).multiply(yError, UP).multiply(BigDecimal.valueOf(2), UP).add(expError, UP);
+        return new Ball(negate ? value.negate() : value, error);
+    }
+
+    /**
+     * Computes the ball of a square root, which is much faster than {@code e^(ln(b)/2)}. Since
+     * rational numbers are kept in simplest radical form, most Powers are square roots.
+     *
+     * @param base    The ball of the base, which is positive and bounded away from zero.
+     * @param target  The error bound.
+     * @return        The ball.
+     */
+    private static Ball combineSquareRoot(Ball base, BigDecimal target) {
+        int scale = scaleFor(shrink(target, Math.log10(4)));
+        int precision = Math.max(1, scale + (int)Math.ceil(log10(base.magnitude())/2) + 2);
+        BigDecimal value = sqrt(base.value, precision);
+        BigDecimal error = BigDecimal.ONE.scaleByPowerOfTen(value.precision() - value.scale() - precision);
+        // |sqrt(b) - sqrt(m)| <= |b - m| / (2*sqrt(min(|b|, |m|)))
+        BigDecimal lower = base.lowerBound().sqrt(DOWN);
+        error = error.add(base.error.divide(lower.multiply(BigDecimal.valueOf(2)), UP), UP);
+        if(value.scale() > scale) {
+            value = value.setScale(scale, RoundingMode.HALF_EVEN);
+            error = error.add(halfUlp(scale), UP);
+        }
+        return new Ball(value, error);
+    }
+
+    /**
+     * Estimates the base 10 logarithm of an upper bound on the absolute value of {@code b^x}.
+     *
+     * @param base      The ball of {@code b}, which is bounded away from zero.
+     * @param exponent  The ball of {@code x}.
+     * @return          The estimate.
+     * @throws          ArithmeticException If the Power is too large to approximate.
+     */
+    private static double powerMagnitude(Ball base, Ball exponent) {
+        double lnBase = Math.max(Math.abs(log10(base.lowerBound())), Math.abs(log10(base.magnitude())));
+        double magnitude = exponent.magnitude().doubleValue()*lnBase;
+        if(!(magnitude < 1e9)) throw new ArithmeticException("Approximator: Value is too large to approximate");
+        return magnitude;
+    }
+
+    /**
+     * Checks whether an Expression is expensive to approximate precisely, since it is computed from
+     * a series instead of with a few arithmetic operations.
+     *
+     * @param expression  The Expression.
+     * @return            True if {@code expression} is {@code e}, {@code pi} or a Power with a
+     * non-integer exponent.
+     */
+    private static boolean isTranscendental(Expression expression) {
+        if(expression == BigNumber.E || expression == BigNumber.PI) return true;
+        return expression instanceof Power && !isInteger(((Power)expression).getExponent());
+    }
+
+    /**
+     * Checks whether an Expression is an integer.
+     *
+     * @param expression  The Expression.
+     * @return            True if {@code expression} is a BigRational integer that fits in a {@code long}.
+     */
+    private static boolean isInteger(Expression expression) {
+        return expression instanceof BigRational && ((BigRational)expression).isInteger()
+            && ((BigRational)expression).getNumeratorValue().bitLength() < 63;
+    }
+
+    /**
+     * Checks whether an Expression is a positive integer.
+     *
+     * @param expression  The Expression.
+     * @return            True if {@code expression} is a positive BigRational integer that fits in a {@code long}.
+     */
+    private static boolean isPositiveInteger(Expression expression) {
+        return isInteger(expression) && ((BigRational)expression).signum() > 0;
+    }
+
+    /**
+     * Converts the absolute value of a BigRational to a BigDecimal, rounding upwards.
+     *
+     * @param rational  The BigRational.
+     * @return          An upper bound on {@code |rational|}.
+     */
+    private static BigDecimal abs(BigRational rational) {
+        BigDecimal numerator = new BigDecimal(rational.getNumeratorValue().abs());
+        if(rational.isInteger()) return numerator;
+        return numerator.divide(new BigDecimal(rational.getDenominatorValue()), UP);
+    }
+
+    /**
+     * Returns the smaller of two BigDecimals.
+     *
+     * @param a  The first BigDecimal.
+     * @param b  The second BigDecimal.
+     * @return   The smaller one.
+     */
+    private static BigDecimal min(BigDecimal a, BigDecimal b) {
+        return (a.compareTo(b) <= 0) ? a : b;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>An approximation of a real number, made of a value and an upper bound on its distance from
+     * the real number.</p>
+     */
+    private static class Ball {
+
+        /**
+         * The approximate value.
+         */
+        final private BigDecimal value;
+
+        /**
+         * The upper bound on the error of the value, which is non-negative.
+         */
+        final private BigDecimal error;
+
+        /**
+         * Constructs a Ball with the provided value and error.
+         *
+         * @param value  The approximate value.
+         * @param error  The upper bound on the error.
+         */
+        private Ball(BigDecimal value, BigDecimal error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        /**
+         * Returns an upper bound on the absolute value of every number in this Ball.
+         *
+         * @return  {@code |value| + error}, rounded upwards.
+         */
+        private BigDecimal magnitude() {
+            return value.abs().add(error, UP);
+        }
+
+        /**
+         * Returns a lower bound on the absolute value of every number in this Ball.
+         *
+         * @return  {@code |value| - error}, rounded downwards.
+         */
+        private BigDecimal lowerBound() {
+            return value.abs().subtract(error, DOWN);
+        }
+
+        /**
+         * Checks whether the numbers in this Ball are far enough from zero for their magnitudes to
+         * be known to within a factor of two.
+         *
+         * @return  True if {@code error <= |value|/2} and the value is nonzero.
+         */
+        private boolean isBoundedAwayFromZero() {
+            return value.signum() != 0 && error.multiply(BigDecimal.valueOf(2)).compareTo(value.abs()) <= 0;
+        }
+    }
+
+    /**
+     * <p>A node on the stack of {@code refine}, which is approximated once its operands are.</p>
+     */
+    private static class Frame {
+
+        /**
+         * The subexpression.
+         */
+        final private Expression expression;
+
+        /**
+         * The error bound that the ball of the subexpression must meet, or that its value is rounded
+         * to if it is approximated at a low working precision.
+         */
+        final private BigDecimal target;
+
+        /**
+         * Whether the subexpression is approximated at a low working precision, in which case any
+         * ball is accepted and its operands are approximated at a low working precision too.
+         */
+        private boolean isCoarse;
+
+        /**
+         * The operands of the subexpression, or null if they haven't been found yet.
+         */
+        private Expression[] operands;
+
+        /**
+         * The coefficients of the terms, if the subexpression is a Sum.
+         */
+        private BigRational[] coefficients;
+
+        /**
+         * The current phase, which is {@code BOUNDS}, {@code REFINE} or {@code COMBINE}.
+         */
+        private int phase = BOUNDS;
+
+        /**
+         * The number of times the target has been missed.
+         */
+        private int attempt = 0;
+
+        /**
+         * Constructs a Frame for a subexpression.
+         *
+         * @param expression  The subexpression.
+         * @param target      The error bound that its ball must meet.
+         * @param isCoarse    Whether the subexpression is approximated at a low working precision.
+         */
+        private Frame(Expression expression, BigDecimal target, boolean isCoarse) {
+            this.expression = expression;
+            this.target = target;
+            this.isCoarse = isCoarse;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package arithmetic;
 
+import java.io.IOException;
 import java.util.HashMap;
 
+import algebra.Variable;
+
 /**
  * <p>The base class for all objects that represent numerical values.</p>
  *
@@ -12,7 +15,8 @@ public abstract class BigNumber extends Expression {
 // <------------------------------- Static Variables ------------------------------->
 
     /**
-     * The mathematical constant {@code e}, aka {@code Euler's number}.
+     * The mathematical constant {@code e}, aka {@code Euler's number}. Its digits are computed
+     * by {@code Constants.e}.
      */
     final public static BigNumber E = new BigNumber() {
 
@@ -32,20 +36,17 @@ public abstract class BigNumber extends Expression {
         }
 
         @Override
-        public String toString() {
-            return name;
-        }
-
-        @Override
-        public String toLatexString() {
-            return name;
+        protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+            // unquoted in the function format, so that it can't be confused with a Variable named e
+            if(format == Format.NORMAL) out.appendName(name);
+            else out.append(name);
         }
 
     };
 
     /**
      * The mathematical constant {@code pi}, the ratio of the circumference
-     * of a circle to its diameter.
+     * of a circle to its diameter. Its digits are computed by {@code Constants.pi}.
      */
     final public static BigNumber PI = new BigNumber() {
 
@@ -64,13 +65,10 @@ public abstract class BigNumber extends Expression {
         }
 
         @Override
-        public String toString() {
-            return name;
-        }
-
-        @Override
-        public String toLatexString() {
-            return "\\" + name;
+        protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+            if(format == Format.LATEX) out.append('\\').append(name);
+            else if(format == Format.NORMAL) out.appendName(name);
+            else out.append(name);
         }
 
     };
@@ -88,34 +86,51 @@ public abstract class BigNumber extends Expression {
 // <---------------------- Methods Overriden from Superclasses ---------------------->
 
     /**
-     * Returns the String representation of this BigNumber in function form.
+     * Attempts to compute a numerical exact value for this BigNumber, given the values to substitute.
      *
-     * @return  The function String representation of this BigNumber, formatted the same
-     * as the {@code toString()} method but with quotation marks {@code ""} surrounding it.
+     * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
+     * @return                Itself, since it's already a number!
      */
     @Override
-    public String toFunctionString() {
-        return "\"" + toString() + "\"";
+    protected Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
+        return this;
     }
 
     /**
-     * Attempts to compute a numerical exact value for this BigNumber, given the values to substitute.
+     * Computes the derivative of this BigNumber with respect to the provided Variable.
      *
-     * @param variableValues  The values to substitute into the variables.
-     * @return                Itself, since it's already a number!
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             Zero, since a number is constant!
      */
     @Override
-    protected Expression internalEvaluate(HashMap<String, Expression> variableValues) {
-        return this;
+    protected Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        return BigRational.ZERO;
+    }
+
+    /**
+     * Evaluates this BigNumber modulo a prime.
+     *
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                Nothing, since an irrational constant has no residue.
+     * @throws                UnsupportedOperationException Always.
+     */
+    @Override
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        throw new UnsupportedOperationException("BigNumber: Cannot evaluate an irrational constant modulo a prime");
     }
 
     /**
      * Attempts to reduce the complexity of this BigNumber by manipulating it algebraically.
      *
-     * @return  Itself, since its already simplified!
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            Itself, since its already simplified!
      */
     @Override
-    public Expression simplify() {
+    protected Expression internalSimplify(HashMap<Expression, Expression> simplified) {
         return this;
     };
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package arithmetic;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.HashMap;
 
 /**
  * <p>Immutable rational numbers represented in the form {@code P / Q}, where
@@ -259,24 +261,41 @@ public class BigRational extends BigNumber {
     }
 
     /**
-     * Returns the LaTeX String representation of this BigRational.
+     * Writes this BigRational in the provided format. If this BigRational is negative, the sign is
+     * written directly in front. In a LaTeX String, a BigRational that is not an integer is written
+     * as a fraction using the {@code \dfrac} command, and in function form, it is surrounded by
+     * quotation marks {@code ""}.
      *
-     * @return  The LaTeX String representation of this BigRational. If this BigRational is
-     * negative, the sign will be displayed directly in front. If the BigRational is not an
-     * integer, it will be represented as a fraction using the {@code \dfrac} command.
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this BigRational in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
      */
     @Override
-    public String toLatexString() {
-        if(isInteger()) return numerator.toString();
-        StringBuilder str = new StringBuilder();
-        if(signum() == -1) str.append('-');
-        str.append("\\dfrac{");
-        if(signum() == -1) str.append(numerator.abs().toString());
-        else str.append(numerator.toString());
-        str.append("}{");
-        str.append(denominator.toString());
-        str.append('}');
-        return str.toString();
+    protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+        if(format == Format.FUNCTION) out.append('"');
+        if(isInteger()) out.append(numerator.toString());
+        else if(format == Format.LATEX) {
+            if(signum() == -1) out.append('-');
+            out.append("\\dfrac{").append(numerator.abs().toString());
+            out.append("}{").append(denominator.toString()).append('}');
+        } else out.append(numerator.toString()).append('/').append(denominator.toString());
+        if(format == Format.FUNCTION) out.append('"');
+    }
+
+    /**
+     * Evaluates this BigRational modulo a prime.
+     *
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                {@code numerator * denominator^-1 mod modulus}
+     * @throws                ArithmeticException If the denominator is divisible by {@code modulus}.
+     */
+    @Override
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        long numeratorResidue = NumberTheory.mod(numerator, modulus);
+        if(denominator.equals(BigInteger.ONE)) return numeratorResidue;
+        return numeratorResidue*NumberTheory.inverseMod(NumberTheory.mod(denominator, modulus), modulus)%modulus;
     }
 
 // <---------------------------------- Own Methods ---------------------------------->
@@ -296,7 +315,9 @@ public class BigRational extends BigNumber {
             denominator = denominator.negate();
         }
         if(denominator.equals(BigInteger.ZERO)) throw divisionByZeroError();
-        BigInteger gcd = numerator.gcd(denominator);
+        if(denominator.equals(BigInteger.ONE)) return;
+        BigInteger gcd = NumberTheory.gcd(numerator, denominator);
+        if(gcd.equals(BigInteger.ONE)) return;
         numerator = numerator.divide(gcd);
         denominator = denominator.divide(gcd);
     }
@@ -319,6 +340,24 @@ public class BigRational extends BigNumber {
         return new BigRational(denominator);
     }
 
+    /**
+     * Gets the numerator of this BigRational as a BigInteger.
+     *
+     * @return  The numerator.
+     */
+    BigInteger getNumeratorValue() {
+        return numerator;
+    }
+
+    /**
+     * Gets the denominator of this BigRational as a BigInteger.
+     *
+     * @return  The denominator.
+     */
+    BigInteger getDenominatorValue() {
+        return denominator;
+    }
+
     /**
      * Returns a BigRational whose value is the absolute value of this
      * BigRational.
@@ -329,6 +368,20 @@ public class BigRational extends BigNumber {
         return new BigRational(numerator.abs(), denominator);
     }
 
+    /**
+     * Returns a BigRational whose value is {@code (this ^ exponent)}.
+     *
+     * @param exponent  The exponent to which this BigRational is to be raised.
+     * @return          {@code this ^ exponent}
+     * @throws          ArithmeticException if this BigRational is zero and {@code exponent} is negative.
+     */
+    public BigRational pow(int exponent) {
+        if(exponent >= 0) return new BigRational(numerator.pow(exponent), denominator.pow(exponent));
+        if(signum() == 0) throw divisionByZeroError();
+        BigInteger magnitude = BigInteger.valueOf(exponent).negate();
+        return new BigRational(denominator.pow(magnitude.intValueExact()), numerator.pow(magnitude.intValueExact()));
+    }
+
     /**
      * Determines whether or not this BigRational is an integer.
      *
@@ -338,6 +391,48 @@ public class BigRational extends BigNumber {
         return denominator.equals(BigInteger.ONE);
     }
 
+    /**
+     * Returns the largest integer less than or equal to this BigRational.
+     *
+     * @return  {@code floor(this)}
+     */
+    public BigRational floor() {
+        if(isInteger()) return this;
+        return new BigRational(numerator.subtract(numerator.mod(denominator)).divide(denominator));
+    }
+
+    /**
+     * Determines whether or not this BigRational is an integer that fits in an int.
+     *
+     * @return  True if this BigRational is an integer between {@code Integer.MIN_VALUE} and
+     * {@code Integer.MAX_VALUE}.
+     */
+    public boolean isIntValue() {
+        return isInteger() && numerator.bitLength() < 32;
+    }
+
+    /**
+     * Converts this BigRational to an int.
+     *
+     * @return  The value of this BigRational.
+     * @throws  ArithmeticException if this BigRational is not an integer or does not fit in an int.
+     */
+    public int intValueExact() {
+        if(!isInteger()) throw new ArithmeticException("BigRational: Value is not an integer");
+        return numerator.intValueExact();
+    }
+
+    /**
+     * Determines whether or not this BigRational is a perfect {@code k}-th power of a rational number.
+     *
+     * @param k  The positive exponent.
+     * @return   True if both the numerator and denominator are perfect {@code k}-th powers.
+     * @throws   ArithmeticException if {@code k} is not positive.
+     */
+    public boolean isPerfectPower(int k) {
+        return NumberTheory.isPerfectPower(numerator, k) && NumberTheory.isPerfectPower(denominator, k);
+    }
+
     /**
      * Determines whether or not this BigRational is a reciprocal of an integer.
      *
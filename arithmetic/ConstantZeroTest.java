@@ -0,0 +1,524 @@
+package arithmetic;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import utility.Pair;
+
+/**
+ * <p>A utility class that decides whether or not a constant Expression is exactly zero, such as
+ * {@code (2^(1/2) + 1)^2 - 2*2^(1/2) - 3}.</p>
+ *
+ * <p>The Expression is expanded into a quotient of two sums of monomials with rational coefficients.
+ * The radicals of rational numbers are rewritten as products of radicals of a basis of pairwise
+ * coprime integers that are not perfect powers, with exponents in {@code [0, 1)}, and the constants
+ * {@code e} and {@code pi} are kept as symbols with rational exponents. By a theorem of Mordell,
+ * distinct products of real radicals of such a basis are linearly independent over the rationals,
+ * so a sum of them is zero exactly when it has no terms. Since {@code e} and {@code pi} are
+ * transcendental, this still holds if one of them appears, but not if both do.</p>
+ *
+ * <p>Expressions that are too large to expand, that contain nested radicals such as
+ * {@code (1 + 2^(1/2))^(1/2)}, or that have exponents that are not rational are not decided.</p>
+ *
+ * @author Ricky Qin
+ */
+class ConstantZeroTest {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The maximum number of terms in an expanded sum.
+     */
+    final private static int MAX_TERMS = 1 << 12;
+
+    /**
+     * The maximum bit length of the numerator or denominator of a coefficient in an expanded sum.
+     */
+    final private static int MAX_COEFFICIENT_BIT_LENGTH = 1 << 16;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Decides whether or not a constant Expression is zero.
+     *
+     * @param expression  The Expression, which contains no Variables.
+     * @return            True if the Expression is zero, false if it is not, or null if it can't be
+     * decided.
+     */
+    static Boolean isZero(Expression expression) {
+        try {
+            ConstantZeroTest test = new ConstantZeroTest(expression);
+            Fraction value = expression.fold(test::expand, new HashMap<>());
+            if(value.numerator.isEmpty()) return true;
+            // it is unknown whether or not e and pi are algebraically independent
+            if(test.containsSymbol(value.numerator, test.eIndex) && test.containsSymbol(value.numerator, test.eIndex+1)) return null;
+            return false;
+        } catch(UnsupportedOperationException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects the integers whose radicals appear in an Expression, which are the numerators and
+     * denominators of the rational bases of non-integer powers. If a base that isn't rational is
+     * raised to a non-integer power, its rational coefficient also has to be written in terms of
+     * the basis, so every rational number in the Expression is collected.
+     *
+     * @param expression  The Expression.
+     * @return            The integers, without duplicates.
+     */
+    private static LinkedHashSet<BigInteger> collectRadicands(Expression expression) {
+        LinkedHashSet<BigInteger> radicands = new LinkedHashSet<>();
+        LinkedHashSet<BigInteger> rationals = new LinkedHashSet<>();
+        boolean hasCompoundRadical = expression.fold((node, childResults) -> {
+            if(node instanceof BigRational) {
+                rationals.add(((BigRational)node).getNumeratorValue().abs());
+                rationals.add(((BigRational)node).getDenominatorValue());
+            }
+            boolean result = childResults.contains(true);
+            if(!(node instanceof Product || node instanceof Power)) return result;
+            ArrayList<Expression> children = node.getChildren();
+            for(int i = 0; i < children.size(); i += 2) {
+                Expression base = children.get(i);
+                Expression exponent = children.get(i+1);
+                if(!(exponent instanceof BigRational) || ((BigRational)exponent).isInteger()) continue;
+                if(base instanceof BigRational) {
+                    radicands.add(((BigRational)base).getNumeratorValue().abs());
+                    radicands.add(((BigRational)base).getDenominatorValue());
+                } else if(base != BigNumber.E && base != BigNumber.PI) result = true;
+            }
+            return result;
+        }, new HashMap<>());
+        if(hasCompoundRadical) radicands.addAll(rationals);
+        return radicands;
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The pairwise coprime integers, none of which are perfect powers, that radicals are written in
+     * terms of.
+     */
+    private BigInteger[] basis;
+
+    /**
+     * The index of the exponent of {@code e} in a monomial, which comes after the exponents of the
+     * basis and is followed by the exponent of {@code pi}.
+     */
+    private int eIndex;
+
+    /**
+     * The sum containing only the monomial one.
+     */
+    private HashMap<Monomial, BigRational> one = new HashMap<>();
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a test for an Expression by finding a basis for the radicals in it.
+     *
+     * @param expression  The Expression.
+     */
+    private ConstantZeroTest(Expression expression) {
+        // split integers that share a factor into the factor and their cofactors until none do
+        ArrayList<BigInteger> elements = new ArrayList<>();
+        ArrayDeque<BigInteger> pending = new ArrayDeque<>(collectRadicands(expression));
+        while(!pending.isEmpty()) {
+            BigInteger n = pending.pop();
+            if(n.compareTo(BigInteger.ONE) <= 0) continue;
+            boolean isCoprime = true;
+            for(int i = 0; i < elements.size() && isCoprime; i++) {
+                BigInteger gcd = n.gcd(elements.get(i));
+                if(gcd.equals(BigInteger.ONE)) continue;
+                BigInteger element = elements.remove(i);
+                pending.push(element.divide(gcd));
+                pending.push(n.divide(gcd));
+                pending.push(gcd);
+                isCoprime = false;
+            }
+            if(isCoprime) elements.add(n);
+        }
+        basis = new BigInteger[elements.size()];
+        for(int i = 0; i < basis.length; i++) basis[i] = NumberTheory.perfectPower(elements.get(i)).first();
+        eIndex = basis.length;
+        one.put(new Monomial(zeroExponents()), BigRational.ONE);
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Expands a node of the Expression from the expansions of its children.
+     *
+     * @param node          The node.
+     * @param childResults  The expansions of the children of the node.
+     * @return              The expansion of the node.
+     * @throws              UnsupportedOperationException If the node can't be expanded.
+     * @throws              ArithmeticException If the node divides by zero or is not a real number.
+     */
+    private Fraction expand(Expression node, ArrayList<Fraction> childResults) {
+        if(node instanceof BigRational) return new Fraction(constant((BigRational)node), one);
+        if(node == BigNumber.E || node == BigNumber.PI) {
+            BigRational[] exponents = zeroExponents();
+            exponents[node == BigNumber.E ? eIndex : eIndex+1] = BigRational.ONE;
+            HashMap<Monomial, BigRational> symbol = new HashMap<>();
+            symbol.put(new Monomial(exponents), BigRational.ONE);
+            return new Fraction(symbol, one);
+        }
+        ArrayList<Expression> children = node.getChildren();
+        if(node instanceof Sum) {
+            Fraction sum = new Fraction(new HashMap<>(), one);
+            for(int i = 0; i < children.size(); i += 2) sum = add(sum, multiply(childResults.get(i), childResults.get(i+1)));
+            return sum;
+        }
+        if(node instanceof Product || node instanceof Power) {
+            Fraction product = new Fraction(one, one);
+            for(int i = 0; i < children.size(); i += 2) product = multiply(product, pow(childResults.get(i), children.get(i+1)));
+            return product;
+        }
+        throw new UnsupportedOperationException("ConstantZeroTest: Cannot expand " + node.getClass().getName());
+    }
+
+    /**
+     * Adds two quotients.
+     *
+     * @param a  The first quotient.
+     * @param b  The second quotient.
+     * @return   {@code a + b}
+     */
+    private Fraction add(Fraction a, Fraction b) {
+        if(a.denominator.equals(b.denominator)) return reduce(add(a.numerator, b.numerator), a.denominator);
+        return reduce(add(multiply(a.numerator, b.denominator), multiply(b.numerator, a.denominator)),
+            multiply(a.denominator, b.denominator));
+    }
+
+    /**
+     * Multiplies two quotients.
+     *
+     * @param a  The first quotient.
+     * @param b  The second quotient.
+     * @return   {@code a * b}
+     */
+    private Fraction multiply(Fraction a, Fraction b) {
+        return reduce(multiply(a.numerator, b.numerator), multiply(a.denominator, b.denominator));
+    }
+
+    /**
+     * Raises a quotient to a rational power. A non-integer power is only taken of a single term.
+     *
+     * @param base      The quotient.
+     * @param exponent  The exponent.
+     * @return          {@code base^exponent}
+     * @throws          UnsupportedOperationException If the exponent isn't rational, or is not an
+     * integer and the base has more than one term.
+     * @throws          ArithmeticException If zero is raised to a negative power.
+     */
+    private Fraction pow(Fraction base, Expression exponent) {
+        if(!(exponent instanceof BigRational)) throw new UnsupportedOperationException("ConstantZeroTest: Non-rational exponent");
+        BigRational rationalExponent = (BigRational)exponent;
+        if(rationalExponent.signum() < 0) {
+            if(base.numerator.isEmpty()) throw new ArithmeticException("ConstantZeroTest: Division by zero");
+            base = reduce(base.denominator, base.numerator);
+            rationalExponent = rationalExponent.negate();
+        }
+        if(base.numerator.isEmpty()) return base;
+        if(base.numerator.size() == 1 && base.denominator.equals(one)) {
+            Map.Entry<Monomial, BigRational> term = base.numerator.entrySet().iterator().next();
+            return new Fraction(pow(term.getKey(), term.getValue(), rationalExponent), one);
+        }
+        if(!rationalExponent.isInteger()) throw new UnsupportedOperationException("ConstantZeroTest: Nested radical");
+        if(rationalExponent.getNumeratorValue().bitLength() >= Integer.SIZE-1)
+            throw new UnsupportedOperationException("ConstantZeroTest: Exponent is too large");
+
+        // exponentiation by squaring
+        Fraction result = new Fraction(one, one);
+        for(int k = rationalExponent.intValueExact(); k > 0; k >>= 1) {
+            if((k & 1) != 0) result = multiply(result, base);
+            if(k > 1) base = multiply(base, base);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a quotient, dividing the numerator by the denominator if it is a single term.
+     *
+     * @param numerator    The numerator.
+     * @param denominator  The denominator.
+     * @return             The quotient.
+     * @throws             ArithmeticException If the denominator is zero.
+     */
+    private Fraction reduce(HashMap<Monomial, BigRational> numerator, HashMap<Monomial, BigRational> denominator) {
+        if(denominator.isEmpty()) throw new ArithmeticException("ConstantZeroTest: Division by zero");
+        if(numerator.isEmpty() || denominator == one) return new Fraction(numerator, one);
+        if(denominator.size() == 1) {
+            Map.Entry<Monomial, BigRational> term = denominator.entrySet().iterator().next();
+            return new Fraction(multiply(numerator, pow(term.getKey(), term.getValue(), BigRational.NEGATIVE_ONE)), one);
+        }
+        return new Fraction(numerator, denominator);
+    }
+
+    /**
+     * Adds two sums of monomials.
+     *
+     * @param a  The first sum.
+     * @param b  The second sum.
+     * @return   A new map containing {@code a + b}.
+     */
+    private HashMap<Monomial, BigRational> add(HashMap<Monomial, BigRational> a, HashMap<Monomial, BigRational> b) {
+        HashMap<Monomial, BigRational> result = new HashMap<>(a);
+        for(Map.Entry<Monomial, BigRational> term: b.entrySet()) addTerm(result, term.getKey(), term.getValue());
+        return result;
+    }
+
+    /**
+     * Multiplies two sums of monomials.
+     *
+     * @param a  The first sum.
+     * @param b  The second sum.
+     * @return   A new map containing {@code a * b}.
+     * @throws   UnsupportedOperationException If the product has too many terms.
+     */
+    private HashMap<Monomial, BigRational> multiply(HashMap<Monomial, BigRational> a, HashMap<Monomial, BigRational> b) {
+        if(a == one) return b;
+        if(b == one) return a;
+        HashMap<Monomial, BigRational> result = new HashMap<>();
+        for(Map.Entry<Monomial, BigRational> x: a.entrySet()) {
+            for(Map.Entry<Monomial, BigRational> y: b.entrySet()) {
+                BigRational[] exponents = new BigRational[eIndex+2];
+                for(int i = 0; i < exponents.length; i++) exponents[i] = (BigRational)x.getKey().exponents[i].add(y.getKey().exponents[i]);
+                Pair<Monomial, BigRational> product = normalize(exponents);
+                addTerm(result, product.first(), (BigRational)x.getValue().multiply(y.getValue()).multiply(product.second()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a term to a sum of monomials, removing the monomial if its coefficient becomes zero.
+     *
+     * @param sum          The sum, which is modified.
+     * @param monomial     The monomial.
+     * @param coefficient  The coefficient of the monomial.
+     * @throws             UnsupportedOperationException If the sum has too many terms or the
+     * coefficient is too large.
+     */
+    private void addTerm(HashMap<Monomial, BigRational> sum, Monomial monomial, BigRational coefficient) {
+        BigRational oldCoefficient = sum.get(monomial);
+        if(oldCoefficient != null) coefficient = (BigRational)oldCoefficient.add(coefficient);
+        if(coefficient.signum() == 0) {
+            sum.remove(monomial);
+            return;
+        }
+        if(coefficient.getNumeratorValue().bitLength() > MAX_COEFFICIENT_BIT_LENGTH ||
+            coefficient.getDenominatorValue().bitLength() > MAX_COEFFICIENT_BIT_LENGTH)
+            throw new UnsupportedOperationException("ConstantZeroTest: Coefficient is too large");
+        sum.put(monomial, coefficient);
+        if(sum.size() > MAX_TERMS) throw new UnsupportedOperationException("ConstantZeroTest: Too many terms");
+    }
+
+    /**
+     * Raises a single term to a rational power. The rational coefficient is written in terms of the
+     * basis, unless the exponent is an integer.
+     *
+     * @param monomial     The monomial of the term.
+     * @param coefficient  The coefficient of the term, which is not zero.
+     * @param exponent     The exponent.
+     * @return             A new map containing the power, which is a single term.
+     * @throws             UnsupportedOperationException If the coefficient isn't a product of powers
+     * of the basis, or the power is too large.
+     * @throws             ArithmeticException If the power is not a real number.
+     */
+    private HashMap<Monomial, BigRational> pow(Monomial monomial, BigRational coefficient, BigRational exponent) {
+        BigRational[] exponents = new BigRational[eIndex+2];
+        for(int i = 0; i < exponents.length; i++) exponents[i] = (BigRational)monomial.exponents[i].multiply(exponent);
+        BigRational newCoefficient;
+        if(exponent.isInteger()) {
+            long bitLength = Math.max(coefficient.getNumeratorValue().bitLength(), coefficient.getDenominatorValue().bitLength());
+            if(exponent.getNumeratorValue().bitLength() >= Integer.SIZE-1 ||
+                bitLength*exponent.getNumeratorValue().abs().longValue() > MAX_COEFFICIENT_BIT_LENGTH)
+                throw new UnsupportedOperationException("ConstantZeroTest: Coefficient is too large");
+            newCoefficient = coefficient.pow(exponent.intValueExact());
+        } else {
+            // a real odd root of a negative number is the negative of the root of its absolute value
+            newCoefficient = BigRational.ONE;
+            if(coefficient.signum() < 0) {
+                if(!exponent.getDenominatorValue().testBit(0)) throw new ArithmeticException("ConstantZeroTest: Even root of a negative number");
+                if(exponent.getNumeratorValue().testBit(0)) newCoefficient = BigRational.NEGATIVE_ONE;
+            }
+            int[] numerator = valuations(coefficient.getNumeratorValue().abs());
+            int[] denominator = valuations(coefficient.getDenominatorValue());
+            for(int i = 0; i < basis.length; i++) {
+                BigRational multiplicity = new BigRational(BigInteger.valueOf((long)numerator[i]-denominator[i]));
+                exponents[i] = (BigRational)exponents[i].add(multiplicity.multiply(exponent));
+            }
+        }
+        Pair<Monomial, BigRational> power = normalize(exponents);
+        HashMap<Monomial, BigRational> result = new HashMap<>();
+        addTerm(result, power.first(), (BigRational)newCoefficient.multiply(power.second()));
+        return result;
+    }
+
+    /**
+     * Moves the integer parts of the exponents of the basis into a rational coefficient, so that
+     * the exponents are in {@code [0, 1)}.
+     *
+     * @param exponents  The exponents of the basis, {@code e} and {@code pi}, which are modified.
+     * @return           A Pair of the monomial and the coefficient.
+     * @throws           UnsupportedOperationException If the coefficient is too large.
+     */
+    private Pair<Monomial, BigRational> normalize(BigRational[] exponents) {
+        BigRational coefficient = BigRational.ONE;
+        for(int i = 0; i < basis.length; i++) {
+            BigRational whole = exponents[i].floor();
+            if(whole.signum() == 0) continue;
+            exponents[i] = (BigRational)exponents[i].subtract(whole);
+            if(whole.getNumeratorValue().bitLength() >= Integer.SIZE-1 ||
+                (long)basis[i].bitLength()*whole.getNumeratorValue().abs().longValue() > MAX_COEFFICIENT_BIT_LENGTH)
+                throw new UnsupportedOperationException("ConstantZeroTest: Coefficient is too large");
+            coefficient = (BigRational)coefficient.multiply(new BigRational(basis[i]).pow(whole.intValueExact()));
+        }
+        return new Pair<>(new Monomial(exponents), coefficient);
+    }
+
+    /**
+     * Writes a positive integer as a product of powers of the basis.
+     *
+     * @param n  The integer.
+     * @return   The exponent of each element of the basis.
+     * @throws   UnsupportedOperationException If the integer is not a product of powers of the basis.
+     */
+    private int[] valuations(BigInteger n) {
+        int[] multiplicities = new int[basis.length];
+        for(int i = 0; i < basis.length && !n.equals(BigInteger.ONE); i++) {
+            while(true) {
+                BigInteger[] quotientAndRemainder = n.divideAndRemainder(basis[i]);
+                if(quotientAndRemainder[1].signum() != 0) break;
+                n = quotientAndRemainder[0];
+                multiplicities[i]++;
+            }
+        }
+        if(!n.equals(BigInteger.ONE)) throw new UnsupportedOperationException("ConstantZeroTest: Coefficient is not in the basis");
+        return multiplicities;
+    }
+
+    /**
+     * Creates a sum containing a single rational number.
+     *
+     * @param value  The number.
+     * @return       A new map containing the number, which is empty if it is zero.
+     */
+    private HashMap<Monomial, BigRational> constant(BigRational value) {
+        HashMap<Monomial, BigRational> sum = new HashMap<>();
+        if(value.signum() != 0) sum.put(new Monomial(zeroExponents()), value);
+        return sum;
+    }
+
+    /**
+     * Determines whether or not a sum contains a monomial with a nonzero exponent at an index.
+     *
+     * @param sum    The sum.
+     * @param index  The index of the exponent.
+     * @return       True if some monomial has a nonzero exponent at the index.
+     */
+    private boolean containsSymbol(HashMap<Monomial, BigRational> sum, int index) {
+        for(Monomial monomial: sum.keySet()) {
+            if(monomial.exponents[index].signum() != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the exponents of the monomial one.
+     *
+     * @return  A new array of zero exponents.
+     */
+    private BigRational[] zeroExponents() {
+        BigRational[] exponents = new BigRational[eIndex+2];
+        Arrays.fill(exponents, BigRational.ZERO);
+        return exponents;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * A product of powers of the basis, {@code e} and {@code pi}.
+     */
+    private static class Monomial {
+
+        /**
+         * The exponents of the basis, which are in {@code [0, 1)}, followed by the exponents of
+         * {@code e} and {@code pi}.
+         */
+        private BigRational[] exponents;
+
+        /**
+         * The hash code of this Monomial.
+         */
+        private int hash;
+
+        /**
+         * Constructs a Monomial with the provided exponents.
+         *
+         * @param exponents  The exponents, which are not copied.
+         */
+        private Monomial(BigRational[] exponents) {
+            this.exponents = exponents;
+            hash = Arrays.hashCode(exponents);
+        }
+
+        /**
+         * Compares this Monomial with the specified object for equality.
+         *
+         * @param o  The object to compare with.
+         * @return   True if the object is a Monomial with the same exponents.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) return true;
+            if(!(o instanceof Monomial)) return false;
+            return hash == ((Monomial)o).hash && Arrays.equals(exponents, ((Monomial)o).exponents);
+        }
+
+        /**
+         * Returns the hash code of this Monomial.
+         *
+         * @return  The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A quotient of two sums of monomials, where the denominator is one unless it has more than
+     * one term. Neither sum is ever modified once the quotient is created.
+     */
+    private static class Fraction {
+
+        /**
+         * The numerator, which maps each monomial to its nonzero coefficient.
+         */
+        private HashMap<Monomial, BigRational> numerator;
+
+        /**
+         * The denominator, which maps each monomial to its nonzero coefficient.
+         */
+        private HashMap<Monomial, BigRational> denominator;
+
+        /**
+         * Constructs a quotient of two sums.
+         *
+         * @param numerator    The numerator.
+         * @param denominator  The denominator.
+         */
+        private Fraction(HashMap<Monomial, BigRational> numerator, HashMap<Monomial, BigRational> denominator) {
+            this.numerator = numerator;
+            this.denominator = denominator;
+        }
+    }
+}
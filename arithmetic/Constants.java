@@ -0,0 +1,443 @@
+package arithmetic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * <p>A utility class that computes the digits of the constants {@code BigNumber.PI} and
+ * {@code BigNumber.E}, as well as {@code ln(2)}.</p>
+ *
+ * <p>Each constant is the sum of a series with rational terms, which is computed exactly with
+ * binary splitting: the range of terms is split in half, each half is reduced to a few integers,
+ * and the halves are combined with a few multiplications. Most of the work is in the multiplications
+ * near the top, which are between integers with about as many digits as the result. The halves are
+ * computed in parallel on the common {@code ForkJoinPool}. PI uses the Chudnovsky series, which gives
+ * about 14 digits per term, and E uses the series {@code 1/0! + 1/1! + 1/2! + ...}.</p>
+ *
+ * <p>The most precise value of each constant that has been computed so far is cached, so a request
+ * for fewer digits only rounds the cached value. When a request needs more digits than are cached,
+ * the constant is recomputed with at least half again as many digits, so a sequence of slowly
+ * increasing requests only recomputes it a few times.</p>
+ *
+ * <p>Note: this class is thread safe. Two threads that miss the cache at the same time may both
+ * compute the constant, and the more precise value is kept.</p>
+ *
+ * @author Ricky Qin
+ */
+public class Constants {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The number of terms at or below which a range of a series is computed on the current thread
+     * instead of being split across the pool.
+     */
+    final private static int SEQUENTIAL_TERMS = 64;
+
+    /**
+     * The number of extra decimal places that every constant is computed with before rounding.
+     */
+    final private static int GUARD_DIGITS = 12;
+
+    /**
+     * The fewest decimal places that a cached value is rounded to ahead of time.
+     */
+    final private static int MIN_ROUNDED_SCALE = 16;
+
+    /**
+     * The denominator {@code 640320^3/24} of the ratio between consecutive terms of the Chudnovsky series.
+     */
+    final private static BigInteger CHUDNOVSKY_DENOMINATOR = BigInteger.valueOf(10939058860032000L);
+
+    /**
+     * The cached digits of PI.
+     */
+    final private static Constant PI = new Constant(Constants::computePi);
+
+    /**
+     * The cached digits of E.
+     */
+    final private static Constant E = new Constant(Constants::computeE);
+
+    /**
+     * The cached digits of {@code ln(2)}.
+     */
+    final private static Constant LN_2 = new Constant(Constants::computeLn2);
+
+// <--------------------------------- Constructors --------------------------------->
+
+    private Constants() {}
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Computes the constant {@code pi}.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code pi}, with an error less than {@code 10^-scale}.
+     * @throws       IllegalArgumentException If {@code scale} is negative.
+     */
+    public static BigDecimal pi(int scale) {
+        return PI.get(scale);
+    }
+
+    /**
+     * Computes the constant {@code e}.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code e}, with an error less than {@code 10^-scale}.
+     * @throws       IllegalArgumentException If {@code scale} is negative.
+     */
+    public static BigDecimal e(int scale) {
+        return E.get(scale);
+    }
+
+    /**
+     * Computes the natural logarithm of 2.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code ln(2)}, with an error less than {@code 10^-scale}.
+     * @throws       IllegalArgumentException If {@code scale} is negative.
+     */
+    public static BigDecimal ln2(int scale) {
+        return LN_2.get(scale);
+    }
+
+    /**
+     * Computes PI with the Chudnovsky series
+     * {@code 1/pi = 12 * sum((-1)^k (6k)! (13591409 + 545140134k) / ((3k)! (k!)^3 640320^(3k+3/2)))}.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code pi}, rounded to {@code scale} decimal places.
+     */
+    private static BigDecimal computePi(int scale) {
+        // every term is about 10^-14.18 times the previous one
+        int terms = (scale + GUARD_DIGITS)/14 + 2;
+        BigInteger[] sums = sum(new ChudnovskySeries(0, terms));
+        MathContext context = new MathContext(scale + GUARD_DIGITS);
+        BigDecimal root = Approximator.sqrt(BigDecimal.valueOf(10005), scale + GUARD_DIGITS + 3);
+        BigDecimal numerator = root.multiply(new BigDecimal(sums[1].multiply(BigInteger.valueOf(426880))));
+        return numerator.divide(new BigDecimal(sums[2]), context).setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes E with the series {@code e = 1/0! + 1/1! + 1/2! + ...}.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code e}, rounded to {@code scale} decimal places.
+     */
+    private static BigDecimal computeE(int scale) {
+        // the terms after 1/(n-1)! sum to less than 2/n!
+        int terms = 2;
+        for(double digits = 0; digits < scale + GUARD_DIGITS; terms++) digits += Math.log10(terms);
+        BigInteger[] sums = sum(new FactorialSeries(0, terms));
+        MathContext context = new MathContext(scale + GUARD_DIGITS);
+        return new BigDecimal(sums[1]).divide(new BigDecimal(sums[0]), context).setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes {@code ln(2)} with the formula {@code ln(2) = 18*atanh(1/26) - 2*atanh(1/4801) + 8*atanh(1/8749)},
+     * whose series converge much faster than the series of {@code 2*atanh(1/3)}.
+     *
+     * @param scale  The number of decimal places.
+     * @return       {@code ln(2)}, rounded to {@code scale} decimal places.
+     */
+    private static BigDecimal computeLn2(int scale) {
+        BigDecimal ln2 = arctanhInverse(26, scale).multiply(BigDecimal.valueOf(18))
+            .subtract(arctanhInverse(4801, scale).multiply(BigDecimal.valueOf(2)))
+            .add(arctanhInverse(8749, scale).multiply(BigDecimal.valueOf(8)));
+        return ln2.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Computes the inverse hyperbolic tangent of the reciprocal of an integer with the series
+     * {@code atanh(1/n) = sum(1/((2k+1) n^(2k+1)))}.
+     *
+     * @param n      The integer, which is at least 2.
+     * @param scale  The number of decimal places.
+     * @return       {@code atanh(1/n)}, with an error much less than {@code 10^-scale}.
+     */
+    private static BigDecimal arctanhInverse(int n, int scale) {
+        // every term is less than 1/n^2 times the previous one
+        int terms = (int)Math.ceil((scale + GUARD_DIGITS)/(2*Math.log10(n))) + 1;
+        BigInteger[] sums = sum(new ArctanhSeries(n, 0, terms));
+        MathContext context = new MathContext(scale + GUARD_DIGITS);
+        return new BigDecimal(sums[2]).divide(new BigDecimal(sums[0].multiply(sums[1])), context);
+    }
+
+    /**
+     * Sums a range of a series, splitting it across the common {@code ForkJoinPool} if it is long
+     * enough to be worth it.
+     *
+     * @param series  The series.
+     * @return        The integers that the range reduces to.
+     */
+    private static BigInteger[] sum(Series series) {
+        if(series.to - series.from <= SEQUENTIAL_TERMS) return series.compute();
+        return ForkJoinPool.commonPool().invoke(series);
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>The cached digits of a constant.</p>
+     */
+    private static class Constant {
+
+        /**
+         * The function that computes the constant to a number of decimal places.
+         */
+        final private IntFunction<BigDecimal> compute;
+
+        /**
+         * The most precise value computed so far, followed by copies of it rounded to fewer and fewer
+         * decimal places, so that a request for a few digits doesn't have to round a value with many.
+         * Null if no value has been computed.
+         */
+        private volatile BigDecimal[] values;
+
+        /**
+         * Constructs the cache of a constant.
+         *
+         * @param compute  The function that computes the constant.
+         */
+        private Constant(IntFunction<BigDecimal> compute) {
+            this.compute = compute;
+        }
+
+        /**
+         * Returns the constant rounded to a number of decimal places, computing it if the cached
+         * value isn't precise enough.
+         *
+         * @param scale  The number of decimal places.
+         * @return       The constant, with an error less than {@code 10^-scale}.
+         * @throws       IllegalArgumentException If {@code scale} is negative.
+         */
+        private BigDecimal get(int scale) {
+            if(scale < 0) throw new IllegalArgumentException("Constants: Number of decimal places must be non-negative");
+            BigDecimal[] cached = values;
+            if(cached != null && cached[0].scale() >= scale) {
+                // every cached value is off by a little over half a unit in its last place, so rounding
+                // it again is off by less than a unit in the requested last place
+                for(int i = cached.length-1;; i--) {
+                    if(cached[i].scale() >= scale) return cached[i].setScale(scale, RoundingMode.HALF_EVEN);
+                }
+            }
+            int computedScale = (cached == null) ? scale : Math.max(scale, cached[0].scale() + cached[0].scale()/2);
+            BigDecimal[] computed = round(compute.apply(computedScale));
+            synchronized(this) {
+                if(values == null || values[0].scale() < computed[0].scale()) values = computed;
+            }
+            return computed[0].setScale(scale, RoundingMode.HALF_EVEN);
+        }
+
+        /**
+         * Rounds a value to a quarter of its decimal places repeatedly.
+         *
+         * @param value  The value.
+         * @return       The value followed by its rounded copies, in decreasing order of decimal places.
+         */
+        private static BigDecimal[] round(BigDecimal value) {
+            ArrayList<BigDecimal> rounded = new ArrayList<>();
+            rounded.add(value);
+            for(int scale = value.scale()/4; scale >= MIN_ROUNDED_SCALE; scale /= 4) {
+                rounded.add(rounded.get(rounded.size()-1).setScale(scale, RoundingMode.HALF_EVEN));
+            }
+            return rounded.toArray(new BigDecimal[0]);
+        }
+    }
+
+    /**
+     * <p>A range {@code [from, to)} of the terms of a series that is summed exactly by binary splitting.
+     * The range is reduced to a few integers, which are computed by combining the integers of its two
+     * halves, forking the left half to the pool while the current thread computes the right half.</p>
+     */
+    private static abstract class Series extends RecursiveTask<BigInteger[]> {
+
+        /**
+         * The serialization version of this class.
+         */
+        final private static long serialVersionUID = 1L;
+
+        /**
+         * The index of the first term in the range.
+         */
+        final protected int from;
+
+        /**
+         * The index after the last term in the range.
+         */
+        final protected int to;
+
+        /**
+         * Constructs a range of a series.
+         *
+         * @param from  The index of the first term.
+         * @param to    The index after the last term.
+         */
+        protected Series(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Computes the integers of the range.
+         *
+         * @return  The integers.
+         */
+        @Override
+        protected BigInteger[] compute() {
+            if(to - from == 1) return term(from);
+            int mid = (from + to) >>> 1;
+            Series left = range(from, mid);
+            Series right = range(mid, to);
+            if(to - from <= SEQUENTIAL_TERMS) return combine(left.compute(), right.compute());
+            left.fork();
+            BigInteger[] rightSums = right.compute();
+            return combine(left.join(), rightSums);
+        }
+
+        /**
+         * Creates another range of the same series.
+         *
+         * @param from  The index of the first term.
+         * @param to    The index after the last term.
+         * @return      The range.
+         */
+        protected abstract Series range(int from, int to);
+
+        /**
+         * Computes the integers of a range that contains a single term.
+         *
+         * @param k  The index of the term.
+         * @return   The integers.
+         */
+        protected abstract BigInteger[] term(int k);
+
+        /**
+         * Combines the integers of two adjacent ranges.
+         *
+         * @param left   The integers of the range on the left.
+         * @param right  The integers of the range on the right.
+         * @return       The integers of the combined range.
+         */
+        protected abstract BigInteger[] combine(BigInteger[] left, BigInteger[] right);
+    }
+
+    /**
+     * <p>A range of the Chudnovsky series, reduced to the integers {@code {P, Q, T}}.</p>
+     */
+    private static class ChudnovskySeries extends Series {
+
+        /**
+         * The serialization version of this class.
+         */
+        final private static long serialVersionUID = 1L;
+
+        private ChudnovskySeries(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        protected Series range(int from, int to) {
+            return new ChudnovskySeries(from, to);
+        }
+
+        @Override
+        protected BigInteger[] term(int k) {
+            if(k == 0) return new BigInteger[] {BigInteger.ONE, BigInteger.ONE, BigInteger.valueOf(13591409)};
+            BigInteger p = BigInteger.valueOf(6L*k - 5).multiply(BigInteger.valueOf(2L*k - 1)).multiply(BigInteger.valueOf(6L*k - 1)).negate();
+            BigInteger q = BigInteger.valueOf(k).pow(3).multiply(CHUDNOVSKY_DENOMINATOR);
+            BigInteger t = p.multiply(BigInteger.valueOf(13591409).add(BigInteger.valueOf(545140134).multiply(BigInteger.valueOf(k))));
+            return new BigInteger[] {p, q, t};
+        }
+
+        @Override
+        protected BigInteger[] combine(BigInteger[] left, BigInteger[] right) {
+            return new BigInteger[] {
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                left[2].multiply(right[1]).add(left[0].multiply(right[2]))
+            };
+        }
+    }
+
+    /**
+     * <p>A range of the series {@code 1/0! + 1/1! + 1/2! + ...}, reduced to the integers {@code {Q, T}},
+     * where the sum of the range divided by the term before it is {@code T/Q}.</p>
+     */
+    private static class FactorialSeries extends Series {
+
+        /**
+         * The serialization version of this class.
+         */
+        final private static long serialVersionUID = 1L;
+
+        private FactorialSeries(int from, int to) {
+            super(from, to);
+        }
+
+        @Override
+        protected Series range(int from, int to) {
+            return new FactorialSeries(from, to);
+        }
+
+        @Override
+        protected BigInteger[] term(int k) {
+            return new BigInteger[] {BigInteger.valueOf(Math.max(k, 1)), BigInteger.ONE};
+        }
+
+        @Override
+        protected BigInteger[] combine(BigInteger[] left, BigInteger[] right) {
+            return new BigInteger[] {left[0].multiply(right[0]), left[1].multiply(right[0]).add(right[1])};
+        }
+    }
+
+    /**
+     * <p>A range of the series {@code atanh(1/n) = sum(1/((2k+1) n^(2k+1)))}, reduced to the integers
+     * {@code {B, Q, T}}, where the sum of the range is {@code T/(BQ)} relative to the terms before it.</p>
+     */
+    private static class ArctanhSeries extends Series {
+
+        /**
+         * The serialization version of this class.
+         */
+        final private static long serialVersionUID = 1L;
+
+        /**
+         * The reciprocal of the argument.
+         */
+        final private int n;
+
+        private ArctanhSeries(int n, int from, int to) {
+            super(from, to);
+            this.n = n;
+        }
+
+        @Override
+        protected Series range(int from, int to) {
+            return new ArctanhSeries(n, from, to);
+        }
+
+        @Override
+        protected BigInteger[] term(int k) {
+            long q = (k == 0) ? n : (long)n*n;
+            return new BigInteger[] {BigInteger.valueOf(2L*k + 1), BigInteger.valueOf(q), BigInteger.ONE};
+        }
+
+        @Override
+        protected BigInteger[] combine(BigInteger[] left, BigInteger[] right) {
+            return new BigInteger[] {
+                left[0].multiply(right[0]),
+                left[1].multiply(right[1]),
+                right[0].multiply(right[1]).multiply(left[2]).add(left[0].multiply(right[2]))
+            };
+        }
+    }
+}
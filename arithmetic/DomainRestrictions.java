@@ -0,0 +1,212 @@
+package arithmetic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import algebra.Variable;
+import settheory.DiscreteNumberSet;
+
+/**
+ * <p>An immutable set of restrictions on the values of Variables, outside of which an Expression
+ * is undefined. An Expression is undefined where one of the Expressions it divides by is zero,
+ * even if the division has since been cancelled, such as {@code x/x}, which is {@code 1} only
+ * when {@code x != 0}.</p>
+ *
+ * <p>A divisor that is a Variable or is linear in a single Variable with rational coefficients
+ * excludes a single value of that Variable, and the excluded values of each Variable are kept in a
+ * {@code DiscreteNumberSet}. Any other divisor is kept as an Expression that must be nonzero.</p>
+ *
+ * <p>Restrictions are combined with {@code union}, which returns one of its arguments whenever the
+ * other adds nothing new, so that Expressions without divisions share {@code NONE}.</p>
+ *
+ * @author Ricky Qin
+ */
+public class DomainRestrictions {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The restrictions of an Expression that is defined everywhere.
+     */
+    final public static DomainRestrictions NONE = new DomainRestrictions(new TreeMap<>(), new LinkedHashSet<>());
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the restrictions that make an Expression nonzero.
+     *
+     * @param expression  The Expression, such as a divisor.
+     * @return            {@code NONE} if the Expression is constant, a single excluded value if it is
+     * a Variable or is linear in a single Variable, and otherwise the condition that the Expression is nonzero.
+     */
+    public static DomainRestrictions nonzero(Expression expression) {
+        if(expression.isConstant()) return NONE;
+        TreeMap<Variable, DiscreteNumberSet> excludedValues = new TreeMap<>();
+        LinkedHashSet<Expression> nonzeroExpressions = new LinkedHashSet<>();
+        if(expression instanceof Variable) {
+            excludedValues.put((Variable)expression, DiscreteNumberSet.of(BigRational.ZERO));
+            return new DomainRestrictions(excludedValues, nonzeroExpressions);
+        }
+        if(expression instanceof Sum && expression.getNumVariables() == 1) {
+            // a Sum of a single Variable and a constant, a*x + c, is zero at x = -c/a
+            Variable variable = null;
+            BigRational slope = null, constant = BigRational.ZERO;
+            for(Map.Entry<Expression, BigRational> term: (Sum)expression) {
+                if(term.getKey() instanceof Variable) {
+                    variable = (Variable)term.getKey();
+                    slope = term.getValue();
+                } else if(term.getKey().equals(BigRational.ONE)) constant = term.getValue();
+                else slope = null;
+                if(slope == null) break;
+            }
+            if(slope != null) {
+                excludedValues.put(variable, DiscreteNumberSet.of(constant.negate().divide(slope)));
+                return new DomainRestrictions(excludedValues, nonzeroExpressions);
+            }
+        }
+        nonzeroExpressions.add(expression);
+        return new DomainRestrictions(excludedValues, nonzeroExpressions);
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The values that each restricted Variable can't take.
+     */
+    final private TreeMap<Variable, DiscreteNumberSet> excludedValues;
+
+    /**
+     * The Expressions that must be nonzero, in the order that they were added.
+     */
+    final private LinkedHashSet<Expression> nonzeroExpressions;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs restrictions from the excluded values and nonzero Expressions. The collections are
+     * stored directly, so they must not be mutated afterwards.
+     *
+     * @param excludedValues      The values that each restricted Variable can't take.
+     * @param nonzeroExpressions  The Expressions that must be nonzero.
+     */
+    private DomainRestrictions(TreeMap<Variable, DiscreteNumberSet> excludedValues, LinkedHashSet<Expression> nonzeroExpressions) {
+        this.excludedValues = excludedValues;
+        this.nonzeroExpressions = nonzeroExpressions;
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Compares these restrictions with the specified object for equality.
+     *
+     * @param o  The object to compare with.
+     * @return   True if the object is a DomainRestrictions with the same excluded values and
+     * nonzero Expressions.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(!(o instanceof DomainRestrictions)) return false;
+        DomainRestrictions restrictions = (DomainRestrictions)o;
+        return excludedValues.equals(restrictions.excludedValues) && nonzeroExpressions.equals(restrictions.nonzeroExpressions);
+    }
+
+    /**
+     * Returns the hash code for these restrictions.
+     *
+     * @return  The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31*excludedValues.hashCode() + nonzeroExpressions.hashCode();
+    }
+
+    /**
+     * Returns a String representation of these restrictions.
+     *
+     * @return  A String such as {@code x != {0, 1}, x+y != 0}, which is empty if there are no restrictions.
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for(Map.Entry<Variable, DiscreteNumberSet> entry: excludedValues.entrySet()) {
+            if(str.length() > 0) str.append(", ");
+            DiscreteNumberSet values = entry.getValue();
+            str.append(entry.getKey()).append(" != ").append(values.getCardinality() == 1 ? values.select(0) : values);
+        }
+        for(Expression expression: nonzeroExpressions) {
+            if(str.length() > 0) str.append(", ");
+            str.append(expression).append(" != 0");
+        }
+        return str.toString();
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the restrictions that are in either these restrictions or the provided restrictions.
+     *
+     * @param restrictions  The other restrictions.
+     * @return              The combined restrictions, which are {@code this} or {@code restrictions}
+     * if one contains the other.
+     */
+    public DomainRestrictions union(DomainRestrictions restrictions) {
+        if(restrictions == this || restrictions.isEmpty()) return this;
+        if(isEmpty()) return restrictions;
+        TreeMap<Variable, DiscreteNumberSet> newExcludedValues = new TreeMap<>(excludedValues);
+        boolean isChanged = false;
+        for(Map.Entry<Variable, DiscreteNumberSet> entry: restrictions.excludedValues.entrySet()) {
+            DiscreteNumberSet values = excludedValues.get(entry.getKey());
+            DiscreteNumberSet newValues = (values == null) ? entry.getValue() : values.union(entry.getValue());
+            if(!newValues.equals(values)) {
+                newExcludedValues.put(entry.getKey(), newValues);
+                isChanged = true;
+            }
+        }
+        LinkedHashSet<Expression> newNonzeroExpressions = new LinkedHashSet<>(nonzeroExpressions);
+        if(newNonzeroExpressions.addAll(restrictions.nonzeroExpressions)) isChanged = true;
+        if(!isChanged) return this;
+        return new DomainRestrictions(newExcludedValues, newNonzeroExpressions);
+    }
+
+    /**
+     * Determines whether or not there are no restrictions.
+     *
+     * @return  True if the Expression is defined everywhere.
+     */
+    public boolean isEmpty() {
+        return excludedValues.isEmpty() && nonzeroExpressions.isEmpty();
+    }
+
+    /**
+     * Returns the values that a Variable can't take.
+     *
+     * @param variable  The Variable.
+     * @return          The excluded values, which are empty if the Variable is not restricted.
+     */
+    public DiscreteNumberSet getExcludedValues(Variable variable) {
+        DiscreteNumberSet values = excludedValues.get(variable);
+        return (values == null) ? DiscreteNumberSet.EMPTY : values;
+    }
+
+    /**
+     * Returns the Variables that have excluded values.
+     *
+     * @return  A new list of the Variables, in increasing order of name.
+     */
+    public ArrayList<Variable> getRestrictedVariables() {
+        return new ArrayList<>(excludedValues.keySet());
+    }
+
+    /**
+     * Returns the Expressions that must be nonzero, other than those that only exclude values of a
+     * single Variable.
+     *
+     * @return  A new list of the Expressions.
+     */
+    public ArrayList<Expression> getNonzeroExpressions() {
+        return new ArrayList<>(nonzeroExpressions);
+    }
+}
@@ -1,8 +1,19 @@
 package arithmetic;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import algebra.Variable;
 import utility.Pair;
@@ -12,10 +23,30 @@ import utility.Pair;
  *
  * @author Ricky Qin
  */
-public abstract class Expression {
+public abstract class Expression implements Cloneable {
 
 // <------------------------------- Static Variables ------------------------------->
 
+    /**
+     * The formats that an Expression can be rendered in.
+     */
+    public static enum Format {
+        /**
+         * The normal format, as returned by {@code toString()}.
+         */
+        NORMAL,
+
+        /**
+         * The LaTeX format, as returned by {@code toLatexString()}.
+         */
+        LATEX,
+
+        /**
+         * The function format, as returned by {@code toFunctionString()}.
+         */
+        FUNCTION
+    }
+
     /**
      * The code to represent a number literal token, indicating a number.
      */
@@ -63,15 +94,57 @@ public abstract class Expression {
      */
     final private static int VARIABLE = 9;
 
+    /**
+     * The default upper bound on the probability that {@code isProbablyZero} or {@code probablyEquals}
+     * returns an incorrect result.
+     */
+    final public static double DEFAULT_ERROR_BOUND = 1e-15;
+
+    /**
+     * The bit length of the random primes used for modular evaluation. Since the primes are below
+     * {@code 2^31}, the product of two residues always fits in a {@code long}.
+     */
+    final private static int MODULUS_BIT_LENGTH = 31;
+
+    /**
+     * The maximum number of random points at which a denominator may vanish during a probabilistic
+     * zero test before falling back to a symbolic comparison.
+     */
+    final private static int MAX_VANISHING_POINTS = 16;
+
+    /**
+     * The variable ids of an Expression that doesn't contain any Variables.
+     */
+    final private static int[] NO_VARIABLES = new int[0];
+
+    /**
+     * The maximum number of residuals kept by {@code specialize}.
+     */
+    final private static int MAX_RESIDUALS = 1024;
+
+    /**
+     * The residuals computed by {@code specialize}, where each Expression and the bindings of its
+     * Variables, keyed by variable id, are mapped to the residual. The least recently used residual is
+     * evicted once there are too many, and the map is only accessed while holding its lock.
+     */
+    final private static LinkedHashMap<Pair<Expression, TreeMap<Integer, Expression>>, Expression> residuals =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair<Expression, TreeMap<Integer, Expression>>, Expression> eldest) {
+                return size() > MAX_RESIDUALS;
+            }
+        };
+
 // <-------------------------------- Static Methods -------------------------------->
 
     /**
      * Splits a {@code String} representation of an Expression into tokens
      *
-     * @param str  The {@code String}
-     * @return     An {@code ArrayList} of tokens and its token type
+     * @param str    The {@code String}
+     * @param names  The multi-character variable names to recognize.
+     * @return       An {@code ArrayList} of tokens and its token type
      */
-    private static ArrayList<Pair<String, Integer>> tokenizeExpression(String str) {
+    private static ArrayList<Pair<String, Integer>> tokenizeExpression(String str, NameTrie names) {
         // Remove whitespace characters
         str = str.replaceAll("\\s", "");
 
@@ -109,8 +182,9 @@ public abstract class Expression {
                 tokens.add(new Pair<>("/", DIVIDE)); i++;
             } else if(str.charAt(i) == '^') {
                 tokens.add(new Pair<>("^", CARET)); i++;
-            } else if(Character.isLetter(str.charAt(i))) {// a variable
-                tokens.add(new Pair<>(Character.toString(str.charAt(i)), VARIABLE)); i++;
+            } else if(Character.isLetter(str.charAt(i))) {// a variable, which is the longest provided name or a letter with a subscript
+                int length = Math.max(names.match(str, i), subscriptedNameLength(str, i));
+                tokens.add(new Pair<>(str.substring(i, i+length), VARIABLE)); i += length;
             } else throw new NumberFormatException("Expression: Illegal character \"" + str.charAt(i) + "\"");
         }
 
@@ -195,46 +269,41 @@ public abstract class Expression {
     }
 
     /**
-     * Turns a list of tokens into an expression, following the order of operations.
+     * Turns a list of tokens into an expression, following the order of operations. Brackets are
+     * parsed from the innermost outwards using a stack of the tokens at each depth, so the number
+     * of nested brackets is only limited by memory.
      *
-     * @param tokens      The tokens to parse.
-     * @param beginIndex  The index of the first token to parse.
-     * @return            The parsed Expression.
+     * @param tokens  The tokens to parse, where every bracket is matched.
+     * @return        The parsed Expression.
      */
-    private static Expression internalParse(ArrayList<? extends Object> tokens, int beginIndex) {
-
-        // Find the range [beginIndex, endIndex) of the current expression in str
-        int endIndex = beginIndex;
-        for(int currDepth = 0; endIndex < tokens.size(); endIndex++) {
-            if(tokens.get(endIndex) instanceof Pair) {
-                Pair<String, Integer> token = (Pair<String, Integer>)tokens.get(endIndex);
-                if(token.second() == OPEN_BRACKET) currDepth++;
-                else if(token.second() == CLOSE_BRACKET) {
-                    currDepth--;
-                    if(currDepth < 0) break;
-                }
-            }
+    private static Expression internalParse(ArrayList<? extends Object> tokens) {
+        ArrayDeque<ArrayList<Object>> enclosingTokens = new ArrayDeque<>();
+        ArrayList<Object> currTokens = new ArrayList<>();
+        for(Object token: tokens) {
+            if(token instanceof Pair && ((Pair<String, Integer>)token).second() == OPEN_BRACKET) {
+                enclosingTokens.push(currTokens);
+                currTokens = new ArrayList<>();
+            } else if(token instanceof Pair && ((Pair<String, Integer>)token).second() == CLOSE_BRACKET) {
+                Expression bracket = parseWithoutBrackets(currTokens);
+                currTokens = enclosingTokens.pop();
+                currTokens.add(bracket);
+            } else currTokens.add(token);
         }
-        if(endIndex-beginIndex == 1) return (Expression)tokens.get(beginIndex);
+        return parseWithoutBrackets(currTokens);
+    }
 
-        // Parse brackets
-        ArrayList<Object> newTokens = new ArrayList<>();
-        for(int i = beginIndex, currDepth = 0; i < endIndex; i++) {
-            if(tokens.get(i) instanceof Pair) {
-                Pair<String, Integer> token = (Pair<String, Integer>)tokens.get(i);
-                if(token.second() == OPEN_BRACKET) {
-                    if(currDepth == 0) newTokens.add(internalParse(tokens, i+1));
-                    currDepth++;
-                }
-                if(currDepth == 0) newTokens.add(token);
-                if(token.second() == CLOSE_BRACKET) currDepth--;
-            } else if(currDepth == 0) newTokens.add(tokens.get(i));
-        }
-        if(newTokens.size() == 1) return (Expression)newTokens.get(0);
+    /**
+     * Turns a list of tokens that contains no brackets into an expression, following the order
+     * of operations.
+     *
+     * @param tokens  The tokens to parse, where each bracket has already been parsed into an Expression.
+     * @return        The parsed Expression.
+     */
+    private static Expression parseWithoutBrackets(ArrayList<Object> tokens) {
+        if(tokens.size() == 1) return (Expression)tokens.get(0);
 
         // Parse exponents right to left (power towers are evaluated top to bottom)
-        tokens = newTokens;
-        newTokens = new ArrayList<>();
+        ArrayList<Object> newTokens = new ArrayList<>();
         for(int i = tokens.size()-1; i >= 0; i--) {
             if(tokens.get(i) instanceof Pair) {
                 Pair<String, Integer> token = (Pair<String, Integer>)tokens.get(i);
@@ -318,45 +387,112 @@ public abstract class Expression {
     }
 
     /**
-     * Surrounds the provided {@code String} with a pair of round {@code ()} brackets.
+     * Adds two non-negative {@code long}s, saturating at {@code Long.MAX_VALUE} instead of overflowing.
      *
-     * @param str  The provided {@code String}.
-     * @return     A new {@code String}.
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code min(a + b, Long.MAX_VALUE)}
      */
-    final protected static String surroundInBrackets(String str) {
-        return new StringBuilder("(").append(str).append(')').toString();
+    final protected static long saturatedAdd(long a, long b) {
+        long sum = a+b;
+        return (sum < 0) ? Long.MAX_VALUE : sum;
     }
 
     /**
-     * Surrounds the provided {@code String} with a pair of round brackets in a LaTex String.
-     * Specifically, it adds {@code \left(} to the beginning and {@code \right)} to the end.
+     * Multiplies two non-negative {@code long}s, saturating at {@code Long.MAX_VALUE} instead of overflowing.
      *
-     * @param str  The provided {@code String}.
-     * @return     A new {@code String}.
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code min(a * b, Long.MAX_VALUE)}
      */
-    final protected static String surroundInLatexBrackets(String str) {
-        return new StringBuilder("\\left(").append(str).append("\\right)").toString();
+    final protected static long saturatedMultiply(long a, long b) {
+        if(a == 0 || b == 0) return 0;
+        if(a > Long.MAX_VALUE/b) return Long.MAX_VALUE;
+        return a*b;
+    }
+
+    /**
+     * Compares the children of two Expressions of the same type for equality, using an explicit
+     * stack instead of recursion so that the depth of the Expressions is only limited by memory.
+     *
+     * @param a  The first Expression.
+     * @param b  The second Expression.
+     * @return   True if the children of the Expressions are pairwise equal.
+     */
+    final protected static boolean equalChildren(Expression a, Expression b) {
+        ArrayDeque<Expression> stack = new ArrayDeque<>();
+        ArrayList<Expression> aChildren = a.getChildren();
+        ArrayList<Expression> bChildren = b.getChildren();
+        if(aChildren.size() != bChildren.size()) return false;
+        for(int i = 0; i < aChildren.size(); i++) {
+            stack.push(aChildren.get(i));
+            stack.push(bChildren.get(i));
+        }
+
+        while(!stack.isEmpty()) {
+            Expression y = stack.pop();
+            Expression x = stack.pop();
+            if(x == y) continue;
+            if(x.getClass() != y.getClass() || x.hashCode() != y.hashCode()) return false;
+            aChildren = x.getChildren();
+            bChildren = y.getChildren();
+            if(aChildren.isEmpty()) {// a number or Variable, which is compared directly
+                if(!x.equals(y)) return false;
+                continue;
+            }
+            if(aChildren.size() != bChildren.size()) return false;
+            for(int i = 0; i < aChildren.size(); i++) {
+                stack.push(aChildren.get(i));
+                stack.push(bChildren.get(i));
+            }
+        }
+        return true;
     }
 
     /**
-     * Surrounds the provided {@code String} with a pair of curly <code>{}</code> brackets.
+     * Finds the length of the variable name that starts at an index of a String, which is a letter
+     * that is optionally followed by an underscore and a subscript of letters and digits, such as
+     * {@code x_1}.
      *
-     * @param str  The provided {@code String}.
-     * @return     A new {@code String}.
+     * @param str    The String.
+     * @param begin  The index of the letter that the name starts with.
+     * @return       The length of the name.
      */
-    final protected static String surroundInCurlyBrackets(String str) {
-        return new StringBuilder("{").append(str).append('}').toString();
+    private static int subscriptedNameLength(String str, int begin) {
+        int end = begin+1;
+        if(end+1 >= str.length() || str.charAt(end) != '_' || !Character.isLetterOrDigit(str.charAt(end+1))) return 1;
+        for(end += 2; end < str.length() && Character.isLetterOrDigit(str.charAt(end)); end++);
+        return end-begin;
     }
 
     /**
-     * Parses the {@code String} argument into a mathematical expression.
+     * Parses the {@code String} argument into a mathematical expression. A variable is a single
+     * letter, which can have a subscript such as {@code x_1}, so {@code xy} is {@code x*y}.
      *
      * @param str  The {@code String} representation of the expression.
      * @return     The resultant {@code Expression} object.
      * @throws     NumberFormatException if the string is malformatted.
      */
     public static Expression parse(String str) {
-        ArrayList<Pair<String, Integer>> tokens = tokenizeExpression(str);
+        return parse(str, Collections.emptyList());
+    }
+
+    /**
+     * Parses the {@code String} argument into a mathematical expression, recognizing the provided
+     * multi-character variable names. At each letter, the longest provided name that starts there
+     * is used, unless a letter with a subscript such as {@code x_1} is longer, so {@code ratex} is
+     * {@code rate*x} if {@code rate} is provided. Names that don't start with a letter are never
+     * matched.
+     *
+     * @param str    The {@code String} representation of the expression.
+     * @param names  The multi-character variable names.
+     * @return       The resultant {@code Expression} object.
+     * @throws       NumberFormatException if the string is malformatted.
+     */
+    public static Expression parse(String str, Collection<String> names) {
+        NameTrie trie = new NameTrie();
+        for(String name: names) trie.add(name);
+        ArrayList<Pair<String, Integer>> tokens = tokenizeExpression(str, trie);
 
         // parse literals
         ArrayList<Object> newTokens = new ArrayList<>();
@@ -365,13 +501,82 @@ public abstract class Expression {
             if(token.second() == NUMBER_LITERAL) {// parse number literals
                 newTokens.add(BigRational.parseNumber(token.first()));
             } else if(token.second() == VARIABLE) {// parse variables
-                newTokens.add(new Variable(token.first()));
+                newTokens.add(Variable.of(token.first()));
             } else newTokens.add(token);
         }
 
-        return internalParse(newTokens, 0);
+        return internalParse(newTokens);
+    }
+
+    /**
+     * Parses a String in function form, as returned by {@code toFunctionString()}, back into an
+     * Expression. Unlike {@code parse}, the stored terms and factors are used as they are, without
+     * combining like terms or simplifying them again.
+     *
+     * @param str  The function String to parse.
+     * @return     The Expression represented by the String.
+     * @throws     NumberFormatException If the String is not a valid function String.
+     */
+    public static Expression parseFunctionString(String str) {
+        return new FunctionStringParser(str).parse();
+    }
+
+    /**
+     * Merges two sorted arrays of variable ids into a sorted array without duplicates, reusing one
+     * of the arrays if it already contains every id of the other.
+     *
+     * @param a  The first array.
+     * @param b  The second array.
+     * @return   The ids that are in either array, in increasing order.
+     */
+    private static int[] mergeVariableIds(int[] a, int[] b) {
+        int[] merged = new int[a.length+b.length];
+        int i = 0, j = 0, length = 0;
+        while(i < a.length && j < b.length) {
+            if(a[i] < b[j]) merged[length++] = a[i++];
+            else if(a[i] > b[j]) merged[length++] = b[j++];
+            else {
+                merged[length++] = a[i++];
+                j++;
+            }
+        }
+        while(i < a.length) merged[length++] = a[i++];
+        while(j < b.length) merged[length++] = b[j++];
+        if(length == a.length) return a;
+        if(length == b.length) return b;
+        return Arrays.copyOf(merged, length);
     }
 
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The number of nodes in the tree of this Expression, counting a shared subexpression once for
+     * every time it appears, saturating at {@code Long.MAX_VALUE}.
+     */
+    private long size = 1;
+
+    /**
+     * The number of nodes on the longest path from this Expression to a leaf, including both ends.
+     */
+    private int depth = 1;
+
+    /**
+     * An upper bound on the degree of the numerator of this Expression, when it is written as a
+     * rational function of its Variables, or {@code Long.MAX_VALUE} if it is not a rational function.
+     */
+    private long degreeHint = 0;
+
+    /**
+     * The ids of the Variables in this Expression, in increasing order.
+     */
+    private int[] variableIds = NO_VARIABLES;
+
+    /**
+     * The restrictions on the Variables outside of which this Expression, or an Expression it was
+     * built from, is undefined.
+     */
+    private DomainRestrictions domainRestrictions = DomainRestrictions.NONE;
+
 // <-------------------- Methods Overriden from java.lang.Object -------------------->
 
     /**
@@ -399,7 +604,9 @@ public abstract class Expression {
      * @return  The normal String representation of this Expression.
      */
     @Override
-    public abstract String toString();
+    public String toString() {
+        return renderToString(Format.NORMAL);
+    }
 
 // <---------------------------------- Own Methods ---------------------------------->
 
@@ -487,14 +694,82 @@ public abstract class Expression {
      *
      * @return  The LaTeX String representation of this Expression.
      */
-    public abstract String toLatexString();
+    public String toLatexString() {
+        return renderToString(Format.LATEX);
+    }
 
     /**
      * Returns the String representation of this Expression in function form.
      *
      * @return  The function String representation of this Expression.
      */
-    public abstract String toFunctionString();
+    public String toFunctionString() {
+        return renderToString(Format.FUNCTION);
+    }
+
+    /**
+     * Writes this Expression to the provided {@code Appendable} in a single pass, without building
+     * the Strings of its subexpressions. Large Expressions can be streamed directly to a file by
+     * passing a {@code Writer}, such as one returned by {@code Channels.newWriter}.
+     *
+     * @param out     The {@code Appendable} to write to.
+     * @param format  The format to write this Expression in.
+     * @throws        IOException If {@code out} throws one.
+     */
+    public void render(Appendable out, Format format) throws IOException {
+        new ExpressionWriter(out).appendExpression(this, format);
+    }
+
+    /**
+     * Renders this Expression into a String.
+     *
+     * @param format  The format to render this Expression in.
+     * @return        The String representation of this Expression in the provided format.
+     */
+    private String renderToString(Format format) {
+        String str = getCachedString(format);
+        if(str != null) return str;
+        StringBuilder builder = new StringBuilder();
+        try {
+            render(builder, format);
+        } catch(IOException e) {// a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        str = builder.toString();
+        setCachedString(format, str);
+        return str;
+    }
+
+    /**
+     * Returns the cached String representation of this Expression in the provided format. Expressions
+     * that are expensive to render override this and {@code setCachedString} to memoize their Strings,
+     * which are also reused when rendering any Expression that contains them.
+     *
+     * @param format  The format of the String.
+     * @return        The cached String, or null if it isn't cached.
+     */
+    protected String getCachedString(Format format) {
+        return null;
+    }
+
+    /**
+     * Caches the String representation of this Expression in the provided format. By default,
+     * nothing is cached.
+     *
+     * @param format  The format of the String.
+     * @param str     The String.
+     */
+    protected void setCachedString(Format format, String str) {}
+
+    /**
+     * Writes this Expression in the provided format. Subexpressions should be written by calling
+     * {@code out.appendExpression(subexpression, format)} on them.
+     *
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this Expression in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    protected abstract void internalRender(ExpressionWriter out, Format format) throws IOException;
 
     /**
      * Attempts to compute a numerical exact value for this Expression.
@@ -519,22 +794,760 @@ public abstract class Expression {
         for(Pair<String, Expression> variable: variableValues) {
             variables.putIfAbsent(variable.first(), variable.second());
         }
-        return internalEvaluate(variables);
+        return evaluate(variables, new HashMap<>());
+    }
+
+    /**
+     * Computes the exact value of this Expression using multi-modular evaluation.
+     *
+     * @return  The result of evaluating this Expression.
+     * @throws  ArithmeticException If this Expression contains Variables.
+     * @see     #evaluateMultiModular(ArrayList)
+     */
+    public Expression evaluateMultiModular() {
+        return evaluateMultiModular(new ArrayList<>());
+    }
+
+    /**
+     * Computes the exact value of this Expression, given values of the variables, by evaluating it
+     * modulo many word sized primes in parallel and reconstructing the rational result. This is much
+     * faster than {@code evaluate} when intermediate values are large. Expressions that cannot be
+     * evaluated modulo a prime, such as Powers with non-integer exponents, are evaluated with
+     * {@code evaluate} instead.
+     *
+     * @param variableValues  The values to substitute into the variables. If a Variable appears more than
+     * one, the value that appears first is taken.
+     * @return                The result of evaluating this expression.
+     * @throws                ArithmeticException If the value of a variable in this expression is missing.
+     * @see                   MultiModularEvaluator
+     */
+    public Expression evaluateMultiModular(ArrayList<Pair<String, Expression>> variableValues) {
+        HashMap<String, Expression> variables = new HashMap<>();
+        for(Pair<String, Expression> variable: variableValues) {
+            variables.putIfAbsent(variable.first(), variable.second());
+        }
+        return MultiModularEvaluator.evaluate(this, variables);
+    }
+
+    /**
+     * Evaluates this Expression, given values of the variables, in {@code double} arithmetic if that
+     * is accurate enough, with the default tolerance.
+     *
+     * @param variableValues  The values to substitute into the variables. If a Variable appears more than
+     * one, the value that appears first is taken.
+     * @return                The result, which records whether the {@code double} or exact path was taken.
+     * @throws                ArithmeticException If the value of a variable in this expression is missing.
+     * @see                   #evaluateAdaptive(ArrayList, double)
+     */
+    public AdaptiveEvaluator.Result evaluateAdaptive(ArrayList<Pair<String, Expression>> variableValues) {
+        return evaluateAdaptive(variableValues, AdaptiveEvaluator.DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Evaluates this Expression, given values of the variables, in {@code double} arithmetic with a
+     * running error bound. If the bound is within the relative tolerance, the {@code double} result is
+     * returned, and otherwise this Expression is evaluated exactly with {@code evaluate}.
+     *
+     * @param variableValues  The values to substitute into the variables. If a Variable appears more than
+     * one, the value that appears first is taken.
+     * @param tolerance       The maximum relative error of a {@code double} result.
+     * @return                The result, which records whether the {@code double} or exact path was taken.
+     * @throws                IllegalArgumentException If {@code tolerance} is not positive.
+     * @throws                ArithmeticException If the value of a variable in this expression is missing.
+     * @see                   AdaptiveEvaluator
+     */
+    public AdaptiveEvaluator.Result evaluateAdaptive(ArrayList<Pair<String, Expression>> variableValues, double tolerance) {
+        HashMap<String, Expression> variables = new HashMap<>();
+        for(Pair<String, Expression> variable: variableValues) {
+            variables.putIfAbsent(variable.first(), variable.second());
+        }
+        return AdaptiveEvaluator.evaluate(this, variables, tolerance);
+    }
+
+    /**
+     * Approximates the value of this Expression to a number of decimal places. Irrational constants
+     * and Powers are approximated too, and every subexpression is only computed as precisely as the
+     * result needs.
+     *
+     * @param digits  The number of decimal places.
+     * @return        A BigDecimal with {@code digits} decimal places that differs from the exact value
+     * of this Expression by at most {@code 10^-digits}.
+     * @throws        IllegalArgumentException If {@code digits} is negative.
+     * @throws        ArithmeticException If this Expression contains Variables or is not a real number.
+     * @see           Approximator
+     */
+    public BigDecimal approximate(int digits) {
+        return Approximator.approximate(this, digits);
+    }
+
+    /**
+     * Determines the sign of this Expression, which is constant. Most signs are found with
+     * {@code double} interval arithmetic, and the rest with approximations that get more precise
+     * until they exclude zero. Zero is only returned if this Expression is proven to be zero.
+     *
+     * @return  {@code 1}, {@code 0}, or {@code -1} if this Expression is positive, zero or negative.
+     * @throws  ArithmeticException If this Expression contains Variables, is not a real number, or
+     * can't be told apart from zero without being proven to be zero.
+     * @see     SignEvaluator
+     */
+    public int signum() {
+        return SignEvaluator.signum(this);
+    }
+
+    /**
+     * Compares the value of this Expression with the value of another Expression. Both Expressions
+     * must be constant.
+     *
+     * @param expression  The Expression to compare with.
+     * @return            A negative number, zero, or a positive number if this Expression is less
+     * than, equal to, or greater than {@code expression}.
+     * @throws            ArithmeticException If either Expression contains Variables or is not a real
+     * number, or if they can't be told apart without being proven to be equal.
+     * @see               SignEvaluator
+     */
+    public int compareTo(Expression expression) {
+        return SignEvaluator.compare(this, expression);
+    }
+
+    /**
+     * Substitutes values for some of the Variables of this Expression and folds every subexpression
+     * that no longer depends on a free Variable, leaving a residual Expression in the remaining
+     * Variables. Subexpressions that don't contain a bound Variable are reused as is.
+     *
+     * <p>Residuals are cached by this Expression and the bindings of its own Variables, so
+     * specializing the same Expression with the same values again returns the cached residual.</p>
+     *
+     * @param bindings  The values to substitute into the Variables. Bindings of Variables that don't
+     * appear in this Expression are ignored.
+     * @return          The residual Expression, which is this Expression if no Variable is bound.
+     * @throws          ArithmeticException If substituting the values divides by zero.
+     */
+    public Expression specialize(Map<Variable, Expression> bindings) {
+        TreeMap<Integer, Expression> boundValues = new TreeMap<>();
+        HashMap<String, Expression> variableValues = new HashMap<>();
+        for(Map.Entry<Variable, Expression> binding: bindings.entrySet()) {
+            if(!containsVariable(binding.getKey())) continue;
+            boundValues.put(binding.getKey().getId(), binding.getValue());
+            variableValues.put(binding.getKey().getName(), binding.getValue());
+        }
+        if(boundValues.isEmpty()) return this;
+
+        Pair<Expression, TreeMap<Integer, Expression>> key = new Pair<>(this, boundValues);
+        synchronized(residuals) {
+            Expression residual = residuals.get(key);
+            if(residual != null) return residual;
+        }
+
+        int[] boundIds = new int[boundValues.size()];
+        int i = 0;
+        for(int id: boundValues.keySet()) boundIds[i++] = id;
+        HashMap<Expression, Expression> values = new HashMap<>();
+        Expression residual = fold(new ExpressionVisitor<Expression>() {
+            @Override
+            public boolean preVisit(Expression expression) {
+                return expression.containsAnyVariable(boundIds);
+            }
+
+            @Override
+            public Expression postVisit(Expression expression, ArrayList<Expression> childResults) {
+                // the children are already in values, so evaluating only combines them
+                if(!expression.containsAnyVariable(boundIds)) return expression;
+                return expression.internalEvaluate(variableValues, values);
+            }
+        }, values);
+        synchronized(residuals) {
+            residuals.put(key, residual);
+        }
+        return residual;
+    }
+
+    /**
+     * Attempts to compute a numerical exact value for this Expression, given the values to
+     * substitute, reusing the values of subexpressions that have already been evaluated.
+     *
+     * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed, where each Expression is
+     * mapped to its value. The value of this Expression is added to it.
+     * @return                The result of evaluating this Expression.
+     * @throws                ArithmeticException If the value of a variable in this Expression is missing.
+     */
+    final protected Expression evaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
+        Expression value = values.get(this);
+        if(value != null) return value;
+        return fold((expression, childResults) -> expression.internalEvaluate(variableValues, values), values);
     }
 
     /**
      * Attempts to compute a numerical exact value for this Expression, given the values to substitute.
+     * The values of subexpressions should be found by calling {@code evaluate(variableValues, values)}
+     * on them.
      *
      * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
      * @return                The result of evaluating this Expression.
      * @throws                ArithmeticException If the value of a variable in this Expression is missing.
      */
-    protected abstract Expression internalEvaluate(HashMap<String, Expression> variableValues);
+    protected abstract Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values);
+
+    /**
+     * Returns the derivative of this Expression with respect to the provided Variable.
+     *
+     * <p>The derivative of each distinct subexpression is computed only once, and subexpressions
+     * that are equal share the same derivative. As a result, the size of the derivative is linear
+     * in the number of distinct subexpressions, even for deeply nested Products.</p>
+     *
+     * @param variable  The Variable to differentiate with respect to.
+     * @return          The derivative of this Expression.
+     * @throws          ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    public Expression differentiate(Variable variable) {
+        return differentiate(variable, new HashMap<>());
+    }
+
+    /**
+     * Returns the higher-order derivative of this Expression with respect to the provided Variable.
+     *
+     * @param variable  The Variable to differentiate with respect to.
+     * @param order     The number of times to differentiate, which is non-negative.
+     * @return          The derivative of the specified order.
+     * @throws          ArithmeticException If the derivative cannot be expressed without logarithms.
+     * @throws          IllegalArgumentException If {@code order} is negative.
+     */
+    public Expression differentiate(Variable variable, int order) {
+        if(order < 0) throw new IllegalArgumentException("Expression: Negative order of derivative");
+        Variable[] variables = new Variable[order];
+        for(int i = 0; i < order; i++) variables[i] = variable;
+        return differentiate(variables);
+    }
+
+    /**
+     * Returns the mixed partial derivative of this Expression, differentiating with respect to the
+     * provided Variables in order. Each derivative contains the subexpressions of the previous one,
+     * so derivatives that were already computed with respect to the same Variable are reused.
+     *
+     * @param variables  The Variables to differentiate with respect to, in order.
+     * @return           The mixed partial derivative.
+     * @throws           ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    public Expression differentiate(Variable... variables) {
+        HashMap<Variable, HashMap<Expression, Expression>> derivatives = new HashMap<>();
+        Expression result = this;
+        for(Variable variable: variables) {
+            derivatives.putIfAbsent(variable, new HashMap<>());
+            result = result.differentiate(variable, derivatives.get(variable));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the derivative of this Expression with respect to the provided Variable, reusing
+     * the derivatives of subexpressions that have already been computed.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed, where each Expression is
+     * mapped to its derivative. The derivative of this Expression is added to it.
+     * @return             The derivative of this Expression.
+     * @throws             ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    final protected Expression differentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        Expression derivative = derivatives.get(this);
+        if(derivative != null) return derivative;
+        return fold((expression, childResults) -> expression.internalDifferentiate(variable, derivatives), derivatives);
+    }
+
+    /**
+     * Computes the derivative of this Expression with respect to the provided Variable. The
+     * derivatives of subexpressions should be found by calling
+     * {@code differentiate(variable, derivatives)} on them.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             The derivative of this Expression.
+     * @throws             ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    protected abstract Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives);
+
+    /**
+     * Determines whether or not this Expression is probably equal to zero, with the default error bound.
+     *
+     * @return  True if this Expression is probably equal to zero.
+     * @see     #isProbablyZero(double)
+     */
+    public boolean isProbablyZero() {
+        return isProbablyZero(DEFAULT_ERROR_BOUND);
+    }
+
+    /**
+     * <p>Determines whether or not this Expression is probably equal to zero, by evaluating it at
+     * random points modulo random primes below {@code 2^31}.</p>
+     *
+     * <p>If this Expression can be evaluated modulo a prime and is zero, the result is always true.
+     * Otherwise, by the Schwartz-Zippel lemma, a nonzero rational function whose numerator has degree
+     * {@code d} vanishes at a random point modulo a prime {@code p} with probability at most
+     * {@code d/p}, so enough points are tried to make the probability of incorrectly returning true
+     * at most {@code errorBound}.</p>
+     *
+     * <p>Expressions that cannot be evaluated modulo a prime, such as Powers with non-integer
+     * exponents and the constants {@code e} and {@code pi}, fall back to {@code isSymbolicallyZero},
+     * as do Expressions whose degree is too large or whose denominators vanish at too many points.
+     * This fallback never returns true for an Expression that isn't zero, but it only decides the
+     * Expressions that {@code SignEvaluator} can prove to be zero, and Expressions with Variables that
+     * simplify to zero. Other zero Expressions, such as {@code (x^(1/2))^2 - x} or a constant with
+     * nested radicals, may be reported as not zero.</p>
+     *
+     * @param errorBound  The maximum probability of an incorrect result, strictly between 0 and 1.
+     * @return            True if this Expression is probably equal to zero.
+     * @throws            IllegalArgumentException if {@code errorBound} is not strictly between 0 and 1.
+     */
+    public boolean isProbablyZero(double errorBound) {
+        if(!(errorBound > 0 && errorBound < 1))
+            throw new IllegalArgumentException("Expression: Error bound must be strictly between 0 and 1");
+        if(this instanceof BigRational) return equals(BigRational.ZERO);
+
+        // each point has at most a (degree / modulus) chance of being a false zero
+        long degree = getDegreeHint();
+        double errorPerPoint = (double)degree/(1L << (MODULUS_BIT_LENGTH-1));
+        if(errorPerPoint >= 0.5) return isSymbolicallyZero();
+        int numPoints = 1;
+        if(errorPerPoint > 0) numPoints = Math.max(1, (int)Math.ceil(Math.log(errorBound)/Math.log(errorPerPoint)));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int vanishingPoints = 0;
+        for(int i = 0; i < numPoints;) {
+            long modulus = BigInteger.probablePrime(MODULUS_BIT_LENGTH, random).longValue();
+            try {
+                if(evaluateModulo(modulus, new HashMap<>(), new HashMap<>()) != 0) return false;
+                i++;
+            } catch(UnsupportedOperationException e) {
+                return isSymbolicallyZero();
+            } catch(ArithmeticException e) {// a denominator vanished, so pick another point
+                if(++vanishingPoints > MAX_VANISHING_POINTS) return isSymbolicallyZero();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether or not this Expression is zero without evaluating it modulo a prime, by
+     * simplifying it and comparing it with zero. A constant Expression that doesn't simplify to zero
+     * is zero if its sign is zero, which {@code SignEvaluator} only returns once it has proven it.
+     *
+     * @return  True if this Expression is proven to be zero, and false if it isn't zero or can't be
+     * proven to be zero.
+     * @see     SignEvaluator
+     */
+    private boolean isSymbolicallyZero() {
+        Expression simplified = simplify();
+        if(simplified.equals(BigRational.ZERO)) return true;
+        if(!simplified.isConstant()) return false;
+        try {
+            return simplified.signum() == 0;
+        } catch(ArithmeticException e) {// not a real number, or can't be proven to be zero
+            return false;
+        }
+    }
+
+    /**
+     * Determines whether or not this Expression is probably equal to the provided Expression, with
+     * the default error bound.
+     *
+     * @param expression  The Expression to compare with.
+     * @return            True if the Expressions are probably equal.
+     * @see               #isProbablyZero(double)
+     */
+    public boolean probablyEquals(Expression expression) {
+        return probablyEquals(expression, DEFAULT_ERROR_BOUND);
+    }
+
+    /**
+     * Determines whether or not this Expression is probably equal to the provided Expression, by
+     * checking whether their difference is probably zero.
+     *
+     * @param expression  The Expression to compare with.
+     * @param errorBound  The maximum probability of an incorrect result, strictly between 0 and 1.
+     * @return            True if the Expressions are probably equal.
+     * @throws            IllegalArgumentException if {@code errorBound} is not strictly between 0 and 1.
+     * @see               #isProbablyZero(double)
+     */
+    public boolean probablyEquals(Expression expression, double errorBound) {
+        if(equals(expression)) return true;
+        return subtract(expression).isProbablyZero(errorBound);
+    }
+
+    /**
+     * Evaluates this Expression modulo a prime, reusing the residues of subexpressions that have
+     * already been evaluated.
+     *
+     * @param modulus         The prime modulus, which is less than {@code 2^31}.
+     * @param variableValues  The residues of the Variables. Variables without a residue are assigned
+     * a random one, which is added to the map.
+     * @param residues        The residues that have already been computed, where each Expression is
+     * mapped to its residue. The residue of this Expression is added to it.
+     * @return                The residue of this Expression.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If this Expression cannot be evaluated modulo a prime.
+     */
+    final protected long evaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        Long residue = residues.get(this);
+        if(residue != null) return residue;
+        return fold((expression, childResults) -> expression.internalEvaluateModulo(modulus, variableValues, residues), residues);
+    }
+
+    /**
+     * Evaluates this Expression modulo a prime. The residues of subexpressions should be found by
+     * calling {@code evaluateModulo(modulus, variableValues, residues)} on them.
+     *
+     * @param modulus         The prime modulus, which is less than {@code 2^31}.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                The residue of this Expression.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If this Expression cannot be evaluated modulo a prime.
+     */
+    protected abstract long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues);
+
+    /**
+     * Computes an upper bound on the degree of the numerator of this Expression, when it is written
+     * as a rational function of its Variables, from the degree hints of its children. This is called
+     * by {@code computeMetadata}, after the metadata of the children is known.
+     *
+     * @return  The bound, or {@code Long.MAX_VALUE} if this Expression is not a rational function.
+     * The default is zero, which is the degree of a constant.
+     */
+    protected long computeDegreeHint() {
+        return 0;
+    }
+
+    /**
+     * Computes the domain restrictions that this Expression adds to those of its children, such as
+     * the divisors of a Product being nonzero. This is called by {@code computeMetadata}, after the
+     * metadata of the children is known.
+     *
+     * @return  The restrictions. The default is {@code DomainRestrictions.NONE}.
+     */
+    protected DomainRestrictions computeDomainRestrictions() {
+        return DomainRestrictions.NONE;
+    }
+
+    /**
+     * Computes the cached size, depth, degree hint, variable ids and domain restrictions of this
+     * Expression from those of its children. This must be called once the children of this Expression
+     * are final, and Expressions with no children other than Variables keep the defaults of a constant leaf.
+     */
+    final protected void computeMetadata() {
+        long size = 1;
+        int depth = 0;
+        int[] variableIds = (this instanceof Variable) ? new int[] {((Variable)this).getId()} : NO_VARIABLES;
+        for(Expression child: getChildren()) {
+            size = saturatedAdd(size, child.size);
+            depth = Math.max(depth, child.depth);
+            if(child.variableIds.length > 0) {
+                variableIds = (variableIds.length == 0) ? child.variableIds : mergeVariableIds(variableIds, child.variableIds);
+            }
+        }
+        this.size = size;
+        this.depth = depth+1;
+        this.variableIds = variableIds;
+        this.degreeHint = computeDegreeHint();
+        DomainRestrictions domainRestrictions = computeDomainRestrictions();
+        for(Expression child: getChildren()) domainRestrictions = domainRestrictions.union(child.domainRestrictions);
+        this.domainRestrictions = domainRestrictions;
+    }
+
+    /**
+     * Returns the restrictions on the Variables outside of which this Expression is undefined, in
+     * constant time. These are built up as Expressions are combined, so they include the divisors
+     * that have been cancelled, such as the {@code x} in {@code x/x}.
+     *
+     * @return  The domain restrictions.
+     */
+    public DomainRestrictions getDomainRestrictions() {
+        return domainRestrictions;
+    }
+
+    /**
+     * Returns an Expression equal to this Expression whose domain restrictions also include the
+     * provided restrictions. This is used when an Expression simplifies to one of its parts, so that
+     * the restrictions of the parts that were cancelled are kept. Variables and the constants
+     * {@code e} and {@code pi} are compared by reference, so they are wrapped in a Product of a
+     * single factor instead of being copied.
+     *
+     * @param restrictions  The restrictions to add.
+     * @return              This Expression if it already has the restrictions, and otherwise a
+     * shallow copy or a wrapper of it with the combined restrictions.
+     */
+    final protected Expression withDomainRestrictions(DomainRestrictions restrictions) {
+        DomainRestrictions combined = domainRestrictions.union(restrictions);
+        if(combined == domainRestrictions) return this;
+        if(this instanceof Variable || this == BigNumber.E || this == BigNumber.PI) return new Product(this, combined);
+        try {
+            Expression copy = (Expression)clone();
+            copy.domainRestrictions = combined;
+            return copy;
+        } catch(CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in the tree of this Expression, in constant time.
+     *
+     * @return  The size, counting a shared subexpression once for every time it appears, and
+     * saturating at {@code Long.MAX_VALUE}.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of nodes on the longest path from this Expression to a leaf, in constant time.
+     *
+     * @return  The depth, which is one for a leaf.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns an upper bound on the degree of the numerator of this Expression, when it is written
+     * as a rational function of its Variables, in constant time.
+     *
+     * @return  The bound, or {@code Long.MAX_VALUE} if this Expression is not a rational function.
+     */
+    public long getDegreeHint() {
+        return degreeHint;
+    }
+
+    /**
+     * Returns the ids of the Variables in this Expression.
+     *
+     * @return  A new array of the ids, in increasing order.
+     * @see     Variable#getId()
+     */
+    public int[] getVariableIds() {
+        return variableIds.clone();
+    }
+
+    /**
+     * Returns the number of distinct Variables in this Expression, in constant time.
+     *
+     * @return  The number of Variables.
+     */
+    public int getNumVariables() {
+        return variableIds.length;
+    }
+
+    /**
+     * Checks whether this Expression contains no Variables, in constant time.
+     *
+     * @return  True if this Expression is constant.
+     */
+    public boolean isConstant() {
+        return variableIds.length == 0;
+    }
+
+    /**
+     * Checks whether this Expression contains a Variable, in logarithmic time.
+     *
+     * @param variable  The Variable.
+     * @return          True if {@code variable} appears in this Expression.
+     */
+    public boolean containsVariable(Variable variable) {
+        return Arrays.binarySearch(variableIds, variable.getId()) >= 0;
+    }
+
+    /**
+     * Checks whether this Expression contains any of the Variables with the provided ids.
+     *
+     * @param ids  The variable ids, in increasing order.
+     * @return     True if one of the Variables appears in this Expression.
+     */
+    private boolean containsAnyVariable(int[] ids) {
+        for(int i = 0, j = 0; i < ids.length && j < variableIds.length;) {
+            if(ids[i] == variableIds[j]) return true;
+            if(ids[i] < variableIds[j]) i++;
+            else j++;
+        }
+        return false;
+    }
 
     /**
      * Attempts to reduce the complexity of this Expression by manipulating it algebraically.
      *
      * @return  A simplified Expression that is equivalent to this Expression.
      */
-    public abstract Expression simplify();
+    public Expression simplify() {
+        return simplify(new HashMap<>());
+    }
+
+    /**
+     * Attempts to reduce the complexity of this Expression, reusing the simplified forms of
+     * subexpressions that have already been simplified.
+     *
+     * @param simplified  The simplified forms that have already been computed, where each Expression
+     * is mapped to its simplified form. The simplified form of this Expression is added to it.
+     * @return            A simplified Expression that is equivalent to this Expression.
+     */
+    final protected Expression simplify(HashMap<Expression, Expression> simplified) {
+        Expression result = simplified.get(this);
+        if(result != null) return result;
+        return fold((expression, childResults) -> expression.internalSimplify(simplified), simplified);
+    }
+
+    /**
+     * Attempts to reduce the complexity of this Expression by manipulating it algebraically. The
+     * simplified forms of subexpressions should be found by calling {@code simplify(simplified)} on them.
+     *
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            A simplified Expression that is equivalent to this Expression.
+     */
+    protected abstract Expression internalSimplify(HashMap<Expression, Expression> simplified);
+
+    /**
+     * Returns the children of this Expression, which are the subexpressions visited by {@code fold}.
+     * A Sum has each of its terms followed by its coefficient, a Product has each of its factors
+     * followed by its exponent, and a Power has its base followed by its exponent.
+     *
+     * @return  A new list of the children, which is empty if this Expression has none.
+     */
+    public ArrayList<Expression> getChildren() {
+        return new ArrayList<>();
+    }
+
+    /**
+     * Computes a result for this Expression by visiting every node in post-order.
+     *
+     * @param <R>      The type of the result of each node.
+     * @param visitor  The visitor that computes the result of each node.
+     * @return         The result of this Expression.
+     * @see            #fold(ExpressionVisitor, HashMap)
+     */
+    public <R> R fold(ExpressionVisitor<R> visitor) {
+        return fold(visitor, null);
+    }
+
+    /**
+     * Computes a result for this Expression by visiting every node in post-order, using an explicit
+     * stack instead of recursion so that the depth of this Expression is only limited by memory.
+     *
+     * <p>If a map of results is provided, the result of each node is added to it, and nodes that
+     * already have a result are not visited again. This visits each distinct subexpression only
+     * once, which is much faster when subexpressions are shared.</p>
+     *
+     * @param <R>      The type of the result of each node.
+     * @param visitor  The visitor that computes the result of each node.
+     * @param results  The results that have already been computed, where each Expression is mapped
+     * to its result, or null if results should not be memoized.
+     * @return         The result of this Expression.
+     */
+    public <R> R fold(ExpressionVisitor<R> visitor, HashMap<Expression, R> results) {
+        if(results != null && results.containsKey(this)) return results.get(this);
+        ArrayDeque<FoldFrame<R>> stack = new ArrayDeque<>();
+        stack.push(new FoldFrame<>(this, visitor));
+        while(true) {
+            FoldFrame<R> frame = stack.peek();
+            if(frame.nextChild < frame.children.size()) {
+                Expression child = frame.children.get(frame.nextChild++);
+                R childResult = (results == null) ? null : results.get(child);
+                if(childResult != null || (results != null && results.containsKey(child))) frame.childResults.add(childResult);
+                else stack.push(new FoldFrame<>(child, visitor));
+                continue;
+            }
+
+            stack.pop();
+            R result = visitor.postVisit(frame.expression, frame.childResults);
+            if(results != null) results.put(frame.expression, result);
+            if(stack.isEmpty()) return result;
+            stack.peek().childResults.add(result);
+        }
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * A trie of variable names, which finds the longest name that starts at an index of a String in
+     * time proportional to the length of the name.
+     */
+    private static class NameTrie {
+
+        /**
+         * The tries of the names that continue with each character.
+         */
+        private HashMap<Character, NameTrie> children = new HashMap<>();
+
+        /**
+         * True if a name ends at this node.
+         */
+        private boolean isName;
+
+        /**
+         * Adds a name to this trie.
+         *
+         * @param name  The name.
+         */
+        private void add(String name) {
+            NameTrie node = this;
+            for(int i = 0; i < name.length(); i++) node = node.children.computeIfAbsent(name.charAt(i), c -> new NameTrie());
+            node.isName = true;
+        }
+
+        /**
+         * Finds the longest name in this trie that starts at an index of a String.
+         *
+         * @param str    The String.
+         * @param begin  The index that the name starts at.
+         * @return       The length of the name, or zero if there is no such name.
+         */
+        private int match(String str, int begin) {
+            int length = 0;
+            NameTrie node = this;
+            for(int i = begin; i < str.length(); i++) {
+                node = node.children.get(str.charAt(i));
+                if(node == null) break;
+                if(node.isName) length = i+1-begin;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * A node on the stack of {@code fold}, along with the results of the children that have been
+     * visited so far.
+     *
+     * @param <R>  The type of the result of each node.
+     */
+    private static class FoldFrame<R> {
+
+        /**
+         * The node.
+         */
+        private Expression expression;
+
+        /**
+         * The children of the node that will be visited.
+         */
+        private ArrayList<Expression> children;
+
+        /**
+         * The index of the next child to visit.
+         */
+        private int nextChild;
+
+        /**
+         * The results of the children that have been visited.
+         */
+        private ArrayList<R> childResults;
+
+        /**
+         * Constructs a frame for a node that has just been reached.
+         *
+         * @param expression  The node.
+         * @param visitor     The visitor, whose pre-order hook is called on the node.
+         */
+        private FoldFrame(Expression expression, ExpressionVisitor<R> visitor) {
+            this.expression = expression;
+            children = visitor.preVisit(expression) ? expression.getChildren() : new ArrayList<>();
+            childResults = new ArrayList<>(children.size());
+        }
+    }
 }
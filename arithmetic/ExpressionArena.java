@@ -0,0 +1,1041 @@
+package arithmetic;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import algebra.Variable;
+import arithmetic.Expression.Format;
+
+/**
+ * <p>A compact representation of Expressions that stores every node in flat primitive arrays
+ * instead of one object per node, for Expressions with millions of nodes.</p>
+ *
+ * <p>Nodes are identified by their index and are only ever appended, so the children of a node
+ * always have smaller indices than the node itself. The nodes of an arena are stored as follows:</p>
+ * <ul>
+ * <li>{@code kinds} contains the {@code Kind} of each node.</li>
+ * <li>{@code childOffsets} and {@code children} contain the children of each node, where the
+ * children of node {@code i} are {@code children[childOffsets[i]]} to {@code children[childOffsets[i+1]-1]}.
+ * A Sum has pairs of children containing each term and its coefficient, a Product has pairs
+ * containing each factor and its exponent, and a Power has its base and exponent.</li>
+ * <li>{@code data} contains the constant of each rational node, which indexes {@code numerators}
+ * and {@code denominators} if it is non-negative and is the complement of an index of
+ * {@code bigRationals} otherwise, and the id of each Variable node.</li>
+ * </ul>
+ *
+ * <p>Evaluation, traversal and rendering work directly on these arrays and do not create any
+ * Expression objects, except for the exponents in the denominator of a LaTeX Product. Evaluation
+ * and traversal do not use recursion, so they work on arbitrarily deep Expressions.</p>
+ *
+ * <p>Note: like the Expressions they are converted from, the Sums, Products and Powers in an arena
+ * are assumed to already be in normal form and are not simplified.</p>
+ *
+ * @author Ricky Qin
+ */
+public class ExpressionArena {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The kinds of nodes in an arena.
+     */
+    public static enum Kind {
+        RATIONAL, E, PI, VARIABLE, SUM, PRODUCT, POWER
+    }
+
+    /**
+     * The kinds of nodes, indexed by their ordinal.
+     */
+    final private static Kind[] KINDS = Kind.values();
+
+    /**
+     * The initial capacity of the arrays of an arena.
+     */
+    final private static int INITIAL_CAPACITY = 16;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the children of an Expression in the order they are stored in an arena.
+     *
+     * @param expression  The Expression.
+     * @return            The children of the Expression.
+     */
+    private static ArrayList<Expression> getChildren(Expression expression) {
+        ArrayList<Expression> expressionChildren = new ArrayList<>();
+        if(expression instanceof Sum) {
+            for(Map.Entry<Expression, BigRational> term: (Sum)expression) {
+                expressionChildren.add(term.getKey());
+                expressionChildren.add(term.getValue());
+            }
+        } else if(expression instanceof Product) {
+            for(Map.Entry<Expression, Expression> term: (Product)expression) {
+                expressionChildren.add(term.getKey());
+                expressionChildren.add(term.getValue());
+            }
+        } else if(expression instanceof Power) {
+            expressionChildren.add(((Power)expression).getBase());
+            expressionChildren.add(((Power)expression).getExponent());
+        }
+        return expressionChildren;
+    }
+
+    /**
+     * Converts a rational constant that doesn't fit in a {@code long} to a {@code double}.
+     *
+     * @param value  The constant.
+     * @return       The closest {@code double} to the constant.
+     */
+    private static double toDouble(BigRational value) {
+        return new BigDecimal(value.getNumeratorValue()).divide(new BigDecimal(value.getDenominatorValue()),
+            MathContext.DECIMAL64).doubleValue();
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The number of nodes.
+     */
+    private int size;
+
+    /**
+     * The ordinal of the {@code Kind} of each node.
+     */
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The offset of the first child of each node in {@code children}, followed by the total number of children.
+     */
+    private int[] childOffsets = new int[INITIAL_CAPACITY+1];
+
+    /**
+     * The children of every node.
+     */
+    private int[] children = new int[INITIAL_CAPACITY];
+
+    /**
+     * The constant of each rational node, or the id of each Variable node.
+     */
+    private int[] data = new int[INITIAL_CAPACITY];
+
+    /**
+     * The numerators of the rational constants that fit in a {@code long}.
+     */
+    private long[] numerators = new long[INITIAL_CAPACITY];
+
+    /**
+     * The denominators of the rational constants that fit in a {@code long}.
+     */
+    private long[] denominators = new long[INITIAL_CAPACITY];
+
+    /**
+     * The number of rational constants that fit in a {@code long}.
+     */
+    private int numSmallRationals;
+
+    /**
+     * The rational constants that do not fit in a {@code long}.
+     */
+    private ArrayList<BigRational> bigRationals = new ArrayList<>();
+
+    /**
+     * The name of each Variable id.
+     */
+    private ArrayList<String> variableNames = new ArrayList<>();
+
+    /**
+     * The node of each Variable, mapped from its name.
+     */
+    private HashMap<String, Integer> variableNodes = new HashMap<>();
+
+    /**
+     * The node of {@code e}, or {@code -1} if it hasn't been added.
+     */
+    private int eNode = -1;
+
+    /**
+     * The node of {@code pi}, or {@code -1} if it hasn't been added.
+     */
+    private int piNode = -1;
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Returns a String describing the size of this arena.
+     *
+     * @return  A String describing this arena.
+     */
+    @Override
+    public String toString() {
+        return "ExpressionArena[" + size + " nodes, " + childOffsets[size] + " children, " +
+            variableNames.size() + " variables]";
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the number of nodes in this arena.
+     *
+     * @return  The number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the kind of a node.
+     *
+     * @param node  The node.
+     * @return      The kind of the node.
+     */
+    public Kind getKind(int node) {
+        checkNode(node);
+        return KINDS[kinds[node]];
+    }
+
+    /**
+     * Returns the number of children of a node.
+     *
+     * @param node  The node.
+     * @return      The number of children.
+     */
+    public int getNumChildren(int node) {
+        checkNode(node);
+        return childOffsets[node+1]-childOffsets[node];
+    }
+
+    /**
+     * Returns a child of a node.
+     *
+     * @param node   The node.
+     * @param index  The index of the child.
+     * @return       The child.
+     * @throws       IndexOutOfBoundsException If the node does not have a child with the index.
+     */
+    public int getChild(int node, int index) {
+        if(index < 0 || index >= getNumChildren(node)) throw new IndexOutOfBoundsException("ExpressionArena: Invalid child index");
+        return children[childOffsets[node]+index];
+    }
+
+    /**
+     * Returns the value of a rational node.
+     *
+     * @param node  The node.
+     * @return      The value of the node.
+     * @throws      IllegalArgumentException If the node is not rational.
+     */
+    public BigRational getRational(int node) {
+        if(getKind(node) != Kind.RATIONAL) throw new IllegalArgumentException("ExpressionArena: Node is not rational");
+        int constant = data[node];
+        if(constant < 0) return bigRationals.get(~constant);
+        return new BigRational(BigInteger.valueOf(numerators[constant]), BigInteger.valueOf(denominators[constant]));
+    }
+
+    /**
+     * Returns the id of a Variable node, which is the index of its value when the node is evaluated.
+     *
+     * @param node  The node.
+     * @return      The id of the Variable.
+     * @throws      IllegalArgumentException If the node is not a Variable.
+     */
+    public int getVariableId(int node) {
+        if(getKind(node) != Kind.VARIABLE) throw new IllegalArgumentException("ExpressionArena: Node is not a Variable");
+        return data[node];
+    }
+
+    /**
+     * Returns the name of a Variable id.
+     *
+     * @param id  The id of the Variable.
+     * @return    The name of the Variable.
+     */
+    public String getVariableName(int id) {
+        return variableNames.get(id);
+    }
+
+    /**
+     * Returns the number of distinct Variables in this arena.
+     *
+     * @return  The number of Variables.
+     */
+    public int getNumVariables() {
+        return variableNames.size();
+    }
+
+    /**
+     * Adds an Expression and all of its subexpressions to this arena. Subexpressions that are
+     * equal are only added once.
+     *
+     * @param expression  The Expression.
+     * @return            The node of the Expression.
+     * @throws            IllegalArgumentException If the Expression contains an unsupported type of node.
+     */
+    public int add(Expression expression) {
+        HashMap<Expression, Integer> nodes = new HashMap<>();
+        ArrayDeque<Expression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while(!stack.isEmpty()) {
+            Expression top = stack.peek();
+            if(nodes.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+
+            // add the children first
+            ArrayList<Expression> topChildren = getChildren(top);
+            boolean isReady = true;
+            for(Expression child: topChildren) {
+                if(!nodes.containsKey(child)) {
+                    stack.push(child);
+                    isReady = false;
+                }
+            }
+            if(!isReady) continue;
+            stack.pop();
+
+            int[] childNodes = new int[topChildren.size()];
+            for(int i = 0; i < childNodes.length; i++) childNodes[i] = nodes.get(topChildren.get(i));
+            int node;
+            if(top instanceof Sum) node = addNode(Kind.SUM, childNodes, 0);
+            else if(top instanceof Product) node = addNode(Kind.PRODUCT, childNodes, 0);
+            else if(top instanceof Power) node = addNode(Kind.POWER, childNodes, 0);
+            else if(top instanceof BigRational) node = addRational((BigRational)top);
+            else if(top == BigNumber.E) node = addE();
+            else if(top == BigNumber.PI) node = addPi();
+            else if(top instanceof Variable) node = addVariable(((Variable)top).getName());
+            else throw new IllegalArgumentException("ExpressionArena: Cannot add " + top.getClass().getName());
+            nodes.put(top, node);
+        }
+        return nodes.get(expression);
+    }
+
+    /**
+     * Adds a rational constant.
+     *
+     * @param value  The value of the constant.
+     * @return       The new node.
+     */
+    public int addRational(BigRational value) {
+        BigInteger numerator = value.getNumeratorValue();
+        BigInteger denominator = value.getDenominatorValue();
+        int constant;
+        if(numerator.bitLength() < Long.SIZE && denominator.bitLength() < Long.SIZE) {
+            if(numSmallRationals == numerators.length) {
+                numerators = Arrays.copyOf(numerators, 2*numSmallRationals);
+                denominators = Arrays.copyOf(denominators, 2*numSmallRationals);
+            }
+            numerators[numSmallRationals] = numerator.longValue();
+            denominators[numSmallRationals] = denominator.longValue();
+            constant = numSmallRationals++;
+        } else {
+            bigRationals.add(value);
+            constant = ~(bigRationals.size()-1);
+        }
+        return addNode(Kind.RATIONAL, new int[0], constant);
+    }
+
+    /**
+     * Adds the constant {@code e}, if it hasn't already been added.
+     *
+     * @return  The node of {@code e}.
+     */
+    public int addE() {
+        if(eNode == -1) eNode = addNode(Kind.E, new int[0], 0);
+        return eNode;
+    }
+
+    /**
+     * Adds the constant {@code pi}, if it hasn't already been added.
+     *
+     * @return  The node of {@code pi}.
+     */
+    public int addPi() {
+        if(piNode == -1) piNode = addNode(Kind.PI, new int[0], 0);
+        return piNode;
+    }
+
+    /**
+     * Adds a Variable, if a Variable with the same name hasn't already been added.
+     *
+     * @param name  The name of the Variable.
+     * @return      The node of the Variable.
+     */
+    public int addVariable(String name) {
+        Integer node = variableNodes.get(name);
+        if(node != null) return node;
+        node = addNode(Kind.VARIABLE, new int[0], variableNames.size());
+        variableNames.add(name);
+        variableNodes.put(name, node);
+        return node;
+    }
+
+    /**
+     * Adds a Sum of existing nodes. The terms must be in the same order and form as the terms of
+     * a Sum Expression, with the rational constant, if any, as the last term with a term of one.
+     *
+     * @param terms         The nodes of the terms.
+     * @param coefficients  The rational nodes of the coefficients.
+     * @return              The new node.
+     * @throws              IllegalArgumentException If a coefficient is not rational or a node doesn't exist.
+     */
+    public int addSum(int[] terms, int[] coefficients) {
+        if(terms.length != coefficients.length) throw new IllegalArgumentException("ExpressionArena: Mismatched number of coefficients");
+        int[] childNodes = new int[2*terms.length];
+        for(int i = 0; i < terms.length; i++) {
+            if(getKind(coefficients[i]) != Kind.RATIONAL) throw new IllegalArgumentException("ExpressionArena: Coefficient is not rational");
+            checkNode(terms[i]);
+            childNodes[2*i] = terms[i];
+            childNodes[2*i+1] = coefficients[i];
+        }
+        return addNode(Kind.SUM, childNodes, 0);
+    }
+
+    /**
+     * Adds a Product of existing nodes. The factors must be in the same order and form as the
+     * factors of a Product Expression, with the rational coefficient, if any, as the first factor
+     * with an exponent of one.
+     *
+     * @param factors    The nodes of the factors.
+     * @param exponents  The nodes of the exponents.
+     * @return           The new node.
+     * @throws           IllegalArgumentException If a node doesn't exist.
+     */
+    public int addProduct(int[] factors, int[] exponents) {
+        if(factors.length != exponents.length) throw new IllegalArgumentException("ExpressionArena: Mismatched number of exponents");
+        int[] childNodes = new int[2*factors.length];
+        for(int i = 0; i < factors.length; i++) {
+            checkNode(factors[i]);
+            checkNode(exponents[i]);
+            childNodes[2*i] = factors[i];
+            childNodes[2*i+1] = exponents[i];
+        }
+        return addNode(Kind.PRODUCT, childNodes, 0);
+    }
+
+    /**
+     * Adds a Power of existing nodes, which must be in the same form as a Power Expression.
+     *
+     * @param base      The node of the base.
+     * @param exponent  The node of the exponent.
+     * @return          The new node.
+     * @throws          IllegalArgumentException If a node doesn't exist.
+     */
+    public int addPower(int base, int exponent) {
+        checkNode(base);
+        checkNode(exponent);
+        return addNode(Kind.POWER, new int[] {base, exponent}, 0);
+    }
+
+    /**
+     * Converts a node back into an Expression. Nodes that are shared in this arena are shared in
+     * the Expression.
+     *
+     * @param root  The node.
+     * @return      The Expression.
+     */
+    public Expression toExpression(int root) {
+        Expression[] expressions = new Expression[root+1];
+        forEachReachable(root, node -> {
+            int offset = childOffsets[node];
+            int numChildren = childOffsets[node+1]-offset;
+            switch(KINDS[kinds[node]]) {
+                case RATIONAL: expressions[node] = getRational(node); break;
+                case E: expressions[node] = BigNumber.E; break;
+                case PI: expressions[node] = BigNumber.PI; break;
+                case VARIABLE: expressions[node] = Variable.of(variableNames.get(data[node])); break;
+                case SUM: {
+                    Expression[] terms = new Expression[numChildren/2];
+                    BigRational[] coefficients = new BigRational[numChildren/2];
+                    for(int i = 0; i < terms.length; i++) {
+                        terms[i] = expressions[children[offset+2*i]];
+                        coefficients[i] = (BigRational)expressions[children[offset+2*i+1]];
+                    }
+                    expressions[node] = new Sum(terms, coefficients);
+                    break;
+                }
+                case PRODUCT: {
+                    Expression[] factors = new Expression[numChildren/2];
+                    Expression[] exponents = new Expression[numChildren/2];
+                    for(int i = 0; i < factors.length; i++) {
+                        factors[i] = expressions[children[offset+2*i]];
+                        exponents[i] = expressions[children[offset+2*i+1]];
+                    }
+                    expressions[node] = new Product(factors, exponents);
+                    break;
+                }
+                case POWER: expressions[node] = new Power(expressions[children[offset]], expressions[children[offset+1]]); break;
+            }
+        });
+        return expressions[root];
+    }
+
+    /**
+     * Visits every node that can be reached from a node exactly once, visiting each node after
+     * all of its children.
+     *
+     * @param root    The node to start from.
+     * @param action  The action to perform on each node.
+     */
+    public void forEachReachable(int root, IntConsumer action) {
+        boolean[] isReachable = markReachable(root);
+        for(int node = 0; node <= root; node++) {
+            if(isReachable[node]) action.accept(node);
+        }
+    }
+
+    /**
+     * Counts the number of distinct nodes that can be reached from a node, including itself.
+     *
+     * @param root  The node to start from.
+     * @return      The number of nodes.
+     */
+    public int countReachable(int root) {
+        int count = 0;
+        for(boolean isReachable: markReachable(root)) {
+            if(isReachable) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Evaluates a node using floating point arithmetic.
+     *
+     * @param root            The node.
+     * @param variableValues  The values to substitute into the Variables, mapped from their names.
+     * @return                The value of the node.
+     * @throws                ArithmeticException If the value of a Variable is missing.
+     */
+    public double evaluate(int root, Map<String, Double> variableValues) {
+        double[] values = new double[variableNames.size()];
+        boolean[] isDefined = new boolean[variableNames.size()];
+        for(int id = 0; id < values.length; id++) {
+            Double value = variableValues.get(variableNames.get(id));
+            if(value != null) {
+                values[id] = value;
+                isDefined[id] = true;
+            }
+        }
+        return evaluate(root, values, isDefined);
+    }
+
+    /**
+     * Evaluates a node using floating point arithmetic.
+     *
+     * @param root            The node.
+     * @param variableValues  The values to substitute into the Variables, indexed by their ids.
+     * @return                The value of the node.
+     * @throws                ArithmeticException If the value of a Variable is missing.
+     */
+    public double evaluate(int root, double[] variableValues) {
+        boolean[] isDefined = new boolean[variableNames.size()];
+        Arrays.fill(isDefined, 0, Math.min(isDefined.length, variableValues.length), true);
+        return evaluate(root, variableValues, isDefined);
+    }
+
+    /**
+     * Evaluates a node using floating point arithmetic.
+     *
+     * @param root            The node.
+     * @param variableValues  The values to substitute into the Variables, indexed by their ids.
+     * @param isDefined       Whether or not the value of each Variable is defined.
+     * @return                The value of the node.
+     * @throws                ArithmeticException If the value of a Variable is missing.
+     */
+    private double evaluate(int root, double[] variableValues, boolean[] isDefined) {
+        double[] values = new double[root+1];
+        forEachReachable(root, node -> {
+            int offset = childOffsets[node];
+            int end = childOffsets[node+1];
+            switch(KINDS[kinds[node]]) {
+                case RATIONAL: {
+                    int constant = data[node];
+                    values[node] = (constant < 0) ? toDouble(bigRationals.get(~constant)) :
+                        (double)numerators[constant]/denominators[constant];
+                    break;
+                }
+                case E: values[node] = Math.E; break;
+                case PI: values[node] = Math.PI; break;
+                case VARIABLE: {
+                    if(!isDefined[data[node]]) throw new ArithmeticException("ExpressionArena: Undefined variable value");
+                    values[node] = variableValues[data[node]];
+                    break;
+                }
+                case SUM: {
+                    double value = 0;
+                    for(int i = offset; i < end; i += 2) value += values[children[i]]*values[children[i+1]];
+                    values[node] = value;
+                    break;
+                }
+                case PRODUCT: {
+                    double value = 1;
+                    for(int i = offset; i < end; i += 2) value *= pow(values[children[i]], children[i+1], values[children[i+1]]);
+                    values[node] = value;
+                    break;
+                }
+                case POWER: values[node] = pow(values[children[offset]], children[offset+1], values[children[offset+1]]); break;
+            }
+        });
+        return values[root];
+    }
+
+    /**
+     * Raises a value to the power of the value of a node. Since {@code Math.pow} returns NaN for a
+     * negative base and a non-integer exponent, a negative base is raised to a rational exponent
+     * with an odd denominator using its absolute value, negated if the numerator is odd.
+     *
+     * @param base      The value of the base.
+     * @param exponent  The node of the exponent.
+     * @param value     The value of the exponent.
+     * @return          The power, which is NaN if it is not a real number.
+     */
+    private double pow(double base, int exponent, double value) {
+        if(!(base < 0) || kinds[exponent] != Kind.RATIONAL.ordinal()) return Math.pow(base, value);
+        int constant = data[exponent];
+        boolean isNumeratorOdd, isDenominatorOdd;
+        if(constant < 0) {
+            BigRational rational = bigRationals.get(~constant);
+            isNumeratorOdd = rational.getNumeratorValue().testBit(0);
+            isDenominatorOdd = rational.getDenominatorValue().testBit(0);
+        } else {
+            isNumeratorOdd = (numerators[constant] & 1) != 0;
+            isDenominatorOdd = (denominators[constant] & 1) != 0;
+        }
+        if(!isDenominatorOdd) return Double.NaN;// not a real number
+        double power = Math.pow(-base, value);
+        return isNumeratorOdd ? -power : power;
+    }
+
+    /**
+     * Returns the String representation of a node in the provided format, which is the same as
+     * the String representation of the Expression it was converted from.
+     *
+     * @param node    The node.
+     * @param format  The format of the String.
+     * @return        The String representation.
+     */
+    public String toString(int node, Format format) {
+        StringBuilder str = new StringBuilder();
+        try {
+            render(node, str, format);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return str.toString();
+    }
+
+    /**
+     * Writes the String representation of a node in the provided format.
+     *
+     * @param node    The node.
+     * @param out     The {@code Appendable} to write to.
+     * @param format  The format of the String.
+     * @throws        IOException If {@code out} throws one.
+     */
+    public void render(int node, Appendable out, Format format) throws IOException {
+        checkNode(node);
+        renderNode(new ExpressionWriter(out), node, format);
+    }
+
+    /**
+     * Writes a node.
+     *
+     * @param out     The ExpressionWriter to write to.
+     * @param node    The node.
+     * @param format  The format to write it in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderNode(ExpressionWriter out, int node, Format format) throws IOException {
+        switch(KINDS[kinds[node]]) {
+            case RATIONAL: renderRational(out, node, format); break;
+            case E: out.appendExpression(BigNumber.E, format); break;
+            case PI: out.appendExpression(BigNumber.PI, format); break;
+            case VARIABLE: {
+                if(format == Format.FUNCTION) out.append('"').append(variableNames.get(data[node])).append('"');
+                else if(format == Format.NORMAL) out.appendName(variableNames.get(data[node]));
+                else out.append(variableNames.get(data[node]));
+                break;
+            }
+            case SUM: {
+                if(format == Format.FUNCTION) renderFunction(out, "Sum(", node);
+                else renderSum(out, node, format);
+                break;
+            }
+            case PRODUCT: {
+                if(format == Format.FUNCTION) renderFunction(out, "Product(", node);
+                else if(format == Format.LATEX) renderLatexProduct(out, node);
+                else renderProduct(out, node);
+                break;
+            }
+            case POWER: {
+                int offset = childOffsets[node];
+                if(format == Format.FUNCTION) {
+                    out.append("Power(");
+                    renderNode(out, children[offset], format);
+                    out.append(", ");
+                    renderNode(out, children[offset+1], format);
+                    out.append(')');
+                } else renderPower(out, children[offset], children[offset+1], null, format);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Writes a rational node in the same way as a BigRational.
+     *
+     * @param out     The ExpressionWriter to write to.
+     * @param node    The node.
+     * @param format  The format to write it in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderRational(ExpressionWriter out, int node, Format format) throws IOException {
+        int constant = data[node];
+        if(constant < 0) {
+            out.appendExpression(bigRationals.get(~constant), format);
+            return;
+        }
+        long numerator = numerators[constant];
+        long denominator = denominators[constant];
+        if(format == Format.FUNCTION) out.append('"');
+        if(denominator == 1) out.append(Long.toString(numerator));
+        else if(format == Format.LATEX) {
+            if(numerator < 0) out.append('-');
+            out.append("\\dfrac{").append(Long.toString(Math.abs(numerator)));
+            out.append("}{").append(Long.toString(denominator)).append('}');
+        } else out.append(Long.toString(numerator)).append('/').append(Long.toString(denominator));
+        if(format == Format.FUNCTION) out.append('"');
+    }
+
+    /**
+     * Writes a Sum or Product node in the function format.
+     *
+     * @param out   The ExpressionWriter to write to.
+     * @param name  The name of the function, including the opening bracket.
+     * @param node  The node.
+     * @throws      IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderFunction(ExpressionWriter out, String name, int node) throws IOException {
+        out.append(name);
+        for(int i = childOffsets[node]; i < childOffsets[node+1]; i += 2) {
+            if(i > childOffsets[node]) out.append(", ");
+            out.append('{');
+            renderNode(out, children[i], Format.FUNCTION);
+            out.append(':');
+            renderNode(out, children[i+1], Format.FUNCTION);
+            out.append('}');
+        }
+        out.append(')');
+    }
+
+    /**
+     * Writes a Sum node in the normal or LaTeX format.
+     *
+     * @param out     The ExpressionWriter to write to.
+     * @param node    The node.
+     * @param format  The format to write it in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderSum(ExpressionWriter out, int node, Format format) throws IOException {
+        for(int i = childOffsets[node]; i < childOffsets[node+1]; i += 2) {
+            int term = children[i];
+            int coefficient = children[i+1];
+            // do not print plus sign for the first term
+            if(i > childOffsets[node] && rationalSignum(coefficient) >= 0) out.append('+');
+
+            if(isRational(term, 1, 1)) {
+                renderNode(out, coefficient, format);
+                break;// always the last entry
+            }
+
+            // coefficients of one are implicit and should not be displayed
+            if(isRational(coefficient, 1, 1));
+            else if(isRational(coefficient, -1, 1)) out.append('-');
+            else {
+                renderNode(out, coefficient, format);
+                out.separateDigits((format == Format.LATEX) ? "\\cdot" : "*");
+            }
+
+            if(kinds[term] == Kind.SUM.ordinal()) renderInBrackets(out, term, format);
+            else renderNode(out, term, format);
+        }
+    }
+
+    /**
+     * Writes a Product node in the normal format.
+     *
+     * @param out   The ExpressionWriter to write to.
+     * @param node  The node.
+     * @throws      IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderProduct(ExpressionWriter out, int node) throws IOException {
+        int offset = childOffsets[node];
+        boolean isEmpty = true;
+        if(kinds[children[offset]] == Kind.RATIONAL.ordinal()) {
+            int coefficient = children[offset];
+            if(isRational(coefficient, -1, 1)) {
+                out.append('-');
+                isEmpty = false;
+            } else if(!isRational(coefficient, 1, 1)) {
+                renderNode(out, coefficient, Format.NORMAL);
+                isEmpty = false;
+            }
+            offset += 2;
+        }
+
+        for(int i = offset; i < childOffsets[node+1]; i += 2) {
+            if(!isEmpty) out.separateDigits("*");
+            if(kinds[children[i]] == Kind.SUM.ordinal() && isRational(children[i+1], 1, 1))
+                renderInBrackets(out, children[i], Format.NORMAL);
+            else renderPower(out, children[i], children[i+1], null, Format.NORMAL);
+            isEmpty = false;
+        }
+    }
+
+    /**
+     * Writes a Product node in the LaTeX format, placing the factors with negative exponents in
+     * the denominator of a fraction.
+     *
+     * @param out   The ExpressionWriter to write to.
+     * @param node  The node.
+     * @throws      IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderLatexProduct(ExpressionWriter out, int node) throws IOException {
+        int offset = childOffsets[node];
+        BigRational coefficient = BigRational.ONE;
+        if(kinds[children[offset]] == Kind.RATIONAL.ordinal()) {
+            coefficient = getRational(children[offset]);
+            offset += 2;
+        }
+        BigRational coefficientNum = coefficient.getNumerator().abs();
+        BigRational coefficientDen = coefficient.getDenominator();
+        int numItemsTop = coefficientNum.equals(BigRational.ONE) ? 0 : 1;
+        int numItemsBottom = coefficientDen.equals(BigRational.ONE) ? 0 : 1;
+        for(int i = offset; i < childOffsets[node+1]; i += 2) {
+            if(isOnTop(children[i+1])) numItemsTop++;
+            else numItemsBottom++;
+        }
+
+        if(coefficient.signum() == -1) out.append('-');
+        if(numItemsBottom > 0) out.append("\\dfrac{");
+        if(numItemsTop == 0) out.appendExpression(BigRational.ONE, Format.LATEX);
+        else renderLatexHalf(out, node, offset, coefficientNum, true, numItemsTop);
+        if(numItemsBottom > 0) {
+            out.append("}{");
+            renderLatexHalf(out, node, offset, coefficientDen, false, numItemsBottom);
+            out.append('}');
+        }
+    }
+
+    /**
+     * Writes the top or bottom half of a Product node in the LaTeX format.
+     *
+     * @param out          The ExpressionWriter to write to.
+     * @param node         The node.
+     * @param offset       The offset of the first factor that isn't the coefficient.
+     * @param coefficient  The part of the coefficient in this half.
+     * @param isTop        True if this is the top half.
+     * @param numItems     The number of items in this half.
+     * @throws             IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderLatexHalf(ExpressionWriter out, int node, int offset, BigRational coefficient,
+        boolean isTop, int numItems) throws IOException {
+        boolean isFirstItem = true;
+        if(!coefficient.equals(BigRational.ONE)) {
+            out.appendExpression(coefficient, Format.LATEX);
+            isFirstItem = false;
+        }
+        for(int i = offset; i < childOffsets[node+1]; i += 2) {
+            if(isOnTop(children[i+1]) != isTop) continue;
+
+            if(!isFirstItem) out.separateDigits("\\cdot");
+            isFirstItem = false;
+            boolean printBrackets = kinds[children[i]] == Kind.SUM.ordinal() && numItems > 1;
+            if(printBrackets) out.appendOpeningBracket(Format.LATEX);
+            if(isTop) renderPower(out, children[i], children[i+1], null, Format.LATEX);
+            else renderPower(out, children[i], -1, toExpression(children[i+1]).negate(), Format.LATEX);
+            if(printBrackets) out.appendClosingBracket(Format.LATEX);
+        }
+    }
+
+    /**
+     * Writes a Power in the normal or LaTeX format, in the same way as {@code Power.renderPower}.
+     * The exponent is either a node or an Expression.
+     *
+     * @param out                 The ExpressionWriter to write to.
+     * @param base                The node of the base.
+     * @param exponent            The node of the exponent, used if {@code exponentExpression} is null.
+     * @param exponentExpression  The exponent, or null if it is a node.
+     * @param format              The format to write it in.
+     * @throws                    IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderPower(ExpressionWriter out, int base, int exponent, Expression exponentExpression,
+        Format format) throws IOException {
+        boolean isExponentRational, isExponentOne, isExponentInteger, isExponentVariable;
+        if(exponentExpression == null) {
+            isExponentRational = kinds[exponent] == Kind.RATIONAL.ordinal();
+            isExponentOne = isRational(exponent, 1, 1);
+            isExponentInteger = isExponentRational && isInteger(exponent);
+            isExponentVariable = kinds[exponent] == Kind.VARIABLE.ordinal();
+        } else {
+            isExponentRational = exponentExpression instanceof BigRational;
+            isExponentOne = exponentExpression.equals(BigRational.ONE);
+            isExponentInteger = isExponentRational && ((BigRational)exponentExpression).isInteger();
+            isExponentVariable = exponentExpression instanceof Variable;
+        }
+
+        // print the base
+        boolean printBaseBrackets = true;
+        if(isExponentOne) printBaseBrackets = false;
+        if(kinds[base] == Kind.RATIONAL.ordinal() && rationalSignum(base) >= 0 && isInteger(base))
+            printBaseBrackets = false;
+        if(kinds[base] == Kind.VARIABLE.ordinal()) printBaseBrackets = false;
+
+        boolean printExponent = false;
+        boolean printExponentBrackets = false;
+        if(!isExponentOne) {
+            printExponent = true;
+            printExponentBrackets = !isExponentInteger && !isExponentVariable;
+        }
+        if(!printExponent) printBaseBrackets = false;
+
+        if(printBaseBrackets) renderInBrackets(out, base, format);
+        else renderNode(out, base, format);
+        if(printExponent) {
+            out.append('^');
+            if(format == Format.LATEX) out.append('{');
+            else if(printExponentBrackets) out.appendOpeningBracket(format);
+            if(exponentExpression == null) renderNode(out, exponent, format);
+            else out.appendExpression(exponentExpression, format);
+            if(format == Format.LATEX) out.append('}');
+            else if(printExponentBrackets) out.appendClosingBracket(format);
+        }
+    }
+
+    /**
+     * Writes a node surrounded with a pair of round brackets.
+     *
+     * @param out     The ExpressionWriter to write to.
+     * @param node    The node.
+     * @param format  The format to write it in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderInBrackets(ExpressionWriter out, int node, Format format) throws IOException {
+        out.appendOpeningBracket(format);
+        renderNode(out, node, format);
+        out.appendClosingBracket(format);
+    }
+
+    /**
+     * Determines whether or not a factor of a Product belongs on the top of the fraction in the
+     * LaTeX format.
+     *
+     * @param exponent  The node of the exponent of the factor.
+     * @return          False if the exponent is negative, and true otherwise.
+     */
+    private boolean isOnTop(int exponent) {
+        if(kinds[exponent] == Kind.RATIONAL.ordinal()) return rationalSignum(exponent) != -1;
+        if(kinds[exponent] == Kind.PRODUCT.ordinal()) {
+            int first = children[childOffsets[exponent]];
+            return kinds[first] != Kind.RATIONAL.ordinal() || rationalSignum(first) != -1;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether or not a node is a rational constant with the provided value.
+     *
+     * @param node         The node.
+     * @param numerator    The numerator of the value.
+     * @param denominator  The positive denominator of the value, in lowest terms.
+     * @return             True if the node is rational and has the value.
+     */
+    private boolean isRational(int node, long numerator, long denominator) {
+        if(kinds[node] != Kind.RATIONAL.ordinal() || data[node] < 0) return false;
+        return numerators[data[node]] == numerator && denominators[data[node]] == denominator;
+    }
+
+    /**
+     * Determines whether or not a rational node is an integer.
+     *
+     * @param node  The rational node.
+     * @return      True if the value is an integer.
+     */
+    private boolean isInteger(int node) {
+        int constant = data[node];
+        return (constant < 0) ? bigRationals.get(~constant).isInteger() : denominators[constant] == 1;
+    }
+
+    /**
+     * Returns the sign of a rational node.
+     *
+     * @param node  The rational node.
+     * @return      {@code -1}, {@code 0} or {@code 1} if the value is negative, zero or positive.
+     */
+    private int rationalSignum(int node) {
+        int constant = data[node];
+        return (constant < 0) ? bigRationals.get(~constant).signum() : Long.signum(numerators[constant]);
+    }
+
+    /**
+     * Marks every node that can be reached from a node, by going through the nodes from the
+     * largest index to the smallest. Since children have smaller indices than their parents,
+     * every node is marked before it is reached.
+     *
+     * @param root  The node to start from.
+     * @return      Whether or not each node up to {@code root} can be reached.
+     */
+    private boolean[] markReachable(int root) {
+        checkNode(root);
+        boolean[] isReachable = new boolean[root+1];
+        isReachable[root] = true;
+        for(int node = root; node >= 0; node--) {
+            if(!isReachable[node]) continue;
+            for(int i = childOffsets[node]; i < childOffsets[node+1]; i++) isReachable[children[i]] = true;
+        }
+        return isReachable;
+    }
+
+    /**
+     * Appends a node.
+     *
+     * @param kind        The kind of the node.
+     * @param childNodes  The children of the node.
+     * @param value       The constant or Variable id of the node.
+     * @return            The new node.
+     */
+    private int addNode(Kind kind, int[] childNodes, int value) {
+        if(size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, 2*size);
+            data = Arrays.copyOf(data, 2*size);
+            childOffsets = Arrays.copyOf(childOffsets, 2*size+1);
+        }
+        int offset = childOffsets[size];
+        if(offset+childNodes.length > children.length)
+            children = Arrays.copyOf(children, Math.max(2*children.length, offset+childNodes.length));
+        System.arraycopy(childNodes, 0, children, offset, childNodes.length);
+
+        kinds[size] = (byte)kind.ordinal();
+        data[size] = value;
+        childOffsets[size+1] = offset+childNodes.length;
+        return size++;
+    }
+
+    /**
+     * Checks that a node exists.
+     *
+     * @param node  The node.
+     * @throws      IndexOutOfBoundsException If the node doesn't exist.
+     */
+    private void checkNode(int node) {
+        if(node < 0 || node >= size) throw new IndexOutOfBoundsException("ExpressionArena: Invalid node " + node);
+    }
+}
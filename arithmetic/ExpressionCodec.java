@@ -0,0 +1,670 @@
+package arithmetic;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import algebra.Variable;
+
+/**
+ * <p>A utility class that converts Expressions to and from a compact, versioned binary format.</p>
+ *
+ * <p>An encoded Expression is a record made up of a fixed header followed by a payload:</p>
+ * <ul>
+ * <li>The header is the 4 byte magic number {@code MAGIC}, the 1 byte format version and the
+ * 4 byte length of the payload, so that records can be read from a stream one at a time.</li>
+ * <li>The payload starts with a string table containing the names of every Variable.</li>
+ * <li>It is followed by a table of nodes, where every distinct subexpression appears exactly once
+ * and only after all of its children. Children are referred to by how many nodes back they appear,
+ * so shared subexpressions are stored once no matter how many times they are used. The last node
+ * is the Expression itself.</li>
+ * </ul>
+ *
+ * <p>All integers are stored as variable length quantities, with 7 bits per byte. BigRationals
+ * whose numerator and denominator fit in a {@code long} take as few bytes as their values need.</p>
+ *
+ * <p>Since the nodes are stored in normal form, decoding rebuilds Sums and Products directly
+ * without combining like terms or simplifying them again.</p>
+ *
+ * @author Ricky Qin
+ */
+public class ExpressionCodec {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The magic number at the start of every record, which is {@code "MTEX"} in ASCII.
+     */
+    final public static int MAGIC = 0x4D544558;
+
+    /**
+     * The version of the format written by this class.
+     */
+    final public static byte VERSION = 1;
+
+    /**
+     * The number of bytes in the header of a record.
+     */
+    final public static int HEADER_LENGTH = 9;
+
+    /**
+     * The largest buffer that is allocated for a payload read from a channel before any of it has
+     * been read. The buffer only grows as bytes arrive, so a corrupt payload length can't allocate
+     * much more memory than the channel actually provides.
+     */
+    final private static int INITIAL_PAYLOAD_CAPACITY = 1 << 16;
+
+    /**
+     * The tag of an integer node, followed by its zigzag encoded value.
+     */
+    final private static int TAG_INTEGER = 0;
+
+    /**
+     * The tag of a fraction node, followed by its zigzag encoded numerator and its denominator.
+     */
+    final private static int TAG_FRACTION = 1;
+
+    /**
+     * The tag of a BigRational node that doesn't fit in a {@code long}, followed by the lengths
+     * and two's complement bytes of its numerator and denominator.
+     */
+    final private static int TAG_BIG_RATIONAL = 2;
+
+    /**
+     * The tag of the constant {@code e}.
+     */
+    final private static int TAG_E = 3;
+
+    /**
+     * The tag of the constant {@code pi}.
+     */
+    final private static int TAG_PI = 4;
+
+    /**
+     * The tag of a Variable node, followed by the index of its name in the string table.
+     */
+    final private static int TAG_VARIABLE = 5;
+
+    /**
+     * The tag of a Sum node, followed by the number of terms and a pair of references to each
+     * term and its coefficient.
+     */
+    final private static int TAG_SUM = 6;
+
+    /**
+     * The tag of a Product node, followed by the number of factors and a pair of references to
+     * each factor and its exponent.
+     */
+    final private static int TAG_PRODUCT = 7;
+
+    /**
+     * The tag of a Power node, followed by references to its base and exponent.
+     */
+    final private static int TAG_POWER = 8;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Encodes an Expression into a record.
+     *
+     * @param expression  The Expression to encode.
+     * @return            A new array containing the record.
+     */
+    public static byte[] encode(Expression expression) {
+        Output record = new Encoder().writeRecord(expression);
+        return Arrays.copyOf(record.bytes, record.size);
+    }
+
+    /**
+     * Encodes an Expression and writes the record to a channel.
+     *
+     * @param expression  The Expression to encode.
+     * @param channel     The channel to write to.
+     * @throws            IOException If an I/O error occurs.
+     */
+    public static void encode(Expression expression, WritableByteChannel channel) throws IOException {
+        Output record = new Encoder().writeRecord(expression);
+        ByteBuffer buffer = ByteBuffer.wrap(record.bytes, 0, record.size);
+        while(buffer.hasRemaining()) channel.write(buffer);
+    }
+
+    /**
+     * Decodes a record into an Expression.
+     *
+     * @param bytes  The record.
+     * @return       The decoded Expression.
+     * @throws       IllegalArgumentException If the record is malformed.
+     */
+    public static Expression decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes a record that starts at the current position of a buffer into an Expression.
+     * The position of the buffer is advanced past the end of the record.
+     *
+     * @param buffer  The buffer.
+     * @return        The decoded Expression.
+     * @throws        IllegalArgumentException If the record is malformed.
+     */
+    public static Expression decode(ByteBuffer buffer) {
+        try {
+            int payloadLength = readHeader(buffer);
+            if(payloadLength > buffer.remaining()) throw new IllegalArgumentException("ExpressionCodec: Truncated record");
+            ByteBuffer payload = buffer.slice();
+            payload.limit(payloadLength);
+            buffer.position(buffer.position()+payloadLength);
+            return new Decoder(payload).readPayload();
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("ExpressionCodec: Truncated record");
+        }
+    }
+
+    /**
+     * Reads a single record from a channel and decodes it into an Expression.
+     *
+     * @param channel  The channel to read from.
+     * @return         The decoded Expression.
+     * @throws         IOException If an I/O error occurs.
+     * @throws         IllegalArgumentException If the record is malformed.
+     */
+    public static Expression decode(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, ByteBuffer.allocate(HEADER_LENGTH));
+        int payloadLength = readHeader(header);
+        ByteBuffer payload = readPayload(channel, payloadLength);
+        try {
+            return new Decoder(payload).readPayload();
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("ExpressionCodec: Truncated record");
+        }
+    }
+
+    /**
+     * Fills a buffer with bytes from a channel.
+     *
+     * @param channel  The channel to read from.
+     * @param buffer   The buffer to fill.
+     * @return         The buffer, flipped so that it can be read from.
+     * @throws         IOException If an I/O error occurs.
+     * @throws         IllegalArgumentException If the channel ends before the buffer is full.
+     */
+    private static ByteBuffer readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer) < 0) throw new IllegalArgumentException("ExpressionCodec: Truncated record");
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Reads the payload of a record from a channel, growing the buffer as bytes arrive instead of
+     * allocating the full length up front.
+     *
+     * @param channel        The channel to read from.
+     * @param payloadLength  The length of the payload given in the header.
+     * @return               A buffer containing the payload, flipped so that it can be read from.
+     * @throws               IOException If an I/O error occurs.
+     * @throws               IllegalArgumentException If the channel ends before the whole payload is read.
+     */
+    private static ByteBuffer readPayload(ReadableByteChannel channel, int payloadLength) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(Math.min(payloadLength, INITIAL_PAYLOAD_CAPACITY));
+        while(true) {
+            readFully(channel, payload);
+            if(payload.limit() == payloadLength) return payload;
+            // the buffer is full, so it is never more than twice the number of bytes read
+            ByteBuffer larger = ByteBuffer.allocate((int)Math.min(payloadLength, 2L*payload.capacity()));
+            larger.put(payload);
+            payload = larger;
+        }
+    }
+
+    /**
+     * Reads and validates the header of a record.
+     *
+     * @param buffer  The buffer positioned at the start of the header.
+     * @return        The length of the payload.
+     * @throws        IllegalArgumentException If the header is malformed or has an unsupported version.
+     */
+    private static int readHeader(ByteBuffer buffer) {
+        if(readInt(buffer) != MAGIC) throw new IllegalArgumentException("ExpressionCodec: Not an encoded Expression");
+        byte version = buffer.get();
+        if(version != VERSION) throw new IllegalArgumentException("ExpressionCodec: Unsupported version " + version);
+        int payloadLength = readInt(buffer);
+        if(payloadLength < 0) throw new IllegalArgumentException("ExpressionCodec: Negative payload length");
+        return payloadLength;
+    }
+
+    /**
+     * Reads a 4 byte big-endian integer, regardless of the byte order of the buffer.
+     *
+     * @param buffer  The buffer.
+     * @return        The integer.
+     */
+    private static int readInt(ByteBuffer buffer) {
+        int value = 0;
+        for(int i = 0; i < 4; i++) value = (value << 8) | (buffer.get() & 0xFF);
+        return value;
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * This class only contains static methods and should not be instantiated.
+     */
+    private ExpressionCodec() {}
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * Writes a single record.
+     */
+    private static class Encoder {
+
+        /**
+         * The index of every node that has been written, used to find shared subexpressions.
+         */
+        private HashMap<Expression, Integer> nodeIndices = new HashMap<>();
+
+        /**
+         * The index of every Variable name in the string table.
+         */
+        private HashMap<String, Integer> stringIndices = new HashMap<>();
+
+        /**
+         * The encoded node table, which is written after the string table once it is complete.
+         */
+        private Output nodes = new Output();
+
+        /**
+         * Writes a record containing an Expression.
+         *
+         * @param expression  The Expression.
+         * @return            The record.
+         */
+        private Output writeRecord(Expression expression) {
+            writeNode(expression);
+
+            Output out = new Output();
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(0);// the payload length, which is filled in at the end
+            out.writeVarLong(stringIndices.size());
+            String[] strings = new String[stringIndices.size()];
+            for(Map.Entry<String, Integer> string: stringIndices.entrySet()) strings[string.getValue()] = string.getKey();
+            for(String string: strings) out.writeBytes(string.getBytes(StandardCharsets.UTF_8));
+            out.writeVarLong(nodeIndices.size());
+            out.write(nodes.bytes, nodes.size);
+
+            int size = out.size;
+            out.size = HEADER_LENGTH-4;
+            out.writeInt(size-HEADER_LENGTH);
+            out.size = size;
+            return out;
+        }
+
+        /**
+         * Writes a node and all of its children that have not been written yet to the node table.
+         *
+         * @param expression  The Expression.
+         * @return            The index of the node.
+         */
+        private int writeNode(Expression expression) {
+            return expression.fold(this::writeNode, nodeIndices);
+        }
+
+        /**
+         * Writes a node whose children have all been written to the node table.
+         *
+         * @param expression  The Expression.
+         * @param children    The indices of the children of the node.
+         * @return            The index of the node.
+         */
+        private int writeNode(Expression expression, ArrayList<Integer> children) {
+            int index = nodeIndices.size();
+            if(expression instanceof Sum) {
+                nodes.writeByte(TAG_SUM);
+                writeChildren(index, children);
+            } else if(expression instanceof Product) {
+                nodes.writeByte(TAG_PRODUCT);
+                writeChildren(index, children);
+            } else if(expression instanceof Power) {
+                nodes.writeByte(TAG_POWER);
+                nodes.writeVarLong(index-children.get(0));
+                nodes.writeVarLong(index-children.get(1));
+            } else writeLeaf(expression);
+            return index;
+        }
+
+        /**
+         * Writes a node without children to the node table.
+         *
+         * @param expression  The Expression, which is a BigRational, a BigNumber constant or a Variable.
+         * @throws            IllegalArgumentException If the Expression cannot be encoded.
+         */
+        private void writeLeaf(Expression expression) {
+            if(expression instanceof BigRational) {
+                BigInteger numerator = ((BigRational)expression).getNumeratorValue();
+                BigInteger denominator = ((BigRational)expression).getDenominatorValue();
+                if(numerator.bitLength() < Long.SIZE && denominator.bitLength() < Long.SIZE) {
+                    if(denominator.equals(BigInteger.ONE)) {
+                        nodes.writeByte(TAG_INTEGER);
+                        nodes.writeVarLong(zigzag(numerator.longValue()));
+                    } else {
+                        nodes.writeByte(TAG_FRACTION);
+                        nodes.writeVarLong(zigzag(numerator.longValue()));
+                        nodes.writeVarLong(denominator.longValue());
+                    }
+                } else {
+                    nodes.writeByte(TAG_BIG_RATIONAL);
+                    nodes.writeBytes(numerator.toByteArray());
+                    nodes.writeBytes(denominator.toByteArray());
+                }
+            } else if(expression == BigNumber.E) nodes.writeByte(TAG_E);
+            else if(expression == BigNumber.PI) nodes.writeByte(TAG_PI);
+            else if(expression instanceof Variable) {
+                String name = ((Variable)expression).getName();
+                Integer stringIndex = stringIndices.get(name);
+                if(stringIndex == null) {
+                    stringIndex = stringIndices.size();
+                    stringIndices.put(name, stringIndex);
+                }
+                nodes.writeByte(TAG_VARIABLE);
+                nodes.writeVarLong(stringIndex);
+            } else throw new IllegalArgumentException("ExpressionCodec: Cannot encode " + expression.getClass().getName());
+        }
+
+        /**
+         * Writes the number of pairs of children of a node and a reference to each child.
+         *
+         * @param index     The index of the node.
+         * @param children  The indices of the children.
+         */
+        private void writeChildren(int index, ArrayList<Integer> children) {
+            nodes.writeVarLong(children.size()/2);
+            for(int child: children) nodes.writeVarLong(index-child);
+        }
+
+        /**
+         * Maps a signed integer to an unsigned one, so that integers with small absolute values
+         * are stored in few bytes.
+         *
+         * @param value  The signed integer.
+         * @return       {@code 2*value} if {@code value} is non-negative, and {@code -2*value - 1} otherwise.
+         */
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * A growable array of bytes.
+     */
+    private static class Output {
+
+        /**
+         * The bytes written so far.
+         */
+        private byte[] bytes = new byte[64];
+
+        /**
+         * The number of bytes written so far.
+         */
+        private int size;
+
+        /**
+         * Ensures that there is space for more bytes.
+         *
+         * @param length  The number of bytes that will be written.
+         */
+        private void ensureCapacity(int length) {
+            if(size+length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, size+length));
+        }
+
+        /**
+         * Writes a single byte.
+         *
+         * @param value  The byte, in the lowest 8 bits.
+         */
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte)value;
+        }
+
+        /**
+         * Writes a 4 byte big-endian integer.
+         *
+         * @param value  The integer.
+         */
+        private void writeInt(int value) {
+            for(int shift = 24; shift >= 0; shift -= 8) writeByte(value >>> shift);
+        }
+
+        /**
+         * Writes a non-negative integer using 7 bits per byte, where the highest bit of each byte
+         * indicates whether or not there are more bytes.
+         *
+         * @param value  The integer, which is treated as unsigned.
+         */
+        private void writeVarLong(long value) {
+            while((value & ~0x7FL) != 0) {
+                writeByte((int)(value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int)value);
+        }
+
+        /**
+         * Writes the start of an array of bytes.
+         *
+         * @param array   The bytes.
+         * @param length  The number of bytes to write.
+         */
+        private void write(byte[] array, int length) {
+            ensureCapacity(length);
+            System.arraycopy(array, 0, bytes, size, length);
+            size += length;
+        }
+
+        /**
+         * Writes an array of bytes, preceded by its length.
+         *
+         * @param array  The bytes.
+         */
+        private void writeBytes(byte[] array) {
+            writeVarLong(array.length);
+            write(array, array.length);
+        }
+    }
+
+    /**
+     * Reads the payload of a single record.
+     */
+    private static class Decoder {
+
+        /**
+         * The buffer containing the payload.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Constructs a Decoder that reads from the provided buffer.
+         *
+         * @param buffer  The buffer, positioned at the start of the payload.
+         */
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Reads the payload.
+         *
+         * @return  The Expression contained in the payload.
+         * @throws  IllegalArgumentException If the payload is malformed.
+         */
+        private Expression readPayload() {
+            int numStrings = readCount();
+            Variable[] variables = new Variable[numStrings];
+            for(int i = 0; i < numStrings; i++) {
+                byte[] name = new byte[readCount()];
+                buffer.get(name);
+                variables[i] = Variable.of(new String(name, StandardCharsets.UTF_8));
+            }
+
+            int numNodes = readCount();
+            if(numNodes == 0) throw new IllegalArgumentException("ExpressionCodec: Empty node table");
+            Expression[] nodes = new Expression[numNodes];
+            for(int i = 0; i < numNodes; i++) nodes[i] = readNode(i, nodes, variables);
+            if(buffer.hasRemaining()) throw new IllegalArgumentException("ExpressionCodec: Trailing bytes in record");
+            return nodes[numNodes-1];
+        }
+
+        /**
+         * Reads a node.
+         *
+         * @param index      The index of the node.
+         * @param nodes      The nodes that have been read so far.
+         * @param variables  The Variables in the string table.
+         * @return           The Expression represented by the node.
+         * @throws           IllegalArgumentException If the node is malformed.
+         */
+        private Expression readNode(int index, Expression[] nodes, Variable[] variables) {
+            int tag = buffer.get();
+            switch(tag) {
+                case TAG_INTEGER: return new BigRational(BigInteger.valueOf(unzigzag(readVarLong())));
+                case TAG_FRACTION: {
+                    long numerator = unzigzag(readVarLong());
+                    long denominator = readVarLong();
+                    if(denominator <= 0) throw new IllegalArgumentException("ExpressionCodec: Non-positive denominator");
+                    return new BigRational(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+                }
+                case TAG_BIG_RATIONAL: {
+                    BigInteger numerator = new BigInteger(readBytes());
+                    BigInteger denominator = new BigInteger(readBytes());
+                    if(denominator.signum() <= 0) throw new IllegalArgumentException("ExpressionCodec: Non-positive denominator");
+                    return new BigRational(numerator, denominator);
+                }
+                case TAG_E: return BigNumber.E;
+                case TAG_PI: return BigNumber.PI;
+                case TAG_VARIABLE: {
+                    int stringIndex = readLength();
+                    if(stringIndex >= variables.length) throw new IllegalArgumentException("ExpressionCodec: Invalid string reference");
+                    return variables[stringIndex];
+                }
+                case TAG_SUM: {
+                    int numTerms = readCount();
+                    Expression[] terms = new Expression[numTerms];
+                    BigRational[] coefficients = new BigRational[numTerms];
+                    for(int i = 0; i < numTerms; i++) {
+                        terms[i] = readReference(index, nodes);
+                        Expression coefficient = readReference(index, nodes);
+                        if(!(coefficient instanceof BigRational))
+                            throw new IllegalArgumentException("ExpressionCodec: Non-rational coefficient");
+                        coefficients[i] = (BigRational)coefficient;
+                    }
+                    return new Sum(terms, coefficients);
+                }
+                case TAG_PRODUCT: {
+                    int numFactors = readCount();
+                    Expression[] factors = new Expression[numFactors];
+                    Expression[] exponents = new Expression[numFactors];
+                    for(int i = 0; i < numFactors; i++) {
+                        factors[i] = readReference(index, nodes);
+                        exponents[i] = readReference(index, nodes);
+                    }
+                    return new Product(factors, exponents);
+                }
+                case TAG_POWER: {
+                    Expression base = readReference(index, nodes);
+                    Expression exponent = readReference(index, nodes);
+                    return new Power(base, exponent);
+                }
+                default: throw new IllegalArgumentException("ExpressionCodec: Unknown tag " + tag);
+            }
+        }
+
+        /**
+         * Reads a reference to a node that has already been read.
+         *
+         * @param index  The index of the node containing the reference.
+         * @param nodes  The nodes that have been read so far.
+         * @return       The referenced node.
+         * @throws       IllegalArgumentException If the reference does not point to an earlier node.
+         */
+        private Expression readReference(int index, Expression[] nodes) {
+            long distance = readVarLong();
+            if(distance <= 0 || distance > index) throw new IllegalArgumentException("ExpressionCodec: Invalid node reference");
+            return nodes[index-(int)distance];
+        }
+
+        /**
+         * Reads a non-negative integer using 7 bits per byte.
+         *
+         * @return  The integer.
+         * @throws  IllegalArgumentException If the integer is longer than 64 bits.
+         */
+        private long readVarLong() {
+            long value = 0;
+            for(int shift = 0; shift < Long.SIZE; shift += 7) {
+                byte b = buffer.get();
+                value |= (long)(b & 0x7F) << shift;
+                if(b >= 0) return value;
+            }
+            throw new IllegalArgumentException("ExpressionCodec: Malformed integer");
+        }
+
+        /**
+         * Reads a length or an index, which must fit in an {@code int}.
+         *
+         * @return  The length.
+         * @throws  IllegalArgumentException If it doesn't fit in an {@code int}.
+         */
+        private int readLength() {
+            long length = readVarLong();
+            if(length < 0 || length > Integer.MAX_VALUE) throw new IllegalArgumentException("ExpressionCodec: Invalid length");
+            return (int)length;
+        }
+
+        /**
+         * Reads the number of entries that follow, where every entry takes at least one byte. The
+         * count is checked against the remaining bytes before any arrays of that size are allocated.
+         *
+         * @return  The number of entries.
+         * @throws  IllegalArgumentException If there aren't enough bytes left for that many entries.
+         */
+        private int readCount() {
+            int count = readLength();
+            if(count > buffer.remaining()) throw new IllegalArgumentException("ExpressionCodec: Invalid length");
+            return count;
+        }
+
+        /**
+         * Reads an array of bytes, preceded by its length.
+         *
+         * @return  The bytes.
+         */
+        private byte[] readBytes() {
+            int length = readLength();
+            if(length == 0 || length > buffer.remaining()) throw new IllegalArgumentException("ExpressionCodec: Invalid length");
+            byte[] array = new byte[length];
+            buffer.get(array);
+            return array;
+        }
+
+        /**
+         * Reverses the zigzag encoding of a signed integer.
+         *
+         * @param value  The encoded integer.
+         * @return       The signed integer.
+         */
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
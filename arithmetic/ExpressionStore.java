@@ -0,0 +1,416 @@
+package arithmetic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A persistent, read-only store of Expressions identified by String keys, which is opened by
+ * memory mapping its file so that opening it takes the same time no matter how many Expressions
+ * it contains.</p>
+ *
+ * <p>The file contains a header, the records of every Expression in the format of
+ * {@code ExpressionCodec}, the keys, an index and a footer. The index is sorted by a 64 bit hash of
+ * each key and is searched directly in the mapped file, so nothing is read into the heap when the
+ * store is opened. An Expression is only decoded the first time it is accessed, after which it is
+ * kept in memory.</p>
+ *
+ * <p>Stores are created with an {@code ExpressionStore.Writer}.</p>
+ *
+ * <p>Note: since a single mapping is limited to 2GB, the records are mapped in segments of
+ * {@code SEGMENT_SIZE} bytes and no record crosses a segment boundary. The keys and the index must
+ * each be smaller than 2GB, which allows for over 80 million Expressions.</p>
+ *
+ * @author Ricky Qin
+ */
+public class ExpressionStore implements Closeable {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The magic number at the start and end of every store file, which is {@code "MTES"} in ASCII.
+     */
+    final public static int MAGIC = 0x4D544553;
+
+    /**
+     * The version of the file format.
+     */
+    final public static int VERSION = 1;
+
+    /**
+     * The number of bytes in the header, which contains the magic number and the version.
+     */
+    final private static int HEADER_LENGTH = 8;
+
+    /**
+     * The number of bytes in the footer, which contains the offsets of the keys and the index,
+     * the number of entries, the magic number and the version.
+     */
+    final private static int FOOTER_LENGTH = 32;
+
+    /**
+     * The number of bytes in each entry of the index, which contains the hash of the key, the
+     * offset of the key and the offset of the record.
+     */
+    final private static int INDEX_ENTRY_LENGTH = 24;
+
+    /**
+     * The size of each mapped segment of records. No record crosses a multiple of this offset.
+     */
+    final private static int SEGMENT_SIZE = 1 << 30;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Opens an existing store.
+     *
+     * @param path  The path of the store file.
+     * @return      The store.
+     * @throws      IOException If the file cannot be read or is not a valid store file.
+     */
+    public static ExpressionStore open(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ExpressionStore(channel);
+        }
+    }
+
+    /**
+     * Computes the 64 bit FNV-1a hash of a key.
+     *
+     * @param key  The UTF-8 bytes of the key.
+     * @return     The hash.
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for(byte b: key) {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The mapped segments of records, where segment {@code i} starts at file offset {@code i*SEGMENT_SIZE}.
+     */
+    private MappedByteBuffer[] segments;
+
+    /**
+     * The mapped keys, where each key is its length followed by its UTF-8 bytes.
+     */
+    private MappedByteBuffer keys;
+
+    /**
+     * The file offset of the keys.
+     */
+    private long keysOffset;
+
+    /**
+     * The mapped index.
+     */
+    private MappedByteBuffer index;
+
+    /**
+     * The number of entries in the index.
+     */
+    private int size;
+
+    /**
+     * The Expressions that have been decoded, where each index entry is mapped to its Expression.
+     */
+    private ConcurrentHashMap<Integer, Expression> materialized = new ConcurrentHashMap<>();
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a store by mapping the provided file.
+     *
+     * @param channel  The channel of the file.
+     * @throws         IOException If the file cannot be read or is not a valid store file.
+     */
+    private ExpressionStore(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if(fileSize < HEADER_LENGTH+FOOTER_LENGTH) throw new IOException("ExpressionStore: File is too short");
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+        if(header.getInt() != MAGIC) throw new IOException("ExpressionStore: Not a store file");
+        if(header.getInt() != VERSION) throw new IOException("ExpressionStore: Unsupported version");
+        ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, fileSize-FOOTER_LENGTH, FOOTER_LENGTH);
+        keysOffset = footer.getLong();
+        long indexOffset = footer.getLong();
+        long numEntries = footer.getLong();
+        if(footer.getInt() != MAGIC || footer.getInt() != VERSION) throw new IOException("ExpressionStore: Corrupt footer");
+        if(HEADER_LENGTH > keysOffset || keysOffset > indexOffset || numEntries < 0
+            || indexOffset+numEntries*INDEX_ENTRY_LENGTH != fileSize-FOOTER_LENGTH)
+            throw new IOException("ExpressionStore: Corrupt footer");
+        if(indexOffset-keysOffset > Integer.MAX_VALUE || numEntries*INDEX_ENTRY_LENGTH > Integer.MAX_VALUE)
+            throw new IOException("ExpressionStore: Keys or index are too large to map");
+
+        size = (int)numEntries;
+        keys = channel.map(FileChannel.MapMode.READ_ONLY, keysOffset, indexOffset-keysOffset);
+        index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, numEntries*INDEX_ENTRY_LENGTH);
+        segments = new MappedByteBuffer[(int)((keysOffset+SEGMENT_SIZE-1)/SEGMENT_SIZE)];
+        for(int i = 0; i < segments.length; i++) {
+            long start = (long)i*SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, keysOffset-start));
+        }
+    }
+
+// <---------------------- Methods Implemented for Interfaces ---------------------->
+
+    /**
+     * Closes this store. The mapped file is released once the store is no longer reachable, and
+     * Expressions that have already been returned remain valid.
+     */
+    @Override
+    public void close() {
+        segments = null;
+        keys = null;
+        index = null;
+        materialized = null;
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the number of Expressions in this store.
+     *
+     * @return  The number of Expressions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines whether or not this store contains an Expression with the provided key.
+     *
+     * @param key  The key.
+     * @return     True if there is an Expression with the key.
+     */
+    public boolean containsKey(String key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * Returns the Expression with the provided key, decoding it if it hasn't been accessed yet.
+     *
+     * @param key  The key.
+     * @return     The Expression, or null if there is no Expression with the key.
+     * @throws     IllegalArgumentException If the record of the Expression is corrupt.
+     */
+    public Expression get(String key) {
+        int entry = find(key);
+        if(entry == -1) return null;
+        return materialized.computeIfAbsent(entry, this::decode);
+    }
+
+    /**
+     * Decodes the record of an index entry.
+     *
+     * @param entry  The index of the entry.
+     * @return       The decoded Expression.
+     * @throws       IllegalArgumentException If the record is corrupt.
+     */
+    private Expression decode(int entry) {
+        long recordOffset = index.getLong(entry*INDEX_ENTRY_LENGTH+16);
+        ByteBuffer segment = segments[(int)(recordOffset/SEGMENT_SIZE)].duplicate();
+        segment.position((int)(recordOffset%SEGMENT_SIZE));
+        return ExpressionCodec.decode(segment);
+    }
+
+    /**
+     * Searches the index for a key.
+     *
+     * @param key  The key.
+     * @return     The index of the entry with the key, or {@code -1} if there is none.
+     */
+    private int find(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes);
+
+        // find the first entry with the hash
+        int low = 0, high = size;
+        while(low < high) {
+            int mid = (low+high) >>> 1;
+            if(Long.compareUnsigned(index.getLong(mid*INDEX_ENTRY_LENGTH), hash) < 0) low = mid+1;
+            else high = mid;
+        }
+        for(int entry = low; entry < size && index.getLong(entry*INDEX_ENTRY_LENGTH) == hash; entry++) {
+            if(keyEquals((int)(index.getLong(entry*INDEX_ENTRY_LENGTH+8)-keysOffset), bytes)) return entry;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a stored key with the provided key.
+     *
+     * @param position  The position of the stored key in the mapped keys.
+     * @param bytes     The UTF-8 bytes of the provided key.
+     * @return          True if the keys are equal.
+     */
+    private boolean keyEquals(int position, byte[] bytes) {
+        if(keys.getInt(position) != bytes.length) return false;
+        for(int i = 0; i < bytes.length; i++) {
+            if(keys.get(position+4+i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>Creates a store file. Records are written to the file as Expressions are added, and the
+     * keys and index are written when the Writer is closed.</p>
+     *
+     * <p>If the same key is added more than once, the last Expression added is kept.</p>
+     */
+    public static class Writer implements Closeable {
+
+        /**
+         * The stream writing to the file.
+         */
+        private DataOutputStream out;
+
+        /**
+         * The number of bytes written so far.
+         */
+        private long position;
+
+        /**
+         * The offset of the record of each key.
+         */
+        private HashMap<String, Long> recordOffsets = new HashMap<>();
+
+        /**
+         * Creates a new store file, replacing any existing file.
+         *
+         * @param path  The path of the store file.
+         * @throws      IOException If the file cannot be created.
+         */
+        public Writer(Path path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_LENGTH;
+        }
+
+        /**
+         * Adds an Expression to the store.
+         *
+         * @param key         The key of the Expression.
+         * @param expression  The Expression.
+         * @throws            IOException If an I/O error occurs.
+         * @throws            IllegalArgumentException If the encoded Expression is larger than a segment.
+         */
+        public void put(String key, Expression expression) throws IOException {
+            byte[] record = ExpressionCodec.encode(expression);
+            if(record.length > SEGMENT_SIZE) throw new IllegalArgumentException("ExpressionStore: Expression is too large");
+            // pad so that the record doesn't cross a segment boundary
+            long segmentEnd = (position/SEGMENT_SIZE+1)*SEGMENT_SIZE;
+            if(position+record.length > segmentEnd) {
+                while(position < segmentEnd) {
+                    out.write(0);
+                    position++;
+                }
+            }
+            recordOffsets.put(key, position);
+            out.write(record);
+            position += record.length;
+        }
+
+        /**
+         * Adds every Expression in a Map to the store.
+         *
+         * @param expressions  The Expressions, mapped from their keys.
+         * @throws             IOException If an I/O error occurs.
+         */
+        public void putAll(Map<String, ? extends Expression> expressions) throws IOException {
+            for(Map.Entry<String, ? extends Expression> entry: expressions.entrySet()) put(entry.getKey(), entry.getValue());
+        }
+
+        /**
+         * Writes the keys, the index and the footer, and closes the file.
+         *
+         * @throws  IOException If an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            if(out == null) return;
+            ArrayList<IndexEntry> entries = new ArrayList<>(recordOffsets.size());
+            for(Map.Entry<String, Long> entry: recordOffsets.entrySet())
+                entries.add(new IndexEntry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+            entries.sort((a, b) -> Long.compareUnsigned(a.hash, b.hash));
+
+            long keysOffset = position;
+            for(IndexEntry entry: entries) {
+                entry.keyOffset = position;
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+                position += 4+entry.key.length;
+            }
+            long indexOffset = position;
+            for(IndexEntry entry: entries) {
+                out.writeLong(entry.hash);
+                out.writeLong(entry.keyOffset);
+                out.writeLong(entry.recordOffset);
+            }
+            out.writeLong(keysOffset);
+            out.writeLong(indexOffset);
+            out.writeLong(entries.size());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * An entry of the index while it is being written.
+     */
+    private static class IndexEntry {
+
+        /**
+         * The UTF-8 bytes of the key.
+         */
+        private byte[] key;
+
+        /**
+         * The hash of the key.
+         */
+        private long hash;
+
+        /**
+         * The file offset of the key.
+         */
+        private long keyOffset;
+
+        /**
+         * The file offset of the record.
+         */
+        private long recordOffset;
+
+        /**
+         * Constructs an index entry.
+         *
+         * @param key           The UTF-8 bytes of the key.
+         * @param recordOffset  The file offset of the record.
+         */
+        private IndexEntry(byte[] key, long recordOffset) {
+            this.key = key;
+            this.hash = hash(key);
+            this.recordOffset = recordOffset;
+        }
+    }
+}
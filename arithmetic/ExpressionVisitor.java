@@ -0,0 +1,38 @@
+package arithmetic;
+
+import java.util.ArrayList;
+
+/**
+ * <p>A pass over an Expression that computes a result for every node from the results of its
+ * children, used with {@code Expression.fold}.</p>
+ *
+ * <p>The children of a node are the ones returned by {@code Expression.getChildren()}. Since the
+ * traversal uses an explicit stack, a visitor is never called recursively, no matter how deep the
+ * Expression is.</p>
+ *
+ * @param <R>  The type of the result of each node.
+ * @author Ricky Qin
+ */
+public interface ExpressionVisitor<R> {
+
+    /**
+     * Called when a node is reached, before any of its children are visited.
+     *
+     * @param expression  The node.
+     * @return            True if the children of the node should be visited, and false if they
+     * should be skipped, in which case {@code postVisit} receives no child results.
+     */
+    default boolean preVisit(Expression expression) {
+        return true;
+    }
+
+    /**
+     * Called after all of the children of a node have been visited.
+     *
+     * @param expression    The node.
+     * @param childResults  The results of the children of the node, in the same order as
+     * {@code expression.getChildren()}.
+     * @return              The result of the node.
+     */
+    R postVisit(Expression expression, ArrayList<R> childResults);
+}
@@ -0,0 +1,394 @@
+package arithmetic;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import arithmetic.Expression.Format;
+
+/**
+ * <p>A wrapper around an {@code Appendable} that Expressions render themselves into, so that an
+ * entire Expression is written in a single pass without building the Strings of its subexpressions.</p>
+ *
+ * <p>Since the subexpressions are never built as Strings, it is not possible to look at the first
+ * character of a subexpression before writing it. Instead, a separator can be requested before
+ * writing a subexpression, which is only written if the character before it and the first character
+ * of the subexpression are both digits. This is what places the {@code *} in {@code 2*3^(1/2)}.</p>
+ *
+ * <p>Names of Variables and constants in the normal format are written with {@code appendName}, and
+ * a {@code *} is always written between a name and a letter, digit or underscore next to it, except
+ * for a number before a single-letter name. So adjacent Variables and multi-character names are
+ * always separated, as in {@code x*y} and {@code 2*rate}, and the String can be parsed again.</p>
+ *
+ * <p>Subexpressions are written using an explicit stack rather than recursion, so that the depth of
+ * an Expression is only limited by memory. While an Expression is rendering itself, everything it
+ * writes is queued, and its subexpressions are rendered after it returns.</p>
+ *
+ * @author Ricky Qin
+ */
+public class ExpressionWriter implements Appendable {
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The {@code Appendable} that characters are written to.
+     */
+    private Appendable out;
+
+    /**
+     * The last character written, or {@code 0} if nothing has been written yet.
+     */
+    private char lastChar;
+
+    /**
+     * The separator to write before the next character if both it and the last character are digits,
+     * or null if there is none.
+     */
+    private String separator;
+
+    /**
+     * True if the last character written is the end of a name in the normal format.
+     */
+    private boolean isAfterName;
+
+    /**
+     * The text, separators and subexpressions written by the Expression that is currently rendering
+     * itself, or null if no Expression is rendering itself.
+     */
+    private ArrayList<Object> pending;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs an ExpressionWriter that writes to the provided {@code Appendable}.
+     *
+     * @param out  The {@code Appendable} to write to.
+     */
+    public ExpressionWriter(Appendable out) {
+        this.out = out;
+    }
+
+// <---------------------- Methods Implemented for Interfaces ---------------------->
+
+    /**
+     * Writes a sequence of characters.
+     *
+     * @param csq  The characters to write.
+     * @return     This ExpressionWriter.
+     * @throws     IOException If the underlying {@code Appendable} throws one.
+     */
+    @Override
+    public ExpressionWriter append(CharSequence csq) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    /**
+     * Writes a subsequence of characters.
+     *
+     * @param csq    The characters to write.
+     * @param start  The index of the first character, inclusive.
+     * @param end    The index of the last character, exclusive.
+     * @return       This ExpressionWriter.
+     * @throws       IOException If the underlying {@code Appendable} throws one.
+     */
+    @Override
+    public ExpressionWriter append(CharSequence csq, int start, int end) throws IOException {
+        if(start == end) return this;
+        if(pending != null) pending.add(csq.subSequence(start, end).toString());
+        else write(csq, start, end);
+        return this;
+    }
+
+    /**
+     * Writes a character.
+     *
+     * @param c  The character to write.
+     * @return   This ExpressionWriter.
+     * @throws   IOException If the underlying {@code Appendable} throws one.
+     */
+    @Override
+    public ExpressionWriter append(char c) throws IOException {
+        if(pending != null) pending.add(c);
+        else write(c);
+        return this;
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Writes a subsequence of characters to the underlying {@code Appendable}.
+     *
+     * @param csq    The characters to write.
+     * @param start  The index of the first character, inclusive.
+     * @param end    The index of the last character, exclusive.
+     * @throws       IOException If the underlying {@code Appendable} throws one.
+     */
+    private void write(CharSequence csq, int start, int end) throws IOException {
+        writeSeparator(csq.charAt(start));
+        out.append(csq, start, end);
+        lastChar = csq.charAt(end-1);
+    }
+
+    /**
+     * Writes a name in the normal format to the underlying {@code Appendable}, separating it from the
+     * name or number before it.
+     *
+     * @param csq    The characters of the name.
+     * @param start  The index of the first character, inclusive.
+     * @param end    The index of the last character, exclusive.
+     * @throws       IOException If the underlying {@code Appendable} throws one.
+     */
+    private void writeName(CharSequence csq, int start, int end) throws IOException {
+        // only a single letter can follow a number without merging with it
+        if(isNameCharacter(lastChar) && (end-start > 1 || !Character.isDigit(lastChar))) isAfterName = true;
+        write(csq, start, end);
+        isAfterName = true;
+    }
+
+    /**
+     * Writes a cached String in the normal format to the underlying {@code Appendable}. Since a
+     * String in the normal format only has names next to each other if they are separated, a run of
+     * letters, digits and underscores is part of a name if it starts with a letter or underscore at
+     * the start of the String, or if it contains one at the end of the String.
+     *
+     * @param str  The String, which is not empty.
+     * @throws     IOException If the underlying {@code Appendable} throws one.
+     */
+    private void writeNormal(String str) throws IOException {
+        int nameEnd = 0;
+        if(Character.isLetter(str.charAt(0)) || str.charAt(0) == '_') {
+            for(nameEnd = 1; nameEnd < str.length() && isNameCharacter(str.charAt(nameEnd)); nameEnd++);
+            writeName(str, 0, nameEnd);
+        }
+        if(nameEnd == str.length()) return;
+        write(str, nameEnd, str.length());
+        for(int i = str.length()-1; i >= nameEnd && isNameCharacter(str.charAt(i)); i--) {
+            if(!Character.isDigit(str.charAt(i))) isAfterName = true;
+        }
+    }
+
+    /**
+     * Writes a character to the underlying {@code Appendable}.
+     *
+     * @param c  The character to write.
+     * @throws   IOException If the underlying {@code Appendable} throws one.
+     */
+    private void write(char c) throws IOException {
+        writeSeparator(c);
+        out.append(c);
+        lastChar = c;
+    }
+
+    /**
+     * Writes the requested separator, if there is one and it is needed before the provided character.
+     *
+     * @param next  The next character to be written.
+     * @throws      IOException If the underlying {@code Appendable} throws one.
+     */
+    private void writeSeparator(char next) throws IOException {
+        if(isAfterName && isNameCharacter(next)) out.append('*');
+        else if(separator != null && Character.isDigit(lastChar) && Character.isDigit(next)) out.append(separator);
+        separator = null;
+        isAfterName = false;
+    }
+
+    /**
+     * Determines whether or not a character can be part of a name or a number.
+     *
+     * @param c  The character.
+     * @return   True if the character is a letter, a digit or an underscore.
+     */
+    private static boolean isNameCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Requests a separator to be written before the next character, if both it and the last
+     * character written are digits.
+     *
+     * @param separator  The separator.
+     * @return           This ExpressionWriter.
+     */
+    public ExpressionWriter separateDigits(String separator) {
+        if(pending != null) pending.add(new PendingSeparator(separator));
+        else this.separator = separator;
+        return this;
+    }
+
+    /**
+     * Writes the name of a Variable or constant in the normal format. A {@code *} is written before
+     * it if it would otherwise merge with the name or number before it, and after it if the next
+     * character is a letter, digit or underscore.
+     *
+     * @param name  The name, which is not empty.
+     * @return      This ExpressionWriter.
+     * @throws      IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendName(String name) throws IOException {
+        if(pending != null) pending.add(new PendingName(name));
+        else writeName(name, 0, name.length());
+        return this;
+    }
+
+    /**
+     * Writes an Expression, reusing its cached String representation if it has one.
+     *
+     * @param expression  The Expression to write.
+     * @param format      The format to write it in.
+     * @return            This ExpressionWriter.
+     * @throws            IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendExpression(Expression expression, Format format) throws IOException {
+        if(pending != null) {// written after the Expression currently rendering itself returns
+            pending.add(new PendingExpression(expression, format));
+            return this;
+        }
+
+        ArrayDeque<Object> stack = new ArrayDeque<>();
+        stack.push(new PendingExpression(expression, format));
+        try {
+            while(!stack.isEmpty()) {
+                Object item = stack.pop();
+                if(item instanceof PendingExpression) {
+                    PendingExpression next = (PendingExpression)item;
+                    String cached = next.expression.getCachedString(next.format);
+                    if(cached != null) {
+                        if(cached.isEmpty());
+                        else if(next.format == Format.NORMAL) writeNormal(cached);
+                        else write(cached, 0, cached.length());
+                        continue;
+                    }
+                    pending = new ArrayList<>();
+                    next.expression.internalRender(this, next.format);
+                    for(int i = pending.size()-1; i >= 0; i--) stack.push(pending.get(i));
+                    pending = null;
+                } else if(item instanceof PendingSeparator) separator = ((PendingSeparator)item).separator;
+                else if(item instanceof PendingName) writeName(((PendingName)item).name, 0, ((PendingName)item).name.length());
+                else if(item instanceof Character) write((Character)item);
+                else write((String)item, 0, ((String)item).length());
+            }
+        } finally {
+            pending = null;
+        }
+        return this;
+    }
+
+    /**
+     * Writes an Expression surrounded with a pair of round {@code ()} brackets.
+     *
+     * @param expression  The Expression to write.
+     * @param format      The format to write it in.
+     * @return            This ExpressionWriter.
+     * @throws            IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendInBrackets(Expression expression, Format format) throws IOException {
+        appendOpeningBracket(format);
+        appendExpression(expression, format);
+        return appendClosingBracket(format);
+    }
+
+    /**
+     * Writes an Expression surrounded with a pair of curly <code>{}</code> brackets.
+     *
+     * @param expression  The Expression to write.
+     * @param format      The format to write it in.
+     * @return            This ExpressionWriter.
+     * @throws            IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendInCurlyBrackets(Expression expression, Format format) throws IOException {
+        append('{');
+        appendExpression(expression, format);
+        return append('}');
+    }
+
+    /**
+     * Writes an opening round bracket, which is {@code \left(} in a LaTeX String.
+     *
+     * @param format  The format being written.
+     * @return        This ExpressionWriter.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendOpeningBracket(Format format) throws IOException {
+        return (format == Format.LATEX) ? append("\\left(") : append('(');
+    }
+
+    /**
+     * Writes a closing round bracket, which is {@code \right)} in a LaTeX String.
+     *
+     * @param format  The format being written.
+     * @return        This ExpressionWriter.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
+     */
+    public ExpressionWriter appendClosingBracket(Format format) throws IOException {
+        return (format == Format.LATEX) ? append("\\right)") : append(')');
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * A subexpression that is waiting to be written.
+     */
+    private static class PendingExpression {
+
+        /**
+         * The subexpression.
+         */
+        private Expression expression;
+
+        /**
+         * The format to write it in.
+         */
+        private Format format;
+
+        /**
+         * Constructs a pending subexpression.
+         *
+         * @param expression  The subexpression.
+         * @param format      The format to write it in.
+         */
+        private PendingExpression(Expression expression, Format format) {
+            this.expression = expression;
+            this.format = format;
+        }
+    }
+
+    /**
+     * A request for a separator that is waiting to be made.
+     */
+    private static class PendingSeparator {
+
+        /**
+         * The separator.
+         */
+        private String separator;
+
+        /**
+         * Constructs a pending separator request.
+         *
+         * @param separator  The separator.
+         */
+        private PendingSeparator(String separator) {
+            this.separator = separator;
+        }
+    }
+
+    /**
+     * A name in the normal format that is waiting to be written.
+     */
+    private static class PendingName {
+
+        /**
+         * The name.
+         */
+        private String name;
+
+        /**
+         * Constructs a pending name.
+         *
+         * @param name  The name.
+         */
+        private PendingName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package arithmetic;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import algebra.Variable;
+
+/**
+ * <p>A single pass parser for Expressions in function form, as returned by {@code toFunctionString()}.</p>
+ *
+ * <p>Since function Strings are written from Expressions that are already in normal form, the
+ * terms of Sums and the factors of Products are placed directly into the new objects without
+ * combining like terms or checking for simpler forms. The String is read one character at a time
+ * with no intermediate list of tokens.</p>
+ *
+ * <p>Numbers and Variable names are quoted, while the constants {@code e} and {@code pi} are not,
+ * so a Variable named {@code e} is read back as a Variable. Sums, Products and Powers that have
+ * been opened but not closed are kept on an explicit stack rather than in recursive calls, so the
+ * depth of an Expression is only limited by memory.</p>
+ *
+ * @author Ricky Qin
+ */
+class FunctionStringParser {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The kind of a Sum that has been opened.
+     */
+    final private static int SUM = 0;
+
+    /**
+     * The kind of a Product that has been opened.
+     */
+    final private static int PRODUCT = 1;
+
+    /**
+     * The kind of a Power that has been opened.
+     */
+    final private static int POWER = 2;
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The String being parsed.
+     */
+    private String str;
+
+    /**
+     * The index of the next character to be read.
+     */
+    private int pos;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a parser for the provided String.
+     *
+     * @param str  The String to parse.
+     */
+    FunctionStringParser(String str) {
+        this.str = str;
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Parses the entire String.
+     *
+     * @return  The Expression represented by the String.
+     * @throws  NumberFormatException If the String is not a valid function String.
+     */
+    Expression parse() {
+        ArrayDeque<OpenFunction> stack = new ArrayDeque<>();
+        while(true) {
+            // read the start of the next Expression, which is either complete or opens a function
+            Expression expression = parseStart(stack);
+            if(expression == null) continue;
+
+            // add the Expression to the functions it completes, closing each one that is finished
+            while(true) {
+                if(stack.isEmpty()) {
+                    skipWhitespace();
+                    if(pos != str.length()) throw error("Unexpected character");
+                    return expression;
+                }
+                OpenFunction top = stack.peek();
+                top.children.add(expression);
+                if(top.kind == POWER) {
+                    if(top.children.size() == 1) {
+                        expect(',');
+                        break;
+                    }
+                } else {
+                    if(top.children.size()%2 == 1) {
+                        expect(':');
+                        break;
+                    }
+                    expect('}');
+                    skipWhitespace();
+                    if(pos < str.length() && str.charAt(pos) == ',') {
+                        pos++;
+                        expect('{');
+                        break;
+                    }
+                }
+                expect(')');
+                stack.pop();
+                expression = close(top);
+            }
+        }
+    }
+
+    /**
+     * Reads the start of the Expression at the current position. A quoted value, a constant or an
+     * empty Sum or Product is read completely, while any other Sum, Product or Power is pushed onto
+     * the stack so that its children can be read.
+     *
+     * @param stack  The functions that have been opened but not closed.
+     * @return       The Expression if it was read completely, or null if a function was opened.
+     * @throws       NumberFormatException If there is no valid Expression at the current position.
+     */
+    private Expression parseStart(ArrayDeque<OpenFunction> stack) {
+        skipWhitespace();
+        if(pos == str.length()) throw error("Unexpected end of String");
+        if(str.charAt(pos) == '"') return parseQuoted();
+        if(str.startsWith("pi", pos)) {
+            pos += 2;
+            return BigNumber.PI;
+        }
+        if(str.charAt(pos) == 'e') {
+            pos++;
+            return BigNumber.E;
+        }
+        OpenFunction function;
+        if(str.startsWith("Sum(", pos)) {
+            pos += 4;
+            function = new OpenFunction(SUM);
+        } else if(str.startsWith("Product(", pos)) {
+            pos += 8;
+            function = new OpenFunction(PRODUCT);
+        } else if(str.startsWith("Power(", pos)) {
+            pos += 6;
+            stack.push(new OpenFunction(POWER));
+            return null;
+        } else throw error("Unexpected character");
+
+        skipWhitespace();
+        if(pos < str.length() && str.charAt(pos) == ')') {
+            pos++;
+            return close(function);
+        }
+        expect('{');
+        stack.push(function);
+        return null;
+    }
+
+    /**
+     * Creates the Expression of a function once all of its children have been read.
+     *
+     * @param function  The function.
+     * @return          The Expression.
+     * @throws          NumberFormatException If a coefficient of a Sum is not a number.
+     */
+    private Expression close(OpenFunction function) {
+        ArrayList<Expression> children = function.children;
+        if(function.kind == POWER) return new Power(children.get(0), children.get(1));
+        Expression[] keys = new Expression[children.size()/2];
+        for(int i = 0; i < keys.length; i++) keys[i] = children.get(2*i);
+        if(function.kind == PRODUCT) {
+            Expression[] exponents = new Expression[keys.length];
+            for(int i = 0; i < keys.length; i++) exponents[i] = children.get(2*i+1);
+            return new Product(keys, exponents);
+        }
+        BigRational[] coefficients = new BigRational[keys.length];
+        for(int i = 0; i < keys.length; i++) {
+            if(!(children.get(2*i+1) instanceof BigRational)) throw error("Coefficient is not a number");
+            coefficients[i] = (BigRational)children.get(2*i+1);
+        }
+        return new Sum(keys, coefficients);
+    }
+
+    /**
+     * Parses a quoted number or Variable.
+     *
+     * @return  A BigRational if the quoted text is a number, and otherwise a Variable.
+     * @throws  NumberFormatException If the closing quotation mark is missing or the text is empty.
+     */
+    private Expression parseQuoted() {
+        int begin = ++pos;
+        int end = str.indexOf('"', begin);
+        if(end == -1) throw error("Missing closing quotation mark");
+        if(end == begin) throw error("Empty name");
+        pos = end+1;
+
+        char first = str.charAt(begin);
+        if(first == '-' || Character.isDigit(first)) return parseRational(begin, end);
+        return Variable.of(str.substring(begin, end));
+    }
+
+    /**
+     * Parses a rational number in the form {@code numerator} or {@code numerator/denominator}.
+     *
+     * @param begin  The index of the first character, inclusive.
+     * @param end    The index of the last character, exclusive.
+     * @return       The BigRational.
+     * @throws       NumberFormatException If the number is malformed.
+     */
+    private BigRational parseRational(int begin, int end) {
+        int slash = str.indexOf('/', begin);
+        if(slash == -1 || slash > end) return new BigRational(parseInteger(begin, end));
+        return new BigRational(parseInteger(begin, slash), parseInteger(slash+1, end));
+    }
+
+    /**
+     * Parses an integer, using {@code long} arithmetic if it has at most 18 digits.
+     *
+     * @param begin  The index of the first character, inclusive.
+     * @param end    The index of the last character, exclusive.
+     * @return       The integer.
+     * @throws       NumberFormatException If the integer is malformed.
+     */
+    private BigInteger parseInteger(int begin, int end) {
+        boolean isNegative = begin < end && str.charAt(begin) == '-';
+        int digitsBegin = isNegative ? begin+1 : begin;
+        if(digitsBegin == end) throw error("Invalid number");
+        if(end-digitsBegin > 18) return new BigInteger(str.substring(begin, end));
+
+        long value = 0;
+        for(int i = digitsBegin; i < end; i++) {
+            char c = str.charAt(i);
+            if(c < '0' || c > '9') throw error("Invalid number");
+            value = 10*value + (c-'0');
+        }
+        return BigInteger.valueOf(isNegative ? -value : value);
+    }
+
+    /**
+     * Skips whitespace and then reads the provided character.
+     *
+     * @param c  The expected character.
+     * @throws   NumberFormatException If the next character is not {@code c}.
+     */
+    private void expect(char c) {
+        skipWhitespace();
+        if(pos == str.length() || str.charAt(pos) != c) throw error("Expected \"" + c + "\"");
+        pos++;
+    }
+
+    /**
+     * Advances the current position past any whitespace.
+     */
+    private void skipWhitespace() {
+        while(pos < str.length() && Character.isWhitespace(str.charAt(pos))) pos++;
+    }
+
+    /**
+     * Creates an exception describing a syntax error at the current position.
+     *
+     * @param message  The description of the error.
+     * @return         A new {@code NumberFormatException}.
+     */
+    private NumberFormatException error(String message) {
+        return new NumberFormatException("Expression: " + message + " at index " + pos);
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * A Sum, Product or Power that has been opened but not closed.
+     */
+    private static class OpenFunction {
+
+        /**
+         * The kind of the function, which is {@code SUM}, {@code PRODUCT} or {@code POWER}.
+         */
+        private int kind;
+
+        /**
+         * The children that have been read so far. The keys and values of a Sum or Product alternate.
+         */
+        private ArrayList<Expression> children = new ArrayList<>();
+
+        /**
+         * Constructs an OpenFunction of the provided kind with no children.
+         *
+         * @param kind  The kind of the function.
+         */
+        private OpenFunction(int kind) {
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package arithmetic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import algebra.Variable;
+import utility.Pair;
+
+/**
+ * <p>A stateful evaluator that repeatedly evaluates the same Expression as the values of its
+ * variables change, recomputing only the subexpressions that depend on a changed variable.</p>
+ *
+ * <p>The value of every distinct subexpression is cached after each evaluation. When the value of a
+ * variable changes, only the cached values on the paths from that variable up to the root are
+ * discarded, so the next evaluation reuses every subexpression that doesn't contain it.</p>
+ *
+ * <p>Note: this class is not thread safe.</p>
+ *
+ * @author Ricky Qin
+ */
+public class IncrementalEvaluator {
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The Expression being evaluated.
+     */
+    final private Expression expression;
+
+    /**
+     * The parents of every distinct subexpression of the Expression, where each subexpression is
+     * mapped to the subexpressions that have it as a child.
+     */
+    final private HashMap<Expression, ArrayList<Expression>> parents = new HashMap<>();
+
+    /**
+     * The current values of the variables.
+     */
+    final private HashMap<String, Expression> variableValues = new HashMap<>();
+
+    /**
+     * The cached values of the subexpressions. If a subexpression has a cached value, then so do
+     * all of its own subexpressions.
+     */
+    final private HashMap<Expression, Expression> values = new HashMap<>();
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs an IncrementalEvaluator for the provided Expression, with no variable values.
+     *
+     * @param expression  The Expression to evaluate.
+     */
+    public IncrementalEvaluator(Expression expression) {
+        this.expression = expression;
+        expression.fold((node, childResults) -> {
+            for(Expression child: node.getChildren()) parents.computeIfAbsent(child, key -> new ArrayList<>()).add(node);
+            return Boolean.TRUE;
+        }, new HashMap<>());
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Returns a string representation of this IncrementalEvaluator.
+     *
+     * @return  A String containing the number of distinct subexpressions and the number of cached values.
+     */
+    @Override
+    public String toString() {
+        return "IncrementalEvaluator[" + (parents.size()+1) + " nodes, " + values.size() + " cached values]";
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the Expression being evaluated.
+     *
+     * @return  The Expression.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the current value of a variable.
+     *
+     * @param name  The name of the variable.
+     * @return      The value, or null if the variable doesn't have one.
+     */
+    public Expression getValue(String name) {
+        return variableValues.get(name);
+    }
+
+    /**
+     * Sets the value of a variable, discarding the cached values of the subexpressions that depend on
+     * it. Setting a variable to its current value keeps every cached value.
+     *
+     * @param name   The name of the variable.
+     * @param value  The new value.
+     */
+    public void setValue(String name, Expression value) {
+        if(value.equals(variableValues.put(name, value))) return;
+        invalidate(Variable.of(name));
+    }
+
+    /**
+     * Sets the values of several variables. If a variable appears more than once, the value that
+     * appears last is taken.
+     *
+     * @param values  The new values of the variables.
+     */
+    public void setValues(ArrayList<Pair<String, Expression>> values) {
+        for(Pair<String, Expression> value: values) setValue(value.first(), value.second());
+    }
+
+    /**
+     * Removes the value of a variable, discarding the cached values of the subexpressions that
+     * depend on it.
+     *
+     * @param name  The name of the variable.
+     */
+    public void removeValue(String name) {
+        if(variableValues.remove(name) != null) invalidate(Variable.of(name));
+    }
+
+    /**
+     * Computes the exact value of the Expression with the current variable values, only
+     * recomputing the subexpressions whose values were discarded since the last evaluation.
+     *
+     * @return  The value of the Expression.
+     * @throws  ArithmeticException If the value of a variable in the Expression is missing.
+     */
+    public Expression evaluate() {
+        return expression.evaluate(variableValues, values);
+    }
+
+    /**
+     * Discards the cached values of a subexpression and all of the subexpressions that contain it.
+     * Since a cached value implies cached values for its subexpressions, the walk stops at any
+     * subexpression whose value isn't cached.
+     *
+     * @param changed  The subexpression whose value changed.
+     */
+    private void invalidate(Expression changed) {
+        ArrayDeque<Expression> stack = new ArrayDeque<>();
+        stack.push(changed);
+        while(!stack.isEmpty()) {
+            Expression node = stack.pop();
+            if(values.remove(node) == null) continue;
+            ArrayList<Expression> nodeParents = parents.get(node);
+            if(nodeParents != null) {
+                for(Expression parent: nodeParents) stack.push(parent);
+            }
+        }
+    }
+}
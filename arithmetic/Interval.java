@@ -0,0 +1,525 @@
+package arithmetic;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * <p>An immutable closed interval of real numbers with {@code double} endpoints, which may be
+ * infinite.</p>
+ *
+ * <p>Every operation rounds its endpoints outwards, so the result always contains every value that
+ * the operation can take on the operands, even though it may be a little wider. Operations that are
+ * only defined on part of an operand, such as the square root of an interval containing negative
+ * numbers, are applied to that part. An operation that isn't defined anywhere on its operands
+ * returns the empty interval. When the exact result is not an interval, such as the reciprocal of an
+ * interval containing zero, the smallest interval containing it is returned.</p>
+ *
+ * @author Ricky Qin
+ */
+public class Interval {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The interval that contains no numbers.
+     */
+    final public static Interval EMPTY = new Interval(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+    /**
+     * The interval that contains every real number.
+     */
+    final public static Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    /**
+     * The interval containing only zero.
+     */
+    final public static Interval ZERO = new Interval(0, 0);
+
+    /**
+     * The interval containing only one.
+     */
+    final public static Interval ONE = new Interval(1, 1);
+
+    /**
+     * The smallest interval containing {@code e}.
+     */
+    final public static Interval E = new Interval(Math.nextDown(Math.E), Math.nextUp(Math.E));
+
+    /**
+     * The smallest interval containing {@code pi}.
+     */
+    final public static Interval PI = new Interval(Math.nextDown(Math.PI), Math.nextUp(Math.PI));
+
+    /**
+     * The largest integer such that every integer with at most this many bits is a {@code double}.
+     */
+    final private static int EXACT_BITS = 53;
+
+    /**
+     * The relative error of the {@code double} closest to a real number.
+     */
+    final private static double UNIT_ROUNDOFF = 0x1p-53;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the interval between two numbers.
+     *
+     * @param lower  The lower endpoint.
+     * @param upper  The upper endpoint.
+     * @return       The interval {@code [lower, upper]}.
+     * @throws       IllegalArgumentException If an endpoint is {@code NaN} or {@code lower > upper}.
+     */
+    public static Interval of(double lower, double upper) {
+        if(!(lower <= upper)) throw new IllegalArgumentException("Interval: Lower endpoint must not be greater than the upper endpoint");
+        return new Interval(lower, upper);
+    }
+
+    /**
+     * Returns the interval containing a single number.
+     *
+     * @param value  The number.
+     * @return       The interval {@code [value, value]}.
+     * @throws       IllegalArgumentException If {@code value} is {@code NaN}.
+     */
+    public static Interval of(double value) {
+        return of(value, value);
+    }
+
+    /**
+     * Returns the smallest interval with {@code double} endpoints containing a rational number. Each
+     * endpoint is checked against the rational number exactly.
+     *
+     * @param value  The rational number.
+     * @return       The interval.
+     */
+    public static Interval of(BigRational value) {
+        BigInteger numerator = value.getNumeratorValue();
+        BigInteger denominator = value.getDenominatorValue();
+        if(numerator.bitLength() <= EXACT_BITS && denominator.bitLength() <= EXACT_BITS) {
+            // both are exact, so the quotient is only rounded once
+            double quotient = numerator.doubleValue()/denominator.doubleValue();
+            if(denominator.equals(BigInteger.ONE)) return new Interval(quotient, quotient);
+            return new Interval(Math.nextDown(quotient), Math.nextUp(quotient));
+        }
+        // the quotient is rounded twice, so step outwards until the exact comparisons enclose the value
+        double quotient = new BigDecimal(numerator).divide(new BigDecimal(denominator), MathContext.DECIMAL128).doubleValue();
+        double lower = quotient, upper = quotient;
+        while(compare(lower, value) > 0) lower = Math.nextDown(lower);
+        while(compare(upper, value) < 0) upper = Math.nextUp(upper);
+        return new Interval(lower, upper);
+    }
+
+    /**
+     * Compares a {@code double} with a rational number exactly.
+     *
+     * @param a  The {@code double}, which may be infinite.
+     * @param b  The rational number.
+     * @return   A negative number, zero, or a positive number if {@code a} is less than, equal to, or
+     * greater than {@code b}.
+     */
+    private static int compare(double a, BigRational b) {
+        if(Double.isInfinite(a)) return (a > 0) ? 1 : -1;
+        BigRational x = toRational(a);
+        // the denominators are positive
+        return x.getNumeratorValue().multiply(b.getDenominatorValue())
+            .compareTo(b.getNumeratorValue().multiply(x.getDenominatorValue()));
+    }
+
+    /**
+     * Converts a {@code double} to the rational number it represents exactly.
+     *
+     * @param value  The {@code double}, which is finite.
+     * @return       The rational number.
+     */
+    static BigRational toRational(double value) {
+        BigDecimal decimal = new BigDecimal(value);
+        if(decimal.scale() <= 0) return new BigRational(decimal.toBigIntegerExact());
+        return new BigRational(decimal.unscaledValue(), BigInteger.TEN.pow(decimal.scale()));
+    }
+
+    /**
+     * Moves a number down by a number of units in the last place.
+     *
+     * @param value  The number.
+     * @param ulps   The number of units.
+     * @return       The number, moved down.
+     */
+    private static double down(double value, int ulps) {
+        for(int i = 0; i < ulps; i++) value = Math.nextDown(value);
+        return value;
+    }
+
+    /**
+     * Moves a number up by a number of units in the last place.
+     *
+     * @param value  The number.
+     * @param ulps   The number of units.
+     * @return       The number, moved up.
+     */
+    private static double up(double value, int ulps) {
+        for(int i = 0; i < ulps; i++) value = Math.nextUp(value);
+        return value;
+    }
+
+    /**
+     * Multiplies two endpoints, rounding down. Zero times an infinite endpoint is zero, since an
+     * infinite endpoint stands for arbitrarily large finite numbers.
+     *
+     * @param a  The first endpoint.
+     * @param b  The second endpoint.
+     * @return   A lower bound on the product.
+     */
+    private static double multiplyDown(double a, double b) {
+        if(a == 0 || b == 0) return 0;
+        return Math.nextDown(a*b);
+    }
+
+    /**
+     * Multiplies two endpoints, rounding up. Zero times an infinite endpoint is zero.
+     *
+     * @param a  The first endpoint.
+     * @param b  The second endpoint.
+     * @return   An upper bound on the product.
+     */
+    private static double multiplyUp(double a, double b) {
+        if(a == 0 || b == 0) return 0;
+        return Math.nextUp(a*b);
+    }
+
+    /**
+     * Computes the principal {@code q}-th root of a non-negative endpoint.
+     *
+     * @param value   The endpoint.
+     * @param q       The index of the root, which is at least 2.
+     * @param isUpper Whether to round up or down.
+     * @return        A bound on the root.
+     */
+    private static double root(double value, int q, boolean isUpper) {
+        if(value == 0 || value == Double.POSITIVE_INFINITY) return value;
+        double root;
+        int ulps;
+        if(q == 2) {
+            // correctly rounded
+            root = Math.sqrt(value);
+            ulps = 1;
+        } else if(q == 3) {
+            root = Math.cbrt(value);
+            ulps = 2;
+        } else {
+            // 1.0/q is rounded, which changes the result by a factor of about value^(error of 1.0/q)
+            root = Math.pow(value, 1.0/q);
+            double relativeError = Math.abs(Math.log(value))*UNIT_ROUNDOFF/q*1.01 + 4*UNIT_ROUNDOFF;
+            return isUpper ? Math.nextUp(root*(1+relativeError)) : Math.max(0, Math.nextDown(root*(1-relativeError)));
+        }
+        return isUpper ? up(root, ulps) : Math.max(0, down(root, ulps));
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The lower endpoint.
+     */
+    final private double lower;
+
+    /**
+     * The upper endpoint.
+     */
+    final private double upper;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs an interval without checking its endpoints.
+     *
+     * @param lower  The lower endpoint.
+     * @param upper  The upper endpoint.
+     */
+    private Interval(double lower, double upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Compares this interval with the specified object for equality.
+     *
+     * @param o  The object to compare with.
+     * @return   True if the object is an interval with the same endpoints, or both are empty.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(!(o instanceof Interval)) return false;
+        Interval interval = (Interval)o;
+        if(isEmpty() || interval.isEmpty()) return isEmpty() && interval.isEmpty();
+        return lower == interval.lower && upper == interval.upper;
+    }
+
+    /**
+     * Returns the hash code for this interval.
+     *
+     * @return  The hash code.
+     */
+    @Override
+    public int hashCode() {
+        if(isEmpty()) return 0;
+        return Double.hashCode(lower)*31 + Double.hashCode(upper);
+    }
+
+    /**
+     * Returns a String representation of this interval.
+     *
+     * @return  A String in the format {@code [lower, upper]}, or {@code []} if this interval is empty.
+     */
+    @Override
+    public String toString() {
+        if(isEmpty()) return "[]";
+        return "[" + lower + ", " + upper + "]";
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the lower endpoint of this interval.
+     *
+     * @return  The lower endpoint, which is {@code +Infinity} if this interval is empty.
+     */
+    public double getLower() {
+        return lower;
+    }
+
+    /**
+     * Returns the upper endpoint of this interval.
+     *
+     * @return  The upper endpoint, which is {@code -Infinity} if this interval is empty.
+     */
+    public double getUpper() {
+        return upper;
+    }
+
+    /**
+     * Determines whether or not this interval is empty.
+     *
+     * @return  True if this interval contains no numbers.
+     */
+    public boolean isEmpty() {
+        return lower > upper;
+    }
+
+    /**
+     * Determines whether or not this interval contains a number.
+     *
+     * @param value  The number.
+     * @return       True if {@code value} is in this interval.
+     */
+    public boolean contains(double value) {
+        return lower <= value && value <= upper;
+    }
+
+    /**
+     * Returns the width of this interval.
+     *
+     * @return  An upper bound on {@code upper - lower}, or zero if this interval is empty.
+     */
+    public double width() {
+        if(isEmpty()) return 0;
+        return Math.nextUp(upper - lower);
+    }
+
+    /**
+     * Returns the smallest interval containing both this interval and another one.
+     *
+     * @param interval  The other interval.
+     * @return          The hull of the intervals.
+     */
+    public Interval hull(Interval interval) {
+        if(isEmpty()) return interval;
+        if(interval.isEmpty()) return this;
+        return new Interval(Math.min(lower, interval.lower), Math.max(upper, interval.upper));
+    }
+
+    /**
+     * Returns the intersection of this interval with another one.
+     *
+     * @param interval  The other interval.
+     * @return          The intersection, which may be empty.
+     */
+    public Interval intersect(Interval interval) {
+        double newLower = Math.max(lower, interval.lower);
+        double newUpper = Math.min(upper, interval.upper);
+        if(newLower > newUpper) return EMPTY;
+        return new Interval(newLower, newUpper);
+    }
+
+    /**
+     * Returns an interval containing the sums of the numbers in this interval and another one.
+     *
+     * @param interval  The other interval.
+     * @return          {@code this + interval}
+     */
+    public Interval add(Interval interval) {
+        if(isEmpty() || interval.isEmpty()) return EMPTY;
+        return new Interval(Math.nextDown(lower + interval.lower), Math.nextUp(upper + interval.upper));
+    }
+
+    /**
+     * Returns the interval containing the negations of the numbers in this interval.
+     *
+     * @return  {@code -this}
+     */
+    public Interval negate() {
+        if(isEmpty()) return EMPTY;
+        return new Interval(-upper, -lower);
+    }
+
+    /**
+     * Returns an interval containing the differences of the numbers in this interval and another one.
+     *
+     * @param interval  The other interval.
+     * @return          {@code this - interval}
+     */
+    public Interval subtract(Interval interval) {
+        return add(interval.negate());
+    }
+
+    /**
+     * Returns an interval containing the products of the numbers in this interval and another one.
+     *
+     * @param interval  The other interval.
+     * @return          {@code this * interval}
+     */
+    public Interval multiply(Interval interval) {
+        if(isEmpty() || interval.isEmpty()) return EMPTY;
+        double a = lower, b = upper, c = interval.lower, d = interval.upper;
+        double newLower = Math.min(Math.min(multiplyDown(a, c), multiplyDown(a, d)), Math.min(multiplyDown(b, c), multiplyDown(b, d)));
+        double newUpper = Math.max(Math.max(multiplyUp(a, c), multiplyUp(a, d)), Math.max(multiplyUp(b, c), multiplyUp(b, d)));
+        return new Interval(newLower, newUpper);
+    }
+
+    /**
+     * Returns an interval containing the reciprocals of the nonzero numbers in this interval. If
+     * this interval contains zero in its interior, the reciprocals are unbounded on both sides, so
+     * every real number is returned.
+     *
+     * @return  {@code 1/this}, which is empty if this interval only contains zero.
+     */
+    public Interval reciprocal() {
+        if(isEmpty() || (lower == 0 && upper == 0)) return EMPTY;
+        if(lower < 0 && upper > 0) return ENTIRE;
+        if(lower == 0) return new Interval(Math.nextDown(1/upper), Double.POSITIVE_INFINITY);
+        if(upper == 0) return new Interval(Double.NEGATIVE_INFINITY, Math.nextUp(1/lower));
+        return new Interval(Math.nextDown(1/upper), Math.nextUp(1/lower));
+    }
+
+    /**
+     * Returns an interval containing the quotients of the numbers in this interval and the nonzero
+     * numbers in another one.
+     *
+     * @param interval  The other interval.
+     * @return          {@code this / interval}
+     * @see             #reciprocal()
+     */
+    public Interval divide(Interval interval) {
+        return multiply(interval.reciprocal());
+    }
+
+    /**
+     * Returns an interval containing the numbers in this interval raised to an integer power.
+     *
+     * @param exponent  The exponent.
+     * @return          {@code this^exponent}
+     */
+    public Interval pow(long exponent) {
+        if(isEmpty()) return EMPTY;
+        if(exponent == 0) return ONE;
+        if(exponent < 0) return pow(-exponent).reciprocal();
+        if(exponent == 1) return this;
+        // Math.pow is accurate to one unit in the last place
+        if(exponent % 2 == 1) return new Interval(down(Math.pow(lower, exponent), 2), up(Math.pow(upper, exponent), 2));
+        double min = (lower <= 0 && upper >= 0) ? 0 : Math.min(Math.abs(lower), Math.abs(upper));
+        double max = Math.max(Math.abs(lower), Math.abs(upper));
+        return new Interval(Math.max(0, down(Math.pow(min, exponent), 2)), up(Math.pow(max, exponent), 2));
+    }
+
+    /**
+     * Returns an interval containing the real {@code q}-th roots of the numbers in this interval. If
+     * {@code q} is even, only the non-negative numbers in this interval have roots.
+     *
+     * @param q  The index of the root, which is positive.
+     * @return   The principal roots, which is empty if {@code q} is even and this interval is negative.
+     * @throws   IllegalArgumentException If {@code q} is not positive.
+     */
+    public Interval root(int q) {
+        if(q <= 0) throw new IllegalArgumentException("Interval: Index of a root must be positive");
+        if(isEmpty()) return EMPTY;
+        if(q == 1) return this;
+        if(q % 2 == 0) {
+            if(upper < 0) return EMPTY;
+            return new Interval(root(Math.max(lower, 0), q, false), root(upper, q, true));
+        }
+        // odd roots are increasing on every real number
+        double newLower = (lower < 0) ? -root(-lower, q, true) : root(lower, q, false);
+        double newUpper = (upper < 0) ? -root(-upper, q, false) : root(upper, q, true);
+        return new Interval(newLower, newUpper);
+    }
+
+    /**
+     * Returns an interval containing the numbers in this interval raised to a rational power
+     * {@code p/q}, which is {@code (this^(1/q))^p}. Negative numbers only have real powers if
+     * {@code q} is odd.
+     *
+     * @param exponent  The exponent.
+     * @return          {@code this^exponent}
+     */
+    public Interval pow(BigRational exponent) {
+        BigInteger numerator = exponent.getNumeratorValue();
+        BigInteger denominator = exponent.getDenominatorValue();
+        if(numerator.bitLength() >= 63 || denominator.bitLength() >= 31) return pow(of(exponent));
+        return root(denominator.intValue()).pow(numerator.longValue());
+    }
+
+    /**
+     * Returns an interval containing {@code b^x} for every {@code b} in this interval and every
+     * {@code x} in another one, computed as {@code e^(x*ln(b))} for positive {@code b}. A negative
+     * {@code b} only has real powers for some {@code x}, which can have either sign, so they are
+     * bounded by {@code |b|^x} on both sides.
+     *
+     * @param exponent  The interval of exponents.
+     * @return          {@code this^exponent}
+     */
+    public Interval pow(Interval exponent) {
+        Interval positive = exponent.multiply(log()).exp();
+        if(isEmpty() || exponent.isEmpty()) return EMPTY;
+        // log() is empty if this interval only reaches zero, but 0^x = 0 for positive x
+        if(lower <= 0 && upper >= 0 && exponent.upper > 0) positive = positive.hull(ZERO);
+        if(lower >= 0) return positive;
+        double bound = exponent.multiply(negate().log()).exp().upper;
+        return positive.hull(new Interval(-bound, bound));
+    }
+
+    /**
+     * Returns an interval containing {@code e} raised to the numbers in this interval.
+     *
+     * @return  {@code e^this}
+     */
+    public Interval exp() {
+        if(isEmpty()) return EMPTY;
+        // Math.exp is accurate to one unit in the last place
+        return new Interval(Math.max(0, down(Math.exp(lower), 2)), up(Math.exp(upper), 2));
+    }
+
+    /**
+     * Returns an interval containing the natural logarithms of the positive numbers in this interval.
+     *
+     * @return  {@code ln(this)}, which is empty if this interval has no positive numbers.
+     */
+    public Interval log() {
+        if(isEmpty() || upper <= 0) return EMPTY;
+        // Math.log is accurate to one unit in the last place
+        double newLower = (lower <= 0) ? Double.NEGATIVE_INFINITY : down(Math.log(lower), 2);
+        return new Interval(newLower, up(Math.log(upper), 2));
+    }
+}
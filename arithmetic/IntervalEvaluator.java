@@ -0,0 +1,444 @@
+package arithmetic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import algebra.Variable;
+import arithmetic.ExpressionArena.Kind;
+import utility.Pair;
+
+/**
+ * <p>Computes bounds on the values of an Expression over boxes of variable values using interval
+ * arithmetic, without sampling.</p>
+ *
+ * <p>The Expression is compiled once into flat arrays, in which every distinct subexpression is a
+ * node that comes after its children, so evaluating a box is a single pass over the arrays with no
+ * recursion or hashing. An evaluator can be reused for any number of boxes, and by multiple threads
+ * at once.</p>
+ *
+ * <p>By default, the endpoints are {@code double}s that are rounded outwards. In exact mode, the
+ * endpoints are BigRationals and Sums, Products and integer powers are computed exactly, so the
+ * bounds are as tight as interval arithmetic allows. The constants {@code e} and {@code pi}, roots,
+ * and unbounded endpoints are still computed with {@code double}s and converted back.</p>
+ *
+ * <p>Like all interval arithmetic, the bounds are not tight if a Variable appears more than once,
+ * since each occurrence is allowed to take a different value.</p>
+ *
+ * @author Ricky Qin
+ */
+public class IntervalEvaluator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The kinds of nodes, indexed by their ordinal.
+     */
+    final private static Kind[] KINDS = Kind.values();
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Compares two BigRationals.
+     *
+     * @param a  The first BigRational.
+     * @param b  The second BigRational.
+     * @return   A negative number, zero, or a positive number if {@code a} is less than, equal to, or
+     * greater than {@code b}.
+     */
+    private static int compare(BigRational a, BigRational b) {
+        // the denominators are positive
+        return a.getNumeratorValue().multiply(b.getDenominatorValue())
+            .compareTo(b.getNumeratorValue().multiply(a.getDenominatorValue()));
+    }
+
+    /**
+     * Returns the smaller of two BigRationals.
+     *
+     * @param a  The first BigRational.
+     * @param b  The second BigRational.
+     * @return   The smaller one.
+     */
+    private static BigRational min(BigRational a, BigRational b) {
+        return (compare(a, b) <= 0) ? a : b;
+    }
+
+    /**
+     * Returns the larger of two BigRationals.
+     *
+     * @param a  The first BigRational.
+     * @param b  The second BigRational.
+     * @return   The larger one.
+     */
+    private static BigRational max(BigRational a, BigRational b) {
+        return (compare(a, b) >= 0) ? a : b;
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The ordinal of the {@code Kind} of each node.
+     */
+    final private byte[] kinds;
+
+    /**
+     * The offset of the first child of each node in {@code children}, followed by the total number of children.
+     */
+    final private int[] childOffsets;
+
+    /**
+     * The children of every node. A Sum has pairs of children containing each term and its
+     * coefficient, a Product has pairs containing each factor and its exponent, and a Power has
+     * its base and exponent.
+     */
+    final private int[] children;
+
+    /**
+     * The value of each rational node, or null for every other node.
+     */
+    final private BigRational[] rationals;
+
+    /**
+     * The smallest interval containing each constant node, or null for every other node.
+     */
+    final private Interval[] constants;
+
+    /**
+     * The index of the Variable of each Variable node.
+     */
+    final private int[] variableIndices;
+
+    /**
+     * The names of the Variables, in the order that their values are given to {@code evaluate}.
+     */
+    final private String[] variableNames;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Compiles an Expression for interval evaluation.
+     *
+     * @param expression  The Expression.
+     * @throws            IllegalArgumentException If the Expression contains an unsupported type of node.
+     */
+    public IntervalEvaluator(Expression expression) {
+        int[] ids = expression.getVariableIds();
+        variableNames = new String[ids.length];
+        for(int i = 0; i < ids.length; i++) variableNames[i] = Variable.getName(ids[i]);
+
+        ArrayList<Kind> nodeKinds = new ArrayList<>();
+        ArrayList<int[]> nodeChildren = new ArrayList<>();
+        ArrayList<Expression> nodes = new ArrayList<>();
+        // the children of a node are always numbered before the node
+        expression.fold((node, childResults) -> {
+            Kind kind;
+            if(node instanceof BigRational) kind = Kind.RATIONAL;
+            else if(node == BigNumber.E) kind = Kind.E;
+            else if(node == BigNumber.PI) kind = Kind.PI;
+            else if(node instanceof Variable) kind = Kind.VARIABLE;
+            else if(node instanceof Sum) kind = Kind.SUM;
+            else if(node instanceof Product) kind = Kind.PRODUCT;
+            else if(node instanceof Power) kind = Kind.POWER;
+            else throw new IllegalArgumentException("IntervalEvaluator: Unsupported type of node " + node.getClass().getSimpleName());
+            int[] nodeChildIndices = new int[childResults.size()];
+            for(int i = 0; i < nodeChildIndices.length; i++) nodeChildIndices[i] = childResults.get(i);
+            nodeKinds.add(kind);
+            nodeChildren.add(nodeChildIndices);
+            nodes.add(node);
+            return nodes.size()-1;
+        }, new HashMap<Expression, Integer>());
+
+        int size = nodes.size();
+        kinds = new byte[size];
+        childOffsets = new int[size+1];
+        rationals = new BigRational[size];
+        constants = new Interval[size];
+        variableIndices = new int[size];
+        int numChildren = 0;
+        for(int[] nodeChildIndices: nodeChildren) numChildren += nodeChildIndices.length;
+        children = new int[numChildren];
+        for(int node = 0, offset = 0; node < size; node++) {
+            Kind kind = nodeKinds.get(node);
+            kinds[node] = (byte)kind.ordinal();
+            childOffsets[node] = offset;
+            for(int child: nodeChildren.get(node)) children[offset++] = child;
+            childOffsets[node+1] = offset;
+            if(kind == Kind.RATIONAL) {
+                rationals[node] = (BigRational)nodes.get(node);
+                constants[node] = Interval.of(rationals[node]);
+            } else if(kind == Kind.E) constants[node] = Interval.E;
+            else if(kind == Kind.PI) constants[node] = Interval.PI;
+            else if(kind == Kind.VARIABLE) variableIndices[node] = Arrays.binarySearch(ids, ((Variable)nodes.get(node)).getId());
+        }
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Returns a String describing the size of this evaluator.
+     *
+     * @return  A String describing this evaluator.
+     */
+    @Override
+    public String toString() {
+        return "IntervalEvaluator[" + kinds.length + " nodes, " + variableNames.length + " variables]";
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the names of the Variables, in the order that their values are given to {@code evaluate}.
+     *
+     * @return  A new array of the names.
+     */
+    public String[] getVariableNames() {
+        return variableNames.clone();
+    }
+
+    /**
+     * Computes bounds on the Expression over a box of variable values.
+     *
+     * @param variableValues  The interval of values of each Variable, mapped from its name.
+     * @return                An interval containing every value of the Expression on the box, which
+     * is empty if it isn't defined anywhere on the box.
+     * @throws                ArithmeticException If the values of a Variable are missing.
+     */
+    public Interval evaluate(Map<String, Interval> variableValues) {
+        Interval[] box = new Interval[variableNames.length];
+        for(int i = 0; i < box.length; i++) {
+            box[i] = variableValues.get(variableNames[i]);
+            if(box[i] == null) throw new ArithmeticException("IntervalEvaluator: Undefined variable value");
+        }
+        return evaluate(box);
+    }
+
+    /**
+     * Computes bounds on the Expression over a box of variable values.
+     *
+     * @param box  The interval of values of each Variable, in the order of {@code getVariableNames()}.
+     * @return     An interval containing every value of the Expression on the box, which is empty if
+     * it isn't defined anywhere on the box.
+     * @throws     IllegalArgumentException If the box doesn't have an interval for every Variable.
+     */
+    public Interval evaluate(Interval[] box) {
+        if(box.length != variableNames.length) throw new IllegalArgumentException("IntervalEvaluator: Box has the wrong number of dimensions");
+        Interval[] values = new Interval[kinds.length];
+        for(int node = 0; node < kinds.length; node++) {
+            int offset = childOffsets[node];
+            int end = childOffsets[node+1];
+            switch(KINDS[kinds[node]]) {
+                case RATIONAL: case E: case PI: values[node] = constants[node]; break;
+                case VARIABLE: values[node] = box[variableIndices[node]]; break;
+                case SUM: {
+                    Interval value = Interval.ZERO;
+                    for(int i = offset; i < end; i += 2) value = value.add(values[children[i]].multiply(values[children[i+1]]));
+                    values[node] = value;
+                    break;
+                }
+                case PRODUCT: {
+                    Interval value = Interval.ONE;
+                    for(int i = offset; i < end; i += 2) value = value.multiply(pow(values[children[i]], values[children[i+1]], children[i], children[i+1]));
+                    values[node] = value;
+                    break;
+                }
+                case POWER: {
+                    int base = children[offset], exponent = children[offset+1];
+                    values[node] = pow(values[base], values[exponent], base, exponent);
+                    break;
+                }
+            }
+        }
+        return values[kinds.length-1];
+    }
+
+    /**
+     * Computes exact bounds on the Expression over a box of variable values, where every endpoint is
+     * a BigRational or null if it is unbounded.
+     *
+     * @param box  The lower and upper endpoints of the values of each Variable, in the order of
+     * {@code getVariableNames()}.
+     * @return     A Pair containing the lower and upper endpoints of an interval containing every
+     * value of the Expression on the box, or null if it isn't defined anywhere on the box.
+     * @throws     IllegalArgumentException If the box doesn't have an interval for every Variable, or
+     * an interval's lower endpoint is greater than its upper endpoint.
+     */
+    public Pair<BigRational, BigRational> evaluateExact(ArrayList<Pair<BigRational, BigRational>> box) {
+        if(box.size() != variableNames.length) throw new IllegalArgumentException("IntervalEvaluator: Box has the wrong number of dimensions");
+        for(Pair<BigRational, BigRational> interval: box) {
+            if(interval.first() != null && interval.second() != null && compare(interval.first(), interval.second()) > 0)
+                throw new IllegalArgumentException("IntervalEvaluator: Lower endpoint must not be greater than the upper endpoint");
+        }
+        BigRational[] lower = new BigRational[kinds.length];
+        BigRational[] upper = new BigRational[kinds.length];
+        boolean[] isEmpty = new boolean[kinds.length];
+        for(int node = 0; node < kinds.length; node++) {
+            int offset = childOffsets[node];
+            int end = childOffsets[node+1];
+            switch(KINDS[kinds[node]]) {
+                case RATIONAL: lower[node] = upper[node] = rationals[node]; break;
+                case E: case PI: setExact(lower, upper, isEmpty, node, constants[node]); break;
+                case VARIABLE: {
+                    lower[node] = box.get(variableIndices[node]).first();
+                    upper[node] = box.get(variableIndices[node]).second();
+                    break;
+                }
+                case SUM: {
+                    lower[node] = upper[node] = BigRational.ZERO;
+                    for(int i = offset; i < end; i += 2) {
+                        int term = children[i];
+                        BigRational coefficient = rationals[children[i+1]];
+                        isEmpty[node] |= isEmpty[term];
+                        BigRational termLower = (coefficient.signum() >= 0) ? lower[term] : upper[term];
+                        BigRational termUpper = (coefficient.signum() >= 0) ? upper[term] : lower[term];
+                        if(coefficient.signum() == 0) termLower = termUpper = BigRational.ZERO;
+                        lower[node] = (lower[node] == null || termLower == null) ? null : (BigRational)lower[node].add(termLower.multiply(coefficient));
+                        upper[node] = (upper[node] == null || termUpper == null) ? null : (BigRational)upper[node].add(termUpper.multiply(coefficient));
+                    }
+                    break;
+                }
+                case PRODUCT: {
+                    lower[node] = upper[node] = BigRational.ONE;
+                    for(int i = offset; i < end; i += 2) {
+                        BigRational[] factor = powExact(lower, upper, isEmpty, children[i], children[i+1]);
+                        if(factor == null) isEmpty[node] = true;
+                        else multiplyExact(lower, upper, isEmpty, node, factor[0], factor[1]);
+                        if(isEmpty[node]) break;
+                    }
+                    break;
+                }
+                case POWER: {
+                    BigRational[] power = powExact(lower, upper, isEmpty, children[offset], children[offset+1]);
+                    if(power == null) isEmpty[node] = true;
+                    else {
+                        lower[node] = power[0];
+                        upper[node] = power[1];
+                    }
+                    break;
+                }
+            }
+        }
+        int root = kinds.length-1;
+        if(isEmpty[root]) return null;
+        return new Pair<>(lower[root], upper[root]);
+    }
+
+    /**
+     * Computes bounds on a power, given the bounds of its base and exponent.
+     *
+     * @param baseValue      The bounds of the base.
+     * @param exponentValue  The bounds of the exponent.
+     * @param base           The node of the base.
+     * @param exponent       The node of the exponent.
+     * @return               The bounds of the power.
+     */
+    private Interval pow(Interval baseValue, Interval exponentValue, int base, int exponent) {
+        if(rationals[exponent] != null) return baseValue.pow(rationals[exponent]);
+        if(kinds[base] == Kind.E.ordinal()) return exponentValue.exp();
+        return baseValue.pow(exponentValue);
+    }
+
+    /**
+     * Computes exact bounds on a power, given the exact bounds of its base and exponent. Integer
+     * powers of bounded bases are computed exactly, and every other power is computed with
+     * {@code double}s.
+     *
+     * @param lower     The lower endpoints of the nodes that have been evaluated.
+     * @param upper     The upper endpoints of the nodes that have been evaluated.
+     * @param isEmpty   Whether or not each node that has been evaluated is empty.
+     * @param base      The node of the base.
+     * @param exponent  The node of the exponent.
+     * @return          The lower and upper endpoints of the power, or null if it is empty.
+     */
+    private BigRational[] powExact(BigRational[] lower, BigRational[] upper, boolean[] isEmpty, int base, int exponent) {
+        if(isEmpty[base] || isEmpty[exponent]) return null;
+        BigRational rational = rationals[exponent];
+        BigRational a = lower[base], b = upper[base];
+        if(rational != null && rational.isInteger() && a != null && b != null && rational.getNumeratorValue().bitLength() < 31) {
+            int n = rational.getNumeratorValue().intValue();
+            boolean containsZero = a.signum() <= 0 && b.signum() >= 0;
+            if(n < 0 && containsZero) return toExact(toInterval(a, b).pow(rational));
+            BigRational aPower = a.pow(n), bPower = b.pow(n);
+            if(n % 2 != 0) return (n > 0) ? new BigRational[] {aPower, bPower} : new BigRational[] {bPower, aPower};
+            if(containsZero) return new BigRational[] {BigRational.ZERO, max(aPower, bPower)};
+            return new BigRational[] {min(aPower, bPower), max(aPower, bPower)};
+        }
+        return toExact(pow(toInterval(a, b), toInterval(lower[exponent], upper[exponent]), base, exponent));
+    }
+
+    /**
+     * Multiplies the exact bounds of a node by the bounds of a factor, where null endpoints are unbounded.
+     *
+     * @param lower        The lower endpoints of the nodes that have been evaluated.
+     * @param upper        The upper endpoints of the nodes that have been evaluated.
+     * @param isEmpty      Whether or not each node that has been evaluated is empty.
+     * @param node         The node, whose bounds are replaced by the product.
+     * @param factorLower  The lower endpoint of the factor.
+     * @param factorUpper  The upper endpoint of the factor.
+     */
+    private void multiplyExact(BigRational[] lower, BigRational[] upper, boolean[] isEmpty, int node,
+        BigRational factorLower, BigRational factorUpper) {
+        BigRational a = lower[node], b = upper[node];
+        if(a == null || b == null || factorLower == null || factorUpper == null) {
+            Interval product = toInterval(a, b).multiply(toInterval(factorLower, factorUpper));
+            setExact(lower, upper, isEmpty, node, product);
+            return;
+        }
+        BigRational[] products = {
+            (BigRational)a.multiply(factorLower), (BigRational)a.multiply(factorUpper),
+            (BigRational)b.multiply(factorLower), (BigRational)b.multiply(factorUpper)
+        };
+        lower[node] = upper[node] = products[0];
+        for(BigRational product: products) {
+            lower[node] = min(lower[node], product);
+            upper[node] = max(upper[node], product);
+        }
+    }
+
+    /**
+     * Converts exact bounds to the smallest interval with {@code double} endpoints that contains them.
+     *
+     * @param lower  The lower endpoint, or null if it is unbounded.
+     * @param upper  The upper endpoint, or null if it is unbounded.
+     * @return       The interval.
+     */
+    private static Interval toInterval(BigRational lower, BigRational upper) {
+        double newLower = (lower == null) ? Double.NEGATIVE_INFINITY : Interval.of(lower).getLower();
+        double newUpper = (upper == null) ? Double.POSITIVE_INFINITY : Interval.of(upper).getUpper();
+        return Interval.of(newLower, newUpper);
+    }
+
+    /**
+     * Converts an interval with {@code double} endpoints to exact bounds.
+     *
+     * @param interval  The interval.
+     * @return          The lower and upper endpoints, which are null if they are infinite, or null
+     * if the interval is empty.
+     */
+    private static BigRational[] toExact(Interval interval) {
+        if(interval.isEmpty()) return null;
+        double lower = interval.getLower(), upper = interval.getUpper();
+        return new BigRational[] {
+            Double.isInfinite(lower) ? null : Interval.toRational(lower),
+            Double.isInfinite(upper) ? null : Interval.toRational(upper)
+        };
+    }
+
+    /**
+     * Sets the exact bounds of a node to the endpoints of an interval.
+     *
+     * @param lower     The lower endpoints of the nodes.
+     * @param upper     The upper endpoints of the nodes.
+     * @param isEmpty   Whether or not each node is empty.
+     * @param node      The node.
+     * @param interval  The interval.
+     */
+    private static void setExact(BigRational[] lower, BigRational[] upper, boolean[] isEmpty, int node, Interval interval) {
+        BigRational[] bounds = toExact(interval);
+        if(bounds == null) isEmpty[node] = true;
+        else {
+            lower[node] = bounds[0];
+            upper[node] = bounds[1];
+        }
+    }
+}
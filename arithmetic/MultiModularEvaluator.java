@@ -0,0 +1,191 @@
+package arithmetic;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import algebra.Variable;
+import utility.Pair;
+
+/**
+ * <p>A utility class that evaluates Expressions exactly by evaluating them modulo many word sized
+ * primes and rebuilding the rational result, instead of computing with {@code BigRational}s whose
+ * sizes grow with every operation.</p>
+ *
+ * <p>The primes are evaluated in batches, with every prime in a batch evaluated independently
+ * and in parallel using {@code long} arithmetic. After each batch, the residues are combined with
+ * the Chinese remainder theorem and a rational number is recovered using rational reconstruction.
+ * Once the recovered value stops changing between batches, it is taken as the result.</p>
+ *
+ * <p>Note: like every multi-modular method, the result is only correct with overwhelming
+ * probability, since a wrong value could in principle be stable across a whole batch of primes.</p>
+ *
+ * @author Ricky Qin
+ */
+public class MultiModularEvaluator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The number of primes in the first batch, which are evaluated in parallel before attempting to
+     * reconstruct the result.
+     */
+    final private static int MIN_BATCH_SIZE = Math.max(4, 2*Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The maximum number of primes used before falling back to evaluating with {@code BigRational}s.
+     * This allows results of roughly half a million bits.
+     */
+    final private static int MAX_PRIMES = 1 << 15;
+
+    /**
+     * The primes used for evaluation, in decreasing order starting just below {@code 2^31}. The list
+     * is extended as needed, and is only accessed while holding its lock.
+     */
+    final private static ArrayList<Long> primes = new ArrayList<>();
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Evaluates an Expression exactly, given the values of its variables.
+     *
+     * @param expression      The Expression to evaluate.
+     * @param variableValues  The values to substitute into the variables.
+     * @return                The exact value of {@code expression}, which is a BigRational if every
+     * value in {@code variableValues} is a BigRational and {@code expression} only contains integer powers.
+     * @throws                ArithmeticException If the value of a variable is missing, or if
+     * {@code expression} divides by zero.
+     */
+    public static Expression evaluate(Expression expression, HashMap<String, Expression> variableValues) {
+        for(Expression value: variableValues.values()) {
+            if(!(value instanceof BigRational)) return expression.evaluate(variableValues, new HashMap<>());
+        }
+        // a missing variable would be given a random residue, so let exact evaluation report it instead
+        for(int id: expression.getVariableIds()) {
+            if(!variableValues.containsKey(Variable.getName(id))) return expression.evaluate(variableValues, new HashMap<>());
+        }
+
+        BigInteger modulus = BigInteger.ONE;
+        BigInteger residue = BigInteger.ZERO;
+        BigRational previous = null;
+        // the batches double in size, so the cost of reconstruction is amortized over the primes
+        for(int start = 0, batchSize = MIN_BATCH_SIZE; start < MAX_PRIMES; start += batchSize, batchSize *= 2) {
+            long[] batchPrimes = primes(start, batchSize);
+            long[] batchResidues = new long[batchSize];
+            boolean[] isBad = new boolean[batchSize];
+            try {
+                IntStream.range(0, batchSize).parallel().forEach(i -> {
+                    try {
+                        batchResidues[i] = evaluateModulo(expression, variableValues, batchPrimes[i]);
+                    } catch(ArithmeticException e) {// a denominator is divisible by this prime
+                        isBad[i] = true;
+                    }
+                });
+            } catch(UnsupportedOperationException e) {
+                return expression.evaluate(variableValues, new HashMap<>());
+            }
+
+            Pair<BigInteger, BigInteger> batch = combine(batchPrimes, batchResidues, isBad, 0, batchSize);
+            // every prime failing means the denominator is most likely zero
+            if(batch.second().equals(BigInteger.ONE)) return expression.evaluate(variableValues, new HashMap<>());
+            residue = chineseRemainder(residue, modulus, batch.first(), batch.second());
+            modulus = modulus.multiply(batch.second());
+
+            BigRational current = NumberTheory.rationalReconstruction(residue, modulus);
+            if(current != null && current.equals(previous)) return current;
+            previous = current;
+        }
+        return expression.evaluate(variableValues, new HashMap<>());
+    }
+
+    /**
+     * Combines the residues of a range of primes into a single residue modulo their product, using
+     * a product tree so that the sizes of the operands are balanced.
+     *
+     * @param primes    The primes.
+     * @param residues  The residues modulo each prime.
+     * @param isBad     Whether or not each prime should be skipped.
+     * @param from      The index of the first prime, inclusive.
+     * @param to        The index of the last prime, exclusive.
+     * @return          A Pair containing the combined residue and the product of the primes that
+     * were not skipped.
+     */
+    private static Pair<BigInteger, BigInteger> combine(long[] primes, long[] residues, boolean[] isBad, int from, int to) {
+        if(to-from == 1) {
+            if(isBad[from]) return new Pair<>(BigInteger.ZERO, BigInteger.ONE);
+            return new Pair<>(BigInteger.valueOf(residues[from]), BigInteger.valueOf(primes[from]));
+        }
+        int mid = (from+to) >>> 1;
+        Pair<BigInteger, BigInteger> left = combine(primes, residues, isBad, from, mid);
+        Pair<BigInteger, BigInteger> right = combine(primes, residues, isBad, mid, to);
+        return new Pair<>(chineseRemainder(left.first(), left.second(), right.first(), right.second()),
+            left.second().multiply(right.second()));
+    }
+
+    /**
+     * Finds the residue modulo {@code m1*m2} that is congruent to {@code r1} modulo {@code m1} and
+     * {@code r2} modulo {@code m2}, using {@code x = r1 + m1*((r2 - r1)/m1 mod m2)}.
+     *
+     * @param r1  The first residue.
+     * @param m1  The first modulus.
+     * @param r2  The second residue.
+     * @param m2  The second modulus, which is coprime to {@code m1}.
+     * @return    The combined residue, reduced modulo {@code m1*m2}.
+     */
+    private static BigInteger chineseRemainder(BigInteger r1, BigInteger m1, BigInteger r2, BigInteger m2) {
+        if(m1.equals(BigInteger.ONE)) return r2;
+        if(m2.equals(BigInteger.ONE)) return r1;
+        BigInteger multiple = r2.subtract(r1).multiply(m1.modInverse(m2)).mod(m2);
+        return r1.add(m1.multiply(multiple));
+    }
+
+    /**
+     * Evaluates an Expression modulo a prime.
+     *
+     * @param expression      The Expression to evaluate.
+     * @param variableValues  The values of the variables, which are all BigRationals.
+     * @param modulus         The prime modulus.
+     * @return                The residue of {@code expression}.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If {@code expression} cannot be evaluated
+     * modulo a prime.
+     */
+    private static long evaluateModulo(Expression expression, HashMap<String, Expression> variableValues, long modulus) {
+        HashMap<Expression, Long> residues = new HashMap<>();
+        HashMap<String, Long> variableResidues = new HashMap<>();
+        for(Map.Entry<String, Expression> variable: variableValues.entrySet())
+            variableResidues.put(variable.getKey(), variable.getValue().evaluateModulo(modulus, variableResidues, residues));
+        return expression.evaluateModulo(modulus, variableResidues, residues);
+    }
+
+    /**
+     * Returns a range of the primes used for evaluation, generating more primes if necessary.
+     *
+     * @param start   The index of the first prime.
+     * @param length  The number of primes.
+     * @return        The primes with indices {@code start} to {@code start + length - 1}.
+     */
+    private static long[] primes(int start, int length) {
+        synchronized(primes) {
+            long candidate = primes.isEmpty() ? (1L << 31) : primes.get(primes.size()-1);
+            while(primes.size() < start+length) {
+                do {
+                    candidate--;
+                } while(!BigInteger.valueOf(candidate).isProbablePrime(50));
+                primes.add(candidate);
+            }
+            long[] range = new long[length];
+            for(int i = 0; i < length; i++) range[i] = primes.get(start+i);
+            return range;
+        }
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * This class only contains static methods and should not be instantiated.
+     */
+    private MultiModularEvaluator() {}
+}
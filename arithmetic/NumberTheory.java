@@ -0,0 +1,517 @@
+package arithmetic;
+
+import java.math.BigInteger;
+
+import utility.Pair;
+
+/**
+ * <p>A utility class containing exact integer primitives: greatest common divisors and least
+ * common multiples of many values, integer roots, perfect power detection, and modular arithmetic
+ * including rational reconstruction.</p>
+ *
+ * <p>Every operation has a fast path that uses {@code long} arithmetic when the operands fit in
+ * a machine word, and only falls back to {@code BigInteger} arithmetic when they do not.</p>
+ *
+ * @author Ricky Qin
+ */
+public class NumberTheory {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The quadratic residues modulo 64. Together with the residues modulo 63, 65 and 11, this rules
+     * out about 99% of non-squares before any square root is computed.
+     */
+    final private static boolean[] SQUARES_MOD_64 = quadraticResidues(64);
+
+    /**
+     * The quadratic residues modulo 63.
+     */
+    final private static boolean[] SQUARES_MOD_63 = quadraticResidues(63);
+
+    /**
+     * The quadratic residues modulo 65.
+     */
+    final private static boolean[] SQUARES_MOD_65 = quadraticResidues(65);
+
+    /**
+     * The quadratic residues modulo 11.
+     */
+    final private static boolean[] SQUARES_MOD_11 = quadraticResidues(11);
+
+    /**
+     * Small primes used to filter out integers that cannot be perfect {@code k}-th powers.
+     */
+    final private static int[] FILTER_PRIMES = {
+        3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97,
+        101, 103, 107, 109, 113, 127, 131, 137, 139, 149, 151, 157, 163, 167, 173, 179, 181, 191, 193, 197, 199
+    };
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Finds the quadratic residues of the provided modulus.
+     *
+     * @param modulus  The modulus.
+     * @return         An array where the value at index {@code i} is true if {@code i} is a quadratic residue.
+     */
+    private static boolean[] quadraticResidues(int modulus) {
+        boolean[] residues = new boolean[modulus];
+        for(int i = 0; i < modulus; i++) residues[(i*i)%modulus] = true;
+        return residues;
+    }
+
+    /**
+     * Determines whether or not the absolute value of the provided {@code BigInteger} fits in a
+     * {@code long}, which excludes {@code -2^63}.
+     *
+     * @param n  The integer.
+     * @return   True if {@code |n|} can be represented as a {@code long}.
+     */
+    private static boolean fitsInLong(BigInteger n) {
+        return n.bitLength() < 63;
+    }
+
+    /**
+     * Computes the greatest common divisor of two {@code long}s using the binary gcd algorithm.
+     *
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code gcd(|a|, |b|)}, which is zero only if both values are zero.
+     * @throws   ArithmeticException if the result is {@code 2^63}, which does not fit in a {@code long}.
+     */
+    public static long gcd(long a, long b) {
+        if(a == Long.MIN_VALUE || b == Long.MIN_VALUE) {// the absolute value does not fit in a long
+            return BigInteger.valueOf(a).gcd(BigInteger.valueOf(b)).longValueExact();
+        }
+        a = Math.abs(a);
+        b = Math.abs(b);
+        if(a == 0) return b;
+        if(b == 0) return a;
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+        while(b != 0) {
+            b >>= Long.numberOfTrailingZeros(b);
+            if(a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    /**
+     * Computes the greatest common divisor of two {@code BigInteger}s.
+     *
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code gcd(|a|, |b|)}
+     */
+    public static BigInteger gcd(BigInteger a, BigInteger b) {
+        if(fitsInLong(a) && fitsInLong(b)) return BigInteger.valueOf(gcd(a.longValue(), b.longValue()));
+        if(a.signum() == 0) return b.abs();
+        if(b.signum() == 0) return a.abs();
+        // one reduction brings the larger value into range of a long
+        if(fitsInLong(a)) return BigInteger.valueOf(gcd(a.longValue(), b.mod(a.abs()).longValue()));
+        if(fitsInLong(b)) return BigInteger.valueOf(gcd(b.longValue(), a.mod(b.abs()).longValue()));
+        return a.gcd(b);
+    }
+
+    /**
+     * Computes the greatest common divisor of many {@code BigInteger}s. The values are combined
+     * pairwise in a balanced tree, so operands stay small and similarly sized at every level.
+     *
+     * @param values  The values.
+     * @return        The gcd of the absolute values, or zero if there are no values.
+     */
+    public static BigInteger gcd(BigInteger... values) {
+        if(values.length == 0) return BigInteger.ZERO;
+        BigInteger[] level = values.clone();
+        for(int size = level.length; size > 1; size = (size+1)/2) {
+            for(int i = 0; i < size/2; i++) {
+                level[i] = gcd(level[2*i], level[2*i+1]);
+                if(level[i].equals(BigInteger.ONE)) return BigInteger.ONE;
+            }
+            if(size%2 == 1) level[size/2] = level[size-1];
+        }
+        return level[0].abs();
+    }
+
+    /**
+     * Computes the least common multiple of two {@code long}s.
+     *
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code lcm(|a|, |b|)}, which is zero if either value is zero.
+     * @throws   ArithmeticException if the result does not fit in a {@code long}.
+     */
+    public static long lcm(long a, long b) {
+        if(a == 0 || b == 0) return 0;
+        return Math.multiplyExact(Math.abs(a/gcd(a, b)), Math.abs(b));
+    }
+
+    /**
+     * Computes the least common multiple of two {@code BigInteger}s.
+     *
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code lcm(|a|, |b|)}, which is zero if either value is zero.
+     */
+    public static BigInteger lcm(BigInteger a, BigInteger b) {
+        if(a.signum() == 0 || b.signum() == 0) return BigInteger.ZERO;
+        if(a.bitLength() < 63 && b.bitLength() < 63) {
+            long x = a.longValue(), y = b.longValue();
+            long quotient = Math.abs(x/gcd(x, y));
+            long high = Math.multiplyHigh(quotient, Math.abs(y));
+            if(high == 0 && quotient*Math.abs(y) >= 0) return BigInteger.valueOf(quotient*Math.abs(y));
+        }
+        return a.divide(gcd(a, b)).multiply(b).abs();
+    }
+
+    /**
+     * Computes the least common multiple of many {@code BigInteger}s. The values are combined
+     * pairwise in a balanced product tree, so the expensive multiplications are done on
+     * similarly sized operands.
+     *
+     * @param values  The values.
+     * @return        The lcm of the absolute values, or one if there are no values.
+     */
+    public static BigInteger lcm(BigInteger... values) {
+        if(values.length == 0) return BigInteger.ONE;
+        BigInteger[] level = values.clone();
+        for(int size = level.length; size > 1; size = (size+1)/2) {
+            for(int i = 0; i < size/2; i++) {
+                level[i] = lcm(level[2*i], level[2*i+1]);
+                if(level[i].signum() == 0) return BigInteger.ZERO;
+            }
+            if(size%2 == 1) level[size/2] = level[size-1];
+        }
+        return level[0].abs();
+    }
+
+    /**
+     * Computes, for every value, the gcd of that value with the product of all the other values,
+     * using Bernstein's product tree and remainder tree. This takes quasi-linear time in the total
+     * size of the values instead of a quadratic number of pairwise gcds.
+     *
+     * @param values  The values, which must all be non-zero.
+     * @return        An array where the element at index {@code i} is
+     * {@code gcd(values[i], product of values[j] for j != i)}.
+     * @throws        ArithmeticException if any value is zero.
+     */
+    public static BigInteger[] batchGcd(BigInteger... values) {
+        int n = values.length;
+        BigInteger[] result = new BigInteger[n];
+        if(n == 0) return result;
+        for(BigInteger value: values) {
+            if(value.signum() == 0) throw new ArithmeticException("NumberTheory: Zero in batch gcd");
+        }
+        if(n == 1) {
+            result[0] = BigInteger.ONE;
+            return result;
+        }
+
+        // build the product tree bottom up, where tree[0] holds the leaves
+        int depth = 1;
+        for(int size = n; size > 1; size = (size+1)/2) depth++;
+        BigInteger[][] tree = new BigInteger[depth][];
+        tree[0] = new BigInteger[n];
+        for(int i = 0; i < n; i++) tree[0][i] = values[i].abs();
+        for(int d = 1; d < depth; d++) {
+            BigInteger[] below = tree[d-1];
+            tree[d] = new BigInteger[(below.length+1)/2];
+            for(int i = 0; i < tree[d].length; i++) {
+                tree[d][i] = (2*i+1 < below.length) ? below[2*i].multiply(below[2*i+1]) : below[2*i];
+            }
+        }
+
+        // descend the remainder tree, reducing the full product modulo the square of each node
+        BigInteger[] remainders = {tree[depth-1][0]};
+        for(int d = depth-2; d >= 0; d--) {
+            BigInteger[] next = new BigInteger[tree[d].length];
+            for(int i = 0; i < next.length; i++) {
+                next[i] = remainders[i/2].mod(tree[d][i].multiply(tree[d][i]));
+            }
+            remainders = next;
+        }
+        for(int i = 0; i < n; i++) {
+            result[i] = gcd(remainders[i].divide(tree[0][i]), tree[0][i]);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the integer {@code k}-th root of a {@code long}, rounded towards zero.
+     *
+     * @param n  The radicand.
+     * @param k  The index of the root, which is positive.
+     * @return   {@code floor(n^(1/k))} for non-negative {@code n}, and {@code -floor(|n|^(1/k))} otherwise.
+     * @throws   ArithmeticException if {@code k} is not positive, or {@code n} is negative and {@code k} is even.
+     */
+    public static long iroot(long n, int k) {
+        if(k <= 0) throw new ArithmeticException("NumberTheory: Non-positive root index");
+        if(n < 0) {
+            if(k%2 == 0) throw new ArithmeticException("NumberTheory: Even root of a negative number");
+            if(n == Long.MIN_VALUE) return -iroot(BigInteger.valueOf(n).negate(), k).longValue();
+            return -iroot(-n, k);
+        }
+        if(k == 1 || n < 2) return n;
+        if(k >= 64) return 1;
+
+        // the floating point estimate is off by at most a few units, so correct it exactly
+        long root = (long)Math.pow(n, 1.0/k);
+        while(root > 0 && powExceeds(root, k, n)) root--;
+        while(!powExceeds(root+1, k, n)) root++;
+        return root;
+    }
+
+    /**
+     * Determines whether or not {@code base^k} is greater than {@code limit}, without overflowing.
+     *
+     * @param base   The non-negative base.
+     * @param k      The positive exponent.
+     * @param limit  The non-negative limit.
+     * @return       True if {@code base^k > limit}.
+     */
+    private static boolean powExceeds(long base, int k, long limit) {
+        long result = 1;
+        for(int i = 0; i < k; i++) {
+            if(base != 0 && result > limit/base) return true;
+            result *= base;
+        }
+        return result > limit;
+    }
+
+    /**
+     * Computes the integer {@code k}-th root of a {@code BigInteger} using Newton's iteration,
+     * rounded towards zero.
+     *
+     * @param n  The radicand.
+     * @param k  The index of the root, which is positive.
+     * @return   {@code floor(n^(1/k))} for non-negative {@code n}, and {@code -floor(|n|^(1/k))} otherwise.
+     * @throws   ArithmeticException if {@code k} is not positive, or {@code n} is negative and {@code k} is even.
+     */
+    public static BigInteger iroot(BigInteger n, int k) {
+        if(k <= 0) throw new ArithmeticException("NumberTheory: Non-positive root index");
+        if(n.signum() < 0) {
+            if(k%2 == 0) throw new ArithmeticException("NumberTheory: Even root of a negative number");
+            return iroot(n.negate(), k).negate();
+        }
+        if(fitsInLong(n)) return BigInteger.valueOf(iroot(n.longValue(), k));
+        if(k == 1) return n;
+        if(k == 2) return n.sqrt();
+        if(k >= n.bitLength()) return BigInteger.ONE;
+
+        // start above the root, after which Newton's iteration decreases monotonically to it
+        BigInteger bigK = BigInteger.valueOf(k);
+        BigInteger kMinusOne = BigInteger.valueOf(k-1);
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength()+k-1)/k);
+        while(true) {
+            BigInteger y = kMinusOne.multiply(x).add(n.divide(x.pow(k-1))).divide(bigK);
+            if(y.compareTo(x) >= 0) return x;
+            x = y;
+        }
+    }
+
+    /**
+     * Computes the exact {@code k}-th root of a {@code BigInteger}, if there is one.
+     *
+     * @param n  The radicand.
+     * @param k  The index of the root, which is positive.
+     * @return   The integer {@code r} such that {@code r^k = n}, or {@code null} if there is no such integer.
+     * @throws   ArithmeticException if {@code k} is not positive.
+     */
+    public static BigInteger exactRoot(BigInteger n, int k) {
+        if(k <= 0) throw new ArithmeticException("NumberTheory: Non-positive root index");
+        if(n.signum() < 0) {
+            if(k%2 == 0) return null;
+            BigInteger root = exactRoot(n.negate(), k);
+            return (root == null) ? null : root.negate();
+        }
+        if(k == 1 || n.compareTo(BigInteger.ONE) <= 0) return n;
+        if(!passesPowerFilters(n, k)) return null;
+        BigInteger root = iroot(n, k);
+        return root.pow(k).equals(n) ? root : null;
+    }
+
+    /**
+     * Determines whether or not a {@code BigInteger} is a perfect {@code k}-th power.
+     *
+     * @param n  The integer.
+     * @param k  The positive exponent.
+     * @return   True if there is an integer {@code r} such that {@code r^k = n}.
+     * @throws   ArithmeticException if {@code k} is not positive.
+     */
+    public static boolean isPerfectPower(BigInteger n, int k) {
+        return exactRoot(n, k) != null;
+    }
+
+    /**
+     * Determines whether or not a {@code long} is a perfect {@code k}-th power.
+     *
+     * @param n  The integer.
+     * @param k  The positive exponent.
+     * @return   True if there is an integer {@code r} such that {@code r^k = n}.
+     * @throws   ArithmeticException if {@code k} is not positive.
+     */
+    public static boolean isPerfectPower(long n, int k) {
+        return isPerfectPower(BigInteger.valueOf(n), k);
+    }
+
+    /**
+     * Writes a {@code BigInteger} as a perfect power with the largest possible exponent.
+     *
+     * @param n  The integer.
+     * @return   A Pair containing the base {@code r} and the exponent {@code k} such that
+     * {@code r^k = n} and {@code k} is as large as possible. If {@code n} is not a perfect power,
+     * the Pair {@code {n, 1}} is returned.
+     */
+    public static Pair<BigInteger, Integer> perfectPower(BigInteger n) {
+        if(n.abs().compareTo(BigInteger.ONE) <= 0) return new Pair<>(n, 1);
+        BigInteger base = n;
+        int exponent = 1;
+
+        // repeatedly extract prime exponents, so that composite exponents are found as products
+        boolean found = true;
+        while(found) {
+            found = false;
+            int maxExponent = base.abs().bitLength();
+            for(int k = 2; k <= maxExponent; k = (k == 2) ? 3 : k+2) {
+                if(!isPrime(k)) continue;
+                BigInteger root = exactRoot(base, k);
+                if(root != null && root.abs().compareTo(BigInteger.ONE) > 0) {
+                    base = root;
+                    exponent *= k;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return new Pair<>(base, exponent);
+    }
+
+    /**
+     * Checks cheap necessary conditions for a non-negative integer to be a perfect {@code k}-th power.
+     * For squares, the residues modulo 64, 63, 65 and 11 are checked. Otherwise, for small primes
+     * {@code p} where {@code p = 1 mod k}, only {@code 1/k} of the non-zero residues are {@code k}-th
+     * powers, which is checked with Euler's criterion {@code n^((p-1)/k) = 1 mod p}.
+     *
+     * @param n  The non-negative integer.
+     * @param k  The exponent, which is at least two.
+     * @return   False if {@code n} is definitely not a perfect {@code k}-th power.
+     */
+    private static boolean passesPowerFilters(BigInteger n, int k) {
+        if(k == 2) {
+            long residue = n.longValue() & 63;
+            if(!SQUARES_MOD_64[(int)residue]) return false;
+            long r = n.mod(BigInteger.valueOf(63L*65*11)).longValue();
+            return SQUARES_MOD_63[(int)(r%63)] && SQUARES_MOD_65[(int)(r%65)] && SQUARES_MOD_11[(int)(r%11)];
+        }
+        for(int p: FILTER_PRIMES) {
+            if((p-1)%k != 0) continue;
+            long residue = mod(n, p);
+            if(residue != 0 && powMod(residue, (p-1)/k, p) != 1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes {@code base^exponent mod modulus} for a modulus below {@code 2^31}, so that every
+     * intermediate product fits in a {@code long}.
+     *
+     * @param base      The base, reduced modulo {@code modulus}.
+     * @param exponent  The non-negative exponent.
+     * @param modulus   The positive modulus.
+     * @return          {@code base^exponent mod modulus}
+     */
+    public static long powMod(long base, long exponent, long modulus) {
+        long result = 1%modulus;
+        base %= modulus;
+        while(exponent > 0) {
+            if((exponent & 1) == 1) result = result*base%modulus;
+            base = base*base%modulus;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the inverse of a residue using the extended Euclidean algorithm.
+     *
+     * @param a        The residue, reduced modulo {@code modulus}.
+     * @param modulus  The positive modulus.
+     * @return         The residue {@code x} such that {@code a*x = 1 mod modulus}.
+     * @throws         ArithmeticException if {@code a} is not invertible modulo {@code modulus}.
+     */
+    public static long inverseMod(long a, long modulus) {
+        long oldR = a, r = modulus;
+        long oldS = 1, s = 0;
+        while(r != 0) {
+            long quotient = oldR/r;
+            long t = oldR-quotient*r; oldR = r; r = t;
+            t = oldS-quotient*s; oldS = s; s = t;
+        }
+        if(oldR != 1) throw new ArithmeticException("NumberTheory: Residue is not invertible");
+        return Math.floorMod(oldS, modulus);
+    }
+
+    /**
+     * Reduces a {@code BigInteger} modulo a {@code long}.
+     *
+     * @param n        The integer.
+     * @param modulus  The positive modulus.
+     * @return         {@code n mod modulus}, which is non-negative.
+     */
+    public static long mod(BigInteger n, long modulus) {
+        if(fitsInLong(n)) return Math.floorMod(n.longValue(), modulus);
+        return n.mod(BigInteger.valueOf(modulus)).longValue();
+    }
+
+    /**
+     * Recovers a rational number from its residue using Wang's rational reconstruction, which runs
+     * the extended Euclidean algorithm on {@code (modulus, residue)} until the remainder drops below
+     * {@code sqrt(modulus/2)}.
+     *
+     * @param residue  The residue, reduced modulo {@code modulus}.
+     * @param modulus  The positive modulus.
+     * @return         The unique fraction {@code a/b} with {@code a = b*residue mod modulus} and
+     * {@code |a|, b <= sqrt(modulus/2)}, or null if there isn't one.
+     */
+    public static BigRational rationalReconstruction(BigInteger residue, BigInteger modulus) {
+        BigInteger bound = modulus.shiftRight(1).sqrt();
+        BigInteger oldR = modulus, r = residue;
+        BigInteger oldT = BigInteger.ZERO, t = BigInteger.ONE;
+        while(r.compareTo(bound) > 0) {
+            BigInteger[] quotientAndRemainder = oldR.divideAndRemainder(r);
+            oldR = r; r = quotientAndRemainder[1];
+            BigInteger temp = oldT.subtract(quotientAndRemainder[0].multiply(t)); oldT = t; t = temp;
+        }
+        if(t.signum() == 0 || t.abs().compareTo(bound) > 0) return null;
+        if(!gcd(r, t).equals(BigInteger.ONE)) return null;
+        if(t.signum() == -1) return new BigRational(r.negate(), t.negate());
+        return new BigRational(r, t);
+    }
+
+    /**
+     * Determines whether or not a small positive integer is prime using trial division.
+     *
+     * @param n  The integer.
+     * @return   True if {@code n} is prime.
+     */
+    private static boolean isPrime(int n) {
+        if(n < 2) return false;
+        for(int d = 2; d*d <= n; d++) {
+            if(n%d == 0) return false;
+        }
+        return true;
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * This class only contains static methods and should not be instantiated.
+     */
+    private NumberTheory() {}
+}
@@ -1,19 +1,49 @@
 package arithmetic;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.TreeMap;
 
 import algebra.Variable;
+import utility.Pair;
 
 /**
  * <p>An object representing a Power in the form {@code base ^ exponent}.</p>
  *
+ * <p>A rational number raised to a rational exponent is always kept in simplest radical form,
+ * where the base is a positive integer with no perfect power factors and the exponent is the
+ * reciprocal of an integer. For instance, {@code 12^(1/2)} is represented as {@code 2*3^(1/2)}
+ * and {@code 8^(2/3)} is represented as {@code 4}.</p>
+ *
  * @author Ricky Qin
  */
 public class Power extends Expression {
 
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The maximum bit length of a rational number that is computed when raising a rational number
+     * to a rational exponent. Powers that would produce larger numbers are left unevaluated.
+     */
+    final private static int MAX_EXPANDED_BIT_LENGTH = 1 << 16;
+
+    /**
+     * The maximum number of iterations of Pollard's rho algorithm that is spent on each cofactor when
+     * factoring the base of a radical, so that parsing a radical with a large base stays fast.
+     */
+    final private static int MAX_RADICAL_RHO_ITERATIONS = 1 << 10;
+
+    /**
+     * The maximum bit length of the numerator or denominator of a base that is fully factored when
+     * simplifying a radical. Larger integers only have their small prime factors removed.
+     */
+    final private static int MAX_FACTORED_BIT_LENGTH = 64;
+
 // <-------------------------------- Static Methods -------------------------------->
 
     /**
@@ -23,9 +53,24 @@ public class Power extends Expression {
      *
      * @param base      The base.
      * @param exponent  The exponent.
-     * @return          A BigRational object for trivial cases. Otherwise, a Power object is returned.
+     * @return          A BigRational object for trivial cases, a rational number raised to a rational
+     * exponent in simplest radical form, and otherwise a Power object. The result keeps the domain
+     * restrictions of the base and the exponent.
      */
     public static Expression parsePower(Expression base, Expression exponent) {
+        Expression simplerForm = checkForSimplerForms(base, exponent);
+        if(simplerForm == null) return new Power(base, exponent);
+        else return simplerForm.withDomainRestrictions(base.getDomainRestrictions().union(exponent.getDomainRestrictions()));
+    }
+
+    /**
+     * Checks if a base raised to an exponent can be expressed as simpler objects.
+     *
+     * @param base      The base.
+     * @param exponent  The exponent.
+     * @return          The simpler object if it can be expressed as such. Otherwise, {@code null} is returned.
+     */
+    private static Expression checkForSimplerForms(Expression base, Expression exponent) {
         if(base instanceof BigRational && exponent instanceof BigRational) {
             if(((BigRational)base).signum() == 0) {
                 if(((BigRational)exponent).signum() == 0)
@@ -40,59 +85,154 @@ public class Power extends Expression {
             return BigRational.ONE;
         if(exponent instanceof BigRational && ((BigRational)exponent).equals(BigRational.ONE))
             return base;
-        return new Power(base, exponent);
+        if(base instanceof BigRational && exponent instanceof BigRational)
+            return parseRationalPower((BigRational)base, (BigRational)exponent);
+        return null;
     }
 
     /**
-     * Returns the String representation of a Power with the specified base and exponent.
+     * Raises a residue to an integer power modulo a prime, using Fermat's little theorem to reduce
+     * large exponents.
      *
-     * @param base      The base of the Power.
-     * @param exponent  The exponent of the Power.
-     * @return          The normal String representation of the Power.
+     * @param base      The residue of the base.
+     * @param exponent  The exponent, which must be an integer.
+     * @param modulus   The prime modulus.
+     * @return          {@code base^exponent mod modulus}
+     * @throws          ArithmeticException If the exponent is negative and {@code base} is zero.
+     * @throws          UnsupportedOperationException If the exponent is not an integer.
      */
-    public static String toPowerString(Expression base, Expression exponent) {
-        StringBuilder str = new StringBuilder();
+    static long powModulo(long base, Expression exponent, long modulus) {
+        if(!isIntegerExponent(exponent))
+            throw new UnsupportedOperationException("Power: Cannot evaluate a non-integer exponent modulo a prime");
+        BigInteger power = ((BigRational)exponent).getNumeratorValue();
+        if(power.signum() == -1) {
+            base = NumberTheory.inverseMod(base, modulus);
+            power = power.negate();
+        }
+        if(power.signum() == 0) return 1;
+        if(base == 0) return 0;
+        return NumberTheory.powMod(base, NumberTheory.mod(power, modulus-1), modulus);
+    }
 
-        // print the base
-        boolean printBaseBrackets = true;
-        if(exponent.equals(BigRational.ONE)) printBaseBrackets = false;
-        if(base instanceof BigRational) {
-            if(((BigRational)base).signum() >= 0 && ((BigRational)base).isInteger()) printBaseBrackets = false;
+    /**
+     * Computes an upper bound on the degree of a power, given a bound on the degree of its base.
+     *
+     * @param baseDegree  The bound on the degree of the base.
+     * @param exponent    The exponent.
+     * @return            The bound, or {@code Long.MAX_VALUE} if the exponent is not an integer and
+     * the base isn't constant.
+     */
+    static long degreeBound(long baseDegree, Expression exponent) {
+        if(baseDegree == 0) return 0;
+        if(!isIntegerExponent(exponent)) return Long.MAX_VALUE;
+        BigInteger power = ((BigRational)exponent).getNumeratorValue().abs();
+        if(power.bitLength() >= Long.SIZE-1) return Long.MAX_VALUE;
+        return saturatedMultiply(baseDegree, power.longValue());
+    }
+
+    /**
+     * Determines whether or not an exponent is an integer.
+     *
+     * @param exponent  The exponent.
+     * @return          True if {@code exponent} is an integral BigRational.
+     */
+    private static boolean isIntegerExponent(Expression exponent) {
+        return exponent instanceof BigRational && ((BigRational)exponent).isInteger();
+    }
+
+    /**
+     * Computes a rational number raised to a rational exponent, in simplest radical form.
+     * The base is factored into primes and each prime power {@code p^(e*m/n)} is split into
+     * the rational part {@code p^floor(e*m/n)} and the remaining radical part.
+     *
+     * @param base      The base, which is not zero or one.
+     * @param exponent  The exponent, which is not zero or one.
+     * @return          A BigRational if the power is rational, the product of a BigRational and
+     * a Power in simplest radical form if it is irrational, and the unevaluated Power if the result
+     * is not real or is too large to compute. A large factor of the base that cannot be found
+     * quickly is left inside the radical, so the Power may not be in simplest radical form.
+     */
+    private static Expression parseRationalPower(BigRational base, BigRational exponent) {
+        BigInteger exponentNumerator = exponent.getNumeratorValue();
+        BigInteger exponentDenominator = exponent.getDenominatorValue();
+        long maxBitLength = Math.max(base.getNumeratorValue().bitLength(), base.getDenominatorValue().bitLength());
+        if(exponentNumerator.bitLength() > 31 || exponentDenominator.bitLength() > 31 ||
+            maxBitLength*exponentNumerator.abs().longValue()/exponentDenominator.longValue() > MAX_EXPANDED_BIT_LENGTH)
+            return new Power(base, exponent);
+        int m = exponentNumerator.intValue();
+        int n = exponentDenominator.intValue();
+        if(n == 1) return base.pow(m);
+        if(base.signum() == -1 && n%2 == 0) return new Power(base, exponent);// not a real number
+
+        // perfect powers do not need to be factored
+        BigInteger numeratorRoot = NumberTheory.exactRoot(base.getNumeratorValue(), n);
+        BigInteger denominatorRoot = NumberTheory.exactRoot(base.getDenominatorValue(), n);
+        if(numeratorRoot != null && denominatorRoot != null) return new BigRational(numeratorRoot, denominatorRoot).pow(m);
+
+        // the prime factors of the denominator have negative multiplicities
+        TreeMap<BigInteger, Integer> factors = radicalFactors(base.getNumeratorValue(), n);
+        for(Map.Entry<BigInteger, Integer> factor: radicalFactors(base.getDenominatorValue(), n).entrySet()) {
+            factors.put(factor.getKey(), -factor.getValue());
         }
-        if(base instanceof Variable) printBaseBrackets = false;
 
-        boolean printExponent = false;
-        boolean printExponentBrackets = false;
-        if(!(exponent instanceof BigRational) || !exponent.equals(BigRational.ONE)) {
-            printExponent = true;
-            printExponentBrackets = true;
-            if(exponent instanceof BigRational) {
-                if(((BigRational)exponent).isInteger()) printExponentBrackets = false;
-            }
-            if(exponent instanceof Variable) printExponentBrackets = false;
+        BigInteger outsideNumerator = BigInteger.ONE;
+        BigInteger outsideDenominator = BigInteger.ONE;
+        BigInteger inside = BigInteger.ONE;
+        for(Map.Entry<BigInteger, Integer> factor: factors.entrySet()) {
+            long multiplicity = (long)factor.getValue()*m;
+            long outsideMultiplicity = Math.floorDiv(multiplicity, n);
+            int insideMultiplicity = (int)(multiplicity-outsideMultiplicity*n);
+            if(outsideMultiplicity >= 0) outsideNumerator = outsideNumerator.multiply(factor.getKey().pow((int)outsideMultiplicity));
+            else outsideDenominator = outsideDenominator.multiply(factor.getKey().pow((int)-outsideMultiplicity));
+            inside = inside.multiply(factor.getKey().pow(insideMultiplicity));
         }
-        if(!printExponent) printBaseBrackets = false;
+        if(base.signum() == -1 && m%2 != 0) outsideNumerator = outsideNumerator.negate();// odd root of a negative number
+
+        BigRational outside = new BigRational(outsideNumerator, outsideDenominator);
+        if(inside.equals(BigInteger.ONE)) return outside;
+        Power radical = new Power(new BigRational(inside), new BigRational(BigInteger.ONE, BigInteger.valueOf(n)));
+        if(outside.equals(BigRational.ONE)) return radical;
+        ArrayList<Expression> factorsAndRadical = new ArrayList<>();
+        factorsAndRadical.add(outside);
+        factorsAndRadical.add(radical);
+        return Product.parseProduct(factorsAndRadical, new ArrayList<>());
+    }
 
-        if(printBaseBrackets) str.append(surroundInBrackets(base.toString()));
-        else str.append(base.toString());
-        if(printExponent) {
-            str.append('^');
-            if(printExponentBrackets) str.append(surroundInBrackets(exponent.toString()));
-            else str.append(exponent.toString());
+    /**
+     * Factors the numerator or denominator of the base of a radical, spending a bounded amount of
+     * work. Integers with more than {@code MAX_FACTORED_BIT_LENGTH} bits only have their small prime
+     * factors removed, and the cofactor that remains is kept as a single factor unless it is a
+     * perfect power of the index of the radical.
+     *
+     * @param value  The positive integer to factor.
+     * @param index  The index of the radical.
+     * @return       A new {@code TreeMap} that maps each factor to its multiplicity, where the
+     * factors are not necessarily prime.
+     */
+    private static TreeMap<BigInteger, Integer> radicalFactors(BigInteger value, int index) {
+        if(value.bitLength() <= MAX_FACTORED_BIT_LENGTH) return PrimeFactorization.factor(value, MAX_RADICAL_RHO_ITERATIONS);
+        Pair<TreeMap<BigInteger, Integer>, BigInteger> smallFactors = PrimeFactorization.factorSmallPrimes(value);
+        TreeMap<BigInteger, Integer> factors = smallFactors.first();
+        BigInteger cofactor = smallFactors.second();
+        if(!cofactor.equals(BigInteger.ONE)) {
+            BigInteger root = NumberTheory.exactRoot(cofactor, index);
+            if(root != null) factors.put(root, index);
+            else factors.put(cofactor, 1);
         }
-        return str.toString();
+        return factors;
     }
 
     /**
-     * Returns the LaTeX String representation of a Power with the specified base and exponent.
+     * Writes a Power with the specified base and exponent in the normal or LaTeX format. In a LaTeX
+     * String, the exponent is always surrounded with curly brackets.
      *
+     * @param out       The ExpressionWriter to write to.
      * @param base      The base of the Power.
      * @param exponent  The exponent of the Power.
-     * @return          The LaTeX String representation of the Power.
+     * @param format    The format to write the Power in, which is not the function format.
+     * @throws          IOException If the underlying {@code Appendable} throws one.
      */
-    public static String toPowerLatexString(Expression base, Expression exponent) {
-        StringBuilder str = new StringBuilder();
-
+    static void renderPower(ExpressionWriter out, Expression base, Expression exponent, Format format) throws IOException {
         // print the base
         boolean printBaseBrackets = true;
         if(exponent.equals(BigRational.ONE)) printBaseBrackets = false;
@@ -102,16 +242,25 @@ public class Power extends Expression {
         if(base instanceof Variable) printBaseBrackets = false;
 
         boolean printExponent = false;
-        if(!(exponent instanceof BigRational) || !exponent.equals(BigRational.ONE)) printExponent = true;
+        boolean printExponentBrackets = false;
+        if(!(exponent instanceof BigRational) || !exponent.equals(BigRational.ONE)) {
+            printExponent = true;
+            printExponentBrackets = true;
+            if(exponent instanceof BigRational) {
+                if(((BigRational)exponent).isInteger()) printExponentBrackets = false;
+            }
+            if(exponent instanceof Variable) printExponentBrackets = false;
+        }
         if(!printExponent) printBaseBrackets = false;
 
-        if(printBaseBrackets) str.append(surroundInLatexBrackets(base.toLatexString()));
-        else str.append(base.toLatexString());
+        if(printBaseBrackets) out.appendInBrackets(base, format);
+        else out.appendExpression(base, format);
         if(printExponent) {
-            str.append('^');
-            str.append(surroundInCurlyBrackets(exponent.toLatexString()));
+            out.append('^');
+            if(format == Format.LATEX) out.appendInCurlyBrackets(exponent, format);
+            else if(printExponentBrackets) out.appendInBrackets(exponent, format);
+            else out.appendExpression(exponent, format);
         }
-        return str.toString();
     }
 
 // <------------------------------ Instance Variables ------------------------------>
@@ -126,6 +275,18 @@ public class Power extends Expression {
      */
     private Expression exponent;
 
+    /**
+     * The hash code of this Power, which is computed when it is constructed. Since the hash codes
+     * of its base and exponent have already been computed, this never recurses more than one level.
+     */
+    private int hash;
+
+    /**
+     * The last rendered Strings of this Power in the normal, LaTeX and function formats. They are
+     * held by soft references, so the garbage collector may clear them.
+     */
+    private SoftReference<String> string, latexString, functionString;
+
 // <--------------------------------- Constructors --------------------------------->
 
     /**
@@ -136,9 +297,11 @@ public class Power extends Expression {
      * @param base      The base.
      * @param exponent  The exponent.
      */
-    private Power(Expression base, Expression exponent) {
+    Power(Expression base, Expression exponent) {
         this.base = base;
         this.exponent = exponent;
+        hash = 10007*base.hashCode() + exponent.hashCode();
+        computeMetadata();
     }
 
 // <-------------------- Methods Overriden from java.lang.Object -------------------->
@@ -154,7 +317,8 @@ public class Power extends Expression {
     public boolean equals(Object o) {
         if(o == this) return true;
         if(!(o instanceof Power)) return false;
-        return (base.equals(((Power)o).base) && exponent.equals(((Power)o).exponent));
+        if(hashCode() != o.hashCode()) return false;
+        return equalChildren(this, (Power)o);
     }
 
     /**
@@ -164,71 +328,166 @@ public class Power extends Expression {
      */
     @Override
     public int hashCode() {
-        return 10007*base.hashCode() + exponent.hashCode();
+        return hash;
     }
 
 
+// <---------------------- Methods Overriden from Superclasses ---------------------->
+
     /**
-     * Returns a string representation of this Power.
+     * Writes this Power in the provided format. In function form, it is written as
+     * {@code Power(base, exponent)}.
      *
-     * @return  The normal String representation of this Power.
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this Power in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
      */
     @Override
-    public String toString() {
-        return toPowerString(base, exponent);
+    protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+        if(format != Format.FUNCTION) {
+            renderPower(out, base, exponent, format);
+            return;
+        }
+        out.append("Power(");
+        out.appendExpression(base, format);
+        out.append(", ");
+        out.appendExpression(exponent, format);
+        out.append(')');
     }
 
-// <---------------------- Methods Overriden from Superclasses ---------------------->
+    /**
+     * Returns the cached String representation of this Power in the provided format.
+     *
+     * @param format  The format of the String.
+     * @return        The cached String, or null if it isn't cached or has been dropped.
+     */
+    @Override
+    protected String getCachedString(Format format) {
+        SoftReference<String> cached = (format == Format.NORMAL) ? string :
+            (format == Format.LATEX) ? latexString : functionString;
+        return (cached == null) ? null : cached.get();
+    }
 
     /**
-     * Returns a LaTeX string representation of this Power.
+     * Caches the String representation of this Power in the provided format.
      *
-     * @return  The LaTeX String representation of this Power.
+     * @param format  The format of the String.
+     * @param str     The String.
      */
     @Override
-    public String toLatexString() {
-        return toPowerLatexString(base, exponent);
+    protected void setCachedString(Format format, String str) {
+        if(format == Format.NORMAL) string = new SoftReference<>(str);
+        else if(format == Format.LATEX) latexString = new SoftReference<>(str);
+        else functionString = new SoftReference<>(str);
     }
 
     /**
-     * Returns the String representation of this Power in function form.
+     * Returns the children of this Power, which are its base followed by its exponent.
      *
-     * @return  The function String representation of this Power, formatted as
-     * {@code Power(base, exponent)}.
+     * @return  A new list of the children.
      */
     @Override
-    public String toFunctionString() {
-        StringBuilder str = new StringBuilder();
-        str.append("Power(");
-        str.append(base.toFunctionString());
-        str.append(", ");
-        str.append(exponent.toFunctionString());
-        str.append(")");
-        return str.toString();
+    public ArrayList<Expression> getChildren() {
+        ArrayList<Expression> children = new ArrayList<>(2);
+        children.add(base);
+        children.add(exponent);
+        return children;
     }
 
     /**
      * Attempts to compute a numerical exact value for this Power, given the values to substitute.
      *
      * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
      * @return                The result of evaluating this Power.
      * @throws                ArithmeticException If the value of a variable in this Power is missing.
      */
     @Override
-    protected Expression internalEvaluate(HashMap<String, Expression> variableValues) {
-        // TODO Auto-generated method stub
-        return null;
+    protected Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
+        return parsePower(base.evaluate(variableValues, values), exponent.evaluate(variableValues, values));
+    }
+
+    /**
+     * Computes the derivative of this Power with respect to the provided Variable, using the power
+     * rule {@code (b^n)' = n * b^(n-1) * b'} if the exponent is constant, and
+     * {@code (e^x)' = e^x * x'} if the base is {@code e}.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             The derivative of this Power.
+     * @throws             ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    @Override
+    protected Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        Expression baseDerivative = base.differentiate(variable, derivatives);
+        Expression exponentDerivative = exponent.differentiate(variable, derivatives);
+        ArrayList<Expression> factors = new ArrayList<>();
+
+        if(base.equals(BigNumber.E)) {
+            if(exponentDerivative.equals(BigRational.ZERO)) return BigRational.ZERO;
+            factors.add(this);
+            factors.add(exponentDerivative);
+            return Product.parseProduct(factors, new ArrayList<>());
+        }
+        if(!exponentDerivative.equals(BigRational.ZERO))
+            throw new ArithmeticException("Power: Derivative requires logarithms");
+        if(baseDerivative.equals(BigRational.ZERO)) return BigRational.ZERO;
+
+        factors.add(exponent);
+        factors.add(parsePower(base, exponent.subtract(BigRational.ONE)));
+        factors.add(baseDerivative);
+        return Product.parseProduct(factors, new ArrayList<>());
+    }
+
+    /**
+     * Evaluates this Power modulo a prime.
+     *
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                The residue of this Power.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If the exponent is not an integer.
+     */
+    @Override
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        if(!isIntegerExponent(exponent))
+            throw new UnsupportedOperationException("Power: Cannot evaluate a non-integer exponent modulo a prime");
+        return powModulo(base.evaluateModulo(modulus, variableValues, residues), exponent, modulus);
+    }
+
+    /**
+     * Computes an upper bound on the degree of this Power.
+     *
+     * @return  The bound, or {@code Long.MAX_VALUE} if the exponent is not an integer.
+     */
+    @Override
+    protected long computeDegreeHint() {
+        return degreeBound(base.getDegreeHint(), exponent);
+    }
+
+    /**
+     * Computes the domain restrictions that this Power adds to those of its base and exponent, which
+     * is that the base is nonzero if the exponent is negative.
+     *
+     * @return  The restrictions.
+     */
+    @Override
+    protected DomainRestrictions computeDomainRestrictions() {
+        if(exponent instanceof BigRational && ((BigRational)exponent).signum() == -1) return DomainRestrictions.nonzero(base);
+        return DomainRestrictions.NONE;
     }
 
     /**
      * Attempts to reduce the complexity of this Power by manipulating it algebraically.
      *
-     * @return  A simplified Power that is equivalent to this Power.
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            A simplified Power that is equivalent to this Power.
      */
     @Override
-    public Expression simplify() {
-        Expression newBase = base.simplify();
-        Expression newExponent = exponent.simplify();
+    protected Expression internalSimplify(HashMap<Expression, Expression> simplified) {
+        Expression newBase = base.simplify(simplified);
+        Expression newExponent = exponent.simplify(simplified);
         if(newBase instanceof BigRational && newExponent instanceof BigRational) {
             return newBase.pow(newExponent);
 
@@ -237,12 +496,12 @@ public class Power extends Expression {
             ArrayList<Expression> newBaseFactors = new ArrayList<>();
             while(newBaseIterator.hasNext()) {
                 Map.Entry<Expression, Expression> newBaseTerm = newBaseIterator.next();
-                newBaseFactors.add(new Power(newBaseTerm.getKey(), (newBaseTerm.getValue().multiply(newExponent)).simplify()));
+                newBaseFactors.add(new Power(newBaseTerm.getKey(), (newBaseTerm.getValue().multiply(newExponent)).simplify(simplified)));
             }
             return Product.parseProduct(newBaseFactors, new ArrayList<>());
 
         } else if(newBase instanceof Power) {// Exponent Law: (b^x)^y = b^(x*y)
-            return new Power(((Power)newBase).base, ((Power)newBase).exponent.multiply(newExponent).simplify());
+            return new Power(((Power)newBase).base, ((Power)newBase).exponent.multiply(newExponent).simplify(simplified));
 
         }
         return new Power(newBase, newExponent);
@@ -0,0 +1,473 @@
+package arithmetic;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import utility.Pair;
+
+/**
+ * <p>A utility class that factors integers into their prime factors.</p>
+ *
+ * <p>Small prime factors are removed by trial division over a sieved table of primes. The
+ * cofactor that remains is split using Brent's variant of Pollard's rho algorithm, which
+ * runs on {@code long} arithmetic whenever the cofactor fits in a machine word.</p>
+ *
+ * <p>Since the same integers tend to be factored over and over, factorizations are kept in
+ * a bounded cache that is safe to access from multiple threads.</p>
+ *
+ * @author Ricky Qin
+ */
+public class PrimeFactorization {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * Trial division is done using all primes below this limit.
+     */
+    final private static int SIEVE_LIMIT = 1 << 16;
+
+    /**
+     * The primes below {@code SIEVE_LIMIT}, in increasing order.
+     */
+    final private static int[] PRIMES = sievePrimes(SIEVE_LIMIT);
+
+    /**
+     * Integers with fewer bits than this are factored using {@code long} arithmetic. Montgomery
+     * multiplication needs the modulus to be less than {@code 2^62}.
+     */
+    final private static int LONG_BIT_LENGTH = 62;
+
+    /**
+     * The maximum number of factorizations kept in the cache.
+     */
+    final private static int CACHE_CAPACITY = 4096;
+
+    /**
+     * The default maximum number of iterations of a single attempt of Pollard's rho algorithm.
+     * A cofactor that cannot be split within this many iterations is treated as a single factor.
+     */
+    final private static int MAX_RHO_ITERATIONS = 1 << 17;
+
+    /**
+     * The number of attempts of Pollard's rho algorithm, each with a different polynomial.
+     */
+    final private static int MAX_RHO_ATTEMPTS = 3;
+
+    /**
+     * The number of steps between each gcd computation in Brent's algorithm.
+     */
+    final private static int RHO_BATCH_SIZE = 128;
+
+    /**
+     * The certainty used when testing cofactors for primality.
+     */
+    final private static int PRIME_CERTAINTY = 40;
+
+    /**
+     * A cache of previously computed factorizations. Every value is only read after it is inserted.
+     */
+    final private static ConcurrentHashMap<BigInteger, TreeMap<BigInteger, Integer>> cache = new ConcurrentHashMap<>();
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Computes the prime factorization of the absolute value of the provided integer.
+     *
+     * <p>Note: a composite cofactor that cannot be split by Pollard's rho algorithm within a
+     * reasonable amount of time will appear as a single factor.</p>
+     *
+     * @param n  The integer to factor.
+     * @return   A new {@code TreeMap} that maps each prime factor to its multiplicity. If
+     * {@code n} is {@code 1}, the map is empty.
+     * @throws   ArithmeticException if {@code n} is zero.
+     */
+    public static TreeMap<BigInteger, Integer> factor(BigInteger n) {
+        return factor(n, MAX_RHO_ITERATIONS);
+    }
+
+    /**
+     * Computes the prime factorization of the absolute value of the provided integer, giving up on
+     * a cofactor once Pollard's rho algorithm has taken a number of iterations without splitting it.
+     * Only factorizations computed with at least the default number of iterations are cached.
+     *
+     * <p>Note: a composite cofactor that cannot be split within the iterations will appear as a
+     * single factor.</p>
+     *
+     * @param n              The integer to factor.
+     * @param maxIterations  The maximum number of iterations of each attempt of Pollard's rho algorithm.
+     * @return               A new {@code TreeMap} that maps each prime factor to its multiplicity. If
+     * {@code n} is {@code 1}, the map is empty.
+     * @throws               ArithmeticException if {@code n} is zero.
+     */
+    public static TreeMap<BigInteger, Integer> factor(BigInteger n, int maxIterations) {
+        if(n.signum() == 0) throw new ArithmeticException("PrimeFactorization: Cannot factor zero");
+        n = n.abs();
+        TreeMap<BigInteger, Integer> factors = cache.get(n);
+        if(factors == null) {
+            factors = new TreeMap<>();
+            factorInto(n, factors, maxIterations);
+            if(maxIterations < MAX_RHO_ITERATIONS) return factors;
+            if(cache.size() >= CACHE_CAPACITY) {// evict an arbitrary entry to stay within capacity
+                Iterator<BigInteger> it = cache.keySet().iterator();
+                if(it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            cache.putIfAbsent(n, factors);
+        }
+        return new TreeMap<>(factors);
+    }
+
+    /**
+     * Computes the prime factorization of the absolute value of the provided integer.
+     *
+     * @param n  The integer to factor.
+     * @return   A new {@code TreeMap} that maps each prime factor to its multiplicity.
+     * @throws   ArithmeticException if {@code n} is zero.
+     */
+    public static TreeMap<BigInteger, Integer> factor(long n) {
+        return factor(BigInteger.valueOf(n));
+    }
+
+    /**
+     * Removes the prime factors below {@code SIEVE_LIMIT} from the absolute value of the provided
+     * integer, without trying to split the cofactor that remains. Unlike {@code factor}, this never
+     * tests for primality or runs Pollard's rho algorithm, so it is fast even for very large integers.
+     *
+     * @param n  The integer.
+     * @return   A Pair of a new {@code TreeMap} that maps each prime factor below {@code SIEVE_LIMIT}
+     * to its multiplicity, and the cofactor, which has no prime factors below {@code SIEVE_LIMIT}.
+     * @throws   ArithmeticException if {@code n} is zero.
+     */
+    public static Pair<TreeMap<BigInteger, Integer>, BigInteger> factorSmallPrimes(BigInteger n) {
+        if(n.signum() == 0) throw new ArithmeticException("PrimeFactorization: Cannot factor zero");
+        n = n.abs();
+        TreeMap<BigInteger, Integer> factors = new TreeMap<>();
+        for(int i = 0; i < PRIMES.length && !n.equals(BigInteger.ONE);) {
+            // reduce modulo a product of several primes at once, instead of dividing by each prime
+            long product = 1;
+            int end = i;
+            while(end < PRIMES.length && product <= Long.MAX_VALUE/PRIMES[end]) product *= PRIMES[end++];
+            long remainder = NumberTheory.mod(n, product);
+            for(; i < end; i++) {
+                if(remainder%PRIMES[i] != 0) continue;
+                BigInteger p = BigInteger.valueOf(PRIMES[i]);
+                int multiplicity = 0;
+                while(true) {
+                    BigInteger[] quotientAndRemainder = n.divideAndRemainder(p);
+                    if(quotientAndRemainder[1].signum() != 0) break;
+                    n = quotientAndRemainder[0];
+                    multiplicity++;
+                }
+                addFactor(factors, p, multiplicity);
+            }
+        }
+        return new Pair<>(factors, n);
+    }
+
+    /**
+     * Finds all the primes below the provided limit using the sieve of Eratosthenes.
+     *
+     * @param limit  The exclusive upper bound.
+     * @return       The primes in increasing order.
+     */
+    private static int[] sievePrimes(int limit) {
+        boolean[] isComposite = new boolean[limit];
+        int count = 0;
+        for(int i = 2; i < limit; i++) {
+            if(isComposite[i]) continue;
+            count++;
+            for(long j = (long)i*i; j < limit; j += i) isComposite[(int)j] = true;
+        }
+        int[] primes = new int[count];
+        for(int i = 2, j = 0; i < limit; i++) {
+            if(!isComposite[i]) primes[j++] = i;
+        }
+        return primes;
+    }
+
+    /**
+     * Adds the provided multiplicity of a prime factor to a factorization.
+     *
+     * @param factors       The factorization.
+     * @param prime         The prime factor.
+     * @param multiplicity  The multiplicity.
+     */
+    private static void addFactor(TreeMap<BigInteger, Integer> factors, BigInteger prime, int multiplicity) {
+        factors.merge(prime, multiplicity, Integer::sum);
+    }
+
+    /**
+     * Factors the provided positive integer and records its prime factors.
+     *
+     * @param n              The integer to factor.
+     * @param factors        The factorization to add to.
+     * @param maxIterations  The maximum number of iterations of each attempt of Pollard's rho algorithm.
+     */
+    private static void factorInto(BigInteger n, TreeMap<BigInteger, Integer> factors, int maxIterations) {
+        if(n.bitLength() < LONG_BIT_LENGTH) {
+            factorInto(n.longValue(), factors, maxIterations);
+            return;
+        }
+        for(int prime: PRIMES) {
+            BigInteger p = BigInteger.valueOf(prime);
+            int multiplicity = 0;
+            while(true) {
+                BigInteger[] quotientAndRemainder = n.divideAndRemainder(p);
+                if(quotientAndRemainder[1].signum() != 0) break;
+                n = quotientAndRemainder[0];
+                multiplicity++;
+            }
+            if(multiplicity > 0) {
+                addFactor(factors, p, multiplicity);
+                if(n.bitLength() < LONG_BIT_LENGTH) {
+                    factorInto(n.longValue(), factors, maxIterations);
+                    return;
+                }
+            }
+        }
+        splitInto(n, factors, maxIterations);
+    }
+
+    /**
+     * Factors the provided positive integer and records its prime factors.
+     *
+     * @param n              The integer to factor.
+     * @param factors        The factorization to add to.
+     * @param maxIterations  The maximum number of iterations of each attempt of Pollard's rho algorithm.
+     */
+    private static void factorInto(long n, TreeMap<BigInteger, Integer> factors, int maxIterations) {
+        for(int prime: PRIMES) {
+            if((long)prime*prime > n) break;
+            if(n%prime != 0) continue;
+            int multiplicity = 0;
+            do {
+                n /= prime;
+                multiplicity++;
+            } while(n%prime == 0);
+            addFactor(factors, BigInteger.valueOf(prime), multiplicity);
+        }
+        if(n == 1) return;
+        if(n < (long)SIEVE_LIMIT*SIEVE_LIMIT) {// no prime factors below the square root
+            addFactor(factors, BigInteger.valueOf(n), 1);
+            return;
+        }
+        splitInto(n, factors, maxIterations);
+    }
+
+    /**
+     * Splits a positive integer with no small prime factors into its prime factors.
+     *
+     * @param n              The integer to factor.
+     * @param factors        The factorization to add to.
+     * @param maxIterations  The maximum number of iterations of each attempt of Pollard's rho algorithm.
+     */
+    private static void splitInto(BigInteger n, TreeMap<BigInteger, Integer> factors, int maxIterations) {
+        if(n.bitLength() < LONG_BIT_LENGTH) {
+            splitInto(n.longValue(), factors, maxIterations);
+            return;
+        }
+        if(n.isProbablePrime(PRIME_CERTAINTY)) {
+            addFactor(factors, n, 1);
+            return;
+        }
+        Pair<BigInteger, Integer> perfectPower = NumberTheory.perfectPower(n);
+        if(perfectPower.second() > 1) {// Pollard's rho algorithm is slow for perfect powers of large primes
+            TreeMap<BigInteger, Integer> baseFactors = new TreeMap<>();
+            splitInto(perfectPower.first(), baseFactors, maxIterations);
+            for(Map.Entry<BigInteger, Integer> factor: baseFactors.entrySet()) {
+                addFactor(factors, factor.getKey(), factor.getValue()*perfectPower.second());
+            }
+            return;
+        }
+        BigInteger divisor = null;
+        for(int attempt = 0; attempt < MAX_RHO_ATTEMPTS && divisor == null; attempt++) divisor = pollardBrent(n, maxIterations);
+        if(divisor == null) {// give up and treat it as a single factor
+            addFactor(factors, n, 1);
+            return;
+        }
+        splitInto(divisor, factors, maxIterations);
+        splitInto(n.divide(divisor), factors, maxIterations);
+    }
+
+    /**
+     * Splits a positive integer with no small prime factors into its prime factors.
+     *
+     * @param n              The integer to factor.
+     * @param factors        The factorization to add to.
+     * @param maxIterations  The maximum number of iterations of each attempt of Pollard's rho algorithm.
+     */
+    private static void splitInto(long n, TreeMap<BigInteger, Integer> factors, int maxIterations) {
+        if(n < (long)SIEVE_LIMIT*SIEVE_LIMIT || BigInteger.valueOf(n).isProbablePrime(PRIME_CERTAINTY)) {
+            addFactor(factors, BigInteger.valueOf(n), 1);
+            return;
+        }
+        long divisor = 0;
+        for(int attempt = 0; attempt < MAX_RHO_ATTEMPTS && divisor == 0; attempt++) divisor = pollardBrent(n, maxIterations);
+        if(divisor == 0) {// give up and treat it as a single factor
+            addFactor(factors, BigInteger.valueOf(n), 1);
+            return;
+        }
+        splitInto(divisor, factors, maxIterations);
+        splitInto(n/divisor, factors, maxIterations);
+    }
+
+    /**
+     * Attempts to find a non-trivial divisor of an odd composite integer using Brent's variant of
+     * Pollard's rho algorithm, with a randomly chosen polynomial.
+     *
+     * @param n              The integer to split.
+     * @param maxIterations  The maximum number of iterations.
+     * @return               A non-trivial divisor, or {@code null} if the attempt failed.
+     */
+    private static BigInteger pollardBrent(BigInteger n, int maxIterations) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BigInteger c = BigInteger.valueOf(random.nextLong(1, Long.MAX_VALUE)).mod(n);
+        BigInteger y = BigInteger.valueOf(random.nextLong(1, Long.MAX_VALUE)).mod(n);
+        BigInteger x = y, ys = y;
+        BigInteger q = BigInteger.ONE;
+        BigInteger g = BigInteger.ONE;
+        for(int r = 1; g.equals(BigInteger.ONE) && r <= maxIterations; r <<= 1) {
+            x = y;
+            for(int i = 0; i < r; i++) y = y.multiply(y).add(c).mod(n);
+            for(int k = 0; k < r && g.equals(BigInteger.ONE); k += RHO_BATCH_SIZE) {
+                ys = y;
+                for(int i = 0; i < Math.min(RHO_BATCH_SIZE, r-k); i++) {
+                    y = y.multiply(y).add(c).mod(n);
+                    q = q.multiply(x.subtract(y).abs()).mod(n);
+                }
+                g = q.gcd(n);
+            }
+        }
+        if(g.equals(n)) {// the batch overshot, so backtrack one step at a time
+            do {
+                ys = ys.multiply(ys).add(c).mod(n);
+                g = x.subtract(ys).gcd(n);
+            } while(g.equals(BigInteger.ONE));
+        }
+        if(g.equals(BigInteger.ONE) || g.equals(n)) return null;
+        return g;
+    }
+
+    /**
+     * Attempts to find a non-trivial divisor of an odd composite integer using Brent's variant of
+     * Pollard's rho algorithm, with a randomly chosen polynomial. The iteration is carried out in
+     * Montgomery form, which maps {@code x} to {@code x^2 / 2^64 + c}. This is still a polynomial
+     * modulo every prime factor of {@code n}, so the algorithm works unchanged.
+     *
+     * @param n              The integer to split, which must be less than {@code 2^62}.
+     * @param maxIterations  The maximum number of iterations.
+     * @return               A non-trivial divisor, or {@code 0} if the attempt failed.
+     */
+    private static long pollardBrent(long n, int maxIterations) {
+        long nPrime = montgomeryInverse(n);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long c = random.nextLong(1, n);
+        long y = random.nextLong(1, n);
+        long x = y, ys = y;
+        long q = 1;
+        long g = 1;
+        for(int r = 1; g == 1 && r <= maxIterations; r <<= 1) {
+            x = y;
+            for(int i = 0; i < r; i++) y = addMod(montgomeryMultiply(y, y, n, nPrime), c, n);
+            for(int k = 0; k < r && g == 1; k += RHO_BATCH_SIZE) {
+                ys = y;
+                for(int i = 0; i < Math.min(RHO_BATCH_SIZE, r-k); i++) {
+                    y = addMod(montgomeryMultiply(y, y, n, nPrime), c, n);
+                    q = montgomeryMultiply(q, Math.abs(x-y), n, nPrime);
+                }
+                g = gcd(q, n);
+            }
+        }
+        if(g == n) {// the batch overshot, so backtrack one step at a time
+            do {
+                ys = addMod(montgomeryMultiply(ys, ys, n, nPrime), c, n);
+                g = gcd(Math.abs(x-ys), n);
+            } while(g == 1);
+        }
+        if(g == 1 || g == n) return 0;
+        return g;
+    }
+
+    /**
+     * Computes {@code -n^-1 mod 2^64} for an odd {@code n} using Newton's iteration.
+     *
+     * @param n  The odd modulus.
+     * @return   {@code -n^-1 mod 2^64}
+     */
+    private static long montgomeryInverse(long n) {
+        long inverse = n;// correct to 3 bits, since n*n = 1 mod 8
+        for(int i = 0; i < 5; i++) inverse *= 2-n*inverse;// each step doubles the number of correct bits
+        return -inverse;
+    }
+
+    /**
+     * Computes {@code a * b / 2^64 mod n} using Montgomery reduction.
+     *
+     * @param a       The first factor, less than {@code n}.
+     * @param b       The second factor, less than {@code n}.
+     * @param n       The odd modulus, less than {@code 2^62}.
+     * @param nPrime  {@code -n^-1 mod 2^64}
+     * @return        {@code a * b / 2^64 mod n}
+     */
+    private static long montgomeryMultiply(long a, long b, long n, long nPrime) {
+        long high = Math.multiplyHigh(a, b);
+        long low = a*b;
+        long u = low*nPrime;
+        // the low words of a*b and u*n add up to a multiple of 2^64
+        long result = high + unsignedMultiplyHigh(u, n) + (low != 0 ? 1 : 0);
+        return result >= n ? result-n : result;
+    }
+
+    /**
+     * Computes the high word of the unsigned 128-bit product of two {@code long}s.
+     *
+     * @param a  The first factor.
+     * @param b  The second factor.
+     * @return   The high 64 bits of {@code a * b}, treating both as unsigned.
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    /**
+     * Computes {@code (a + b) mod n}.
+     *
+     * @param a  The first addend, less than {@code n}.
+     * @param b  The second addend, less than {@code n}.
+     * @param n  The modulus, less than {@code 2^62}.
+     * @return   {@code (a + b) mod n}
+     */
+    private static long addMod(long a, long b, long n) {
+        long sum = a+b;
+        return sum >= n ? sum-n : sum;
+    }
+
+    /**
+     * Computes the greatest common divisor of two non-negative {@code long}s.
+     *
+     * @param a  The first value.
+     * @param b  The second value.
+     * @return   {@code gcd(a, b)}
+     */
+    private static long gcd(long a, long b) {
+        while(b != 0) {
+            long t = a%b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * This class only contains static methods and should not be instantiated.
+     */
+    private PrimeFactorization() {}
+}
@@ -1,5 +1,7 @@
 package arithmetic;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -49,7 +51,7 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
         Product product = new Product(factors, divisors);
         Expression simplerForm = checkForSimplerForms(product);
         if(simplerForm == null) return product;
-        else return simplerForm;
+        else return simplerForm.withDomainRestrictions(product.getDomainRestrictions());
     }
 
     /**
@@ -69,7 +71,7 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
         Product product = new Product(factors, divisors);
         Expression simplerForm = checkForSimplerForms(product);
         if(simplerForm == null) return product;
-        else return simplerForm;
+        else return simplerForm.withDomainRestrictions(product.getDomainRestrictions());
     }
 
     /**
@@ -85,7 +87,7 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
         Product product = new Product(terms);
         Expression simplerForm = checkForSimplerForms(product);
         if(simplerForm == null) return product;
-        else return simplerForm;
+        else return simplerForm.withDomainRestrictions(product.getDomainRestrictions());
     }
 
     /**
@@ -109,7 +111,8 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
      *
      * <p>Variable objects are ordered by their {@code compareTo} method.</p>
      *
-     * <p>Otherwise, two Expressions of the same type are ordered by insertion order.</p>
+     * <p>Otherwise, two Expressions of the same type are ordered by their hash codes, and then
+     * by their function String representations.</p>
      */
     public static class ProductTermsComparator implements Comparator<Expression> {
 
@@ -127,7 +130,8 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
             if(typeNum(o1) == typeNum(o2)) {
                 if(o1 instanceof Variable) return ((Variable)o1).compareTo((Variable)o2);
                 if(o1.equals(o2)) return 0;
-                return 1;
+                if(o1.hashCode() != o2.hashCode()) return Integer.compare(o1.hashCode(), o2.hashCode());
+                return o1.toFunctionString().compareTo(o2.toFunctionString());
             }
             return Integer.compare(typeNum(o1), typeNum(o2));
         }
@@ -161,6 +165,24 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
      */
     private TreeMap<Expression, Expression> terms = new TreeMap<>(new ProductTermsComparator());
 
+    /**
+     * The hash code of this Product, which is computed when it is constructed. Since the hash codes
+     * of its factors and exponents have already been computed, this never recurses more than one level.
+     */
+    private int hash;
+
+    /**
+     * Soft references to the String representations of this Product in the normal, LaTeX and
+     * function formats, which are null until each format is first rendered.
+     */
+    private SoftReference<String> string, latexString, functionString;
+
+    /**
+     * The domain restrictions of the factors and divisors that this Product was constructed from,
+     * including those that were cancelled.
+     */
+    private DomainRestrictions restrictions = DomainRestrictions.NONE;
+
 // <--------------------------------- Constructors --------------------------------->
 
     /**
@@ -174,16 +196,16 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
         BigRational coefficient = BigRational.ONE;
 
         for(Expression factor: factors) {
-            if(factor instanceof BigRational) {
-                coefficient = (BigRational)coefficient.multiply(factor);
-            } else addTerm(new Pair<>(factor, 1));
+            restrictions = restrictions.union(factor.getDomainRestrictions());
+            coefficient = (BigRational)coefficient.multiply(addFactor(factor, 1));
         }
         for(Expression divisor: divisors) {
-            if(divisor instanceof BigRational) {
-                coefficient = (BigRational)coefficient.divide(divisor);
-            } else addTerm(new Pair<>(divisor, -1));
+            restrictions = restrictions.union(divisor.getDomainRestrictions());
+            coefficient = (BigRational)coefficient.multiply(addFactor(divisor, -1));
         }
         if(!coefficient.equals(BigRational.ONE)) this.terms.put(coefficient, BigRational.ONE);
+        hash = this.terms.hashCode();
+        computeMetadata();
     }
 
     /**
@@ -194,6 +216,38 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
      */
     private Product(TreeMap<Expression, Expression> terms) {
         this.terms = new TreeMap<>(terms);
+        hash = this.terms.hashCode();
+        computeMetadata();
+    }
+
+    /**
+     * Constructs a Product object of a single factor with additional domain restrictions. This is
+     * used to keep the restrictions of an Expression that simplifies to a Variable or to the constants
+     * {@code e} and {@code pi}, which are compared by reference and can't be copied.
+     *
+     * @param factor        The factor.
+     * @param restrictions  The restrictions, which include those of the factor.
+     */
+    Product(Expression factor, DomainRestrictions restrictions) {
+        this.terms.put(factor, BigRational.ONE);
+        this.restrictions = restrictions;
+        hash = this.terms.hashCode();
+        computeMetadata();
+    }
+
+    /**
+     * Constructs a Product object directly from factors that are already in normal form, without
+     * combining like factors. This constructor is package private so that stored Products can be
+     * rebuilt quickly.
+     *
+     * @param factors    The factors, which are all distinct. The coefficient is the only BigRational
+     * factor, and has an exponent of {@code BigRational.ONE}.
+     * @param exponents  The exponents of the factors, which are all nonzero.
+     */
+    Product(Expression[] factors, Expression[] exponents) {
+        for(int i = 0; i < factors.length; i++) this.terms.put(factors[i], exponents[i]);
+        hash = this.terms.hashCode();
+        computeMetadata();
     }
 
 // <-------------------- Methods Overriden from java.lang.Object -------------------->
@@ -208,7 +262,8 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
     public boolean equals(Object o) {
         if(o == this) return true;
         if(!(o instanceof Product)) return false;
-        return terms.equals(((Product)o).terms);
+        if(hashCode() != o.hashCode()) return false;
+        return equalChildren(this, (Product)o);
     }
 
     /**
@@ -218,197 +273,314 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
      */
     @Override
     public int hashCode() {
-        return terms.hashCode();
+        return hash;
+    }
+
+
+// <---------------------- Methods Implemented for Interfaces ---------------------->
+
+    /**
+     * Returns an iterator over the terms of this Product.
+     * Each item in the iterator is an {@code Map.Entry} where the key is
+     * the factor and the value is its exponent. The
+     *
+     * @return An iterator over the terms in this Product.
+     */
+    @Override
+    public Iterator<Map.Entry<Expression, Expression>> iterator() {
+        return terms.entrySet().iterator();
     }
 
+// <---------------------- Methods Overriden from Superclasses ---------------------->
 
     /**
-     * Returns a string representation of this Product.
+     * Writes this Product in the provided format. In function form, it is written as
+     * <code>Product({term:exponent}, ...)</code>.
+     *
+     * <p>In a LaTeX String, if there any terms with negative exponents, the Product is written as a
+     * fraction using the {@code \dfrac} command, and those terms are placed at the bottom of the
+     * fraction. If the coefficient is negative, the sign is placed right before the beginning of the
+     * fraction. If the coefficient is not an integer, it is split with its numerator and denominator
+     * on the top and bottom halves of the fraction respectively.</p>
      *
-     * @return  The normal String representation of this Product.
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this Product in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
      */
     @Override
-    public String toString() {
-        StringBuilder str = new StringBuilder();
+    protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+        if(format == Format.LATEX) {
+            renderLatex(out);
+            return;
+        }
+        if(format == Format.FUNCTION) {
+            out.append("Product(");
+            Iterator<Map.Entry<Expression, Expression>> it = iterator();
+            while(it.hasNext()) {
+                Map.Entry<Expression, Expression> term = it.next();
+                out.append('{');
+                out.appendExpression(term.getKey(), format);
+                out.append(':');
+                out.appendExpression(term.getValue(), format);
+                out.append('}');
+                if(it.hasNext()) out.append(", ");
+            }
+            out.append(')');
+            return;
+        }
 
         // print coefficient
         BigRational coefficient = getCoefficient();
+        boolean isEmpty = true;
         if(coefficient.equals(BigRational.ONE));
-        else if(coefficient.equals(BigRational.NEGATIVE_ONE)) str.append('-');
-        else str.append(coefficient);
+        else if(coefficient.equals(BigRational.NEGATIVE_ONE)) {
+            out.append('-');
+            isEmpty = false;
+        } else {
+            out.appendExpression(coefficient, format);
+            isEmpty = false;
+        }
 
         // print terms
         for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
             if(term.getKey().equals(coefficient)) continue;
 
-            String termStr = Power.toPowerString(term.getKey(), term.getValue());
+            if(!isEmpty) out.separateDigits("*");
             if(term.getKey() instanceof Sum && term.getValue().equals(BigRational.ONE))
-                termStr = surroundInBrackets(termStr);
-            if(str.length() > 0 && Character.isDigit(str.charAt(str.length()-1)) && termStr.length() > 0
-                && Character.isDigit(termStr.charAt(0))) str.append('*');
-            str.append(termStr);
+                out.appendInBrackets(term.getKey(), format);
+            else Power.renderPower(out, term.getKey(), term.getValue(), format);
+            isEmpty = false;
         }
-
-        return str.toString();
     }
 
-// <---------------------- Methods Implemented for Interfaces ---------------------->
-
     /**
-     * Returns an iterator over the terms of this Product.
-     * Each item in the iterator is an {@code Map.Entry} where the key is
-     * the factor and the value is its exponent. The
+     * Returns the cached String representation of this Product in the provided format.
      *
-     * @return An iterator over the terms in this Product.
+     * @param format  The format of the String.
+     * @return        The cached String, or null if it isn't cached or has been dropped.
      */
     @Override
-    public Iterator<Map.Entry<Expression, Expression>> iterator() {
-        return terms.entrySet().iterator();
+    protected String getCachedString(Format format) {
+        SoftReference<String> cached = (format == Format.NORMAL) ? string :
+            (format == Format.LATEX) ? latexString : functionString;
+        return (cached == null) ? null : cached.get();
     }
 
-// <---------------------- Methods Overriden from Superclasses ---------------------->
-
     /**
-     * Returns the LaTeX String representation of this Product.
+     * Caches the String representation of this Product in the provided format.
      *
-     * @return  The LaTeX String representation of this Product. If there any terms with negative
-     * exponents, the string representation will be in the form of a fraction and those terms will
-     * be placed at the bottom of the fraction. If the coefficient is negative, the sign will be placed
-     * right before the beginning of the fraction (if in fraction form). If the coefficient is not an
-     * integer, it will be split with its numerator and denominator on the top and bottom halves of
-     * the fraction respectively. If in fraction form, the {@code \dfrac} command will be used.
+     * @param format  The format of the String.
+     * @param str     The String.
      */
     @Override
-    public String toLatexString() {
-        StringBuilder str = new StringBuilder();
-
-        ArrayList<String> top = new ArrayList<>();
-        ArrayList<String> bottom = new ArrayList<>();
-        int numItemsTop = 0;
-        int numItemsBottom = 0;
-
-        BigRational coefficientNum = getCoefficient().getNumerator().abs();
-        BigRational coefficientDen = getCoefficient().getDenominator();
-        if(!coefficientNum.equals(BigRational.ONE)) {
-            top.add(coefficientNum.toLatexString());
-            numItemsTop++;
-        }
-        if(!coefficientDen.equals(BigRational.ONE)) {
-            bottom.add(coefficientDen.toLatexString());
-            numItemsBottom++;
-        }
+    protected void setCachedString(Format format, String str) {
+        if(format == Format.NORMAL) string = new SoftReference<>(str);
+        else if(format == Format.LATEX) latexString = new SoftReference<>(str);
+        else functionString = new SoftReference<>(str);
+    }
 
+    /**
+     * Returns the children of this Product, which are each of its factors followed by its exponent.
+     *
+     * @return  A new list of the children.
+     */
+    @Override
+    public ArrayList<Expression> getChildren() {
+        ArrayList<Expression> children = new ArrayList<>(2*terms.size());
         for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
-            if(term.getKey().equals(getCoefficient())) continue;
-
-            boolean putOnTop = true;
-            if(term.getValue() instanceof BigRational &&
-                ((BigRational)term.getValue()).signum() == -1) putOnTop = false;
-            if(term.getValue() instanceof Product &&
-                ((Product)term.getValue()).getCoefficient().signum() == -1) putOnTop = false;
-
-            if(putOnTop) numItemsTop++;
-            else numItemsBottom++;
+            children.add(term.getKey());
+            children.add(term.getValue());
         }
+        return children;
+    }
 
+    /**
+     * Attempts to compute a numerical exact value for this Product, given the values to substitute.
+     *
+     * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
+     * @return                The result of evaluating this Product.
+     * @throws                ArithmeticException If the value of a variable in this Product is missing.
+     */
+    @Override
+    protected Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
+        ArrayList<Expression> factors = new ArrayList<>();
         for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
-            if(term.getKey().equals(getCoefficient())) continue;
-
-            boolean putOnTop = true;
-            if(term.getValue() instanceof BigRational &&
-                ((BigRational)term.getValue()).signum() == -1) putOnTop = false;
-            if(term.getValue() instanceof Product &&
-                ((Product)term.getValue()).getCoefficient().signum() == -1) putOnTop = false;
-
-            String termStr = "";
-            if(putOnTop) termStr = Power.toPowerLatexString(term.getKey(), term.getValue());
-            else termStr = Power.toPowerLatexString(term.getKey(), term.getValue().negate());
-            if(term.getKey() instanceof Sum && (putOnTop ? numItemsTop : numItemsBottom) > 1)
-                termStr = surroundInLatexBrackets(termStr);
-            if(putOnTop) top.add(termStr);
-            else bottom.add(termStr);
+            factors.add(Power.parsePower(term.getKey().evaluate(variableValues, values),
+                term.getValue().evaluate(variableValues, values)));
         }
-        if(top.size() == 0) top.add(BigRational.ONE.toLatexString());
+        return parseProduct(factors, new ArrayList<>());
+    }
 
-        if(getCoefficient().signum() == -1) str.append('-');
-        if(bottom.size() > 0) str.append("\\dfrac{");
+    /**
+     * Computes the derivative of this Product with respect to the provided Variable using the
+     * product rule {@code (g1 * g2 * ... * gn)' = g1' * g2 * ... * gn + ... + g1 * g2 * ... * gn'},
+     * where each {@code gi = fi^ei} and {@code gi' = ei * fi^(ei-1) * fi'}. Unlike the logarithmic
+     * derivative, this never divides by a factor, so the derivative is defined wherever this
+     * Product is. The products of the factors before and after each factor are built as prefix and
+     * suffix products, so the derivative only grows linearly with the number of factors.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             The derivative of this Product.
+     * @throws             ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    @Override
+    protected Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        ArrayList<Expression> constantFactors = new ArrayList<>();
+        ArrayList<Expression> powers = new ArrayList<>();
+        ArrayList<Expression> powerDerivatives = new ArrayList<>();
+        for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
+            Expression factor = term.getKey();
+            Expression exponent = term.getValue();
+            Expression power = Power.parsePower(factor, exponent);
+            Expression factorDerivative = factor.differentiate(variable, derivatives);
+            Expression exponentDerivative = exponent.differentiate(variable, derivatives);
+
+            if(factor.equals(BigNumber.E)) {// (e^u)' = e^u * u'
+                if(exponentDerivative.equals(BigRational.ZERO)) constantFactors.add(power);
+                else {
+                    powers.add(power);
+                    powerDerivatives.add(power.multiply(exponentDerivative));
+                }
+                continue;
+            }
+            if(!exponentDerivative.equals(BigRational.ZERO))
+                throw new ArithmeticException("Product: Derivative requires logarithms");
+            if(factorDerivative.equals(BigRational.ZERO)) {
+                constantFactors.add(power);
+                continue;
+            }
 
-        for(String termStr: top) {
-            if(str.length() > 0 && Character.isDigit(str.charAt(str.length()-1)) && termStr.length() > 0
-                && Character.isDigit(termStr.charAt(0))) str.append("\\cdot");
-            str.append(termStr);
+            ArrayList<Expression> powerRule = new ArrayList<>();
+            powerRule.add(exponent);
+            powerRule.add(Power.parsePower(factor, exponent.subtract(BigRational.ONE)));
+            powerRule.add(factorDerivative);
+            powers.add(power);
+            powerDerivatives.add(parseProduct(powerRule, new ArrayList<>()));
         }
-        if(bottom.size() > 0) {
-            str.append("}{");
-            for(String termStr: bottom) {
-                if(str.length() > 0 && Character.isDigit(str.charAt(str.length()-1)) && termStr.length() > 0
-                && Character.isDigit(termStr.charAt(0))) str.append("\\cdot");
-                str.append(termStr);
-            }
-            str.append('}');
+        int n = powers.size();
+        if(n == 0) return BigRational.ZERO;
+
+        // prefixes[i] is the product of the first i powers, and suffixes[i] is the product of the powers from i onwards
+        Expression[] prefixes = new Expression[n];
+        Expression[] suffixes = new Expression[n+1];
+        prefixes[0] = BigRational.ONE;
+        for(int i = 1; i < n; i++) prefixes[i] = prefixes[i-1].multiply(powers.get(i-1));
+        suffixes[n] = BigRational.ONE;
+        for(int i = n-1; i > 0; i--) suffixes[i] = powers.get(i).multiply(suffixes[i+1]);
+
+        ArrayList<Pair<Expression, Integer>> productRuleTerms = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            ArrayList<Expression> factors = new ArrayList<>();
+            factors.add(prefixes[i]);
+            factors.add(powerDerivatives.get(i));
+            factors.add(suffixes[i+1]);
+            productRuleTerms.add(new Pair<>(parseProduct(factors, new ArrayList<>()), 1));
         }
-        return str.toString();
+        constantFactors.add(Sum.parseSum(productRuleTerms));
+        return parseProduct(constantFactors, new ArrayList<>());
     }
 
     /**
-     * Returns the String representation of this Product in function form.
+     * Evaluates this Product modulo a prime.
      *
-     * @return  The function String representation of this Product in the format
-     * <code>Product({term:exponent}, ...)</code>.
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                The residue of this Product.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If a factor has a non-integer exponent.
      */
     @Override
-    public String toFunctionString() {
-        StringBuilder str = new StringBuilder();
-        str.append("Product(");
-        Iterator<Map.Entry<Expression, Expression>> it = iterator();
-        while(it.hasNext()) {
-            Map.Entry<Expression, Expression> term = it.next();
-            str.append('{');
-            str.append(term.getKey().toFunctionString());
-            str.append(':');
-            str.append(term.getValue().toFunctionString());
-            str.append('}');
-            if(it.hasNext()) str.append(", ");
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        long result = 1;
+        for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
+            long factor = term.getKey().evaluateModulo(modulus, variableValues, residues);
+            result = result*Power.powModulo(factor, term.getValue(), modulus)%modulus;
         }
-        str.append(')');
-        return str.toString();
+        return result;
     }
 
     /**
-     * Attempts to compute a numerical exact value for this Product, given the values to substitute.
+     * Computes an upper bound on the degree of this Product, which is at most the sum of the
+     * degrees of its factors multiplied by the absolute values of their exponents.
      *
-     * @param variableValues  The values to substitute into the variables.
-     * @return                The result of evaluating this Product.
-     * @throws                ArithmeticException If the value of a variable in this Product is missing.
+     * @return  The bound, or {@code Long.MAX_VALUE} if a factor has a non-integer exponent.
      */
     @Override
-    protected Expression internalEvaluate(HashMap<String, Expression> variableValues) {
-        // TODO Auto-generated method stub
-        return null;
+    protected long computeDegreeHint() {
+        long degree = 0;
+        for(Map.Entry<Expression, Expression> term: terms.entrySet())
+            degree = saturatedAdd(degree, Power.degreeBound(term.getKey().getDegreeHint(), term.getValue()));
+        return degree;
+    }
+
+    /**
+     * Computes the domain restrictions of this Product, which are those of the factors and divisors
+     * it was constructed from and the restriction that each factor with a negative exponent is nonzero.
+     *
+     * @return  The restrictions.
+     */
+    @Override
+    protected DomainRestrictions computeDomainRestrictions() {
+        DomainRestrictions domainRestrictions = restrictions;
+        for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
+            if(term.getValue() instanceof BigRational && ((BigRational)term.getValue()).signum() == -1)
+                domainRestrictions = domainRestrictions.union(DomainRestrictions.nonzero(term.getKey()));
+        }
+        return domainRestrictions;
     }
 
     /**
      * Attempts to reduce the complexity of this Product by manipulating it algebraically.
      *
-     * @return  A simplified Product that is equivalent to this Product.
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            A simplified Product that is equivalent to this Product.
      */
     @Override
-    public Expression simplify() {
+    protected Expression internalSimplify(HashMap<Expression, Expression> simplified) {
         // simplify individual factors and divisors
-        TreeMap<Expression, Expression> newTerms = new TreeMap<>();
+        ArrayList<Expression> factors = new ArrayList<>();
         for(Map.Entry<Expression, Expression> entry: terms.entrySet()) {
-            Expression newKey = entry.getKey().simplify();
-            Expression newValue = entry.getValue().simplify();
-            Expression res = newKey.pow(newValue);
-
+            Expression newKey = entry.getKey().simplify(simplified);
+            Expression newValue = entry.getValue().simplify(simplified);
+            factors.add(newKey.pow(newValue));
         }
-
-        // TODO Auto-generated method stub
-        return null;
+        return parseProduct(factors, new ArrayList<>());
     }
 
 // <---------------------------------- Own Methods ---------------------------------->
 
+    /**
+     * Multiplies or divides this Product by the specified factor. This is a private helper method
+     * to construct Product objects. The factors of a nested Product are added individually.
+     *
+     * @param factor  The factor.
+     * @param sign    Whether the factor is multiplied or divided if it is non-negative or negative.
+     * @return        The rational part of the factor, which is to be multiplied into the coefficient.
+     * @throws        ArithmeticException if the factor is a divisor that is equal to zero.
+     */
+    private BigRational addFactor(Expression factor, int sign) {
+        if(factor instanceof BigRational) {
+            if(sign >= 0) return (BigRational)factor;
+            return ((BigRational)factor).reciprocal();
+        }
+        if(factor instanceof Product) {
+            BigRational coefficient = BigRational.ONE;
+            for(Map.Entry<Expression, Expression> term: ((Product)factor).terms.entrySet()) {
+                coefficient = (BigRational)coefficient.multiply(addFactor(term.getKey().pow(term.getValue()), sign));
+            }
+            return coefficient;
+        }
+        if(isRadical(factor)) {
+            BigRational exponent = (BigRational)((Power)factor).getExponent();
+            return addRadical((BigRational)((Power)factor).getBase(), sign >= 0 ? exponent : exponent.negate());
+        }
+        addTerm(new Pair<>(factor, sign));
+        return BigRational.ONE;
+    }
+
     /**
      * Adds the specified term to this Product Object. This is a private helper method to
      * construct Product objects.
@@ -417,14 +589,16 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
      * value indicates whether the term is multiplied or divided if it is non-negative or negative.
      */
     private void addTerm(Pair<Expression, Integer> term) {
+        // a Power with a rational base is kept whole so that the coefficient stays the only rational key
+        boolean isSplitPower = term.first() instanceof Power && !(((Power)term.first()).getBase() instanceof BigRational);
         Expression termBase;
-        if(term.first() instanceof Power) termBase = ((Power)term.first()).getBase();
+        if(isSplitPower) termBase = ((Power)term.first()).getBase();
         else termBase = term.first();
 
         Expression termExponent = terms.get(termBase);
         if(termExponent == null) termExponent = BigRational.ZERO;
 
-        if(term.first() instanceof Power) {
+        if(isSplitPower) {
             if(term.second() >= 0) termExponent = termExponent.add(((Power)term.first()).getExponent());
             else termExponent = termExponent.subtract(((Power)term.first()).getExponent());
         } else {
@@ -435,7 +609,130 @@ public class Product extends Expression implements Iterable<Map.Entry<Expression
         if(termExponent.equals(BigRational.ZERO)) terms.remove(termBase);
         else terms.put(termBase, termExponent);
 
-        // TODO add restriction if its division!
+        // dividing by the base requires it to be nonzero, even if it is cancelled
+        Expression addedExponent = isSplitPower ? ((Power)term.first()).getExponent() : BigRational.ONE;
+        if(addedExponent instanceof BigRational && ((BigRational)addedExponent).signum()*term.second() < 0)
+            restrictions = restrictions.union(DomainRestrictions.nonzero(termBase));
+    }
+
+    /**
+     * Determines whether or not the provided Expression is a rational number raised to a rational exponent.
+     *
+     * @param expression  The Expression.
+     * @return            True if the Expression is a Power with a rational base and exponent.
+     */
+    private static boolean isRadical(Expression expression) {
+        return expression instanceof Power && ((Power)expression).getBase() instanceof BigRational &&
+            ((Power)expression).getExponent() instanceof BigRational;
+    }
+
+    /**
+     * Multiplies this Product by a rational number raised to a rational exponent. This is a private
+     * helper method to construct Product objects. Radicals with the same index are combined into one
+     * radical (e.g. {@code 2^(1/2) * 6^(1/2) = 12^(1/2) = 2*3^(1/2)}), so there is at most one term in
+     * simplest radical form for each index.
+     *
+     * @param base      The base of the radical.
+     * @param exponent  The exponent of the radical.
+     * @return          The rational part that is extracted, which is to be multiplied into the coefficient.
+     */
+    private BigRational addRadical(BigRational base, BigRational exponent) {
+        Expression value = Power.parsePower(base, exponent);
+
+        // separate the rational part from the radical part
+        BigRational coefficient = BigRational.ONE;
+        if(value instanceof BigRational) return (BigRational)value;
+        if(value instanceof Product) {
+            coefficient = ((Product)value).getCoefficient();
+            for(Expression factor: ((Product)value).terms.keySet()) {
+                if(!factor.equals(coefficient)) value = factor;
+            }
+        }
+        Power radical = (Power)value;
+        BigRational radicalBase = (BigRational)radical.getBase();
+        BigRational index = (BigRational)radical.getExponent();
+
+        if(radicalBase.signum() == 1 && radicalBase.isInteger() && index.signum() == 1 && index.isReciprocalInteger()) {
+            for(Expression factor: terms.keySet()) {
+                if(factor instanceof Power && ((Power)factor).getBase() instanceof BigRational &&
+                    ((BigRational)((Power)factor).getBase()).signum() == 1 &&
+                    ((Power)factor).getExponent().equals(index)) {// combine radicals with the same index
+                    terms.remove(factor);
+                    BigRational combinedBase = (BigRational)((Power)factor).getBase().multiply(radicalBase);
+                    return (BigRational)coefficient.multiply(addRadical(combinedBase, index));
+                }
+            }
+        }
+        addTerm(new Pair<>(radical, 1));
+        return coefficient;
+    }
+
+    /**
+     * Writes the LaTeX String representation of this Product.
+     *
+     * @param out  The ExpressionWriter to write to.
+     * @throws     IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderLatex(ExpressionWriter out) throws IOException {
+        BigRational coefficientNum = getCoefficient().getNumerator().abs();
+        BigRational coefficientDen = getCoefficient().getDenominator();
+        int numItemsTop = coefficientNum.equals(BigRational.ONE) ? 0 : 1;
+        int numItemsBottom = coefficientDen.equals(BigRational.ONE) ? 0 : 1;
+        for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
+            if(term.getKey().equals(getCoefficient())) continue;
+            if(isOnTop(term.getValue())) numItemsTop++;
+            else numItemsBottom++;
+        }
+
+        if(getCoefficient().signum() == -1) out.append('-');
+        if(numItemsBottom > 0) out.append("\\dfrac{");
+        if(numItemsTop == 0) out.appendExpression(BigRational.ONE, Format.LATEX);
+        else renderLatexHalf(out, coefficientNum, true, numItemsTop);
+        if(numItemsBottom > 0) {
+            out.append("}{");
+            renderLatexHalf(out, coefficientDen, false, numItemsBottom);
+            out.append('}');
+        }
+    }
+
+    /**
+     * Writes the top or bottom half of the LaTeX String representation of this Product.
+     *
+     * @param out          The ExpressionWriter to write to.
+     * @param coefficient  The part of the coefficient in this half.
+     * @param isTop        True if this is the top half.
+     * @param numItems     The number of items in this half.
+     * @throws             IOException If the underlying {@code Appendable} throws one.
+     */
+    private void renderLatexHalf(ExpressionWriter out, BigRational coefficient, boolean isTop, int numItems) throws IOException {
+        boolean isFirstItem = true;
+        if(!coefficient.equals(BigRational.ONE)) {
+            out.appendExpression(coefficient, Format.LATEX);
+            isFirstItem = false;
+        }
+        for(Map.Entry<Expression, Expression> term: terms.entrySet()) {
+            if(term.getKey().equals(getCoefficient()) || isOnTop(term.getValue()) != isTop) continue;
+
+            if(!isFirstItem) out.separateDigits("\\cdot");
+            isFirstItem = false;
+            boolean printBrackets = term.getKey() instanceof Sum && numItems > 1;
+            if(printBrackets) out.appendOpeningBracket(Format.LATEX);
+            Power.renderPower(out, term.getKey(), isTop ? term.getValue() : term.getValue().negate(), Format.LATEX);
+            if(printBrackets) out.appendClosingBracket(Format.LATEX);
+        }
+    }
+
+    /**
+     * Determines whether or not a term belongs on the top of the fraction in the LaTeX String
+     * representation of a Product.
+     *
+     * @param exponent  The exponent of the term.
+     * @return          False if the exponent is negative, and true otherwise.
+     */
+    private static boolean isOnTop(Expression exponent) {
+        if(exponent instanceof BigRational && ((BigRational)exponent).signum() == -1) return false;
+        if(exponent instanceof Product && ((Product)exponent).getCoefficient().signum() == -1) return false;
+        return true;
     }
 
     /**
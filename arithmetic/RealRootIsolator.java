@@ -0,0 +1,1027 @@
+package arithmetic;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import algebra.SymbolTable;
+import algebra.Variable;
+import settheory.DiscreteNumberSet;
+
+/**
+ * <p>Finds the real roots of a polynomial in a single Variable with rational coefficients, using
+ * exact arithmetic.</p>
+ *
+ * <p>The polynomial is scaled to a primitive polynomial with integer coefficients, and its repeated
+ * roots are removed by dividing it by its gcd with its derivative. The positive roots are then
+ * isolated with the continued fraction method of Vincent, Akritas and Strzebonski. By Descartes'
+ * rule of signs, the number of sign variations in the coefficients of a polynomial bounds its number
+ * of positive roots, and has the same parity. The polynomial is repeatedly transformed by
+ * {@code x -> x+s}, where {@code s} is a lower bound on its positive roots, and split into the
+ * roots above and below one with {@code x -> x+1} and {@code x -> 1/(x+1)}, until each transformed
+ * polynomial has zero or one variations. The transformations compose to a Mobius transformation
+ * {@code (ax+b)/(cx+d)} with integer coefficients, which maps the positive reals of a transformed
+ * polynomial back to an interval with rational endpoints. A root is found exactly whenever it is
+ * mapped to zero. The negative roots are the positive roots of {@code p(-x)}.</p>
+ *
+ * <p>The polynomials produced by each split are independent, so large ones are explored in parallel
+ * on the common {@code ForkJoinPool}. Each transformation is a Taylor shift, which only needs
+ * additions and bit shifts.</p>
+ *
+ * <p>An isolating interval is refined by bisection, using the sign of the polynomial at the midpoint.
+ * Each step takes a single exact evaluation and halves the width.</p>
+ *
+ * @author Ricky Qin
+ */
+public class RealRootIsolator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The degree at or below which a transformed polynomial is explored on the current thread
+     * instead of being forked.
+     */
+    final private static int SEQUENTIAL_DEGREE = 64;
+
+    /**
+     * The maximum degree of a polynomial.
+     */
+    final private static int MAX_DEGREE = 1 << 16;
+
+    /**
+     * The amount that the base 2 logarithm of a root bound is moved towards safety, which is far
+     * larger than the rounding error of computing it with {@code double}s.
+     */
+    final private static double LOG2_MARGIN = 1e-6;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Converts an Expression to a primitive polynomial with integer coefficients, with the same roots.
+     *
+     * @param polynomial  The Expression, which is a polynomial in at most one Variable.
+     * @return            The coefficients, where index {@code i} is the coefficient of {@code x^i},
+     * with a positive leading coefficient, or an empty array if the polynomial is zero.
+     * @throws            IllegalArgumentException If the Expression is not a polynomial with
+     * rational coefficients.
+     */
+    private static BigInteger[] toIntegerPolynomial(Expression polynomial) {
+        RationalPolynomial result = polynomial.fold((expression, childResults) -> {
+            if(expression instanceof BigRational) return new RationalPolynomial((BigRational)expression);
+            if(expression instanceof Variable) return RationalPolynomial.X;
+            if(expression instanceof Sum) {
+                RationalPolynomial sum = RationalPolynomial.ZERO;
+                for(int i = 0; i < childResults.size(); i += 2) sum = sum.add(childResults.get(i).multiply(childResults.get(i+1)));
+                return sum;
+            }
+            if(expression instanceof Product) {
+                RationalPolynomial product = RationalPolynomial.ONE;
+                for(int i = 0; i < childResults.size(); i += 2) product = product.multiply(childResults.get(i).pow(childResults.get(i+1)));
+                return product;
+            }
+            if(expression instanceof Power) return childResults.get(0).pow(childResults.get(1));
+            throw new IllegalArgumentException("RealRootIsolator: Expression is not a polynomial with rational coefficients");
+        }, new HashMap<Expression, RationalPolynomial>());
+        BigInteger[] coefficients = trim(result.coefficients);
+        if(coefficients.length > 0 && coefficients[coefficients.length-1].signum() == -1) coefficients = negate(coefficients);
+        return primitive(coefficients);
+    }
+
+    /**
+     * Removes the leading zero coefficients of a polynomial.
+     *
+     * @param p  The polynomial.
+     * @return   The polynomial, or a shorter copy of it.
+     */
+    private static BigInteger[] trim(BigInteger[] p) {
+        int length = p.length;
+        while(length > 0 && p[length-1].signum() == 0) length--;
+        return (length == p.length) ? p : Arrays.copyOf(p, length);
+    }
+
+    /**
+     * Divides a polynomial by the gcd of its coefficients.
+     *
+     * @param p  The polynomial.
+     * @return   The primitive polynomial, which has the same sign of leading coefficient.
+     */
+    private static BigInteger[] primitive(BigInteger[] p) {
+        BigInteger content = BigInteger.ZERO;
+        for(BigInteger coefficient: p) {
+            content = content.gcd(coefficient);
+            if(content.equals(BigInteger.ONE)) return p;
+        }
+        if(content.signum() == 0) return p;
+        BigInteger[] result = new BigInteger[p.length];
+        for(int i = 0; i < p.length; i++) result[i] = p[i].divide(content);
+        return result;
+    }
+
+    /**
+     * Negates a polynomial.
+     *
+     * @param p  The polynomial.
+     * @return   {@code -p(x)}
+     */
+    private static BigInteger[] negate(BigInteger[] p) {
+        BigInteger[] result = new BigInteger[p.length];
+        for(int i = 0; i < p.length; i++) result[i] = p[i].negate();
+        return result;
+    }
+
+    /**
+     * Computes the derivative of a polynomial.
+     *
+     * @param p  The polynomial.
+     * @return   {@code p'(x)}
+     */
+    private static BigInteger[] derivative(BigInteger[] p) {
+        if(p.length <= 1) return new BigInteger[0];
+        BigInteger[] result = new BigInteger[p.length-1];
+        for(int i = 1; i < p.length; i++) result[i-1] = p[i].multiply(BigInteger.valueOf(i));
+        return result;
+    }
+
+    /**
+     * Divides a polynomial by {@code x} as many times as possible.
+     *
+     * @param p  The polynomial, which is not zero.
+     * @return   {@code p(x)/x^k}, where {@code k} is the number of zero coefficients at the start.
+     */
+    private static BigInteger[] divideByX(BigInteger[] p) {
+        int k = 0;
+        while(p[k].signum() == 0) k++;
+        return (k == 0) ? p : Arrays.copyOfRange(p, k, p.length);
+    }
+
+    /**
+     * Reverses the coefficients of a polynomial.
+     *
+     * @param p  The polynomial.
+     * @return   {@code x^n p(1/x)}, where {@code n} is the degree of {@code p}.
+     */
+    private static BigInteger[] reverse(BigInteger[] p) {
+        BigInteger[] result = new BigInteger[p.length];
+        for(int i = 0; i < p.length; i++) result[i] = p[p.length-1-i];
+        return result;
+    }
+
+    /**
+     * Computes {@code p(-x)}.
+     *
+     * @param p  The polynomial.
+     * @return   The polynomial with the odd coefficients negated.
+     */
+    private static BigInteger[] reflect(BigInteger[] p) {
+        BigInteger[] result = p.clone();
+        for(int i = 1; i < p.length; i += 2) result[i] = p[i].negate();
+        return result;
+    }
+
+    /**
+     * Computes a Taylor shift of a polynomial by a power of two, with {@code O(n^2)} additions and
+     * bit shifts.
+     *
+     * @param p         The polynomial.
+     * @param log2Shift The base 2 logarithm of the shift.
+     * @return          {@code p(x + 2^log2Shift)}
+     */
+    private static BigInteger[] taylorShift(BigInteger[] p, int log2Shift) {
+        BigInteger[] result = p.clone();
+        int n = result.length-1;
+        for(int i = 0; i < n; i++) {
+            for(int j = n-1; j >= i; j--) result[j] = result[j].add(result[j+1].shiftLeft(log2Shift));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the sign variations in the coefficients of a polynomial, ignoring zeros.
+     *
+     * @param p  The polynomial.
+     * @return   The number of variations, which bounds the number of positive roots.
+     */
+    private static int signVariations(BigInteger[] p) {
+        int variations = 0, previous = 0;
+        for(BigInteger coefficient: p) {
+            int sign = coefficient.signum();
+            if(sign == 0) continue;
+            if(sign != previous && previous != 0) variations++;
+            previous = sign;
+        }
+        return variations;
+    }
+
+    /**
+     * Approximates the base 2 logarithm of the absolute value of a nonzero BigInteger.
+     *
+     * @param n  The BigInteger.
+     * @return   {@code log2(|n|)}, with a relative error close to that of a {@code double}.
+     */
+    private static double log2(BigInteger n) {
+        n = n.abs();
+        int shift = Math.max(0, n.bitLength()-Long.SIZE+1);
+        return shift + Math.log(n.shiftRight(shift).doubleValue())/Math.log(2);
+    }
+
+    /**
+     * Computes the base 2 logarithm of an upper bound on the positive roots of a polynomial, with
+     * the local-max-quadratic bound of Akritas, Strzebonski and Vigklas. Each negative coefficient
+     * (relative to the leading coefficient) is paired with every positive coefficient of a higher
+     * power, and each positive coefficient's share is halved every time it is used.
+     *
+     * @param p  The polynomial, which is not zero.
+     * @return   The logarithm of the bound, or negative infinity if there are no positive roots.
+     */
+    private static double positiveRootBoundLog2(BigInteger[] p) {
+        int n = p.length-1;
+        int leadingSign = p[n].signum();
+        double[] logs = new double[n+1];
+        int[] times = new int[n+1];
+        for(int i = 0; i <= n; i++) {
+            if(p[i].signum() != 0) logs[i] = log2(p[i]);
+            times[i] = 1;
+        }
+        double bound = Double.NEGATIVE_INFINITY;
+        for(int i = n-1; i >= 0; i--) {
+            if(p[i].signum() != -leadingSign) continue;
+            double minimum = Double.POSITIVE_INFINITY;
+            int argMinimum = n;
+            for(int j = n; j > i; j--) {
+                if(p[j].signum() != leadingSign) continue;
+                double candidate = (logs[i] - logs[j] + times[j])/(j-i);
+                if(candidate < minimum) {
+                    minimum = candidate;
+                    argMinimum = j;
+                }
+            }
+            times[argMinimum]++;
+            bound = Math.max(bound, minimum);
+        }
+        return bound;
+    }
+
+    /**
+     * Computes the base 2 logarithm of a power of two that is a lower bound on the positive roots
+     * of a polynomial.
+     *
+     * @param p  The polynomial, which has a nonzero constant term.
+     * @return   The logarithm, or {@code -1} if the lower bound is less than one.
+     */
+    private static int lowerBoundLog2(BigInteger[] p) {
+        double log2 = -positiveRootBoundLog2(reverse(p)) - LOG2_MARGIN;
+        if(!(log2 >= 0)) return -1;
+        return (int)Math.min(Math.floor(log2), Integer.MAX_VALUE/2);
+    }
+
+    /**
+     * Computes the sign of a polynomial at a rational number.
+     *
+     * @param p  The polynomial.
+     * @param x  The rational number.
+     * @return   The sign of {@code p(x)}.
+     */
+    private static int signAt(BigInteger[] p, BigRational x) {
+        if(p.length == 0) return 0;
+        // den^n p(num/den) has the same sign, and only needs integer arithmetic
+        BigInteger numerator = x.getNumeratorValue(), denominator = x.getDenominatorValue();
+        BigInteger value = p[p.length-1], denominatorPower = BigInteger.ONE;
+        for(int i = p.length-2; i >= 0; i--) {
+            denominatorPower = denominatorPower.multiply(denominator);
+            value = value.multiply(numerator).add(p[i].multiply(denominatorPower));
+        }
+        return value.signum();
+    }
+
+    /**
+     * Computes the pseudo-remainder of two polynomials, which is the remainder of {@code a} after
+     * multiplying it by a power of the leading coefficient of {@code b}.
+     *
+     * @param a  The dividend.
+     * @param b  The divisor, which is not zero.
+     * @return   The pseudo-remainder, which has a lower degree than {@code b}.
+     */
+    private static BigInteger[] pseudoRemainder(BigInteger[] a, BigInteger[] b) {
+        BigInteger[] remainder = a.clone();
+        int length = remainder.length;
+        BigInteger leading = b[b.length-1];
+        while(length >= b.length) {
+            BigInteger top = remainder[length-1];
+            int offset = length - b.length;
+            for(int i = 0; i < length; i++) remainder[i] = remainder[i].multiply(leading);
+            for(int i = 0; i < b.length; i++) remainder[offset+i] = remainder[offset+i].subtract(top.multiply(b[i]));
+            length--;
+            while(length > 0 && remainder[length-1].signum() == 0) length--;
+        }
+        return Arrays.copyOf(remainder, length);
+    }
+
+    /**
+     * Divides a polynomial by a factor of it.
+     *
+     * @param a  The dividend.
+     * @param b  A factor of {@code a} over the rationals.
+     * @return   The quotient, made primitive with a positive leading coefficient.
+     */
+    private static BigInteger[] divideExact(BigInteger[] a, BigInteger[] b) {
+        // a*lc(b)^k is divisible by b over the integers
+        BigInteger[] remainder = a.clone();
+        BigInteger[] quotient = new BigInteger[a.length-b.length+1];
+        Arrays.fill(quotient, BigInteger.ZERO);
+        BigInteger leading = b[b.length-1];
+        for(int length = remainder.length; length >= b.length; length--) {
+            BigInteger top = remainder[length-1];
+            int offset = length - b.length;
+            for(int i = 0; i < length; i++) remainder[i] = remainder[i].multiply(leading);
+            for(int i = offset+1; i < quotient.length; i++) quotient[i] = quotient[i].multiply(leading);
+            quotient[offset] = top;
+            for(int i = 0; i < b.length; i++) remainder[offset+i] = remainder[offset+i].subtract(top.multiply(b[i]));
+        }
+        quotient = primitive(quotient);
+        return (quotient[quotient.length-1].signum() == -1) ? negate(quotient) : quotient;
+    }
+
+    /**
+     * Computes the gcd of two polynomials over the rationals, with the primitive remainder sequence.
+     *
+     * @param a  The first polynomial.
+     * @param b  The second polynomial, which is not zero.
+     * @return   The gcd, which is primitive.
+     */
+    private static BigInteger[] gcd(BigInteger[] a, BigInteger[] b) {
+        while(b.length > 0) {
+            BigInteger[] remainder = primitive(pseudoRemainder(a, b));
+            a = b;
+            b = remainder;
+        }
+        return primitive(a);
+    }
+
+    /**
+     * Determines whether or not a polynomial has no repeated roots by computing the degree of its gcd
+     * with its derivative modulo a random prime. A prime that doesn't divide either leading
+     * coefficient can only make the gcd larger, so a constant gcd is always correct.
+     *
+     * @param p  The polynomial, which has a degree of at least two.
+     * @return   True if the polynomial is proven to be square free, and false if it might not be.
+     */
+    private static boolean isProbablySquareFree(BigInteger[] p) {
+        BigInteger[] dp = derivative(p);
+        long modulus;
+        do {
+            modulus = BigInteger.probablePrime(31, ThreadLocalRandom.current()).longValue();
+        } while(NumberTheory.mod(dp[dp.length-1], modulus) == 0);
+        long[] a = new long[p.length], b = new long[dp.length];
+        for(int i = 0; i < p.length; i++) a[i] = NumberTheory.mod(p[i], modulus);
+        for(int i = 0; i < dp.length; i++) b[i] = NumberTheory.mod(dp[i], modulus);
+        int aLength = a.length, bLength = b.length;
+        while(bLength > 0 && b[bLength-1] == 0) bLength--;
+        while(bLength > 0) {
+            // a = a mod b
+            long inverse = NumberTheory.inverseMod(b[bLength-1], modulus);
+            while(aLength >= bLength) {
+                long factor = a[aLength-1]*inverse%modulus;
+                int offset = aLength-bLength;
+                for(int i = 0; i < bLength; i++) a[offset+i] = Math.floorMod(a[offset+i] - factor*b[i]%modulus, modulus);
+                while(aLength > 0 && a[aLength-1] == 0) aLength--;
+            }
+            long[] swap = a;
+            a = b;
+            b = swap;
+            int swapLength = aLength;
+            aLength = bLength;
+            bLength = swapLength;
+        }
+        return aLength == 1;
+    }
+
+    /**
+     * Removes the repeated roots of a polynomial.
+     *
+     * @param p  The primitive polynomial.
+     * @return   A primitive polynomial with the same roots, each of which is simple.
+     */
+    private static BigInteger[] squareFreePart(BigInteger[] p) {
+        if(p.length <= 2 || isProbablySquareFree(p)) return p;
+        BigInteger[] g = gcd(p, derivative(p));
+        if(g.length <= 1) return p;
+        return divideExact(p, g);
+    }
+
+    /**
+     * Finds the simplest rational number in an open interval, which is the one with the smallest
+     * denominator, from the continued fractions of the endpoints.
+     *
+     * @param lower  The lower endpoint.
+     * @param upper  The upper endpoint, which is greater than {@code lower}, or null if it is infinite.
+     * @return       The rational number with the smallest denominator in the interval.
+     */
+    private static BigRational simplestBetween(BigRational lower, BigRational upper) {
+        ArrayList<BigInteger> terms = new ArrayList<>();
+        while(true) {
+            BigInteger floor = lower.floor().getNumeratorValue();
+            BigRational next = new BigRational(floor.add(BigInteger.ONE));
+            if(upper == null || compare(next, upper) < 0) {
+                terms.add(floor.add(BigInteger.ONE));
+                break;
+            }
+            // the interval is within (floor, floor+1], so continue with the reciprocals of the fractional parts
+            terms.add(floor);
+            BigRational lowerFraction = (BigRational)lower.subtract(new BigRational(floor));
+            BigRational upperFraction = (BigRational)upper.subtract(new BigRational(floor));
+            lower = upperFraction.reciprocal();
+            upper = (lowerFraction.signum() == 0) ? null : lowerFraction.reciprocal();
+        }
+        BigRational result = new BigRational(terms.get(terms.size()-1));
+        for(int i = terms.size()-2; i >= 0; i--) result = (BigRational)result.reciprocal().add(new BigRational(terms.get(i)));
+        return result;
+    }
+
+    /**
+     * Compares two BigRationals by value.
+     *
+     * @param a  The first BigRational.
+     * @param b  The second BigRational.
+     * @return   A negative number, zero, or a positive number if {@code a} is less than, equal to, or
+     * greater than {@code b}.
+     */
+    private static int compare(BigRational a, BigRational b) {
+        return a.getNumeratorValue().multiply(b.getDenominatorValue()).compareTo(b.getNumeratorValue().multiply(a.getDenominatorValue()));
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The Variable of the polynomial, or null if it is constant.
+     */
+    final private Variable variable;
+
+    /**
+     * The degree of the polynomial.
+     */
+    final private int degree;
+
+    /**
+     * The square free part of the polynomial, as a primitive integer polynomial.
+     */
+    final private BigInteger[] squareFree;
+
+    /**
+     * The isolating intervals of the distinct real roots, in increasing order.
+     */
+    final private ArrayList<IsolatingInterval> roots;
+
+    /**
+     * The rational roots, or null if they haven't been found yet.
+     */
+    private volatile DiscreteNumberSet rationalRoots;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Isolates the real roots of a polynomial.
+     *
+     * @param polynomial  The polynomial, which contains at most one Variable.
+     * @throws            IllegalArgumentException If {@code polynomial} is not a nonzero polynomial
+     * in one Variable with rational coefficients, or its degree is too large.
+     */
+    public RealRootIsolator(Expression polynomial) {
+        if(polynomial.getNumVariables() > 1)
+            throw new IllegalArgumentException("RealRootIsolator: Polynomial must have at most one Variable");
+        variable = polynomial.isConstant() ? null : SymbolTable.get(polynomial.getVariableIds()[0]);
+        BigInteger[] p = toIntegerPolynomial(polynomial);
+        if(p.length == 0) throw new IllegalArgumentException("RealRootIsolator: Every number is a root of the zero polynomial");
+        degree = p.length-1;
+        squareFree = squareFreePart(p);
+        roots = isolate(squareFree);
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Returns a String representation of the roots.
+     *
+     * @return  A String containing the isolating intervals in increasing order.
+     */
+    @Override
+    public String toString() {
+        return "RealRootIsolator" + roots;
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Isolates the real roots of a square free polynomial, exploring the positive and negative roots
+     * in parallel.
+     *
+     * @param p  The square free polynomial.
+     * @return   The isolating intervals, in increasing order.
+     */
+    private static ArrayList<IsolatingInterval> isolate(BigInteger[] p) {
+        ConcurrentLinkedQueue<IsolatingInterval> found = new ConcurrentLinkedQueue<>();
+        if(p[0].signum() == 0) {
+            found.add(new IsolatingInterval(BigRational.ZERO, BigRational.ZERO));
+            p = divideByX(p);
+        }
+        if(p.length > 1) {
+            Search positive = new Search(p, found, false);
+            Search negative = new Search(reflect(p), found, true);
+            ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(positive, negative);
+                }
+            });
+        }
+        ArrayList<IsolatingInterval> sorted = new ArrayList<>(found);
+        sorted.sort((x, y) -> {
+            int comparison = compare(x.lower, y.lower);
+            if(comparison != 0) return comparison;
+            return Boolean.compare(!x.isExact(), !y.isExact());
+        });
+        return sorted;
+    }
+
+    /**
+     * Returns the Variable of the polynomial.
+     *
+     * @return  The Variable, or null if the polynomial is constant.
+     */
+    public Variable getVariable() {
+        return variable;
+    }
+
+    /**
+     * Returns the degree of the polynomial, counting repeated roots.
+     *
+     * @return  The degree.
+     */
+    public int getDegree() {
+        return degree;
+    }
+
+    /**
+     * Returns the number of distinct real roots of the polynomial.
+     *
+     * @return  The number of roots.
+     */
+    public int getNumRoots() {
+        return roots.size();
+    }
+
+    /**
+     * Returns the isolating intervals of the distinct real roots. Each interval is either a single
+     * rational root or an open interval containing exactly one root.
+     *
+     * @return  A new list of the intervals, in increasing order.
+     */
+    public ArrayList<IsolatingInterval> getIsolatingIntervals() {
+        return new ArrayList<>(roots);
+    }
+
+    /**
+     * Returns the isolating intervals of the distinct real roots, refined in parallel until each is
+     * at most a given width.
+     *
+     * @param width  The maximum width, which is positive.
+     * @return       A new list of the refined intervals, in increasing order.
+     * @throws       IllegalArgumentException If {@code width} is not positive.
+     */
+    public ArrayList<IsolatingInterval> getIsolatingIntervals(BigRational width) {
+        IsolatingInterval[] refined = new IsolatingInterval[roots.size()];
+        IntStream.range(0, refined.length).parallel().forEach(i -> refined[i] = refine(roots.get(i), width));
+        return new ArrayList<>(Arrays.asList(refined));
+    }
+
+    /**
+     * Narrows an isolating interval of the polynomial by bisection until it is at most a given width.
+     *
+     * @param interval  One of the isolating intervals returned by this RealRootIsolator.
+     * @param width     The maximum width, which is positive.
+     * @return          An isolating interval of the same root that is at most {@code width} wide,
+     * which is a single point if the root is found exactly.
+     * @throws          IllegalArgumentException If {@code width} is not positive.
+     */
+    public IsolatingInterval refine(IsolatingInterval interval, BigRational width) {
+        if(width.signum() <= 0) throw new IllegalArgumentException("RealRootIsolator: Width must be positive");
+        BigRational lower = interval.lower, upper = interval.upper;
+        if(compare((BigRational)upper.subtract(lower), width) <= 0) return interval;
+        // the sign just above the lower endpoint, which is the sign of the derivative if it is a root
+        int lowerSign = signAt(squareFree, lower);
+        if(lowerSign == 0) lowerSign = signAt(derivative(squareFree), lower);
+        while(compare((BigRational)upper.subtract(lower), width) > 0) {
+            BigRational middle = (BigRational)lower.add(upper).divide(BigRational.TWO);
+            int sign = signAt(squareFree, middle);
+            if(sign == 0) return new IsolatingInterval(middle, middle);
+            if(sign == lowerSign) lower = middle;
+            else upper = middle;
+        }
+        return new IsolatingInterval(lower, upper);
+    }
+
+    /**
+     * Returns the roots of the polynomial that are rational. Roots that weren't found exactly while
+     * isolating them are found by refining their intervals until they are narrower than the gap
+     * between any two rationals whose denominators divide the leading coefficient, and testing the
+     * simplest rational in the interval.
+     *
+     * @return  The rational roots.
+     */
+    public DiscreteNumberSet getRationalRoots() {
+        if(rationalRoots != null) return rationalRoots;
+        // a rational root has a denominator dividing the leading coefficient, and two such rationals
+        // are at least 1/lc^2 apart
+        BigInteger leading = squareFree[squareFree.length-1].abs();
+        BigRational width = new BigRational(BigInteger.ONE, leading.multiply(leading).shiftLeft(1));
+        BigRational[] candidates = new BigRational[roots.size()];
+        IntStream.range(0, candidates.length).parallel().forEach(i -> {
+            IsolatingInterval interval = refine(roots.get(i), width);
+            BigRational candidate = interval.isExact() ? interval.lower : simplestBetween(interval.lower, interval.upper);
+            if(interval.isExact() || signAt(squareFree, candidate) == 0) candidates[i] = candidate;
+        });
+        DiscreteNumberSet.Builder builder = new DiscreteNumberSet.Builder();
+        for(BigRational candidate: candidates) {
+            if(candidate != null) builder.add(candidate);
+        }
+        rationalRoots = builder.build();
+        return rationalRoots;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>An immutable interval with rational endpoints that contains exactly one root of a polynomial.
+     * It is either a single point, which is the root, or an open interval.</p>
+     */
+    public static class IsolatingInterval {
+
+        /**
+         * The lower endpoint.
+         */
+        final private BigRational lower;
+
+        /**
+         * The upper endpoint, which is equal to the lower endpoint if the root is known exactly.
+         */
+        final private BigRational upper;
+
+        /**
+         * Constructs an isolating interval.
+         *
+         * @param lower  The lower endpoint.
+         * @param upper  The upper endpoint.
+         */
+        private IsolatingInterval(BigRational lower, BigRational upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * Compares this interval with the specified object for equality.
+         *
+         * @param o  The object to compare with.
+         * @return   True if the object is an IsolatingInterval with the same endpoints.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) return true;
+            if(!(o instanceof IsolatingInterval)) return false;
+            return lower.equals(((IsolatingInterval)o).lower) && upper.equals(((IsolatingInterval)o).upper);
+        }
+
+        /**
+         * Returns the hash code for this interval.
+         *
+         * @return  The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return 31*lower.hashCode() + upper.hashCode();
+        }
+
+        /**
+         * Returns a String representation of this interval.
+         *
+         * @return  The root if it is known exactly, and otherwise the interval in the form {@code (a, b)}.
+         */
+        @Override
+        public String toString() {
+            if(isExact()) return lower.toString();
+            return "(" + lower + ", " + upper + ")";
+        }
+
+        /**
+         * Returns the lower endpoint of this interval.
+         *
+         * @return  The lower endpoint.
+         */
+        public BigRational getLower() {
+            return lower;
+        }
+
+        /**
+         * Returns the upper endpoint of this interval.
+         *
+         * @return  The upper endpoint.
+         */
+        public BigRational getUpper() {
+            return upper;
+        }
+
+        /**
+         * Returns the width of this interval.
+         *
+         * @return  The difference between the endpoints.
+         */
+        public BigRational getWidth() {
+            return (BigRational)upper.subtract(lower);
+        }
+
+        /**
+         * Determines whether or not the root is known exactly.
+         *
+         * @return  True if this interval is a single point.
+         */
+        public boolean isExact() {
+            return lower.equals(upper);
+        }
+    }
+
+    /**
+     * <p>A polynomial with rational coefficients, stored as integer coefficients over a common positive
+     * denominator. This is only used to convert an Expression to a polynomial.</p>
+     */
+    private static class RationalPolynomial {
+
+        /**
+         * The zero polynomial.
+         */
+        final private static RationalPolynomial ZERO = new RationalPolynomial(new BigInteger[0], BigInteger.ONE);
+
+        /**
+         * The constant polynomial one.
+         */
+        final private static RationalPolynomial ONE = new RationalPolynomial(new BigInteger[] {BigInteger.ONE}, BigInteger.ONE);
+
+        /**
+         * The polynomial {@code x}.
+         */
+        final private static RationalPolynomial X = new RationalPolynomial(new BigInteger[] {BigInteger.ZERO, BigInteger.ONE}, BigInteger.ONE);
+
+        /**
+         * The numerators of the coefficients, where index {@code i} is the coefficient of {@code x^i}.
+         */
+        final private BigInteger[] coefficients;
+
+        /**
+         * The common denominator of the coefficients.
+         */
+        final private BigInteger denominator;
+
+        /**
+         * Constructs a polynomial from its numerators and denominator, reducing them by their gcd.
+         *
+         * @param coefficients  The numerators of the coefficients.
+         * @param denominator   The positive common denominator.
+         */
+        private RationalPolynomial(BigInteger[] coefficients, BigInteger denominator) {
+            coefficients = trim(coefficients);
+            if(coefficients.length > MAX_DEGREE+1) throw new IllegalArgumentException("RealRootIsolator: Polynomial degree is too large");
+            BigInteger common = denominator;
+            for(int i = 0; i < coefficients.length && !common.equals(BigInteger.ONE); i++) common = common.gcd(coefficients[i]);
+            if(!common.equals(BigInteger.ONE)) {
+                for(int i = 0; i < coefficients.length; i++) coefficients[i] = coefficients[i].divide(common);
+                denominator = denominator.divide(common);
+            }
+            this.coefficients = coefficients;
+            this.denominator = denominator;
+        }
+
+        /**
+         * Constructs a constant polynomial.
+         *
+         * @param value  The constant.
+         */
+        private RationalPolynomial(BigRational value) {
+            this(new BigInteger[] {value.getNumeratorValue()}, value.getDenominatorValue());
+        }
+
+        /**
+         * Returns the sum of this polynomial and another.
+         *
+         * @param p  The other polynomial.
+         * @return   {@code this + p}
+         */
+        private RationalPolynomial add(RationalPolynomial p) {
+            BigInteger[] sum = new BigInteger[Math.max(coefficients.length, p.coefficients.length)];
+            Arrays.fill(sum, BigInteger.ZERO);
+            for(int i = 0; i < coefficients.length; i++) sum[i] = coefficients[i].multiply(p.denominator);
+            for(int i = 0; i < p.coefficients.length; i++) sum[i] = sum[i].add(p.coefficients[i].multiply(denominator));
+            return new RationalPolynomial(sum, denominator.multiply(p.denominator));
+        }
+
+        /**
+         * Returns the product of this polynomial and another.
+         *
+         * @param p  The other polynomial.
+         * @return   {@code this * p}
+         */
+        private RationalPolynomial multiply(RationalPolynomial p) {
+            if(coefficients.length == 0 || p.coefficients.length == 0) return ZERO;
+            BigInteger[] product = new BigInteger[coefficients.length + p.coefficients.length - 1];
+            Arrays.fill(product, BigInteger.ZERO);
+            for(int i = 0; i < coefficients.length; i++) {
+                if(coefficients[i].signum() == 0) continue;
+                for(int j = 0; j < p.coefficients.length; j++) product[i+j] = product[i+j].add(coefficients[i].multiply(p.coefficients[j]));
+            }
+            return new RationalPolynomial(product, denominator.multiply(p.denominator));
+        }
+
+        /**
+         * Returns this polynomial raised to the power of a constant polynomial, by repeated squaring.
+         *
+         * @param exponent  The exponent, which is a non-negative integer constant.
+         * @return          {@code this ^ exponent}
+         * @throws          IllegalArgumentException If the exponent is not a non-negative integer, or
+         * the power has too large a degree.
+         */
+        private RationalPolynomial pow(RationalPolynomial exponent) {
+            if(exponent.coefficients.length > 1 || !exponent.denominator.equals(BigInteger.ONE) ||
+                (exponent.coefficients.length == 1 && exponent.coefficients[0].signum() == -1))
+                throw new IllegalArgumentException("RealRootIsolator: Expression is not a polynomial with rational coefficients");
+            if(exponent.coefficients.length == 0) return ONE;
+            if(coefficients.length == 0) return ZERO;
+            BigInteger power = exponent.coefficients[0];
+            if(power.compareTo(BigInteger.valueOf(MAX_DEGREE)) > 0 && coefficients.length > 1)
+                throw new IllegalArgumentException("RealRootIsolator: Polynomial degree is too large");
+            RationalPolynomial result = ONE, square = this;
+            for(int bit = 0; bit < power.bitLength(); bit++) {
+                if(power.testBit(bit)) result = result.multiply(square);
+                if(bit+1 < power.bitLength()) square = square.multiply(square);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>Isolates the positive roots of a polynomial with the continued fraction method. Each task
+     * explores a polynomial together with the Mobius transformation {@code (ax+b)/(cx+d)} that maps
+     * its positive roots to roots of the original polynomial. Transformed polynomials above
+     * {@code SEQUENTIAL_DEGREE} are forked, and smaller ones are kept on a local stack.</p>
+     */
+    private static class Search extends RecursiveAction {
+
+        /**
+         * The serialization version of this class.
+         */
+        final private static long serialVersionUID = 1L;
+
+        /**
+         * The transformed polynomial.
+         */
+        final private BigInteger[] polynomial;
+
+        /**
+         * The coefficients of the Mobius transformation {@code (ax+b)/(cx+d)}.
+         */
+        final private BigInteger a, b, c, d;
+
+        /**
+         * Whether or not a root at zero should be ignored, since it was already found by another task.
+         */
+        final private boolean isZeroFound;
+
+        /**
+         * The isolating intervals that have been found, shared by every task of a search.
+         */
+        final private ConcurrentLinkedQueue<IsolatingInterval> found;
+
+        /**
+         * Whether or not the original polynomial was {@code p(-x)}, so that the roots are negated.
+         */
+        final private boolean isReflected;
+
+        /**
+         * The upper endpoint of intervals that are unbounded above, which is an upper bound on the roots.
+         */
+        final private BigRational bound;
+
+        /**
+         * Constructs a search of all of the positive roots of a polynomial.
+         *
+         * @param polynomial   The polynomial, which has a nonzero constant term.
+         * @param found        The list to add isolating intervals to.
+         * @param isReflected  Whether or not the polynomial is {@code p(-x)}.
+         */
+        private Search(BigInteger[] polynomial, ConcurrentLinkedQueue<IsolatingInterval> found, boolean isReflected) {
+            this.polynomial = polynomial;
+            a = BigInteger.ONE;
+            b = BigInteger.ZERO;
+            c = BigInteger.ZERO;
+            d = BigInteger.ONE;
+            isZeroFound = false;
+            this.found = found;
+            this.isReflected = isReflected;
+            double boundLog2 = positiveRootBoundLog2(polynomial);
+            int exponent = Double.isInfinite(boundLog2) ? 0 : Math.max(0, (int)Math.ceil(boundLog2 + LOG2_MARGIN) + 1);
+            bound = new BigRational(BigInteger.ONE.shiftLeft(exponent));
+        }
+
+        /**
+         * Constructs a search of the positive roots of a transformed polynomial.
+         *
+         * @param parent       The search that the polynomial was transformed in.
+         * @param polynomial   The transformed polynomial.
+         * @param transform    The coefficients {@code a, b, c, d} of its Mobius transformation.
+         * @param isZeroFound  Whether or not a root at zero was already found.
+         */
+        private Search(Search parent, BigInteger[] polynomial, BigInteger[] transform, boolean isZeroFound) {
+            this.polynomial = polynomial;
+            a = transform[0];
+            b = transform[1];
+            c = transform[2];
+            d = transform[3];
+            this.isZeroFound = isZeroFound;
+            found = parent.found;
+            isReflected = parent.isReflected;
+            bound = parent.bound;
+        }
+
+        /**
+         * Adds an isolating interval, mapping it back to the original polynomial.
+         *
+         * @param lower  The lower endpoint before reflecting.
+         * @param upper  The upper endpoint before reflecting.
+         */
+        private void add(BigRational lower, BigRational upper) {
+            if(compare(lower, upper) > 0) {
+                BigRational swap = lower;
+                lower = upper;
+                upper = swap;
+            }
+            if(isReflected) found.add(new IsolatingInterval(upper.negate(), lower.negate()));
+            else found.add(new IsolatingInterval(lower, upper));
+        }
+
+        /**
+         * Explores the polynomial and every polynomial that it is transformed to.
+         */
+        @Override
+        protected void compute() {
+            ArrayList<ForkJoinTask<Void>> forked = new ArrayList<>();
+            ArrayDeque<Object[]> stack = new ArrayDeque<>();
+            stack.push(new Object[] {polynomial, new BigInteger[] {a, b, c, d}, isZeroFound});
+            while(!stack.isEmpty()) {
+                Object[] frame = stack.pop();
+                BigInteger[] q = (BigInteger[])frame[0];
+                BigInteger[] m = (BigInteger[])frame[1];
+                if((Boolean)frame[2] && q[0].signum() == 0) q = divideByX(q);
+                boolean isShifted = false;
+                while(true) {
+                    if(q[0].signum() == 0) {// a root at M(0) = b/d
+                        BigRational root = new BigRational(m[1], m[3]);
+                        add(root, root);
+                        q = divideByX(q);
+                    }
+                    int variations = signVariations(q);
+                    if(variations == 0) break;
+                    if(variations == 1) {// M maps (0, inf) to the interval between b/d and a/c
+                        add(new BigRational(m[1], m[3]), m[2].signum() == 0 ? bound : new BigRational(m[0], m[2]));
+                        break;
+                    }
+                    int shift = isShifted ? -1 : lowerBoundLog2(q);
+                    if(shift >= 0) {// no roots below 2^shift, so skip to it
+                        q = taylorShift(q, shift);
+                        m = new BigInteger[] {m[0], m[1].add(m[0].shiftLeft(shift)), m[2], m[3].add(m[2].shiftLeft(shift))};
+                        isShifted = true;
+                        continue;
+                    }
+                    isShifted = false;
+
+                    // split into the roots above one, x -> x+1, and below one, x -> 1/(x+1)
+                    BigInteger[] above = taylorShift(q, 0);
+                    BigInteger[] aboveTransform = {m[0], m[0].add(m[1]), m[2], m[2].add(m[3])};
+                    boolean isRootAtOne = above[0].signum() == 0;
+                    int aboveVariations = signVariations(isRootAtOne ? divideByX(above) : above);
+                    if(variations - aboveVariations - (isRootAtOne ? 1 : 0) > 0) {
+                        BigInteger[] below = taylorShift(reverse(q), 0);
+                        BigInteger[] belowTransform = {m[1], m[0].add(m[1]), m[3], m[2].add(m[3])};
+                        if(below.length-1 > SEQUENTIAL_DEGREE) forked.add(new Search(this, below, belowTransform, true).fork());
+                        else stack.push(new Object[] {below, belowTransform, true});
+                    }
+                    q = above;
+                    m = aboveTransform;
+                }
+            }
+            for(ForkJoinTask<Void> task: forked) task.join();
+        }
+    }
+}
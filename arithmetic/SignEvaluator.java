@@ -0,0 +1,119 @@
+package arithmetic;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>A utility class that determines the signs of constant Expressions, such as
+ * {@code 2^(1/2) + 3^(1/2) - pi}.</p>
+ *
+ * <p>The sign is found in stages that get more expensive, and each stage stops as soon as it has
+ * found an interval around the value that excludes zero. First, the Expression is bounded with
+ * {@code double} interval arithmetic, which settles almost every Expression whose value isn't
+ * very close to zero. Next, it is approximated with the {@code Approximator} to a number of decimal
+ * places that doubles every time, since an approximation is within {@code 10^-digits} of the exact
+ * value. If {@code SYMBOLIC_DIGITS} places aren't enough, the {@code ConstantZeroTest} checks if the
+ * Expression is exactly zero. If it is proven to be nonzero, the approximations continue up to
+ * {@code MAX_NONZERO_DIGITS} places, and otherwise up to {@code MAX_DIGITS} places.</p>
+ *
+ * <p>Note: zero is only returned for an Expression that is proven to be zero. An Expression that
+ * can't be told apart from zero when the approximations run out causes an
+ * {@code ArithmeticException}, rather than being treated as zero.</p>
+ *
+ * @author Ricky Qin
+ */
+public class SignEvaluator {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The number of decimal places that an Expression is first approximated to.
+     */
+    final private static int MIN_DIGITS = 20;
+
+    /**
+     * The number of decimal places after which an Expression is checked to be exactly zero.
+     */
+    final private static int SYMBOLIC_DIGITS = 80;
+
+    /**
+     * The maximum number of decimal places that an Expression is approximated to if it isn't known
+     * whether or not it is zero.
+     */
+    final public static int MAX_DIGITS = 1280;
+
+    /**
+     * The maximum number of decimal places that an Expression is approximated to once it is proven
+     * to be nonzero.
+     */
+    final public static int MAX_NONZERO_DIGITS = 1 << 14;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Determines the sign of a constant Expression.
+     *
+     * @param expression  The Expression.
+     * @return            {@code 1}, {@code 0}, or {@code -1} if the Expression is positive, zero or negative.
+     * @throws            ArithmeticException If {@code expression} contains Variables, is not a real
+     * number, or can't be told apart from zero without being proven to be zero.
+     */
+    public static int signum(Expression expression) {
+        if(expression instanceof BigRational) return ((BigRational)expression).signum();
+        if(!expression.isConstant())
+            throw new ArithmeticException("SignEvaluator: Cannot determine the sign of an Expression containing Variables");
+
+        Interval bounds;
+        try {
+            bounds = new IntervalEvaluator(expression).evaluate(new Interval[0]);
+        } catch(IllegalArgumentException e) {
+            bounds = Interval.ENTIRE;
+        }
+        if(bounds.isEmpty()) throw new ArithmeticException("SignEvaluator: Expression is not a real number");
+        if(bounds.getLower() > 0) return 1;
+        if(bounds.getUpper() < 0) return -1;
+
+        boolean isTested = false;
+        int maxDigits = MAX_DIGITS;
+        for(int digits = MIN_DIGITS; digits <= maxDigits; digits *= 2) {
+            if(digits > SYMBOLIC_DIGITS && !isTested) {
+                Boolean isZero = ConstantZeroTest.isZero(expression);
+                if(isZero == Boolean.TRUE) return 0;
+                if(isZero == Boolean.FALSE) maxDigits = MAX_NONZERO_DIGITS;
+                isTested = true;
+            }
+            BigDecimal approximation = expression.approximate(digits);
+            // the exact value is within 10^-digits of the approximation
+            if(approximation.abs().compareTo(BigDecimal.ONE.movePointLeft(digits)) > 0) return approximation.signum();
+        }
+        throw new ArithmeticException("SignEvaluator: Cannot determine the sign of an Expression within " + maxDigits + " decimal places");
+    }
+
+    /**
+     * Compares two constant Expressions by value.
+     *
+     * @param a  The first Expression.
+     * @param b  The second Expression.
+     * @return   A negative number, zero, or a positive number if {@code a} is less than, equal to, or
+     * greater than {@code b}.
+     * @throws   ArithmeticException If either Expression contains Variables or is not a real number,
+     * or if they can't be told apart without being proven to be equal.
+     */
+    public static int compare(Expression a, Expression b) {
+        if(a.equals(b)) {
+            if(!a.isConstant())
+                throw new ArithmeticException("SignEvaluator: Cannot determine the sign of an Expression containing Variables");
+            return 0;
+        }
+        if(a instanceof BigRational && b instanceof BigRational) {
+            BigRational x = (BigRational)a, y = (BigRational)b;
+            // the denominators are positive
+            return x.getNumeratorValue().multiply(y.getDenominatorValue())
+                .compareTo(y.getNumeratorValue().multiply(x.getDenominatorValue()));
+        }
+        return signum(a.subtract(b));
+    }
+
+// <--------------------------------- Constructors --------------------------------->
+
+    private SignEvaluator() {}
+}
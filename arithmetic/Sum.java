@@ -1,5 +1,7 @@
 package arithmetic;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -48,7 +50,7 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
         Sum sum = new Sum(terms);
         Expression simplerForm = checkForSimplerForms(sum);
         if(simplerForm == null) return sum;
-        else return simplerForm;
+        else return simplerForm.withDomainRestrictions(sum.getDomainRestrictions());
     }
 
     /**
@@ -72,7 +74,8 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
      *
      * <p>Variable objects are ordered by their {@code compareTo} method.</p>
      *
-     * <p>Otherwise, two Expressions of the same type are ordered by insertion order.</p>
+     * <p>Otherwise, two Expressions of the same type are ordered by their hash codes, and then
+     * by their function String representations.</p>
      */
     public static class SumTermsComparator implements Comparator<Expression> {
 
@@ -90,7 +93,8 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
             if(typeNum(o1) == typeNum(o2)) {
                 if(o1 instanceof Variable) return ((Variable)o1).compareTo((Variable)o2);
                 if(o1.equals(o2)) return 0;
-                return 1;
+                if(o1.hashCode() != o2.hashCode()) return Integer.compare(o1.hashCode(), o2.hashCode());
+                return o1.toFunctionString().compareTo(o2.toFunctionString());
             }
             return Integer.compare(typeNum(o1), typeNum(o2));
         }
@@ -125,6 +129,23 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
      */
     private TreeMap<Expression, BigRational> terms = new TreeMap<>(new SumTermsComparator());
 
+    /**
+     * The cached hash code of this Sum, or {@code 0} if it has not been computed yet.
+     */
+    private int hash;
+
+    /**
+     * The String representations of this Sum in the normal, LaTeX and function formats, computed
+     * lazily like the hash code. Each is softly referenced so it can be dropped under memory pressure.
+     */
+    private SoftReference<String> string, latexString, functionString;
+
+    /**
+     * The domain restrictions of the terms that this Sum was constructed from, including those that
+     * were cancelled.
+     */
+    private DomainRestrictions restrictions = DomainRestrictions.NONE;
+
 // <--------------------------------- Constructors --------------------------------->
 
     /**
@@ -135,7 +156,24 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
      * 1 or -1 if the leading sign is positive or negative.
      */
     private Sum(ArrayList<Pair<Expression, Integer>> terms) {
-        for(Pair<Expression, Integer> term: terms) addTerm(term);
+        for(Pair<Expression, Integer> term: terms) {
+            restrictions = restrictions.union(term.first().getDomainRestrictions());
+            addTerm(term);
+        }
+        computeMetadata();
+    }
+
+    /**
+     * Constructs a Sum object directly from terms that are already in normal form, without combining
+     * like terms. This constructor is package private so that stored Sums can be rebuilt quickly.
+     *
+     * @param terms         The terms, which are all distinct. The rational constant term has a key
+     * of {@code BigRational.ONE}.
+     * @param coefficients  The coefficients of the terms, which are all nonzero.
+     */
+    Sum(Expression[] terms, BigRational[] coefficients) {
+        for(int i = 0; i < terms.length; i++) this.terms.put(terms[i], coefficients[i]);
+        computeMetadata();
     }
 
     /**
@@ -145,6 +183,7 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
      */
     private Sum(Sum sum) {
         terms = (TreeMap<Expression, BigRational>)sum.terms.clone();
+        restrictions = sum.getDomainRestrictions();
     }
 
 // <-------------------- Methods Overriden from java.lang.Object -------------------->
@@ -160,7 +199,8 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
     public boolean equals(Object o) {
         if(o == this) return true;
         if(!(o instanceof Sum)) return false;
-        return (terms.equals(((Sum)o).terms));
+        if(hashCode() != o.hashCode()) return false;
+        return equalChildren(this, (Sum)o);
     }
 
     /**
@@ -170,46 +210,8 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
      */
     @Override
     public int hashCode() {
-        return terms.hashCode();
-    }
-
-    /**
-     * Returns a string representation of this Sum.
-     *
-     * @return  The normal String representation of this Sum.
-     */
-    @Override
-    public String toString() {
-        StringBuilder str = new StringBuilder();
-
-        boolean isFirstTerm = true;
-        for(Map.Entry<Expression, BigRational> term: terms.entrySet()) {
-            // do not print plus sign for the first term
-            if(isFirstTerm) isFirstTerm = false;
-            else if(term.getValue().signum() >= 0) str.append('+');
-
-            if(term.getKey().equals(BigRational.ONE)) {
-                str.append(term.getValue().toString());
-                break;// always the last entry
-            }
-
-            // coefficients of one are implicit and should not be displayed
-            if(term.getValue().equals(BigRational.ONE));
-            else if(term.getValue().equals(BigRational.NEGATIVE_ONE)) str.append('-');
-            else str.append(term.getValue().toString());
-
-            // print the term itself
-            if(term.getKey() instanceof BigRational);
-            else if(term.getKey() instanceof Sum) str.append(surroundInBrackets(term.getKey().toString()));
-            else {
-                String termStr = term.getKey().toString();
-                // add '*' symbol if coefficient and term needs to be separated
-                if(str.length() > 0 && Character.isDigit(str.charAt(str.length()-1)) && termStr.length() > 0
-                    && Character.isDigit(termStr.charAt(0))) str.append('*');
-                str.append(termStr);
-            }
-        }
-        return str.toString();
+        if(hash == 0) hash = terms.hashCode();
+        return hash;
     }
 
 // <---------------------- Methods Implemented for Interfaces ---------------------->
@@ -237,6 +239,7 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
     @Override
     public Expression add(Expression expression) {
         Sum newSum = new Sum(this);
+        newSum.restrictions = newSum.restrictions.union(expression.getDomainRestrictions());
         if(expression instanceof BigRational) {
             newSum.addTerm(new Pair<>(expression, 1));
         } else if(expression instanceof Sum) {
@@ -247,92 +250,192 @@ public class Sum extends Expression implements Iterable<Map.Entry<Expression, Bi
         } else {
             newSum.addTerm(new Pair<>(expression, 1));
         }
+        newSum.computeMetadata();
         return newSum;
     }
 
     /**
-     * Returns the LaTeX String representation of this Sum.
+     * Writes this Sum in the provided format. In function form, it is written as
+     * <code>Sum({term:coefficient}, ...)</code>.
      *
-     * @return  The LaTeX String representation of this Sum.
+     * @param out     The ExpressionWriter to write to.
+     * @param format  The format to write this Sum in.
+     * @throws        IOException If the underlying {@code Appendable} throws one.
      */
     @Override
-    public String toLatexString() {
-        StringBuilder str = new StringBuilder();
+    protected void internalRender(ExpressionWriter out, Format format) throws IOException {
+        if(format == Format.FUNCTION) {
+            out.append("Sum(");
+            Iterator<Map.Entry<Expression, BigRational>> it = iterator();
+            while(it.hasNext()) {
+                Map.Entry<Expression, BigRational> term = it.next();
+                out.append('{');
+                out.appendExpression(term.getKey(), format);
+                out.append(':');
+                out.appendExpression(term.getValue(), format);
+                out.append('}');
+                if(it.hasNext()) out.append(", ");
+            }
+            out.append(')');
+            return;
+        }
 
         boolean isFirstTerm = true;
         for(Map.Entry<Expression, BigRational> term: terms.entrySet()) {
             // do not print plus sign for the first term
             if(isFirstTerm) isFirstTerm = false;
-            else if(term.getValue().signum() >= 0) str.append('+');
+            else if(term.getValue().signum() >= 0) out.append('+');
 
             if(term.getKey().equals(BigRational.ONE)) {
-                str.append(term.getValue().toLatexString());
+                out.appendExpression(term.getValue(), format);
                 break;// always the last entry
             }
 
             // coefficients of one are implicit and should not be displayed
             if(term.getValue().equals(BigRational.ONE));
-            else if(term.getValue().equals(BigRational.NEGATIVE_ONE)) str.append('-');
-            else str.append(term.getValue().toLatexString());
-
-            // print term itself
-            if(term.getKey() instanceof BigRational);
-            else if(term.getKey() instanceof Sum) str.append(surroundInLatexBrackets(term.getKey().toLatexString()));
+            else if(term.getValue().equals(BigRational.NEGATIVE_ONE)) out.append('-');
             else {
-                String termStr = term.getKey().toLatexString();
-                // add \cdot if coefficient and term needs to be separated
-                if(str.length() > 0 && Character.isDigit(str.charAt(str.length()-1)) && termStr.length() > 0
-                    && Character.isDigit(termStr.charAt(0))) str.append("\\cdot");
-                str.append(termStr);
+                out.appendExpression(term.getValue(), format);
+                // add '*' or \cdot if coefficient and term needs to be separated
+                out.separateDigits((format == Format.LATEX) ? "\\cdot" : "*");
             }
+
+            // print the term itself
+            if(term.getKey() instanceof Sum) out.appendInBrackets(term.getKey(), format);
+            else out.appendExpression(term.getKey(), format);
         }
-        return str.toString();
     }
 
     /**
-     * Returns the String representation of this Sum in function form.
+     * Returns the cached String representation of this Sum in the provided format.
      *
-     * @return  The function String representation of this Sum in the format
-     * <code>Sum({term:coefficient}, ...)</code>.
+     * @param format  The format of the String.
+     * @return        The cached String, or null if it isn't cached or has been dropped.
+     */
+    @Override
+    protected String getCachedString(Format format) {
+        SoftReference<String> cached = (format == Format.NORMAL) ? string :
+            (format == Format.LATEX) ? latexString : functionString;
+        return (cached == null) ? null : cached.get();
+    }
+
+    /**
+     * Caches the String representation of this Sum in the provided format.
+     *
+     * @param format  The format of the String.
+     * @param str     The String.
+     */
+    @Override
+    protected void setCachedString(Format format, String str) {
+        if(format == Format.NORMAL) string = new SoftReference<>(str);
+        else if(format == Format.LATEX) latexString = new SoftReference<>(str);
+        else functionString = new SoftReference<>(str);
+    }
+
+    /**
+     * Returns the children of this Sum, which are each of its terms followed by its coefficient.
+     *
+     * @return  A new list of the children.
      */
     @Override
-    public String toFunctionString() {
-        StringBuilder str = new StringBuilder();
-        str.append("Sum(");
-        Iterator<Map.Entry<Expression, BigRational>> it = iterator();
-        while(it.hasNext()) {
-            Map.Entry<Expression, BigRational> term = it.next();
-            str.append('{');
-            str.append(term.getKey().toFunctionString());
-            str.append(':');
-            str.append(term.getValue().toFunctionString());
-            str.append('}');
-            if(it.hasNext()) str.append(", ");
+    public ArrayList<Expression> getChildren() {
+        ArrayList<Expression> children = new ArrayList<>(2*terms.size());
+        for(Map.Entry<Expression, BigRational> term: terms.entrySet()) {
+            children.add(term.getKey());
+            children.add(term.getValue());
         }
-        str.append(')');
-        return str.toString();
+        return children;
     }
 
     /**
      * Attempts to compute a numerical exact value for this Sum, given the values to substitute.
      *
      * @param variableValues  The values to substitute into the variables.
+     * @param values          The values that have already been computed.
      * @return                The result of evaluating this Sum.
      * @throws                ArithmeticException If the value of a variable in this Sum is missing.
      */
     @Override
-    protected Expression internalEvaluate(HashMap<String, Expression> variableValues) {
-        // TODO Auto-generated method stub
-        return null;
+    protected Expression internalEvaluate(HashMap<String, Expression> variableValues, HashMap<Expression, Expression> values) {
+        ArrayList<Pair<Expression, Integer>> newTerms = new ArrayList<>();
+        for(Map.Entry<Expression, BigRational> term: terms.entrySet())
+            newTerms.add(new Pair<>(term.getKey().evaluate(variableValues, values).multiply(term.getValue()), 1));
+        return parseSum(newTerms);
+    }
+
+    /**
+     * Computes the derivative of this Sum with respect to the provided Variable, which is the
+     * sum of the derivatives of its terms.
+     *
+     * @param variable     The Variable to differentiate with respect to.
+     * @param derivatives  The derivatives that have already been computed.
+     * @return             The derivative of this Sum.
+     * @throws             ArithmeticException If the derivative cannot be expressed without logarithms.
+     */
+    @Override
+    protected Expression internalDifferentiate(Variable variable, HashMap<Expression, Expression> derivatives) {
+        ArrayList<Pair<Expression, Integer>> newTerms = new ArrayList<>();
+        for(Map.Entry<Expression, BigRational> term: terms.entrySet()) {
+            if(term.getKey() instanceof BigRational) continue;// the rational constant term
+            Expression derivative = term.getKey().differentiate(variable, derivatives);
+            if(derivative.equals(BigRational.ZERO)) continue;
+            newTerms.add(new Pair<>(derivative.multiply(term.getValue()), 1));
+        }
+        return parseSum(newTerms);
+    }
+
+    /**
+     * Evaluates this Sum modulo a prime.
+     *
+     * @param modulus         The prime modulus.
+     * @param variableValues  The residues of the Variables.
+     * @param residues        The residues that have already been computed.
+     * @return                The residue of this Sum.
+     * @throws                ArithmeticException If a denominator is divisible by {@code modulus}.
+     * @throws                UnsupportedOperationException If a term cannot be evaluated modulo a prime.
+     */
+    @Override
+    protected long internalEvaluateModulo(long modulus, HashMap<String, Long> variableValues, HashMap<Expression, Long> residues) {
+        long result = 0;
+        for(Map.Entry<Expression, BigRational> term: terms.entrySet()) {
+            long coefficient = term.getValue().evaluateModulo(modulus, variableValues, residues);
+            result = (result+coefficient*term.getKey().evaluateModulo(modulus, variableValues, residues))%modulus;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the domain restrictions of this Sum, which are those of the terms it was constructed
+     * from, including those that were cancelled.
+     *
+     * @return  The restrictions.
+     */
+    @Override
+    protected DomainRestrictions computeDomainRestrictions() {
+        return restrictions;
+    }
+
+    /**
+     * Computes an upper bound on the degree of this Sum, which is at most the sum of the degrees of
+     * its terms once they are put over a common denominator.
+     *
+     * @return  The bound.
+     */
+    @Override
+    protected long computeDegreeHint() {
+        long degree = 0;
+        for(Expression term: terms.keySet()) degree = saturatedAdd(degree, term.getDegreeHint());
+        return degree;
     }
 
     /**
      * Attempts to reduce the complexity of this Sum by manipulating it algebraically.
      *
-     * @return  A simplified Sum that is equivalent to this Sum.
+     * @param simplified  The simplified forms that have already been computed.
+     * @return            A simplified Sum that is equivalent to this Sum.
      */
     @Override
-    public Expression simplify() {
+    protected Expression internalSimplify(HashMap<Expression, Expression> simplified) {
         // TODO Auto-generated method stub
         return this;
     }
@@ -1,5 +1,567 @@
 package settheory;
 
-public class ContinuousNumberSet {
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import arithmetic.BigRational;
+import arithmetic.Expression;
+
+/**
+ * <p>An immutable set of real numbers that is a union of intervals, such as {@code (-inf, 1) U [2, 3]}.
+ * The endpoints of the intervals are constant Expressions, so they can be BigRationals or symbolic,
+ * such as {@code 2^(1/2)} or {@code pi}, and each endpoint is either open or closed. A null endpoint
+ * is unbounded.</p>
+ *
+ * <p>The intervals are stored in a sorted array and are coalesced, so they never overlap or touch.
+ * This makes every set have a single representation. Union, intersection and complement merge the
+ * arrays in linear time, and membership is a binary search.</p>
+ *
+ * <p>Sets with many intervals are built with a {@code ContinuousNumberSet.Builder}, which sorts and
+ * coalesces the intervals in parallel.</p>
+ *
+ * <p>Note: symbolic endpoints are compared with {@code Expression.compareTo}, so two endpoints are
+ * only treated as equal if they are proven to be equal. Operations on endpoints that can't be told
+ * apart without being proven equal throw an {@code ArithmeticException}.</p>
+ *
+ * @author Ricky Qin
+ */
+public class ContinuousNumberSet extends NumberSet {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The set containing no numbers.
+     */
+    final public static ContinuousNumberSet EMPTY = new ContinuousNumberSet(new Range[0]);
+
+    /**
+     * The set containing every real number.
+     */
+    final public static ContinuousNumberSet REALS = new ContinuousNumberSet(new Range[] {new Range(null, false, null, false)});
+
+    /**
+     * The minimum number of intervals that the builder coalesces on a single thread.
+     */
+    final private static int MIN_CHUNK_SIZE = 1 << 13;
+
+    /**
+     * Orders intervals by their lower endpoints, where a closed endpoint comes before an open one
+     * with the same value.
+     */
+    final private static Comparator<Range> LOWER_ORDER = ContinuousNumberSet::compareLowers;
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the set containing the numbers in an interval.
+     *
+     * @param lower        The lower endpoint, or null if the interval is unbounded below.
+     * @param lowerClosed  Whether or not the lower endpoint is in the interval.
+     * @param upper        The upper endpoint, or null if the interval is unbounded above.
+     * @param upperClosed  Whether or not the upper endpoint is in the interval.
+     * @return             The set, which is empty if the interval is.
+     * @throws             IllegalArgumentException If an endpoint contains Variables.
+     */
+    public static ContinuousNumberSet interval(Expression lower, boolean lowerClosed, Expression upper, boolean upperClosed) {
+        Range range = new Range(lower, lowerClosed, upper, upperClosed);
+        if(range.isEmpty()) return EMPTY;
+        return new ContinuousNumberSet(new Range[] {range});
+    }
+
+    /**
+     * Returns the set containing a single number.
+     *
+     * @param value  The number.
+     * @return       The set {@code [value, value]}.
+     * @throws       IllegalArgumentException If {@code value} contains Variables.
+     */
+    public static ContinuousNumberSet point(Expression value) {
+        return interval(value, true, value, true);
+    }
+
+    /**
+     * Compares the lower endpoints of two intervals.
+     *
+     * @param x  The first interval.
+     * @param y  The second interval.
+     * @return   A negative number, zero, or a positive number if {@code x} starts before, at the same
+     * place as, or after {@code y}.
+     */
+    private static int compareLowers(Range x, Range y) {
+        if(x.lower == null || y.lower == null) return (x.lower == null ? 0 : 1) - (y.lower == null ? 0 : 1);
+        int comparison = x.lower.compareTo(y.lower);
+        if(comparison != 0) return comparison;
+        return (x.lowerClosed ? 0 : 1) - (y.lowerClosed ? 0 : 1);
+    }
+
+    /**
+     * Compares the upper endpoints of two intervals.
+     *
+     * @param x  The first interval.
+     * @param y  The second interval.
+     * @return   A negative number, zero, or a positive number if {@code x} ends before, at the same
+     * place as, or after {@code y}.
+     */
+    private static int compareUppers(Range x, Range y) {
+        if(x.upper == null || y.upper == null) return (x.upper == null ? 1 : 0) - (y.upper == null ? 1 : 0);
+        int comparison = x.upper.compareTo(y.upper);
+        if(comparison != 0) return comparison;
+        return (x.upperClosed ? 1 : 0) - (y.upperClosed ? 1 : 0);
+    }
+
+    /**
+     * Determines whether or not an interval overlaps or touches an interval that starts at or
+     * before it, so that their union is a single interval.
+     *
+     * @param previous  The interval that starts first.
+     * @param next      The other interval.
+     * @return          True if the intervals can be merged.
+     */
+    private static boolean isConnected(Range previous, Range next) {
+        if(previous.upper == null || next.lower == null) return true;
+        int comparison = next.lower.compareTo(previous.upper);
+        return comparison < 0 || (comparison == 0 && (previous.upperClosed || next.lowerClosed));
+    }
+
+    /**
+     * Appends an interval to a list of coalesced intervals, merging it with the last interval if
+     * they are connected.
+     *
+     * @param ranges  The coalesced intervals, sorted by their lower endpoints.
+     * @param range   The interval, which does not start before the last interval.
+     */
+    private static void append(ArrayList<Range> ranges, Range range) {
+        if(ranges.isEmpty()) {
+            ranges.add(range);
+            return;
+        }
+        Range last = ranges.get(ranges.size()-1);
+        if(!isConnected(last, range)) ranges.add(range);
+        else if(compareUppers(range, last) > 0) {
+            ranges.set(ranges.size()-1, new Range(last.lower, last.lowerClosed, range.upper, range.upperClosed));
+        }
+    }
+
+    /**
+     * Coalesces a range of an array of intervals that is sorted by lower endpoint.
+     *
+     * @param ranges  The intervals.
+     * @param from    The index of the first interval, inclusive.
+     * @param to      The index of the last interval, exclusive.
+     * @return        The coalesced intervals.
+     */
+    private static ArrayList<Range> coalesce(Range[] ranges, int from, int to) {
+        ArrayList<Range> coalesced = new ArrayList<>();
+        for(int i = from; i < to; i++) append(coalesced, ranges[i]);
+        return coalesced;
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The intervals in this set, sorted and coalesced.
+     */
+    final private Range[] ranges;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a set from intervals that are already sorted and coalesced.
+     *
+     * @param ranges  The intervals.
+     */
+    private ContinuousNumberSet(Range[] ranges) {
+        super(REAL);
+        this.ranges = ranges;
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Compares this set with the specified object for equality.
+     *
+     * @param o  The object to compare with.
+     * @return   True if the object is a ContinuousNumberSet with the same intervals.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(!(o instanceof ContinuousNumberSet)) return false;
+        return Arrays.equals(ranges, ((ContinuousNumberSet)o).ranges);
+    }
+
+    /**
+     * Returns the hash code for this set.
+     *
+     * @return  The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * Returns a String representation of this set.
+     *
+     * @return  A String containing the intervals joined by {@code U}, or {@code {}} if this set is empty.
+     */
+    @Override
+    public String toString() {
+        if(ranges.length == 0) return "{}";
+        StringBuilder str = new StringBuilder();
+        for(int i = 0; i < ranges.length; i++) {
+            if(i > 0) str.append(" U ");
+            str.append(ranges[i]);
+        }
+        return str.toString();
+    }
+
+// <---------------------- Methods Overriden from Superclasses ---------------------->
+
+    /**
+     * Determines whether or not a number is in this set, using a binary search.
+     *
+     * @param value  The number, which contains no Variables.
+     * @return       True if {@code value} is in one of the intervals.
+     * @throws       ArithmeticException If {@code value} is not a real number.
+     */
+    @Override
+    public boolean contains(Expression value) {
+        // find the last interval that starts at or before the value
+        int low = 0, high = ranges.length-1, found = -1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            Range range = ranges[mid];
+            int comparison = (range.lower == null) ? -1 : range.lower.compareTo(value);
+            if(comparison < 0 || (comparison == 0 && range.lowerClosed)) {
+                found = mid;
+                low = mid+1;
+            } else high = mid-1;
+        }
+        if(found == -1) return false;
+        Range range = ranges[found];
+        if(range.upper == null) return true;
+        int comparison = range.upper.compareTo(value);
+        return comparison > 0 || (comparison == 0 && range.upperClosed);
+    }
+
+    /**
+     * Returns the numbers that are in both this set and the provided set, by merging their intervals.
+     *
+     * @param set  The other set, which is a ContinuousNumberSet.
+     * @return     The intersection of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a ContinuousNumberSet.
+     */
+    @Override
+    public ContinuousNumberSet intersection(NumberSet set) {
+        Range[] others = toContinuous(set).ranges;
+        ArrayList<Range> intersection = new ArrayList<>();
+        for(int i = 0, j = 0; i < ranges.length && j < others.length;) {
+            Range x = ranges[i], y = others[j];
+            Range later = (compareLowers(x, y) >= 0) ? x : y;
+            int upperComparison = compareUppers(x, y);
+            Range earlier = (upperComparison <= 0) ? x : y;
+            Range range = new Range(later.lower, later.lowerClosed, earlier.upper, earlier.upperClosed);
+            if(!range.isEmpty()) intersection.add(range);
+            // the interval that ends first can't overlap anything else
+            if(upperComparison <= 0) i++;
+            if(upperComparison >= 0) j++;
+        }
+        return new ContinuousNumberSet(intersection.toArray(new Range[0]));
+    }
+
+    /**
+     * Returns the numbers that are in either this set or the provided set, by merging their intervals.
+     *
+     * @param set  The other set, which is a ContinuousNumberSet.
+     * @return     The union of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a ContinuousNumberSet.
+     */
+    @Override
+    public ContinuousNumberSet union(NumberSet set) {
+        Range[] others = toContinuous(set).ranges;
+        ArrayList<Range> union = new ArrayList<>();
+        for(int i = 0, j = 0; i < ranges.length || j < others.length;) {
+            if(j == others.length || (i < ranges.length && compareLowers(ranges[i], others[j]) <= 0)) append(union, ranges[i++]);
+            else append(union, others[j++]);
+        }
+        return new ContinuousNumberSet(union.toArray(new Range[0]));
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the real numbers that are not in this set.
+     *
+     * @return  The complement of this set.
+     */
+    public ContinuousNumberSet complement() {
+        ArrayList<Range> complement = new ArrayList<>();
+        Expression lower = null;
+        boolean lowerClosed = false;
+        boolean isUnboundedBelow = true;
+        for(Range range: ranges) {
+            if(range.lower != null) complement.add(new Range(lower, lowerClosed, range.lower, !range.lowerClosed));
+            isUnboundedBelow = false;
+            lower = range.upper;
+            lowerClosed = !range.upperClosed;
+            if(lower == null) return new ContinuousNumberSet(complement.toArray(new Range[0]));
+        }
+        if(isUnboundedBelow) return REALS;
+        complement.add(new Range(lower, lowerClosed, null, false));
+        return new ContinuousNumberSet(complement.toArray(new Range[0]));
+    }
+
+    /**
+     * Returns the numbers that are in this set but not the provided set.
+     *
+     * @param set  The other set, which is a ContinuousNumberSet.
+     * @return     The difference of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a ContinuousNumberSet.
+     */
+    public ContinuousNumberSet difference(NumberSet set) {
+        return intersection(toContinuous(set).complement());
+    }
+
+    /**
+     * Determines whether or not this set is empty.
+     *
+     * @return  True if this set contains no numbers.
+     */
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    /**
+     * Returns the number of disjoint intervals in this set.
+     *
+     * @return  The number of intervals.
+     */
+    public int getNumIntervals() {
+        return ranges.length;
+    }
+
+    /**
+     * Returns one of the intervals in this set, in increasing order.
+     *
+     * @param index  The index of the interval.
+     * @return       The interval.
+     * @throws       IndexOutOfBoundsException If there is no interval with the index.
+     */
+    public Range getInterval(int index) {
+        if(index < 0 || index >= ranges.length) throw new IndexOutOfBoundsException("ContinuousNumberSet: Invalid interval index");
+        return ranges[index];
+    }
+
+    /**
+     * Casts a NumberSet to a ContinuousNumberSet.
+     *
+     * @param set  The NumberSet.
+     * @return     The NumberSet as a ContinuousNumberSet.
+     * @throws     UnsupportedOperationException If the NumberSet is not a ContinuousNumberSet.
+     */
+    private static ContinuousNumberSet toContinuous(NumberSet set) {
+        if(!(set instanceof ContinuousNumberSet))
+            throw new UnsupportedOperationException("ContinuousNumberSet: Cannot combine with a " + set.getClass().getSimpleName());
+        return (ContinuousNumberSet)set;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>An immutable interval of real numbers with constant endpoints, each of which is open or
+     * closed. A null endpoint is unbounded and always open.</p>
+     */
+    public static class Range {
+
+        /**
+         * The lower endpoint, or null if it is unbounded.
+         */
+        final private Expression lower;
+
+        /**
+         * Whether or not the lower endpoint is in this interval.
+         */
+        final private boolean lowerClosed;
+
+        /**
+         * The upper endpoint, or null if it is unbounded.
+         */
+        final private Expression upper;
+
+        /**
+         * Whether or not the upper endpoint is in this interval.
+         */
+        final private boolean upperClosed;
+
+        /**
+         * Constructs an interval.
+         *
+         * @param lower        The lower endpoint, or null if it is unbounded.
+         * @param lowerClosed  Whether or not the lower endpoint is in the interval.
+         * @param upper        The upper endpoint, or null if it is unbounded.
+         * @param upperClosed  Whether or not the upper endpoint is in the interval.
+         * @throws             IllegalArgumentException If an endpoint contains Variables.
+         */
+        private Range(Expression lower, boolean lowerClosed, Expression upper, boolean upperClosed) {
+            if((lower != null && !lower.isConstant()) || (upper != null && !upper.isConstant()))
+                throw new IllegalArgumentException("ContinuousNumberSet: Endpoints must not contain Variables");
+            this.lower = lower;
+            this.lowerClosed = lowerClosed && lower != null;
+            this.upper = upper;
+            this.upperClosed = upperClosed && upper != null;
+        }
+
+        /**
+         * Compares this interval with the specified object for equality.
+         *
+         * @param o  The object to compare with.
+         * @return   True if the object is an interval with the same endpoints.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) return true;
+            if(!(o instanceof Range)) return false;
+            Range range = (Range)o;
+            return lowerClosed == range.lowerClosed && upperClosed == range.upperClosed &&
+                (lower == null ? range.lower == null : lower.equals(range.lower)) &&
+                (upper == null ? range.upper == null : upper.equals(range.upper));
+        }
+
+        /**
+         * Returns the hash code for this interval.
+         *
+         * @return  The hash code.
+         */
+        @Override
+        public int hashCode() {
+            int hash = (lower == null) ? 0 : lower.hashCode();
+            hash = 31*hash + ((upper == null) ? 0 : upper.hashCode());
+            return 4*hash + (lowerClosed ? 2 : 0) + (upperClosed ? 1 : 0);
+        }
+
+        /**
+         * Returns a String representation of this interval.
+         *
+         * @return  A String in interval notation, such as {@code [1, 2)} or {@code (-inf, pi]}.
+         */
+        @Override
+        public String toString() {
+            return (lowerClosed ? "[" : "(") + (lower == null ? "-inf" : lower.toString()) + ", " +
+                (upper == null ? "inf" : upper.toString()) + (upperClosed ? "]" : ")");
+        }
+
+        /**
+         * Returns the lower endpoint of this interval.
+         *
+         * @return  The lower endpoint, or null if it is unbounded.
+         */
+        public Expression getLower() {
+            return lower;
+        }
+
+        /**
+         * Determines whether or not the lower endpoint is in this interval.
+         *
+         * @return  True if the lower endpoint is closed.
+         */
+        public boolean isLowerClosed() {
+            return lowerClosed;
+        }
+
+        /**
+         * Returns the upper endpoint of this interval.
+         *
+         * @return  The upper endpoint, or null if it is unbounded.
+         */
+        public Expression getUpper() {
+            return upper;
+        }
+
+        /**
+         * Determines whether or not the upper endpoint is in this interval.
+         *
+         * @return  True if the upper endpoint is closed.
+         */
+        public boolean isUpperClosed() {
+            return upperClosed;
+        }
+
+        /**
+         * Determines whether or not this interval is empty.
+         *
+         * @return  True if this interval contains no numbers.
+         */
+        private boolean isEmpty() {
+            if(lower == null || upper == null) return false;
+            int comparison = lower.compareTo(upper);
+            return comparison > 0 || (comparison == 0 && !(lowerClosed && upperClosed));
+        }
+    }
+
+    /**
+     * <p>Builds a ContinuousNumberSet from any number of intervals in any order, which may overlap.</p>
+     *
+     * <p>The intervals are sorted with a parallel sort, and are then split into chunks that are
+     * coalesced in parallel. Since the chunks are sorted, the coalesced chunks are joined in a
+     * single linear pass.</p>
+     */
+    public static class Builder {
+
+        /**
+         * The intervals that have been added, excluding empty ones.
+         */
+        private ArrayList<Range> ranges = new ArrayList<>();
+
+        /**
+         * Adds an interval to the set.
+         *
+         * @param lower        The lower endpoint, or null if the interval is unbounded below.
+         * @param lowerClosed  Whether or not the lower endpoint is in the interval.
+         * @param upper        The upper endpoint, or null if the interval is unbounded above.
+         * @param upperClosed  Whether or not the upper endpoint is in the interval.
+         * @return             This Builder.
+         * @throws             IllegalArgumentException If an endpoint contains Variables.
+         */
+        public Builder add(Expression lower, boolean lowerClosed, Expression upper, boolean upperClosed) {
+            Range range = new Range(lower, lowerClosed, upper, upperClosed);
+            if(!range.isEmpty()) ranges.add(range);
+            return this;
+        }
+
+        /**
+         * Adds every interval in a set to the set.
+         *
+         * @param set  The set.
+         * @return     This Builder.
+         */
+        public Builder add(ContinuousNumberSet set) {
+            ranges.addAll(Arrays.asList(set.ranges));
+            return this;
+        }
+
+        /**
+         * Builds the set containing every number in the intervals that have been added.
+         *
+         * @return  The set.
+         */
+        public ContinuousNumberSet build() {
+            Range[] sorted = ranges.toArray(new Range[0]);
+            Arrays.parallelSort(sorted, LOWER_ORDER);
+            int numChunks = Math.max(1, Math.min(sorted.length/MIN_CHUNK_SIZE, 4*Runtime.getRuntime().availableProcessors()));
+            // the stream is ordered, so the chunks are collected in order
+            List<ArrayList<Range>> chunks = IntStream.range(0, numChunks).parallel().mapToObj(i ->
+                coalesce(sorted, (int)((long)i*sorted.length/numChunks), (int)((long)(i+1)*sorted.length/numChunks)))
+                .collect(Collectors.toList());
+            ArrayList<Range> coalesced = new ArrayList<>();
+            for(ArrayList<Range> chunk: chunks) {
+                for(Range range: chunk) append(coalesced, range);
+            }
+            return new ContinuousNumberSet(coalesced.toArray(new Range[0]));
+        }
+    }
 }
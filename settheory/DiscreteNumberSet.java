@@ -1,5 +1,429 @@
 package settheory;
 
-public class DiscreteNumberSet {
+import java.util.ArrayList;
+import java.util.Arrays;
 
+import arithmetic.BigRational;
+import arithmetic.Expression;
+
+/**
+ * <p>An immutable, finite set of rational numbers, such as {@code {-1, 0, 5/2}}.</p>
+ *
+ * <p>Members that are integers in the range of an int are stored in a compressed {@code IntegerBitmap},
+ * so sets of millions of integers take a few bits per member. The other members are stored in a
+ * sorted array of BigRationals. Union, intersection and difference combine the bitmaps container by
+ * container and merge the arrays in linear time.</p>
+ *
+ * <p>Members are ordered by value, so a member can be found by its rank with {@code select}, and
+ * {@code rank} counts the members up to a value.</p>
+ *
+ * <p>Sets with many members are built with a {@code DiscreteNumberSet.Builder}.</p>
+ *
+ * @author Ricky Qin
+ */
+public class DiscreteNumberSet extends NumberSet {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The set containing no numbers.
+     */
+    final public static DiscreteNumberSet EMPTY = new DiscreteNumberSet(IntegerBitmap.EMPTY, new BigRational[0]);
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Returns the set containing the specified integers.
+     *
+     * @param values  The integers, in any order, which may repeat.
+     * @return        The set.
+     */
+    public static DiscreteNumberSet of(int... values) {
+        Builder builder = new Builder();
+        for(int value: values) builder.add(value);
+        return builder.build();
+    }
+
+    /**
+     * Returns the set containing the specified numbers.
+     *
+     * @param values  The numbers, in any order, which may repeat.
+     * @return        The set.
+     * @throws        IllegalArgumentException If a number is not a BigRational.
+     */
+    public static DiscreteNumberSet of(Expression... values) {
+        Builder builder = new Builder();
+        for(Expression value: values) builder.add(value);
+        return builder.build();
+    }
+
+    /**
+     * Returns the set containing the integers in a range.
+     *
+     * @param from  The smallest integer, inclusive.
+     * @param to    The largest integer, inclusive.
+     * @return      The set, which is empty if {@code from > to}.
+     */
+    public static DiscreteNumberSet range(int from, int to) {
+        return new Builder().addRange(from, to).build();
+    }
+
+    /**
+     * Compares two BigRationals by value.
+     *
+     * @param a  The first BigRational.
+     * @param b  The second BigRational.
+     * @return   A negative number, zero, or a positive number if {@code a} is less than, equal to, or
+     * greater than {@code b}.
+     */
+    private static int compare(BigRational a, BigRational b) {
+        return ((BigRational)a.subtract(b)).signum();
+    }
+
+    /**
+     * Returns the number of integers in a bitmap that are less than a BigRational which is not
+     * stored in the bitmap.
+     *
+     * @param integers  The bitmap.
+     * @param value     The BigRational, which is not an integer in the range of an int.
+     * @return          The number of smaller integers.
+     */
+    private static long countBelow(IntegerBitmap integers, BigRational value) {
+        if(compare(value, new BigRational(Integer.MIN_VALUE)) < 0) return 0;
+        if(compare(value, new BigRational(Integer.MAX_VALUE)) > 0) return integers.cardinality();
+        // the value is between two ints, so it is above its floor
+        return integers.rank(value.floor().intValueExact());
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The members that are integers in the range of an int.
+     */
+    final private IntegerBitmap integers;
+
+    /**
+     * The other members, in increasing order.
+     */
+    final private BigRational[] others;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a set from its integer and other members.
+     *
+     * @param integers  The members that are integers in the range of an int.
+     * @param others    The other members, sorted and distinct.
+     */
+    private DiscreteNumberSet(IntegerBitmap integers, BigRational[] others) {
+        super(others.length == 0 ? INTEGER : RATIONAL);
+        this.integers = integers;
+        this.others = others;
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Compares this set with the specified object for equality.
+     *
+     * @param o  The object to compare with.
+     * @return   True if the object is a DiscreteNumberSet with the same members.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(!(o instanceof DiscreteNumberSet)) return false;
+        DiscreteNumberSet set = (DiscreteNumberSet)o;
+        return integers.equals(set.integers) && Arrays.equals(others, set.others);
+    }
+
+    /**
+     * Returns the hash code for this set.
+     *
+     * @return  The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31*integers.hashCode() + Arrays.hashCode(others);
+    }
+
+    /**
+     * Returns a String representation of this set.
+     *
+     * @return  A String containing the members in increasing order, such as {@code {-1, 0, 5/2}}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("{");
+        long cardinality = getCardinality();
+        for(long i = 0; i < cardinality; i++) {
+            if(i > 0) str.append(", ");
+            str.append(select(i));
+        }
+        return str.append("}").toString();
+    }
+
+// <---------------------- Methods Overriden from Superclasses ---------------------->
+
+    /**
+     * Determines whether or not a number is in this set.
+     *
+     * @param value  The number, which contains no Variables.
+     * @return       True if {@code value} is a BigRational that is a member of this set.
+     */
+    @Override
+    public boolean contains(Expression value) {
+        if(!(value instanceof BigRational)) return false;
+        BigRational number = (BigRational)value;
+        if(number.isIntValue()) return integers.contains(number.intValueExact());
+        return indexOf(number) >= 0;
+    }
+
+    /**
+     * Returns the numbers that are in both this set and the provided set.
+     *
+     * @param set  The other set, which is a DiscreteNumberSet.
+     * @return     The intersection of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a DiscreteNumberSet.
+     */
+    @Override
+    public DiscreteNumberSet intersection(NumberSet set) {
+        DiscreteNumberSet other = toDiscrete(set);
+        ArrayList<BigRational> intersection = new ArrayList<>();
+        for(int i = 0, j = 0; i < others.length && j < other.others.length;) {
+            int comparison = compare(others[i], other.others[j]);
+            if(comparison < 0) i++;
+            else if(comparison > 0) j++;
+            else {
+                intersection.add(others[i++]);
+                j++;
+            }
+        }
+        return new DiscreteNumberSet(integers.and(other.integers), intersection.toArray(new BigRational[0]));
+    }
+
+    /**
+     * Returns the numbers that are in either this set or the provided set.
+     *
+     * @param set  The other set, which is a DiscreteNumberSet.
+     * @return     The union of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a DiscreteNumberSet.
+     */
+    @Override
+    public DiscreteNumberSet union(NumberSet set) {
+        DiscreteNumberSet other = toDiscrete(set);
+        ArrayList<BigRational> union = new ArrayList<>();
+        for(int i = 0, j = 0; i < others.length || j < other.others.length;) {
+            int comparison = (i == others.length) ? 1 : (j == other.others.length) ? -1 : compare(others[i], other.others[j]);
+            if(comparison < 0) union.add(others[i++]);
+            else if(comparison > 0) union.add(other.others[j++]);
+            else {
+                union.add(others[i++]);
+                j++;
+            }
+        }
+        return new DiscreteNumberSet(integers.or(other.integers), union.toArray(new BigRational[0]));
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Returns the numbers that are in this set but not the provided set.
+     *
+     * @param set  The other set, which is a DiscreteNumberSet.
+     * @return     The difference of the sets.
+     * @throws     UnsupportedOperationException If the other set is not a DiscreteNumberSet.
+     */
+    public DiscreteNumberSet difference(NumberSet set) {
+        DiscreteNumberSet other = toDiscrete(set);
+        ArrayList<BigRational> difference = new ArrayList<>();
+        for(int i = 0, j = 0; i < others.length; i++) {
+            while(j < other.others.length && compare(other.others[j], others[i]) < 0) j++;
+            if(j == other.others.length || !others[i].equals(other.others[j])) difference.add(others[i]);
+        }
+        return new DiscreteNumberSet(integers.andNot(other.integers), difference.toArray(new BigRational[0]));
+    }
+
+    /**
+     * Determines whether or not this set is empty.
+     *
+     * @return  True if this set contains no numbers.
+     */
+    public boolean isEmpty() {
+        return getCardinality() == 0;
+    }
+
+    /**
+     * Returns the number of members in this set.
+     *
+     * @return  The cardinality.
+     */
+    public long getCardinality() {
+        return integers.cardinality() + others.length;
+    }
+
+    /**
+     * Returns the number of members in this set that are less than or equal to a number.
+     *
+     * @param value  The number.
+     * @return       The rank of the number.
+     */
+    public long rank(BigRational value) {
+        int index = indexOf(value);
+        long otherRank = (index >= 0) ? index+1 : -index-1;
+        if(value.isIntValue()) return integers.rank(value.intValueExact()) + otherRank;
+        return countBelow(integers, value) + otherRank;
+    }
+
+    /**
+     * Returns a member of this set by its position in increasing order.
+     *
+     * @param index  The number of smaller members.
+     * @return       The member.
+     * @throws       IndexOutOfBoundsException If {@code index} is not less than the cardinality.
+     */
+    public BigRational select(long index) {
+        if(index < 0 || index >= getCardinality()) throw new IndexOutOfBoundsException("DiscreteNumberSet: Invalid index");
+        // the position of others[j] is j plus the number of smaller integers, which increases with j,
+        // so find the number of others before the member
+        int low = 0, high = others.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            long position = mid + countBelow(integers, others[mid]);
+            if(position == index) return others[mid];
+            if(position < index) low = mid+1;
+            else high = mid;
+        }
+        return new BigRational(integers.select(index - low));
+    }
+
+    /**
+     * Finds a number in the members that are not integers in the range of an int.
+     *
+     * @param value  The number.
+     * @return       The index of the number if it is found, and {@code -(insertion point)-1} otherwise.
+     */
+    private int indexOf(BigRational value) {
+        int low = 0, high = others.length-1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compare(others[mid], value);
+            if(comparison < 0) low = mid+1;
+            else if(comparison > 0) high = mid-1;
+            else return mid;
+        }
+        return -low-1;
+    }
+
+    /**
+     * Casts a NumberSet to a DiscreteNumberSet.
+     *
+     * @param set  The NumberSet.
+     * @return     The NumberSet as a DiscreteNumberSet.
+     * @throws     UnsupportedOperationException If the NumberSet is not a DiscreteNumberSet.
+     */
+    private static DiscreteNumberSet toDiscrete(NumberSet set) {
+        if(!(set instanceof DiscreteNumberSet))
+            throw new UnsupportedOperationException("DiscreteNumberSet: Cannot combine with a " + set.getClass().getSimpleName());
+        return (DiscreteNumberSet)set;
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>Builds a DiscreteNumberSet from any number of members in any order, which may repeat.</p>
+     *
+     * <p>Integers are collected in a growing int array, which is sorted with a parallel sort and
+     * packed into a bitmap when the set is built.</p>
+     */
+    public static class Builder {
+
+        /**
+         * The integers that have been added, in the order that they were added.
+         */
+        private int[] integers = new int[16];
+
+        /**
+         * The number of integers that have been added.
+         */
+        private int numIntegers = 0;
+
+        /**
+         * The other numbers that have been added.
+         */
+        private ArrayList<BigRational> others = new ArrayList<>();
+
+        /**
+         * Adds an integer to the set.
+         *
+         * @param value  The integer.
+         * @return       This Builder.
+         */
+        public Builder add(int value) {
+            if(numIntegers == integers.length) integers = Arrays.copyOf(integers, 2*integers.length);
+            integers[numIntegers++] = value;
+            return this;
+        }
+
+        /**
+         * Adds a number to the set.
+         *
+         * @param value  The number.
+         * @return       This Builder.
+         * @throws       IllegalArgumentException If the number is not a BigRational.
+         */
+        public Builder add(Expression value) {
+            if(!(value instanceof BigRational))
+                throw new IllegalArgumentException("DiscreteNumberSet: Members must be rational numbers");
+            BigRational number = (BigRational)value;
+            if(number.isIntValue()) return add(number.intValueExact());
+            others.add(number);
+            return this;
+        }
+
+        /**
+         * Adds the integers in a range to the set.
+         *
+         * @param from  The smallest integer, inclusive.
+         * @param to    The largest integer, inclusive.
+         * @return      This Builder.
+         */
+        public Builder addRange(int from, int to) {
+            for(long value = from; value <= to; value++) add((int)value);
+            return this;
+        }
+
+        /**
+         * Adds every member of a set to the set.
+         *
+         * @param set  The set.
+         * @return     This Builder.
+         */
+        public Builder add(DiscreteNumberSet set) {
+            for(long i = 0; i < set.integers.cardinality(); i++) add(set.integers.select(i));
+            others.addAll(Arrays.asList(set.others));
+            return this;
+        }
+
+        /**
+         * Builds the set containing every number that has been added.
+         *
+         * @return  The set.
+         */
+        public DiscreteNumberSet build() {
+            int[] sorted = Arrays.copyOf(integers, numIntegers);
+            Arrays.parallelSort(sorted);
+            int length = 0;
+            for(int i = 0; i < sorted.length; i++) {
+                if(i == 0 || sorted[i] != sorted[i-1]) sorted[length++] = sorted[i];
+            }
+            BigRational[] sortedOthers = others.toArray(new BigRational[0]);
+            Arrays.parallelSort(sortedOthers, DiscreteNumberSet::compare);
+            int numOthers = 0;
+            for(int i = 0; i < sortedOthers.length; i++) {
+                if(i == 0 || !sortedOthers[i].equals(sortedOthers[i-1])) sortedOthers[numOthers++] = sortedOthers[i];
+            }
+            return new DiscreteNumberSet(IntegerBitmap.fromSorted(sorted, length), Arrays.copyOf(sortedOthers, numOthers));
+        }
+    }
 }
@@ -0,0 +1,587 @@
+package settheory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * <p>An immutable, compressed set of ints in the style of a roaring bitmap.</p>
+ *
+ * <p>Each int is split into its upper 16 bits, which select a container, and its lower 16 bits,
+ * which are stored in the container. Containers with at most {@code ARRAY_LIMIT} values store them
+ * in a sorted array, and larger containers store them in a 65536-bit bitmap, so that no container
+ * uses more than 8 KiB. Empty containers are not stored.</p>
+ *
+ * <p>Ints are offset by {@code Integer.MIN_VALUE} before they are split, so that the containers are
+ * in increasing order of value. The number of values before each container is cached, so rank and
+ * select take a binary search over the containers plus a scan of a single container.</p>
+ *
+ * @author Ricky Qin
+ */
+class IntegerBitmap {
+
+// <------------------------------- Static Variables ------------------------------->
+
+    /**
+     * The maximum number of values stored in an array container.
+     */
+    final private static int ARRAY_LIMIT = 4096;
+
+    /**
+     * The number of 64-bit words in a bitmap container.
+     */
+    final private static int BITMAP_WORDS = 1024;
+
+    /**
+     * The empty set.
+     */
+    final static IntegerBitmap EMPTY = new IntegerBitmap(new char[0], new Container[0]);
+
+// <-------------------------------- Static Methods -------------------------------->
+
+    /**
+     * Constructs a bitmap from a sorted array of distinct ints.
+     *
+     * @param values  The values.
+     * @param length  The number of values at the start of the array to use.
+     * @return        The bitmap.
+     */
+    static IntegerBitmap fromSorted(int[] values, int length) {
+        ArrayList<Character> keys = new ArrayList<>();
+        ArrayList<Container> containers = new ArrayList<>();
+        for(int start = 0; start < length;) {
+            char key = high(values[start]);
+            int end = start;
+            while(end < length && high(values[end]) == key) end++;
+            char[] lows = new char[end-start];
+            for(int i = start; i < end; i++) lows[i-start] = low(values[i]);
+            keys.add(key);
+            containers.add(Container.fromSorted(lows, lows.length));
+            start = end;
+        }
+        return create(keys, containers);
+    }
+
+    /**
+     * Constructs a bitmap from lists of keys and containers, dropping empty containers.
+     *
+     * @param keys        The keys, in increasing order.
+     * @param containers  The containers for each key.
+     * @return            The bitmap.
+     */
+    private static IntegerBitmap create(ArrayList<Character> keys, ArrayList<Container> containers) {
+        int size = 0;
+        for(Container container: containers) {
+            if(container != null) size++;
+        }
+        char[] keyArray = new char[size];
+        Container[] containerArray = new Container[size];
+        for(int i = 0, j = 0; i < keys.size(); i++) {
+            if(containers.get(i) == null) continue;
+            keyArray[j] = keys.get(i);
+            containerArray[j] = containers.get(i);
+            j++;
+        }
+        return new IntegerBitmap(keyArray, containerArray);
+    }
+
+    /**
+     * Returns the upper 16 bits of an int, offset so that they increase with the int.
+     *
+     * @param value  The int.
+     * @return       The key of the container for the int.
+     */
+    private static char high(int value) {
+        return (char)((value ^ Integer.MIN_VALUE) >>> 16);
+    }
+
+    /**
+     * Returns the lower 16 bits of an int.
+     *
+     * @param value  The int.
+     * @return       The value stored in the container for the int.
+     */
+    private static char low(int value) {
+        return (char)value;
+    }
+
+    /**
+     * Joins a key and a value stored in a container into an int.
+     *
+     * @param high  The key.
+     * @param low   The value stored in the container.
+     * @return      The int.
+     */
+    private static int join(char high, char low) {
+        return ((high << 16) | low) ^ Integer.MIN_VALUE;
+    }
+
+// <------------------------------ Instance Variables ------------------------------>
+
+    /**
+     * The keys of the containers, in increasing order.
+     */
+    final private char[] keys;
+
+    /**
+     * The containers for each key, none of which are empty.
+     */
+    final private Container[] containers;
+
+    /**
+     * The number of values in the containers before each container, followed by the total number
+     * of values.
+     */
+    final private long[] prefixCounts;
+
+// <--------------------------------- Constructors --------------------------------->
+
+    /**
+     * Constructs a bitmap from its keys and containers.
+     *
+     * @param keys        The keys, in increasing order.
+     * @param containers  The non-empty containers for each key.
+     */
+    private IntegerBitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        prefixCounts = new long[containers.length+1];
+        for(int i = 0; i < containers.length; i++) prefixCounts[i+1] = prefixCounts[i] + containers[i].cardinality();
+    }
+
+// <-------------------- Methods Overriden from java.lang.Object -------------------->
+
+    /**
+     * Compares this bitmap with the specified object for equality.
+     *
+     * @param o  The object to compare with.
+     * @return   True if the object is a bitmap with the same values.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if(o == this) return true;
+        if(!(o instanceof IntegerBitmap)) return false;
+        IntegerBitmap bitmap = (IntegerBitmap)o;
+        return Arrays.equals(keys, bitmap.keys) && Arrays.equals(containers, bitmap.containers);
+    }
+
+    /**
+     * Returns the hash code for this bitmap.
+     *
+     * @return  The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31*Arrays.hashCode(keys) + Arrays.hashCode(containers);
+    }
+
+// <---------------------------------- Own Methods ---------------------------------->
+
+    /**
+     * Determines whether or not an int is in this bitmap.
+     *
+     * @param value  The int.
+     * @return       True if the int is in this bitmap.
+     */
+    boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, high(value));
+        return index >= 0 && containers[index].contains(low(value));
+    }
+
+    /**
+     * Returns the number of ints in this bitmap.
+     *
+     * @return  The cardinality.
+     */
+    long cardinality() {
+        return prefixCounts[containers.length];
+    }
+
+    /**
+     * Returns the number of ints in this bitmap that are less than or equal to an int.
+     *
+     * @param value  The int.
+     * @return       The rank of the int.
+     */
+    long rank(int value) {
+        int index = Arrays.binarySearch(keys, high(value));
+        if(index < 0) return prefixCounts[-index-1];
+        return prefixCounts[index] + containers[index].rank(low(value));
+    }
+
+    /**
+     * Returns an int in this bitmap by its position in increasing order.
+     *
+     * @param index  The number of smaller ints in this bitmap.
+     * @return       The int.
+     * @throws       IndexOutOfBoundsException If {@code index} is not less than the cardinality.
+     */
+    int select(long index) {
+        if(index < 0 || index >= cardinality()) throw new IndexOutOfBoundsException("IntegerBitmap: Invalid index");
+        // find the last container with fewer values before it than the index
+        int low = 0, high = containers.length-1;
+        while(low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if(prefixCounts[mid] <= index) low = mid;
+            else high = mid-1;
+        }
+        return join(keys[low], containers[low].select((int)(index - prefixCounts[low])));
+    }
+
+    /**
+     * Returns the ints that are in either this bitmap or the provided bitmap.
+     *
+     * @param bitmap  The other bitmap.
+     * @return        The union of the bitmaps.
+     */
+    IntegerBitmap or(IntegerBitmap bitmap) {
+        ArrayList<Character> newKeys = new ArrayList<>();
+        ArrayList<Container> newContainers = new ArrayList<>();
+        for(int i = 0, j = 0; i < keys.length || j < bitmap.keys.length;) {
+            if(j == bitmap.keys.length || (i < keys.length && keys[i] < bitmap.keys[j])) {
+                newKeys.add(keys[i]);
+                newContainers.add(containers[i++]);
+            } else if(i == keys.length || bitmap.keys[j] < keys[i]) {
+                newKeys.add(bitmap.keys[j]);
+                newContainers.add(bitmap.containers[j++]);
+            } else {
+                newKeys.add(keys[i]);
+                newContainers.add(containers[i++].or(bitmap.containers[j++]));
+            }
+        }
+        return create(newKeys, newContainers);
+    }
+
+    /**
+     * Returns the ints that are in both this bitmap and the provided bitmap.
+     *
+     * @param bitmap  The other bitmap.
+     * @return        The intersection of the bitmaps.
+     */
+    IntegerBitmap and(IntegerBitmap bitmap) {
+        ArrayList<Character> newKeys = new ArrayList<>();
+        ArrayList<Container> newContainers = new ArrayList<>();
+        for(int i = 0, j = 0; i < keys.length && j < bitmap.keys.length;) {
+            if(keys[i] < bitmap.keys[j]) i++;
+            else if(bitmap.keys[j] < keys[i]) j++;
+            else {
+                newKeys.add(keys[i]);
+                newContainers.add(containers[i++].and(bitmap.containers[j++]));
+            }
+        }
+        return create(newKeys, newContainers);
+    }
+
+    /**
+     * Returns the ints that are in this bitmap but not the provided bitmap.
+     *
+     * @param bitmap  The other bitmap.
+     * @return        The difference of the bitmaps.
+     */
+    IntegerBitmap andNot(IntegerBitmap bitmap) {
+        ArrayList<Character> newKeys = new ArrayList<>();
+        ArrayList<Container> newContainers = new ArrayList<>();
+        for(int i = 0, j = 0; i < keys.length; i++) {
+            while(j < bitmap.keys.length && bitmap.keys[j] < keys[i]) j++;
+            newKeys.add(keys[i]);
+            if(j < bitmap.keys.length && bitmap.keys[j] == keys[i]) newContainers.add(containers[i].andNot(bitmap.containers[j]));
+            else newContainers.add(containers[i]);
+        }
+        return create(newKeys, newContainers);
+    }
+
+// <--------------------------------- Inner Classes --------------------------------->
+
+    /**
+     * <p>A set of 16-bit values, stored in a sorted array if it is small and in a bitmap otherwise.
+     * Each set has a single representation, so containers can be compared by their contents.</p>
+     */
+    private static abstract class Container {
+
+        /**
+         * Constructs a container from a sorted array of distinct values, choosing its representation
+         * by the number of values.
+         *
+         * @param values  The values.
+         * @param length  The number of values at the start of the array to use.
+         * @return        The container, or null if there are no values.
+         */
+        static Container fromSorted(char[] values, int length) {
+            if(length == 0) return null;
+            if(length <= ARRAY_LIMIT) return new ArrayContainer(Arrays.copyOf(values, length));
+            long[] words = new long[BITMAP_WORDS];
+            for(int i = 0; i < length; i++) words[values[i] >>> 6] |= 1L << values[i];
+            return new BitmapContainer(words, length);
+        }
+
+        /**
+         * Constructs a container from the words of a bitmap, choosing its representation by the
+         * number of values.
+         *
+         * @param words  The words of the bitmap.
+         * @return       The container, or null if there are no values.
+         */
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            for(long word: words) cardinality += Long.bitCount(word);
+            if(cardinality > ARRAY_LIMIT) return new BitmapContainer(words, cardinality);
+            char[] values = new char[cardinality];
+            int length = 0;
+            for(int i = 0; i < BITMAP_WORDS; i++) {
+                for(long word = words[i]; word != 0; word &= word-1) values[length++] = (char)((i << 6) + Long.numberOfTrailingZeros(word));
+            }
+            return fromSorted(values, length);
+        }
+
+        /**
+         * Returns the number of values in this container.
+         *
+         * @return  The cardinality.
+         */
+        abstract int cardinality();
+
+        /**
+         * Determines whether or not a value is in this container.
+         *
+         * @param value  The value.
+         * @return       True if the value is in this container.
+         */
+        abstract boolean contains(char value);
+
+        /**
+         * Returns the number of values in this container that are less than or equal to a value.
+         *
+         * @param value  The value.
+         * @return       The rank of the value.
+         */
+        abstract int rank(char value);
+
+        /**
+         * Returns a value in this container by its position in increasing order.
+         *
+         * @param index  The number of smaller values in this container.
+         * @return       The value.
+         */
+        abstract char select(int index);
+
+        /**
+         * Returns the words of a bitmap containing the values in this container.
+         *
+         * @return  A new array of words.
+         */
+        abstract long[] toWords();
+
+        /**
+         * Returns the values in either this container or the provided container.
+         *
+         * @param container  The other container.
+         * @return           The union, which is not empty.
+         */
+        Container or(Container container) {
+            if(this instanceof ArrayContainer && container instanceof ArrayContainer) {
+                char[] x = ((ArrayContainer)this).values, y = ((ArrayContainer)container).values;
+                char[] union = new char[x.length + y.length];
+                int length = 0;
+                for(int i = 0, j = 0; i < x.length || j < y.length;) {
+                    if(j == y.length || (i < x.length && x[i] < y[j])) union[length++] = x[i++];
+                    else if(i == x.length || y[j] < x[i]) union[length++] = y[j++];
+                    else {
+                        union[length++] = x[i++];
+                        j++;
+                    }
+                }
+                return fromSorted(union, length);
+            }
+            Container bitmap = (this instanceof BitmapContainer) ? this : container;
+            Container other = (bitmap == this) ? container : this;
+            long[] words = bitmap.toWords();
+            if(other instanceof ArrayContainer) {
+                for(char value: ((ArrayContainer)other).values) words[value >>> 6] |= 1L << value;
+            } else {
+                long[] otherWords = ((BitmapContainer)other).words;
+                for(int i = 0; i < BITMAP_WORDS; i++) words[i] |= otherWords[i];
+            }
+            return fromWords(words);
+        }
+
+        /**
+         * Returns the values in both this container and the provided container.
+         *
+         * @param container  The other container.
+         * @return           The intersection, or null if it is empty.
+         */
+        Container and(Container container) {
+            if(this instanceof ArrayContainer || container instanceof ArrayContainer) {
+                // filter the smaller array through the other container
+                ArrayContainer array = (ArrayContainer)((this instanceof ArrayContainer) ? this : container);
+                Container other = (array == this) ? container : this;
+                if(other instanceof ArrayContainer && other.cardinality() < array.cardinality()) {
+                    array = (ArrayContainer)other;
+                    other = (array == this) ? container : this;
+                }
+                char[] intersection = new char[array.values.length];
+                int length = 0;
+                for(char value: array.values) {
+                    if(other.contains(value)) intersection[length++] = value;
+                }
+                return fromSorted(intersection, length);
+            }
+            long[] words = toWords(), otherWords = ((BitmapContainer)container).words;
+            for(int i = 0; i < BITMAP_WORDS; i++) words[i] &= otherWords[i];
+            return fromWords(words);
+        }
+
+        /**
+         * Returns the values in this container but not the provided container.
+         *
+         * @param container  The other container.
+         * @return           The difference, or null if it is empty.
+         */
+        Container andNot(Container container) {
+            if(this instanceof ArrayContainer) {
+                char[] values = ((ArrayContainer)this).values;
+                char[] difference = new char[values.length];
+                int length = 0;
+                for(char value: values) {
+                    if(!container.contains(value)) difference[length++] = value;
+                }
+                return fromSorted(difference, length);
+            }
+            long[] words = toWords();
+            if(container instanceof ArrayContainer) {
+                for(char value: ((ArrayContainer)container).values) words[value >>> 6] &= ~(1L << value);
+            } else {
+                long[] otherWords = ((BitmapContainer)container).words;
+                for(int i = 0; i < BITMAP_WORDS; i++) words[i] &= ~otherWords[i];
+            }
+            return fromWords(words);
+        }
+    }
+
+    /**
+     * <p>A container that stores at most {@code ARRAY_LIMIT} values in a sorted array.</p>
+     */
+    private static class ArrayContainer extends Container {
+
+        /**
+         * The values, in increasing order.
+         */
+        final private char[] values;
+
+        /**
+         * Constructs a container from a sorted array of distinct values.
+         *
+         * @param values  The values.
+         */
+        private ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ArrayContainer && Arrays.equals(values, ((ArrayContainer)o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        int rank(char value) {
+            int index = Arrays.binarySearch(values, value);
+            return (index >= 0) ? index+1 : -index-1;
+        }
+
+        @Override
+        char select(int index) {
+            return values[index];
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            for(char value: values) words[value >>> 6] |= 1L << value;
+            return words;
+        }
+    }
+
+    /**
+     * <p>A container that stores more than {@code ARRAY_LIMIT} values in a 65536-bit bitmap.</p>
+     */
+    private static class BitmapContainer extends Container {
+
+        /**
+         * The bitmap, where bit {@code v & 63} of word {@code v >>> 6} is set if {@code v} is in
+         * this container.
+         */
+        final private long[] words;
+
+        /**
+         * The number of set bits in the bitmap.
+         */
+        final private int cardinality;
+
+        /**
+         * Constructs a container from the words of a bitmap.
+         *
+         * @param words        The words.
+         * @param cardinality  The number of set bits.
+         */
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BitmapContainer && Arrays.equals(words, ((BitmapContainer)o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int rank(char value) {
+            int rank = 0;
+            for(int i = 0; i < value >>> 6; i++) rank += Long.bitCount(words[i]);
+            // keep the bits up to and including the value
+            return rank + Long.bitCount(words[value >>> 6] & (-1L >>> (63 - (value & 63))));
+        }
+
+        @Override
+        char select(int index) {
+            int i = 0;
+            while(Long.bitCount(words[i]) <= index) index -= Long.bitCount(words[i++]);
+            long word = words[i];
+            for(int j = 0; j < index; j++) word &= word-1;
+            return (char)((i << 6) + Long.numberOfTrailingZeros(word));
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+    }
+}
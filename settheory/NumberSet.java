@@ -63,23 +63,31 @@ public abstract class NumberSet {
         }
     }
 
+// <---------------------------------- Own Methods ---------------------------------->
 
     /**
-     * @param set
-     * @return NumberSet
+     * Determines whether or not a number is in this NumberSet.
+     *
+     * @param value  The number, which contains no Variables.
+     * @return       True if {@code value} is in this NumberSet.
      */
-    public NumberSet intersection(NumberSet set) {
-        // TODO Auto-generated method stub
-        return null;
-    }
+    public abstract boolean contains(Expression value);
 
+    /**
+     * Returns the numbers that are in both this NumberSet and the provided NumberSet.
+     *
+     * @param set  The other NumberSet.
+     * @return     The intersection of the NumberSets.
+     * @throws     UnsupportedOperationException If the NumberSets cannot be combined.
+     */
+    public abstract NumberSet intersection(NumberSet set);
 
     /**
-     * @param set
-     * @return NumberSet
+     * Returns the numbers that are in either this NumberSet or the provided NumberSet.
+     *
+     * @param set  The other NumberSet.
+     * @return     The union of the NumberSets.
+     * @throws     UnsupportedOperationException If the NumberSets cannot be combined.
      */
-    public NumberSet union(NumberSet set) {
-        // TODO Auto-generated method stub
-        return null;
-    }
+    public abstract NumberSet union(NumberSet set);
 }